@@ -1,9 +1,11 @@
 module BioPipelineRunner {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.desktop; // ImageIO for PNG tree export
     requires ete3; // Assuming ete3 is available as a module
     requires org.apache.commons.io; // For file handling utilities
     requires org.slf4j; // For logging utilities
+    requires jdk.jfr; // Custom flight recorder events
 
     exports org.biopipelinerunner;
     exports org.biopipelinerunner.controllers;
@@ -0,0 +1,100 @@
+package org.biopipelinerunner.controllers;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import org.biopipelinerunner.models.GenomeCompleteness;
+
+import java.util.List;
+
+/**
+ * Shows the BUSCO completeness and duplication of each genome as a stacked bar, least
+ * complete genomes first, with the number of BUSCOs each genome alone is missing.
+ * Must only be updated from the JavaFX application thread.
+ */
+public class BuscoDashboardPanel extends VBox {
+    private static final double BAR_WIDTH = 160;
+    private static final double BAR_HEIGHT = 12;
+    private static final double NAME_WIDTH = 140;
+    // The colours of BUSCO's own summary plots
+    private static final Color SINGLE_COLOR = Color.web("#56B4E9");
+    private static final Color DUPLICATED_COLOR = Color.web("#3492C7");
+    private static final Color FRAGMENTED_COLOR = Color.web("#F0E442");
+    private static final Color MISSING_COLOR = Color.web("#F04442");
+
+    private final Label summaryLabel = new Label("No BUSCO results yet");
+
+    public BuscoDashboardPanel() {
+        setSpacing(3);
+        setPadding(new Insets(5));
+        getChildren().add(summaryLabel);
+    }
+
+    /**
+     * Redraw the panel
+     *
+     * @param genomes Completeness of every genome indexed so far, least complete first
+     */
+    public void update(List<GenomeCompleteness> genomes) {
+        getChildren().retainAll(summaryLabel);
+        if (genomes.isEmpty()) {
+            summaryLabel.setText("No BUSCO results yet");
+            return;
+        }
+        double[] complete = new double[genomes.size()];
+        for (int i = 0; i < genomes.size(); i++) {
+            complete[i] = genomes.get(i).getCompletePercent();
+        }
+        // Sorted ascending, so the median is in the middle
+        double median = genomes.size() % 2 == 1 ? complete[genomes.size() / 2]
+                : (complete[genomes.size() / 2 - 1] + complete[genomes.size() / 2]) / 2;
+        summaryLabel.setText(String.format("%d genomes, median completeness %.1f%%, lowest %s (%.1f%%)",
+                genomes.size(), median, genomes.get(0).getGenome(), complete[0]));
+        for (GenomeCompleteness genome : genomes) {
+            getChildren().add(createRow(genome));
+        }
+    }
+
+    private HBox createRow(GenomeCompleteness genome) {
+        Label name = new Label(genome.getGenome());
+        name.setMinWidth(NAME_WIDTH);
+        name.setPrefWidth(NAME_WIDTH);
+        Canvas bar = new Canvas(BAR_WIDTH, BAR_HEIGHT);
+        drawBar(bar, genome);
+        String soleMissing = genome.getSoleMissing() > 0
+                ? String.format(", %d missing only here", genome.getSoleMissing()) : "";
+        Label values = new Label(String.format("C %.1f%%  D %.1f%%%s",
+                genome.getCompletePercent(), genome.getDuplicatedPercent(), soleMissing));
+        HBox row = new HBox(6, name, bar, values);
+        row.setAlignment(Pos.CENTER_LEFT);
+        Tooltip.install(row, new Tooltip(genome.getGenome() + "\n" + genome));
+        return row;
+    }
+
+    private static void drawBar(Canvas canvas, GenomeCompleteness genome) {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.clearRect(0, 0, width, height);
+        int total = genome.getTotal();
+        if (total > 0) {
+            int[] counts = {genome.getSingle(), genome.getDuplicated(), genome.getFragmented(), genome.getMissing()};
+            Color[] colors = {SINGLE_COLOR, DUPLICATED_COLOR, FRAGMENTED_COLOR, MISSING_COLOR};
+            double x = 0;
+            for (int i = 0; i < counts.length; i++) {
+                double segment = width * counts[i] / total;
+                gc.setFill(colors[i]);
+                gc.fillRect(x, 0, segment, height);
+                x += segment;
+            }
+        }
+        gc.setStroke(Color.LIGHTGRAY);
+        gc.strokeRect(0.5, 0.5, width - 1, height - 1);
+    }
+}
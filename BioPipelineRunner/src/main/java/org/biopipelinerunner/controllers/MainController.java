@@ -1,28 +1,62 @@
 package org.biopipelinerunner.controllers;
 
 import javafx.application.Platform;
+import javafx.beans.binding.BooleanBinding;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
+import javafx.stage.Stage;
 import org.biopipelinerunner.models.BuscoConfig;
+import org.biopipelinerunner.models.GenomeCompleteness;
+import org.biopipelinerunner.models.GenomeStats;
+import org.biopipelinerunner.models.PhyloTree;
+import org.biopipelinerunner.models.PhylogenyConfig;
+import org.biopipelinerunner.models.PipelineEvent;
+import org.biopipelinerunner.models.ResourceLimits;
+import org.biopipelinerunner.models.RetentionPolicy;
+import org.biopipelinerunner.models.WatchConfig;
 import org.biopipelinerunner.services.BuscoService;
 import org.biopipelinerunner.services.PhylogenyService;
+import org.biopipelinerunner.services.InputStagingService;
+import org.biopipelinerunner.services.PreflightService;
+import org.biopipelinerunner.services.ResourceMonitorService;
+import org.biopipelinerunner.services.RetentionService;
 import org.biopipelinerunner.services.VisualizationService;
+import org.biopipelinerunner.services.WatchFolderService;
+import org.biopipelinerunner.utils.Bipartitions;
 import org.biopipelinerunner.utils.DependencyManager;
+import org.biopipelinerunner.utils.EventLogWriter;
 import org.biopipelinerunner.utils.FileUtils;
+import org.biopipelinerunner.utils.NewickParser;
+import org.biopipelinerunner.utils.PipelineEventBus;
+import org.biopipelinerunner.utils.PipelineStageEvent;
 import org.biopipelinerunner.utils.PlatformUtils;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 public class MainController {
@@ -57,10 +91,82 @@ public class MainController {
     @FXML
     private ComboBox<String> buscoModeComboBox;
     
+    @FXML
+    private CheckBox useScratchCheckBox;
+    
+    @FXML
+    private ComboBox<String> phylogenyModeComboBox;
+    
+    @FXML
+    private ComboBox<String> phylogenyToolComboBox;
+    
+    @FXML
+    private CheckBox fastTreePreviewCheckBox;
+    
+    @FXML
+    private CheckBox njPreviewCheckBox;
+    
+    @FXML
+    private ComboBox<String> bootstrapComboBox;
+    
+    @FXML
+    private Spinner<Integer> bootstrapReplicatesSpinner;
+    
+    @FXML
+    private ComboBox<String> jobBackendComboBox;
+    
+    @FXML
+    private Spinner<Integer> minOccupancySpinner;
+    
+    @FXML
+    private TextField excludedTaxaField;
+    
+    @FXML
+    private ResourceMonitorPanel resourceMonitorPanel;
+    
+    @FXML
+    private BuscoDashboardPanel buscoDashboardPanel;
+    
+    @FXML
+    private Button watchFolderButton;
+    
+    @FXML
+    private Spinner<Integer> watchBatchSpinner;
+    
+    @FXML
+    private CheckBox nightlyRebuildCheckBox;
+    
+    @FXML
+    private Spinner<Integer> jobMemorySpinner;
+    
+    @FXML
+    private Spinner<Integer> jobNicenessSpinner;
+    
+    @FXML
+    private CheckBox pinCpusCheckBox;
+    
+    @FXML
+    private CheckBox archiveIntermediatesCheckBox;
+    
+    @FXML
+    private Spinner<Integer> intermediateMaxAgeSpinner;
+    
+    @FXML
+    private Spinner<Integer> keepLastRunsSpinner;
+    
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
     private final BuscoService buscoService = new BuscoService();
     private final PhylogenyService phylogenyService = new PhylogenyService();
+    private final PreflightService preflightService = new PreflightService();
+    private final WatchFolderService watchFolderService = new WatchFolderService(buscoService, new PreflightService());
     private final VisualizationService visualizationService = new VisualizationService();
+    private final ResourceMonitorService resourceMonitorService = new ResourceMonitorService();
+    private final RetentionService retentionService = new RetentionService();
+    private final AtomicBoolean resourceRefreshPending = new AtomicBoolean();
+    private final AtomicReference<List<GenomeCompleteness>> pendingCompleteness = new AtomicReference<>();
+    private final AtomicBoolean logRefreshPending = new AtomicBoolean();
+    private final Queue<String> pendingLogLines = new ConcurrentLinkedQueue<>();
+    private volatile String lastTreeFile;
 
     @FXML
     public void initialize() {
@@ -75,11 +181,83 @@ public class MainController {
         buscoModeComboBox.getItems().addAll("genome", "proteins", "transcriptome");
         buscoModeComboBox.setValue("genome");
         
+        phylogenyModeComboBox.getItems().addAll(PhylogenyConfig.MODE_SUPERMATRIX, PhylogenyConfig.MODE_GENE_TREES);
+        phylogenyModeComboBox.setValue(PhylogenyConfig.MODE_SUPERMATRIX);
+        
+        phylogenyToolComboBox.getItems().addAll(PhylogenyConfig.TOOL_IQTREE, PhylogenyConfig.TOOL_FASTTREE);
+        phylogenyToolComboBox.setValue(PhylogenyConfig.TOOL_IQTREE);
+        // The FastTree preview and bootstrap options only apply to an IQ-TREE supermatrix search
+        BooleanBinding notIqTreeSupermatrix = phylogenyToolComboBox.valueProperty().isNotEqualTo(PhylogenyConfig.TOOL_IQTREE)
+            .or(phylogenyModeComboBox.valueProperty().isNotEqualTo(PhylogenyConfig.MODE_SUPERMATRIX));
+        fastTreePreviewCheckBox.disableProperty().bind(notIqTreeSupermatrix);
+        bootstrapComboBox.getItems().addAll(PhylogenyConfig.BOOTSTRAP_ULTRAFAST, PhylogenyConfig.BOOTSTRAP_DISTRIBUTED);
+        bootstrapComboBox.setValue(PhylogenyConfig.BOOTSTRAP_ULTRAFAST);
+        bootstrapComboBox.disableProperty().bind(notIqTreeSupermatrix);
+        bootstrapReplicatesSpinner.disableProperty().bind(
+            bootstrapComboBox.disabledProperty().or(bootstrapComboBox.valueProperty().isNotEqualTo(PhylogenyConfig.BOOTSTRAP_DISTRIBUTED)));
+        jobBackendComboBox.getItems().addAll(PhylogenyConfig.BACKEND_LOCAL, PhylogenyConfig.BACKEND_SLURM);
+        jobBackendComboBox.setValue(PhylogenyConfig.BACKEND_LOCAL);
+        njPreviewCheckBox.disableProperty().bind(
+            phylogenyModeComboBox.valueProperty().isNotEqualTo(PhylogenyConfig.MODE_SUPERMATRIX));
+        phylogenyService.setPreviewListener(previewTree -> Platform.runLater(() -> {
+            logTextArea.appendText("Preview tree ready, the analysis is still running: " + previewTree + "\n");
+            showTreeWindow(previewTree.toFile(), "Preview");
+        }));
+        
         // Button actions
         runPipelineButton.setOnAction(event -> handleRunPipeline());
         
+        // Only queue a redraw when the previous one has been handled by the FX thread
+        resourceMonitorService.setListener(tools -> {
+            if (resourceRefreshPending.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    resourceRefreshPending.set(false);
+                    resourceMonitorPanel.update(tools);
+                });
+            }
+        });
+        
+        // Only the latest completeness matters; older updates still queued are dropped
+        buscoService.setCompletenessListener(genomes -> {
+            if (pendingCompleteness.getAndSet(genomes) == null) {
+                Platform.runLater(() -> buscoDashboardPanel.update(pendingCompleteness.getAndSet(null)));
+            }
+        });
+        
+        // Services report through the event bus; log lines are appended in batches so that
+        // a burst of them costs the FX thread a single update
+        PipelineEventBus.getDefault().subscribe(PipelineEvent.LogLine.class, line -> {
+            pendingLogLines.add("[" + line.getLevel() + "] " + line.getMessage() + "\n");
+            if (logRefreshPending.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    logRefreshPending.set(false);
+                    StringBuilder lines = new StringBuilder();
+                    for (String pending = pendingLogLines.poll(); pending != null; pending = pendingLogLines.poll()) {
+                        lines.append(pending);
+                    }
+                    logTextArea.appendText(lines.toString());
+                });
+            }
+        });
+        
         // Check dependencies on startup
         checkDependencies();
+        
+        // Both rules delete results that are slow to recompute, so they have to be confirmed when switched on
+        String runsDirectory = System.getProperty("user.home") + "/BioPipelineRunner";
+        addRetentionListener(keepLastRunsSpinner, "Delete Old Runs",
+            runs -> "Delete runs beyond the newest " + runs + " of each project?",
+            "Older run directories under " + runsDirectory
+                + " are removed entirely, including their trees and result archives, after every run.");
+        addRetentionListener(intermediateMaxAgeSpinner, "Drop Intermediates",
+            days -> "Drop the intermediates of runs older than " + days + " days?",
+            "The BUSCO results, proteins, alignments and gene trees of older runs under " + runsDirectory
+                + " are deleted after every run. Re-running BUSCO or re-selecting genes at another occupancy"
+                + " threshold is then no longer possible for those runs; final trees and result archives are kept.");
+        
+        // Prune intermediates of old runs in the background so the disk doesn't fill up
+        retentionService.setPolicy(createRetentionPolicy());
+        retentionService.applyAsync();
     }
 
     @FXML
@@ -92,6 +270,7 @@ public class MainController {
         
         // Disable the run button while pipeline is running
         runPipelineButton.setDisable(true);
+        buscoDashboardPanel.update(Collections.emptyList());
         
         // Create working directory
         String projectName = projectNameField.getText();
@@ -107,6 +286,19 @@ public class MainController {
             return;
         }
         
+        retentionService.markActive(workingDir.toPath());
+        
+        // Keep a record of everything that happens during the run next to its results
+        EventLogWriter eventLog;
+        try {
+            eventLog = new EventLogWriter(workingDir.toPath().resolve("events.tsv"));
+            PipelineEventBus.getDefault().subscribe(eventLog);
+        } catch (IOException e) {
+            logError("Cannot write the event log: " + e.getMessage());
+            eventLog = null;
+        }
+        EventLogWriter runEventLog = eventLog;
+        
         // Final output directory path for later use
         String outputDirPath = workingDirPath + "/output";
         
@@ -114,28 +306,50 @@ public class MainController {
         Task<Void> task = new Task<Void>() {
             @Override
             protected Void call() throws Exception {
+                PipelineStageEvent runEvent = PipelineStageEvent.start("Pipeline", projectName);
+                PipelineStageEvent stageEvent = null;
                 try {
                     // Set status and progress
                     updateStatus("Starting pipeline...");
                     updateProgressBar(0.1);
                     
-                    // Run BUSCO analysis
+                    // Check the genomes before spending BUSCO time on them
+                    stageEvent = nextStage(stageEvent, "Pre-flight", projectName);
+                    updateStatus("Checking input genomes...");
+                    List<Path> genomes = preflightService.run(
+                        Paths.get(inputField.getText()),
+                        workingDir.toPath(),
+                        Runtime.getRuntime().availableProcessors()
+                    );
+                    for (GenomeStats stats : preflightService.getLastResults()) {
+                        if (!stats.isUsable()) {
+                            logError("Skipping " + stats.getFile().getFileName() + ": " + stats.getProblem());
+                        }
+                    }
+                    
+                    // Run BUSCO analysis, decompressing compressed genomes while BUSCO works on earlier ones
+                    stageEvent = nextStage(stageEvent, "BUSCO", projectName);
                     updateStatus("Running BUSCO analysis...");
-                    String inputDirPath = inputField.getText();
                     String buscoOutDir = workingDirPath + "/busco_output";
                     
                     BuscoConfig buscoConfig = new BuscoConfig(
                         null,  // Use system BUSCO
-                        inputDirPath,
+                        inputField.getText(),
                         buscoOutDir,
                         Runtime.getRuntime().availableProcessors(),
                         outgroupField.getText()
                     );
                     buscoConfig.setLineage(buscoLineageComboBox.getValue());
                     buscoConfig.setMode(buscoModeComboBox.getValue());
+                    buscoConfig.setResourceLimits(createResourceLimits());
                     
-                    try {
-                        buscoService.runBusco(buscoConfig);
+                    try (InputStagingService staging = new InputStagingService(
+                            buscoConfig.getScratchDirectory(),
+                            buscoConfig.getScratchLimitMegabytes() * 1024 * 1024,
+                            workingDir.toPath().resolve(InputStagingService.FALLBACK_DIRECTORY),
+                            Runtime.getRuntime().availableProcessors(),
+                            preflightService)) {
+                        buscoService.runBusco(buscoConfig, staging.stage(genomes));
                     } catch (IOException | InterruptedException e) {
                         logError("BUSCO analysis failed: " + e.getMessage());
                         throw e;
@@ -143,9 +357,11 @@ public class MainController {
                     updateProgressBar(0.4);
                     
                     // Run phylogenetic analysis
+                    stageEvent = nextStage(stageEvent, "Phylogeny", projectName);
                     updateStatus("Running phylogenetic analysis...");
                     new File(outputDirPath).mkdirs();
                     
+                    phylogenyService.setConfig(createPhylogenyConfig());
                     phylogenyService.runPhylogeneticAnalysis(
                         buscoOutDir,
                         outputDirPath,
@@ -155,23 +371,38 @@ public class MainController {
                     updateProgressBar(0.7);
                     
                     // Generate tree visualization
+                    stageEvent = nextStage(stageEvent, "Visualization", projectName);
                     updateStatus("Generating tree visualization...");
+                    lastTreeFile = phylogenyService.getResultTreeFile(outputDirPath);
                     visualizationService.generateTreeVisualization(
-                        outputDirPath + "/SUPERMATRIX.trimmed.aln.contree",
+                        lastTreeFile,
                         outputDirPath,
                         outgroupField.getText()
                     );
                     updateProgressBar(0.9);
                     
                     // Create results archive
+                    stageEvent = nextStage(stageEvent, "Archive", projectName);
                     updateStatus("Creating results archive...");
                     File resultsZip = new File(workingDirPath + "/" + projectName + "_results.zip");
-                    FileUtils.zipDirectory(new File(outputDirPath), resultsZip);
+                    // The same intermediates that retention drops from old runs
+                    List<String> excludeGlobs = archiveIntermediatesCheckBox.isSelected()
+                        ? Collections.emptyList()
+                        : createRetentionPolicy().getIntermediateGlobs("output");
+                    FileUtils.zipDirectory(new File(outputDirPath), resultsZip, excludeGlobs);
+                    PipelineEventBus.getDefault().publish(new PipelineEvent.ArtifactProduced(
+                        PipelineEvent.ArtifactProduced.ARCHIVE, resultsZip.toPath()));
                     updateProgressBar(1.0);
+                    stageEvent = nextStage(stageEvent, null, projectName);
+                    runEvent.end(true);
                     
                     updateStatus("Pipeline completed successfully!");
                     return null;
                 } catch (Exception e) {
+                    if (stageEvent != null) {
+                        stageEvent.end(false);
+                    }
+                    runEvent.end(false);
                     updateStatus("Pipeline failed: " + e.getMessage());
                     logError(e.getMessage());
                     e.printStackTrace();
@@ -182,18 +413,153 @@ public class MainController {
         
         // Handle task completion
         task.setOnSucceeded(event -> {
+            resourceMonitorService.stop();
+            if (runEventLog != null) {
+                // Closed on the event thread once the run's last events are written
+                runEventLog.closeAfterPending(PipelineEventBus.getDefault(), 10, TimeUnit.SECONDS);
+            }
+            retentionService.markFinished(workingDir.toPath());
+            retentionService.applyAsync();
             runPipelineButton.setDisable(false);
         });
         
         task.setOnFailed(event -> {
+            resourceMonitorService.stop();
+            if (runEventLog != null) {
+                // Closed on the event thread once the run's last events are written
+                runEventLog.closeAfterPending(PipelineEventBus.getDefault(), 10, TimeUnit.SECONDS);
+            }
+            retentionService.markFinished(workingDir.toPath());
             logError("Pipeline execution failed: " + task.getException().getMessage());
             runPipelineButton.setDisable(false);
         });
         
         // Start the task
+        resourceMonitorService.start();
         executorService.submit(task);
     }
     
+    /**
+     * Start or stop watching the input directory. While watching, each new genome is run
+     * through BUSCO as it arrives and the tree is rebuilt in batches in the project's watch
+     * directory.
+     */
+    @FXML
+    private void handleWatchFolder() {
+        if (watchFolderService.isRunning()) {
+            watchFolderButton.setDisable(true);
+            executorService.submit(() -> {
+                watchFolderService.stop();
+                Platform.runLater(() -> {
+                    watchFolderButton.setText("Watch Input Folder");
+                    watchFolderButton.setDisable(false);
+                    runPipelineButton.setDisable(false);
+                });
+            });
+            return;
+        }
+        if (!validateInputs()) {
+            showAlert("Invalid Input", "Please check all required fields.");
+            return;
+        }
+        if (runPipelineButton.isDisabled()) {
+            showAlert("Pipeline Running", "Wait for the running pipeline to finish before watching the input folder.");
+            return;
+        }
+        
+        // One directory per project for the whole watch, outside the per-run retention
+        String projectName = projectNameField.getText();
+        String outgroup = outgroupField.getText();
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path projectDir = Paths.get(System.getProperty("user.home"), "BioPipelineRunner", projectName + "_watch");
+        String buscoOutDir = projectDir.resolve("busco_output").toString();
+        BuscoConfig buscoConfig = new BuscoConfig(null, inputField.getText(), buscoOutDir, threads, outgroup);
+        buscoConfig.setLineage(buscoLineageComboBox.getValue());
+        buscoConfig.setMode(buscoModeComboBox.getValue());
+        buscoConfig.setResourceLimits(createResourceLimits());
+        WatchConfig watchConfig = new WatchConfig();
+        watchConfig.setRebuildAfterGenomes(watchBatchSpinner.getValue());
+        if (!nightlyRebuildCheckBox.isSelected()) {
+            watchConfig.setNightlyRebuildHour(-1);
+        }
+        PhylogenyConfig phylogenyConfig = createPhylogenyConfig();
+        
+        try {
+            watchFolderService.start(Paths.get(inputField.getText()), projectDir, buscoConfig, watchConfig, newGenomes -> {
+                String outputDirPath = projectDir.resolve(
+                    "tree_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date())).toString();
+                new File(outputDirPath).mkdirs();
+                phylogenyService.setConfig(phylogenyConfig);
+                phylogenyService.runPhylogeneticAnalysis(buscoOutDir, outputDirPath, threads, outgroup);
+                lastTreeFile = phylogenyService.getResultTreeFile(outputDirPath);
+                visualizationService.generateTreeVisualization(lastTreeFile, outputDirPath, outgroup);
+            });
+        } catch (IOException e) {
+            logError("Cannot watch " + inputField.getText() + ": " + e.getMessage());
+            return;
+        }
+        buscoDashboardPanel.update(Collections.emptyList());
+        watchFolderButton.setText("Stop Watching");
+        runPipelineButton.setDisable(true);
+    }
+    
+    private PhylogenyConfig createPhylogenyConfig() {
+        PhylogenyConfig phylogenyConfig = new PhylogenyConfig();
+        phylogenyConfig.setUseScratch(useScratchCheckBox.isSelected());
+        phylogenyConfig.setAnalysisMode(phylogenyModeComboBox.getValue());
+        phylogenyConfig.setPhylogenyTool(phylogenyToolComboBox.getValue());
+        phylogenyConfig.setFastTreePreview(fastTreePreviewCheckBox.isSelected());
+        phylogenyConfig.setNeighborJoiningPreview(njPreviewCheckBox.isSelected());
+        phylogenyConfig.setBootstrapMode(bootstrapComboBox.getValue());
+        phylogenyConfig.setBootstrapReplicates(bootstrapReplicatesSpinner.getValue());
+        phylogenyConfig.setJobBackend(jobBackendComboBox.getValue());
+        phylogenyConfig.setMinOccupancy(minOccupancySpinner.getValue() / 100.0);
+        phylogenyConfig.setExcludedTaxa(parseTaxa(excludedTaxaField.getText()));
+        phylogenyConfig.setResourceLimits(createResourceLimits());
+        return phylogenyConfig;
+    }
+    
+    /**
+     * @return Per-job limits from the Job Limits row, applied to every external tool
+     */
+    private ResourceLimits createResourceLimits() {
+        ResourceLimits limits = new ResourceLimits();
+        limits.setMemoryMaxBytes(jobMemorySpinner.getValue() * 1024L * 1024 * 1024);
+        limits.setNiceness(jobNicenessSpinner.getValue());
+        limits.setPinCpus(pinCpusCheckBox.isSelected());
+        return limits;
+    }
+    
+    /**
+     * @return Retention rules from the Old Runs row; whole runs are only deleted when asked for
+     */
+    /**
+     * Update the retention policy when a rule's spinner changes, asking first when the rule
+     * is switched on and resetting it to 0 if the user declines
+     */
+    private void addRetentionListener(Spinner<Integer> spinner, String title,
+                                      IntFunction<String> header, String content) {
+        spinner.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (oldValue == 0 && newValue > 0) {
+                Platform.runLater(() -> {
+                    if (!showConfirmationDialog(title, header.apply(newValue), content)) {
+                        spinner.getValueFactory().setValue(0);
+                    }
+                    retentionService.setPolicy(createRetentionPolicy());
+                });
+            } else {
+                retentionService.setPolicy(createRetentionPolicy());
+            }
+        });
+    }
+
+    private RetentionPolicy createRetentionPolicy() {
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setIntermediateMaxAgeDays(intermediateMaxAgeSpinner.getValue());
+        policy.setKeepLastRuns(keepLastRunsSpinner.getValue());
+        return policy;
+    }
+    
     @FXML
     private void handleSelectInputDirectory() {
         DirectoryChooser directoryChooser = new DirectoryChooser();
@@ -207,8 +573,149 @@ public class MainController {
     
     @FXML
     private void handleViewResults() {
-        // Implementation for viewing results
-        // This could open a new window with the ResultsController
+        File treeFile = lastTreeFile != null ? new File(lastTreeFile) : null;
+        if (treeFile == null || !treeFile.exists()) {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Open Tree File");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(
+                "Tree files", "*.contree", "*.treefile", "*.nwk", "*.newick", "*.tre", "*.nex"));
+            treeFile = fileChooser.showOpenDialog(mainContainer.getScene().getWindow());
+            if (treeFile == null) {
+                return;
+            }
+        }
+        showTreeWindow(treeFile, "Tree");
+    }
+    
+    /**
+     * Open an interactive tree view in its own window, rooted on the outgroup if it is set
+     */
+    private void showTreeWindow(File treeFile, String title) {
+        PhyloTree tree;
+        try {
+            tree = NewickParser.readTree(treeFile.toPath());
+        } catch (IOException e) {
+            showAlert("Cannot Open Tree", e.getMessage());
+            return;
+        }
+        String outgroup = outgroupField.getText();
+        if (outgroup != null && !outgroup.trim().isEmpty() && !tree.reroot(outgroup.trim().split("\\s*,\\s*"))) {
+            logError("Outgroup " + outgroup + " not found in " + treeFile.getName());
+        }
+        tree.ladderize(true);
+        
+        TreeCanvas treeCanvas = new TreeCanvas();
+        treeCanvas.setTree(tree);
+        
+        Button fitButton = new Button("Fit");
+        fitButton.setOnAction(event -> treeCanvas.fitToView());
+        CheckBox branchLengthsCheckBox = new CheckBox("Branch lengths");
+        branchLengthsCheckBox.setSelected(true);
+        branchLengthsCheckBox.setOnAction(event -> treeCanvas.setUseBranchLengths(branchLengthsCheckBox.isSelected()));
+        CheckBox supportCheckBox = new CheckBox("Support values");
+        supportCheckBox.setSelected(true);
+        supportCheckBox.setOnAction(event -> treeCanvas.setShowSupport(supportCheckBox.isSelected()));
+        Button exportButton = new Button("Export...");
+        exportButton.setOnAction(event -> exportTree(treeCanvas));
+        Label hintLabel = new Label("Scroll to zoom, drag to pan, double-click a node to root on it");
+        
+        HBox toolbar = new HBox(10, fitButton, branchLengthsCheckBox, supportCheckBox, exportButton, hintLabel);
+        toolbar.setAlignment(Pos.CENTER_LEFT);
+        toolbar.setPadding(new Insets(5));
+        BorderPane root = new BorderPane(treeCanvas);
+        root.setTop(toolbar);
+        
+        Stage stage = new Stage();
+        stage.setTitle(title + " - " + treeFile.getName());
+        stage.setScene(new Scene(root, 900, 700));
+        stage.show();
+    }
+    
+    /**
+     * Robinson-Foulds distances between all trees in the chosen files, e.g. results of
+     * different runs, tools or parameter sets
+     */
+    @FXML
+    private void handleCompareTrees() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Compare Trees");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(
+            "Tree files", "*.contree", "*.treefile", "*.nwk", "*.newick", "*.tre", "*.nex", "*.boottrees"));
+        List<File> files = fileChooser.showOpenMultipleDialog(mainContainer.getScene().getWindow());
+        if (files == null || files.isEmpty()) {
+            return;
+        }
+        
+        Task<String> task = new Task<String>() {
+            @Override
+            protected String call() throws Exception {
+                List<PhyloTree> trees = new ArrayList<>();
+                List<String> names = new ArrayList<>();
+                NewickParser parser = new NewickParser();
+                for (File file : files) {
+                    List<PhyloTree> fileTrees = parser.parseAll(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+                    for (int i = 0; i < fileTrees.size(); i++) {
+                        trees.add(fileTrees.get(i));
+                        names.add(fileTrees.size() > 1 ? file.getName() + "#" + (i + 1) : file.getName());
+                    }
+                }
+                int[][] distances = Bipartitions.robinsonFouldsMatrix(trees, Runtime.getRuntime().availableProcessors());
+                int maxDistance = 2 * Math.max(0, trees.isEmpty() ? 0 : trees.get(0).getLeafCount() - 3);
+                StringBuilder report = new StringBuilder();
+                report.append("Robinson-Foulds distances (maximum ").append(maxDistance).append(")\n\n");
+                for (int i = 0; i < trees.size(); i++) {
+                    report.append(String.format("%4d  %s%n", i + 1, names.get(i)));
+                }
+                report.append("\n    ");
+                for (int j = 0; j < trees.size(); j++) {
+                    report.append(String.format("%6d", j + 1));
+                }
+                report.append('\n');
+                for (int i = 0; i < trees.size(); i++) {
+                    report.append(String.format("%4d", i + 1));
+                    for (int j = 0; j < trees.size(); j++) {
+                        report.append(String.format("%6d", distances[i][j]));
+                    }
+                    report.append('\n');
+                }
+                return report.toString();
+            }
+        };
+        task.setOnSucceeded(event -> {
+            TextArea reportArea = new TextArea(task.getValue());
+            reportArea.setEditable(false);
+            reportArea.setStyle("-fx-font-family: monospace;");
+            Stage stage = new Stage();
+            stage.setTitle("Tree Comparison");
+            stage.setScene(new Scene(new BorderPane(reportArea), 800, 600));
+            stage.show();
+        });
+        task.setOnFailed(event -> showAlert("Cannot Compare Trees", task.getException().getMessage()));
+        executorService.submit(task);
+    }
+    
+    private void exportTree(TreeCanvas treeCanvas) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Tree");
+        fileChooser.getExtensionFilters().addAll(
+            new FileChooser.ExtensionFilter("PDF document", "*.pdf"),
+            new FileChooser.ExtensionFilter("SVG image", "*.svg"),
+            new FileChooser.ExtensionFilter("PNG image", "*.png")
+        );
+        File file = fileChooser.showSaveDialog(treeCanvas.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        String name = file.getName().toLowerCase();
+        if (!name.endsWith(".pdf") && !name.endsWith(".svg") && !name.endsWith(".png")) {
+            String extension = fileChooser.getSelectedExtensionFilter().getExtensions().get(0).substring(1);
+            file = new File(file.getPath() + extension);
+        }
+        try {
+            treeCanvas.export(file.toPath());
+        } catch (IOException e) {
+            showAlert("Export Failed", e.getMessage());
+        }
     }
     
     /**
@@ -463,6 +970,21 @@ public class MainController {
         return result.isPresent() && result.get() == ButtonType.OK;
     }
     
+    /**
+     * Close the current stage event (if any) as successful and open the next one
+     * 
+     * @param current Stage event in progress, may be null
+     * @param stage Name of the next stage, or null if no stage follows
+     * @param projectName Project the stage belongs to
+     * @return The started stage event, or null if no stage follows
+     */
+    private PipelineStageEvent nextStage(PipelineStageEvent current, String stage, String projectName) {
+        if (current != null) {
+            current.end(true);
+        }
+        return stage != null ? PipelineStageEvent.start(stage, projectName) : null;
+    }
+    
     private void updateProgressBar(double progress) {
         Platform.runLater(() -> progressBar.setProgress(progress));
     }
@@ -496,6 +1018,18 @@ public class MainController {
         return inputDir.exists() && inputDir.isDirectory();
     }
     
+    private static List<String> parseTaxa(String text) {
+        List<String> taxa = new ArrayList<>();
+        if (text != null) {
+            for (String taxon : text.split(",")) {
+                if (!taxon.trim().isEmpty()) {
+                    taxa.add(taxon.trim());
+                }
+            }
+        }
+        return taxa;
+    }
+    
     private void showAlert(String title, String content) {
         Alert alert = new Alert(Alert.AlertType.WARNING);
         alert.setTitle(title);
@@ -10,6 +10,7 @@ import org.biopipelinerunner.services.BuscoService;
 import org.biopipelinerunner.services.AlignmentService;
 import org.biopipelinerunner.services.PhylogenyService;
 import org.biopipelinerunner.utils.DependencyManager;
+import org.biopipelinerunner.utils.PipelineStageEvent;
 
 import java.io.File;
 import java.io.IOException;
@@ -60,14 +61,20 @@ public class PipelineController {
                 "" // No outgroup specified
             );
             
+            PipelineStageEvent stageEvent = null;
             try {
+                stageEvent = PipelineStageEvent.start("BUSCO", null);
                 buscoService.runBusco(buscoConfig);
+                stageEvent.end(true);
                 
                 // Create appropriate config objects for alignment and phylogeny
+                stageEvent = PipelineStageEvent.start("Alignment", null);
                 AlignmentConfig alignmentConfig = new AlignmentConfig();
                 alignmentConfig.setInputPath(alignmentInput);
                 alignmentService.runAlignment(alignmentConfig);
+                stageEvent.end(true);
                 
+                stageEvent = PipelineStageEvent.start("Phylogeny", null);
                 PhylogenyConfig phylogenyConfig = new PhylogenyConfig();
                 phylogenyConfig.setInputPath(phylogenyInput);
                 phylogenyService.runPhylogeneticAnalysis(
@@ -76,7 +83,12 @@ public class PipelineController {
                     Runtime.getRuntime().availableProcessors(),
                     "" // No outgroup specified
                 );
+                stageEvent.end(true);
+                stageEvent = null;
             } catch (IOException | InterruptedException e) {
+                if (stageEvent != null) {
+                    stageEvent.end(false);
+                }
                 // Handle the exceptions - could show dialog, log error, etc.
                 System.err.println("Error executing pipeline: " + e.getMessage());
                 e.printStackTrace();
@@ -0,0 +1,125 @@
+package org.biopipelinerunner.controllers;
+
+import javafx.geometry.Insets;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import org.biopipelinerunner.models.ToolUsage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows live CPU, memory and I/O sparklines for each running tool.
+ * Must only be updated from the JavaFX application thread.
+ */
+public class ResourceMonitorPanel extends VBox {
+    private static final double SPARKLINE_WIDTH = 70;
+    private static final double SPARKLINE_HEIGHT = 20;
+
+    private final Map<String, ToolRow> rows = new HashMap<>();
+    private final double[] history = new double[ToolUsage.HISTORY_SIZE];
+    private final Label emptyLabel = new Label("No tools running");
+
+    public ResourceMonitorPanel() {
+        setSpacing(6);
+        setPadding(new Insets(5));
+        getStyleClass().add("resource-monitor");
+        getChildren().add(emptyLabel);
+    }
+
+    /**
+     * Redraw the panel from the latest samples
+     *
+     * @param tools Tools currently tracked by the resource monitor
+     */
+    public void update(List<ToolUsage> tools) {
+        Iterator<Map.Entry<String, ToolRow>> iterator = rows.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ToolRow> entry = iterator.next();
+            if (!tools.contains(entry.getValue().usage)) {
+                getChildren().remove(entry.getValue());
+                iterator.remove();
+            }
+        }
+        for (ToolUsage usage : tools) {
+            ToolRow row = rows.get(usage.getToolName());
+            if (row == null) {
+                row = new ToolRow(usage);
+                rows.put(usage.getToolName(), row);
+                getChildren().add(row);
+            }
+            row.refresh();
+        }
+        emptyLabel.setVisible(rows.isEmpty());
+        emptyLabel.setManaged(rows.isEmpty());
+    }
+
+    private void drawSparkline(Canvas canvas, int samples, Color color, double minimumScale) {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.clearRect(0, 0, width, height);
+        gc.setStroke(Color.LIGHTGRAY);
+        gc.strokeRect(0.5, 0.5, width - 1, height - 1);
+        if (samples < 2) {
+            return;
+        }
+        double max = minimumScale;
+        for (int i = 0; i < samples; i++) {
+            max = Math.max(max, history[i]);
+        }
+        double step = width / (ToolUsage.HISTORY_SIZE - 1);
+        double offset = width - (samples - 1) * step;
+        gc.setStroke(color);
+        gc.setLineWidth(1.2);
+        gc.beginPath();
+        for (int i = 0; i < samples; i++) {
+            double x = offset + i * step;
+            double y = height - 1 - (history[i] / max) * (height - 2);
+            if (i == 0) {
+                gc.moveTo(x, y);
+            } else {
+                gc.lineTo(x, y);
+            }
+        }
+        gc.stroke();
+    }
+
+    private static String formatMegabytes(double megabytes) {
+        return megabytes >= 1024 ? String.format("%.1f GB", megabytes / 1024) : String.format("%.0f MB", megabytes);
+    }
+
+    private final class ToolRow extends VBox {
+        private final ToolUsage usage;
+        private final Label label = new Label();
+        private final Canvas cpuCanvas = new Canvas(SPARKLINE_WIDTH, SPARKLINE_HEIGHT);
+        private final Canvas rssCanvas = new Canvas(SPARKLINE_WIDTH, SPARKLINE_HEIGHT);
+        private final Canvas ioCanvas = new Canvas(SPARKLINE_WIDTH, SPARKLINE_HEIGHT);
+
+        private ToolRow(ToolUsage usage) {
+            this.usage = usage;
+            setSpacing(2);
+            HBox sparklines = new HBox(4, cpuCanvas, rssCanvas, ioCanvas);
+            getChildren().addAll(label, sparklines);
+        }
+
+        private void refresh() {
+            int processes = usage.getProcessCount();
+            label.setText(String.format("%s%s  CPU %.0f%%  RSS %s  I/O %.1f MB/s",
+                    usage.getToolName(),
+                    processes > 1 ? " (x" + processes + ")" : "",
+                    usage.getLatestCpuPercent(),
+                    formatMegabytes(usage.getLatestRssMegabytes()),
+                    usage.getLatestIoMegabytesPerSecond()));
+            drawSparkline(cpuCanvas, usage.copyCpuHistory(history), Color.STEELBLUE, 100);
+            drawSparkline(rssCanvas, usage.copyRssHistory(history), Color.SEAGREEN, 64);
+            drawSparkline(ioCanvas, usage.copyIoHistory(history), Color.DARKORANGE, 1);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.biopipelinerunner.controllers;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import org.biopipelinerunner.models.PhyloTree;
+import org.biopipelinerunner.utils.TreeExporter;
+import org.biopipelinerunner.utils.TreeLayout;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Interactive rectangular tree view drawn on a {@link Canvas}. Scroll to zoom around the
+ * cursor, drag to pan and double-click a node to root the tree on the branch above it.
+ * Redraws are coalesced to one per animation pulse, and only the visible part of the tree
+ * is drawn: subtrees outside the viewport are skipped as a whole using the layout's leaf
+ * ranges, and clades thinner than a few pixels are drawn as a single wedge.
+ * Must only be used from the JavaFX application thread.
+ */
+public class TreeCanvas extends Pane {
+    private static final double MARGIN = 20;
+    private static final double LABEL_SPACE = 160;
+    private static final double COLLAPSE_HEIGHT = 6;
+    private static final double MIN_LABEL_ROW = 9;
+    private static final double HIT_RADIUS = 6;
+    private static final double ZOOM_SPEED = 1.0015;
+
+    private final Canvas canvas = new Canvas();
+    private final double[] wedgeX = new double[3];
+    private final double[] wedgeY = new double[3];
+    private final AnimationTimer redrawTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (dirty) {
+                dirty = false;
+                draw();
+            }
+        }
+    };
+
+    private PhyloTree tree;
+    private TreeLayout layout;
+    private boolean useBranchLengths = true;
+    private boolean showSupport = true;
+    private boolean dirty;
+    private double rowHeight;
+    private double scaleX;
+    private double offsetX;
+    private double offsetY;
+    private double dragX;
+    private double dragY;
+
+    public TreeCanvas() {
+        getStyleClass().add("tree-canvas");
+        getChildren().add(canvas);
+        canvas.widthProperty().bind(widthProperty());
+        canvas.heightProperty().bind(heightProperty());
+        canvas.widthProperty().addListener((observable, oldValue, newValue) -> requestRedraw());
+        canvas.heightProperty().addListener((observable, oldValue, newValue) -> {
+            if (oldValue.doubleValue() == 0) {
+                fitToView();
+            }
+            requestRedraw();
+        });
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (newScene != null) {
+                redrawTimer.start();
+            } else {
+                redrawTimer.stop();
+            }
+        });
+        setOnScroll(this::handleScroll);
+        setOnMousePressed(this::handleMousePressed);
+        setOnMouseDragged(this::handleMouseDragged);
+        setOnMouseClicked(this::handleMouseClicked);
+    }
+
+    public PhyloTree getTree() {
+        return tree;
+    }
+
+    public void setTree(PhyloTree tree) {
+        this.tree = tree;
+        relayout();
+        fitToView();
+    }
+
+    public void setUseBranchLengths(boolean useBranchLengths) {
+        this.useBranchLengths = useBranchLengths;
+        relayout();
+        fitToView();
+    }
+
+    public void setShowSupport(boolean showSupport) {
+        this.showSupport = showSupport;
+        requestRedraw();
+    }
+
+    /**
+     * Root the tree on the branch above the given node and redraw it
+     */
+    public void reroot(int node) {
+        if (tree == null || tree.getParent(node) == PhyloTree.NONE) {
+            return;
+        }
+        tree.reroot(node);
+        tree.ladderize(true);
+        relayout();
+        fitToView();
+    }
+
+    /**
+     * Write the whole tree (not just the visible part) as PNG, SVG or PDF, chosen by extension
+     */
+    public void export(Path file) throws IOException {
+        if (layout == null) {
+            throw new IOException("No tree to export");
+        }
+        TreeExporter.export(layout, file, showSupport);
+    }
+
+    /**
+     * Reset zoom and pan so the whole tree fits the view
+     */
+    public void fitToView() {
+        if (layout == null || canvas.getHeight() <= 0) {
+            return;
+        }
+        rowHeight = Math.max(0.01, (canvas.getHeight() - 2 * MARGIN) / Math.max(1, layout.getLeafCount()));
+        double labelSpace = rowHeight >= MIN_LABEL_ROW ? LABEL_SPACE : 0;
+        scaleX = Math.max(1, canvas.getWidth() - 2 * MARGIN - labelSpace) / Math.max(layout.getWidth(), 1e-9);
+        offsetX = MARGIN;
+        offsetY = MARGIN;
+        requestRedraw();
+    }
+
+    private void relayout() {
+        layout = tree != null ? new TreeLayout(tree, useBranchLengths) : null;
+        requestRedraw();
+    }
+
+    private void requestRedraw() {
+        dirty = true;
+    }
+
+    private double screenX(int node) {
+        return offsetX + layout.getX(node) * scaleX;
+    }
+
+    private double screenY(double slot) {
+        return offsetY + (slot + 0.5) * rowHeight;
+    }
+
+    private void draw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.setFill(Color.WHITE);
+        gc.fillRect(0, 0, width, height);
+        if (layout == null) {
+            return;
+        }
+        double firstVisibleSlot = -offsetY / rowHeight - 1;
+        double lastVisibleSlot = (height - offsetY) / rowHeight;
+        boolean drawLabels = rowHeight >= MIN_LABEL_ROW;
+        double fontSize = Math.min(12, rowHeight * 0.8);
+        Font labelFont = Font.font(fontSize);
+        Font supportFont = Font.font(fontSize * 0.75);
+
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(1);
+        gc.beginPath();
+        layout.visit(firstVisibleSlot, lastVisibleSlot, COLLAPSE_HEIGHT / rowHeight, new TreeLayout.Visitor() {
+            @Override
+            public void node(int node) {
+                double x = screenX(node);
+                double y = screenY(layout.getY(node));
+                int parent = tree.getParent(node);
+                if (parent != PhyloTree.NONE) {
+                    gc.moveTo(screenX(parent), y);
+                    gc.lineTo(x, y);
+                }
+                if (tree.isLeaf(node)) {
+                    if (drawLabels && tree.getLabel(node) != null) {
+                        gc.setFill(Color.BLACK);
+                        gc.setFont(labelFont);
+                        gc.fillText(tree.getLabel(node), x + 4, y + fontSize / 3);
+                    }
+                    return;
+                }
+                int first = tree.getFirstChild(node);
+                int last = first;
+                for (int child = first; child != PhyloTree.NONE; child = tree.getNextSibling(child)) {
+                    last = child;
+                }
+                gc.moveTo(x, screenY(layout.getY(first)));
+                gc.lineTo(x, screenY(layout.getY(last)));
+                if (showSupport && drawLabels && parent != PhyloTree.NONE && !Double.isNaN(tree.getSupport(node))) {
+                    gc.setFill(Color.DARKRED);
+                    gc.setFont(supportFont);
+                    gc.fillText(formatSupport(tree.getSupport(node)), x - fontSize * 2, y - 2);
+                }
+            }
+
+            @Override
+            public void collapsed(int node) {
+                // Too dense to tell apart: draw the clade as a wedge out to its deepest leaf
+                double x = screenX(node);
+                double y = screenY(layout.getY(node));
+                int parent = tree.getParent(node);
+                if (parent != PhyloTree.NONE) {
+                    gc.moveTo(screenX(parent), y);
+                    gc.lineTo(x, y);
+                }
+                double tipX = offsetX + layout.getSubtreeMaxX(node) * scaleX;
+                wedgeX[0] = x;
+                wedgeY[0] = y;
+                wedgeX[1] = tipX;
+                wedgeY[1] = screenY(layout.getFirstLeaf(node));
+                wedgeX[2] = tipX;
+                wedgeY[2] = screenY(layout.getLastLeaf(node));
+                gc.setFill(Color.GRAY);
+                gc.fillPolygon(wedgeX, wedgeY, 3);
+            }
+        });
+        gc.stroke();
+    }
+
+    private static String formatSupport(double support) {
+        return support == Math.rint(support) ? Long.toString((long) support) : String.format("%.1f", support);
+    }
+
+    /**
+     * @return The node drawn closest to the point, or {@link PhyloTree#NONE} if none is close
+     */
+    private int pick(double x, double y) {
+        if (layout == null) {
+            return PhyloTree.NONE;
+        }
+        int closest = PhyloTree.NONE;
+        double closestDistance = HIT_RADIUS * HIT_RADIUS;
+        for (int node = 0; node < tree.getNodeCount(); node++) {
+            double dx = screenX(node) - x;
+            double dy = screenY(layout.getY(node)) - y;
+            double distance = dx * dx + dy * dy;
+            if (distance <= closestDistance) {
+                closest = node;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    private void handleScroll(ScrollEvent event) {
+        if (layout == null || event.getDeltaY() == 0) {
+            return;
+        }
+        double factor = Math.pow(ZOOM_SPEED, event.getDeltaY());
+        // Keep the point under the cursor fixed
+        rowHeight *= factor;
+        offsetY = event.getY() - (event.getY() - offsetY) * factor;
+        if (!event.isShiftDown()) {
+            scaleX *= factor;
+            offsetX = event.getX() - (event.getX() - offsetX) * factor;
+        }
+        requestRedraw();
+        event.consume();
+    }
+
+    private void handleMousePressed(MouseEvent event) {
+        dragX = event.getX();
+        dragY = event.getY();
+    }
+
+    private void handleMouseDragged(MouseEvent event) {
+        offsetX += event.getX() - dragX;
+        offsetY += event.getY() - dragY;
+        dragX = event.getX();
+        dragY = event.getY();
+        requestRedraw();
+    }
+
+    private void handleMouseClicked(MouseEvent event) {
+        if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2 && event.isStillSincePress()) {
+            int node = pick(event.getX(), event.getY());
+            if (node != PhyloTree.NONE) {
+                reroot(node);
+            }
+        } else if (event.getButton() == MouseButton.SECONDARY) {
+            fitToView();
+        }
+    }
+}
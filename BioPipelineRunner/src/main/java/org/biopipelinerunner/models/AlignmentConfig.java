@@ -5,6 +5,7 @@ public class AlignmentConfig {
     private String outputPath;
     private int threads;
     private String alignmentTool; // e.g., "mafft", "muscle"
+    private ResourceLimits resourceLimits = new ResourceLimits();
     
     public AlignmentConfig() {
         this.threads = Runtime.getRuntime().availableProcessors();
@@ -49,4 +50,12 @@ public class AlignmentConfig {
     public void setAlignmentTool(String alignmentTool) {
         this.alignmentTool = alignmentTool;
     }
+    
+    public ResourceLimits getResourceLimits() {
+        return resourceLimits;
+    }
+    
+    public void setResourceLimits(ResourceLimits resourceLimits) {
+        this.resourceLimits = resourceLimits;
+    }
 }
@@ -8,6 +8,10 @@ public class BuscoConfig {
     private String outgroup;
     private String lineage;
     private String mode;
+    private ResourceLimits resourceLimits = new ResourceLimits();
+    private boolean datasetCache = true;
+    private String scratchDirectory; // null picks /dev/shm or the temp directory
+    private long scratchLimitMegabytes = 4096;
 
     public BuscoConfig(String buscoPath, String inputDirectory, String outputDirectory, int threads, String outgroup) {
         this.buscoPath = buscoPath;
@@ -75,4 +79,43 @@ public class BuscoConfig {
     public void setMode(String mode) {
         this.mode = mode;
     }
-}
\ No newline at end of file
+    
+    public ResourceLimits getResourceLimits() {
+        return resourceLimits;
+    }
+    
+    public void setResourceLimits(ResourceLimits resourceLimits) {
+        this.resourceLimits = resourceLimits;
+    }
+    
+    /**
+     * @return true to run BUSCO offline on lineage datasets from the shared local cache
+     */
+    public boolean isDatasetCache() {
+        return datasetCache;
+    }
+    
+    public void setDatasetCache(boolean datasetCache) {
+        this.datasetCache = datasetCache;
+    }
+    
+    public String getScratchDirectory() {
+        return scratchDirectory;
+    }
+    
+    public void setScratchDirectory(String scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+    }
+    
+    /**
+     * @return Space on scratch for decompressed genomes; genomes that don't fit are
+     *         decompressed into the run directory instead
+     */
+    public long getScratchLimitMegabytes() {
+        return scratchLimitMegabytes;
+    }
+    
+    public void setScratchLimitMegabytes(long scratchLimitMegabytes) {
+        this.scratchLimitMegabytes = scratchLimitMegabytes;
+    }
+}
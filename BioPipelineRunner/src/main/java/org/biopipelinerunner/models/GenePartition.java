@@ -0,0 +1,45 @@
+package org.biopipelinerunner.models;
+
+/**
+ * A gene's range of consecutive sites in a supermatrix
+ */
+public class GenePartition {
+    private final String name;
+    private final int start;
+    private final int end;
+
+    /**
+     * @param name Gene name, e.g. the BUSCO id
+     * @param start First site (0-based)
+     * @param end End site (exclusive)
+     */
+    public GenePartition(String name, int start, int end) {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid range for " + name + ": " + start + "-" + end);
+        }
+        this.name = name;
+        this.start = start;
+        this.end = end;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public int getLength() {
+        return end - start;
+    }
+
+    @Override
+    public String toString() {
+        return name + " = " + (start + 1) + "-" + end;
+    }
+}
@@ -0,0 +1,88 @@
+package org.biopipelinerunner.models;
+
+/**
+ * BUSCO completeness of one genome: how many of the lineage's BUSCOs were found single copy,
+ * duplicated, fragmented or not at all
+ */
+public class GenomeCompleteness {
+    private final String genome;
+    private final int single;
+    private final int duplicated;
+    private final int fragmented;
+    private final int missing;
+    private final int soleMissing;
+
+    /**
+     * @param genome Genome name
+     * @param single Complete single-copy BUSCOs
+     * @param duplicated Complete duplicated BUSCOs
+     * @param fragmented Fragmented BUSCOs
+     * @param missing Missing BUSCOs
+     * @param soleMissing BUSCOs single copy in every other genome but not in this one, or -1
+     *                    if unknown because only the summary of the genome was read
+     */
+    public GenomeCompleteness(String genome, int single, int duplicated, int fragmented, int missing, int soleMissing) {
+        this.genome = genome;
+        this.single = single;
+        this.duplicated = duplicated;
+        this.fragmented = fragmented;
+        this.missing = missing;
+        this.soleMissing = soleMissing;
+    }
+
+    public String getGenome() {
+        return genome;
+    }
+
+    public int getSingle() {
+        return single;
+    }
+
+    public int getDuplicated() {
+        return duplicated;
+    }
+
+    public int getFragmented() {
+        return fragmented;
+    }
+
+    public int getMissing() {
+        return missing;
+    }
+
+    /**
+     * @return BUSCOs this genome alone keeps out of a fully occupied supermatrix, or -1 if unknown
+     */
+    public int getSoleMissing() {
+        return soleMissing;
+    }
+
+    public int getTotal() {
+        return single + duplicated + fragmented + missing;
+    }
+
+    /**
+     * @return Complete (single-copy and duplicated) BUSCOs in percent of the total
+     */
+    public double getCompletePercent() {
+        return percent(single + duplicated);
+    }
+
+    public double getDuplicatedPercent() {
+        return percent(duplicated);
+    }
+
+    private double percent(int count) {
+        int total = getTotal();
+        return total > 0 ? 100.0 * count / total : 0;
+    }
+
+    /**
+     * @return The BUSCO notation, e.g. "C:98.4%[S:97.6%,D:0.8%],F:0.8%,M:0.8%,n:255"
+     */
+    @Override
+    public String toString() {
+        return String.format("C:%.1f%%[S:%.1f%%,D:%.1f%%],F:%.1f%%,M:%.1f%%,n:%d", getCompletePercent(),
+                percent(single), getDuplicatedPercent(), percent(fragmented), percent(missing), getTotal());
+    }
+}
@@ -0,0 +1,103 @@
+package org.biopipelinerunner.models;
+
+import java.nio.file.Path;
+
+/**
+ * Pre-flight statistics of one genome file, and the reason it can't be used, if any
+ */
+public class GenomeStats {
+    private final Path file;
+    private final long size;
+    private final int sequenceCount;
+    private final long totalLength;
+    private final long n50;
+    private final long gcCount;
+    private final long atCount;
+    private final long nCount;
+    private final String hash;
+    private final String problem;
+
+    /**
+     * @param file Genome file
+     * @param size File size in bytes
+     * @param sequenceCount Number of sequences
+     * @param totalLength Residues in all sequences
+     * @param n50 Length of the shortest sequence among the longest ones that hold half the residues
+     * @param gcCount G and C residues
+     * @param atCount A, T and U residues
+     * @param nCount N residues
+     * @param hash Hex content hash
+     * @param problem Why the file must be skipped, or null if it is usable
+     */
+    public GenomeStats(Path file, long size, int sequenceCount, long totalLength, long n50, long gcCount,
+                       long atCount, long nCount, String hash, String problem) {
+        this.file = file;
+        this.size = size;
+        this.sequenceCount = sequenceCount;
+        this.totalLength = totalLength;
+        this.n50 = n50;
+        this.gcCount = gcCount;
+        this.atCount = atCount;
+        this.nCount = nCount;
+        this.hash = hash;
+        this.problem = problem;
+    }
+
+    /**
+     * @return A copy of these statistics with the given problem
+     */
+    public GenomeStats withProblem(String problem) {
+        return new GenomeStats(file, size, sequenceCount, totalLength, n50, gcCount, atCount, nCount, hash, problem);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getSequenceCount() {
+        return sequenceCount;
+    }
+
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    public long getN50() {
+        return n50;
+    }
+
+    /**
+     * @return G+C in percent of the unambiguous residues
+     */
+    public double getGcPercent() {
+        long unambiguous = gcCount + atCount;
+        return unambiguous > 0 ? 100.0 * gcCount / unambiguous : 0;
+    }
+
+    /**
+     * @return N residues in percent of all residues
+     */
+    public double getNPercent() {
+        return totalLength > 0 ? 100.0 * nCount / totalLength : 0;
+    }
+
+    public long getNCount() {
+        return nCount;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getProblem() {
+        return problem;
+    }
+
+    public boolean isUsable() {
+        return problem == null;
+    }
+}
@@ -0,0 +1,79 @@
+package org.biopipelinerunner.models;
+
+/**
+ * A BUSCO dataset as listed in the dataset server's file_versions.tsv, e.g. the lineage
+ * bacteria_odb10 released 2024-01-08
+ */
+public class LineageDataset {
+    public static final String TYPE_LINEAGE = "lineages";
+
+    private final String name;
+    private final String version;
+    private final String md5;
+    private final String type;
+
+    /**
+     * @param name Dataset name, e.g. "bacteria_odb10"
+     * @param version Release date, as used in the archive name
+     * @param md5 Hex MD5 checksum of the archive
+     * @param type Server directory of the dataset, e.g. {@link #TYPE_LINEAGE}
+     */
+    public LineageDataset(String name, String version, String md5, String type) {
+        this.name = name;
+        this.version = version;
+        this.md5 = md5;
+        this.type = type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The lineage without its OrthoDB release, e.g. "bacteria" for "bacteria_odb10"
+     */
+    public String getBaseName() {
+        int suffix = name.lastIndexOf("_odb");
+        return suffix > 0 ? name.substring(0, suffix) : name;
+    }
+
+    /**
+     * @return The OrthoDB release, e.g. 10 for "bacteria_odb10", or 0 if the name has none
+     */
+    public int getOrthoDbRelease() {
+        int suffix = name.lastIndexOf("_odb");
+        try {
+            return suffix > 0 ? Integer.parseInt(name.substring(suffix + 4)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isLineage() {
+        return TYPE_LINEAGE.equals(type);
+    }
+
+    /**
+     * @return Path of the archive relative to the server's data directory
+     */
+    public String getArchivePath() {
+        return type + "/" + name + "." + version + ".tar.gz";
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + version + ")";
+    }
+}
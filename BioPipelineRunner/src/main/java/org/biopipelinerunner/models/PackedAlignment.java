@@ -0,0 +1,74 @@
+package org.biopipelinerunner.models;
+
+import java.util.List;
+
+/**
+ * A multiple sequence alignment with residues packed as one byte per site: 0-19 for the
+ * amino acids, 0-3 for nucleotides, and {@link #UNKNOWN} for gaps and ambiguity codes.
+ * Each taxon's row is a separate array, so distances between two taxa stream through two
+ * contiguous arrays.
+ */
+public class PackedAlignment {
+    public static final byte UNKNOWN = -1;
+    public static final String AMINO_ACIDS = "ARNDCQEGHILKMFPSTWYV";
+    public static final String NUCLEOTIDES = "ACGT";
+
+    private final List<String> taxa;
+    private final byte[][] rows;
+    private final int length;
+    private final boolean nucleotide;
+
+    /**
+     * @param taxa Taxon names, one per row
+     * @param rows Packed rows, all of the same length; used directly, not copied
+     * @param nucleotide true if the rows are coded with {@link #NUCLEOTIDES}
+     */
+    public PackedAlignment(List<String> taxa, byte[][] rows, boolean nucleotide) {
+        if (taxa.size() != rows.length) {
+            throw new IllegalArgumentException(taxa.size() + " taxa but " + rows.length + " rows");
+        }
+        this.taxa = taxa;
+        this.rows = rows;
+        this.length = rows.length > 0 ? rows[0].length : 0;
+        this.nucleotide = nucleotide;
+        for (byte[] row : rows) {
+            if (row.length != length) {
+                throw new IllegalArgumentException("Rows differ in length: " + row.length + " and " + length);
+            }
+        }
+    }
+
+    public int getTaxonCount() {
+        return rows.length;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public String getTaxon(int taxon) {
+        return taxa.get(taxon);
+    }
+
+    public List<String> getTaxa() {
+        return taxa;
+    }
+
+    /**
+     * @return The packed row of a taxon; must not be modified
+     */
+    public byte[] getRow(int taxon) {
+        return rows[taxon];
+    }
+
+    public boolean isNucleotide() {
+        return nucleotide;
+    }
+
+    /**
+     * @return Number of distinct residue states (20 or 4)
+     */
+    public int getStateCount() {
+        return nucleotide ? NUCLEOTIDES.length() : AMINO_ACIDS.length();
+    }
+}
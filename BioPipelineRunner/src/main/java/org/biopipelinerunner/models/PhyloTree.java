@@ -0,0 +1,540 @@
+package org.biopipelinerunner.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A rooted phylogenetic tree stored as parallel primitive arrays indexed by node id, so even
+ * trees with tens of thousands of taxa take a handful of allocations. Children form a linked
+ * list through {@code firstChild}/{@code nextSibling}. Branch length and support belong to
+ * the edge above a node and are NaN when absent.
+ *
+ * <p>Traversal order, depths and subtree sizes are computed lazily and invalidated by
+ * {@link #reroot(int)} and {@link #ladderize(boolean)}. The class is not thread-safe.</p>
+ */
+public class PhyloTree {
+    public static final int NONE = -1;
+
+    private int nodeCount;
+    private int root;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private double[] branchLength;
+    private double[] support;
+    private String[] labels;
+
+    // Derived data, rebuilt on demand
+    private int[] preorder;
+    private int[] preorderPosition;
+    private int[] subtreeSize;
+    private int[] depth;
+    private int leafCount;
+    private Map<String, Integer> leafByLabel;
+
+    /**
+     * Wrap arrays produced by a parser; the arrays are used directly, not copied
+     */
+    public PhyloTree(int nodeCount, int root, int[] parent, int[] firstChild, int[] nextSibling,
+                     double[] branchLength, double[] support, String[] labels) {
+        this.nodeCount = nodeCount;
+        this.root = root;
+        this.parent = parent;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.branchLength = branchLength;
+        this.support = support;
+        this.labels = labels;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public double getBranchLength(int node) {
+        return branchLength[node];
+    }
+
+    public double getSupport(int node) {
+        return support[node];
+    }
+
+    /**
+     * Set the support of the edge above a node, NaN for none
+     */
+    public void setSupport(int node, double value) {
+        support[node] = value;
+    }
+
+    public String getLabel(int node) {
+        return labels[node];
+    }
+
+    public boolean isLeaf(int node) {
+        return firstChild[node] == NONE;
+    }
+
+    public int getChildCount(int node) {
+        int count = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    public int getLeafCount() {
+        ensureIndex();
+        return leafCount;
+    }
+
+    /**
+     * @return Node ids in preorder (parents before children); do not modify
+     */
+    public int[] getPreorder() {
+        ensureIndex();
+        return preorder;
+    }
+
+    /**
+     * @return Position of the node in {@link #getPreorder()}
+     */
+    public int getPreorderPosition(int node) {
+        ensureIndex();
+        return preorderPosition[node];
+    }
+
+    /**
+     * @return Number of nodes in the subtree rooted at the node, including itself; the subtree
+     *         occupies the preorder range starting at {@link #getPreorderPosition(int)}
+     */
+    public int getSubtreeSize(int node) {
+        ensureIndex();
+        return subtreeSize[node];
+    }
+
+    /**
+     * @return Number of edges between the root and the node
+     */
+    public int getDepth(int node) {
+        ensureIndex();
+        return depth[node];
+    }
+
+    /**
+     * @return true if {@code ancestor} is {@code node} or lies on its path to the root
+     */
+    public boolean isAncestor(int ancestor, int node) {
+        ensureIndex();
+        int offset = preorderPosition[node] - preorderPosition[ancestor];
+        return offset >= 0 && offset < subtreeSize[ancestor];
+    }
+
+    /**
+     * @return Leaf node ids below the node, in preorder
+     */
+    public int[] getLeaves(int node) {
+        ensureIndex();
+        int start = preorderPosition[node];
+        int end = start + subtreeSize[node];
+        int[] leaves = new int[countLeaves(start, end)];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (firstChild[preorder[i]] == NONE) {
+                leaves[count++] = preorder[i];
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * @return Number of leaves below the node
+     */
+    public int getLeafCount(int node) {
+        ensureIndex();
+        int start = preorderPosition[node];
+        return countLeaves(start, start + subtreeSize[node]);
+    }
+
+    private int countLeaves(int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (firstChild[preorder[i]] == NONE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The leaf with the given label, or {@link #NONE}
+     */
+    public int findLeaf(String label) {
+        ensureIndex();
+        if (leafByLabel == null) {
+            leafByLabel = new HashMap<>(leafCount * 2);
+            for (int node = 0; node < nodeCount; node++) {
+                if (firstChild[node] == NONE && labels[node] != null) {
+                    leafByLabel.put(labels[node], node);
+                }
+            }
+        }
+        Integer node = leafByLabel.get(label);
+        return node != null ? node : NONE;
+    }
+
+    /**
+     * @return Most recent common ancestor of the given nodes
+     */
+    public int getCommonAncestor(int... nodes) {
+        ensureIndex();
+        int ancestor = nodes[0];
+        for (int i = 1; i < nodes.length; i++) {
+            int other = nodes[i];
+            while (depth[other] > depth[ancestor]) {
+                other = parent[other];
+            }
+            while (depth[ancestor] > depth[other]) {
+                ancestor = parent[ancestor];
+            }
+            while (ancestor != other) {
+                ancestor = parent[ancestor];
+                other = parent[other];
+            }
+        }
+        return ancestor;
+    }
+
+    /**
+     * Place the root on the branch above the node, splitting that branch in half. An old root
+     * left with a single child is removed so the tree stays free of unary nodes.
+     *
+     * @param node Node that becomes one of the two children of the new root (e.g. an outgroup)
+     */
+    public void reroot(int node) {
+        int oldParent = parent[node];
+        if (oldParent == NONE) {
+            return;
+        }
+        int newRoot = addNode();
+        double half = Double.isNaN(branchLength[node]) ? Double.NaN : branchLength[node] / 2;
+
+        removeChild(oldParent, node);
+        appendChild(newRoot, node);
+        branchLength[node] = half;
+
+        // Reverse the path from the old parent up to the old root; each edge's data moves to
+        // the node that is now below it
+        double carriedLength = half;
+        double carriedSupport = support[node];
+        int previous = newRoot;
+        int current = oldParent;
+        while (current != NONE) {
+            int next = parent[current];
+            double length = branchLength[current];
+            double value = support[current];
+            if (next != NONE) {
+                removeChild(next, current);
+            }
+            appendChild(previous, current);
+            branchLength[current] = carriedLength;
+            support[current] = carriedSupport;
+            carriedLength = length;
+            carriedSupport = value;
+            previous = current;
+            current = next;
+        }
+        int oldRoot = previous;
+        root = newRoot;
+        parent[newRoot] = NONE;
+        branchLength[newRoot] = Double.NaN;
+        support[newRoot] = Double.NaN;
+
+        if (firstChild[oldRoot] != NONE && nextSibling[firstChild[oldRoot]] == NONE) {
+            int child = firstChild[oldRoot];
+            int above = parent[oldRoot];
+            removeChild(oldRoot, child);
+            removeChild(above, oldRoot);
+            appendChild(above, child);
+            branchLength[child] = sum(branchLength[child], branchLength[oldRoot]);
+            removeNode(oldRoot);
+        }
+        invalidate();
+    }
+
+    /**
+     * Reroot on the branch above the most recent common ancestor of the given leaf labels
+     *
+     * @return false if a label is unknown or the ancestor is already the root
+     */
+    public boolean reroot(String... outgroup) {
+        int[] nodes = new int[outgroup.length];
+        for (int i = 0; i < outgroup.length; i++) {
+            nodes[i] = findLeaf(outgroup[i]);
+            if (nodes[i] == NONE) {
+                return false;
+            }
+        }
+        int ancestor = getCommonAncestor(nodes);
+        if (ancestor == root) {
+            return false;
+        }
+        reroot(ancestor);
+        return true;
+    }
+
+    /**
+     * Order the children of every node by the number of leaves below them
+     *
+     * @param ascending true to put the smallest clade first, false for the largest first
+     */
+    public void ladderize(boolean ascending) {
+        int[] order = getPreorder();
+        int[] leaves = new int[nodeCount];
+        for (int i = order.length - 1; i >= 0; i--) {
+            int node = order[i];
+            if (firstChild[node] == NONE) {
+                leaves[node] = 1;
+            } else {
+                for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                    leaves[node] += leaves[child];
+                }
+            }
+        }
+        int[] children = new int[8];
+        for (int node : order) {
+            int count = 0;
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                if (count == children.length) {
+                    children = Arrays.copyOf(children, count * 2);
+                }
+                children[count++] = child;
+            }
+            if (count < 2) {
+                continue;
+            }
+            // Stable insertion sort; polytomies are small
+            for (int i = 1; i < count; i++) {
+                int child = children[i];
+                int j = i - 1;
+                while (j >= 0 && (ascending ? leaves[children[j]] > leaves[child] : leaves[children[j]] < leaves[child])) {
+                    children[j + 1] = children[j];
+                    j--;
+                }
+                children[j + 1] = child;
+            }
+            firstChild[node] = children[0];
+            for (int i = 0; i < count - 1; i++) {
+                nextSibling[children[i]] = children[i + 1];
+            }
+            nextSibling[children[count - 1]] = NONE;
+        }
+        invalidate();
+    }
+
+    /**
+     * @return The tree in Newick format
+     */
+    public String toNewick() {
+        StringBuilder newick = new StringBuilder(nodeCount * 16);
+        int node = root;
+        // Iterative depth-first walk so deep caterpillar trees don't overflow the stack
+        while (true) {
+            if (firstChild[node] != NONE) {
+                newick.append('(');
+                node = firstChild[node];
+                continue;
+            }
+            appendNodeData(newick, node);
+            while (node != root && nextSibling[node] == NONE) {
+                node = parent[node];
+                newick.append(')');
+                appendNodeData(newick, node);
+            }
+            if (node == root) {
+                return newick.append(';').toString();
+            }
+            newick.append(',');
+            node = nextSibling[node];
+        }
+    }
+
+    private void appendNodeData(StringBuilder newick, int node) {
+        if (labels[node] != null) {
+            appendLabel(newick, labels[node]);
+        } else if (!Double.isNaN(support[node])) {
+            newick.append(formatNumber(support[node]));
+        }
+        if (!Double.isNaN(branchLength[node])) {
+            newick.append(':').append(formatNumber(branchLength[node]));
+        }
+    }
+
+    private static void appendLabel(StringBuilder newick, String label) {
+        boolean quote = false;
+        for (int i = 0; i < label.length() && !quote; i++) {
+            quote = "()[]':;, \t".indexOf(label.charAt(i)) >= 0;
+        }
+        if (!quote) {
+            newick.append(label);
+            return;
+        }
+        newick.append('\'').append(label.replace("'", "''")).append('\'');
+    }
+
+    private static String formatNumber(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static double sum(double a, double b) {
+        if (Double.isNaN(a)) {
+            return b;
+        }
+        return Double.isNaN(b) ? a : a + b;
+    }
+
+    private int addNode() {
+        if (nodeCount == parent.length) {
+            int capacity = nodeCount + 1;
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            branchLength = Arrays.copyOf(branchLength, capacity);
+            support = Arrays.copyOf(support, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+        }
+        int node = nodeCount++;
+        parent[node] = NONE;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        branchLength[node] = Double.NaN;
+        support[node] = Double.NaN;
+        labels[node] = null;
+        return node;
+    }
+
+    /**
+     * Remove a detached node by moving the last node into its slot, keeping ids dense
+     */
+    private void removeNode(int node) {
+        int last = nodeCount - 1;
+        if (node != last) {
+            parent[node] = parent[last];
+            firstChild[node] = firstChild[last];
+            nextSibling[node] = nextSibling[last];
+            branchLength[node] = branchLength[last];
+            support[node] = support[last];
+            labels[node] = labels[last];
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                parent[child] = node;
+            }
+            int above = parent[node];
+            if (above != NONE) {
+                if (firstChild[above] == last) {
+                    firstChild[above] = node;
+                } else {
+                    int sibling = firstChild[above];
+                    while (nextSibling[sibling] != last) {
+                        sibling = nextSibling[sibling];
+                    }
+                    nextSibling[sibling] = node;
+                }
+            }
+            if (root == last) {
+                root = node;
+            }
+        }
+        nodeCount--;
+    }
+
+    private void removeChild(int node, int child) {
+        if (firstChild[node] == child) {
+            firstChild[node] = nextSibling[child];
+        } else {
+            int sibling = firstChild[node];
+            while (nextSibling[sibling] != child) {
+                sibling = nextSibling[sibling];
+            }
+            nextSibling[sibling] = nextSibling[child];
+        }
+        parent[child] = NONE;
+        nextSibling[child] = NONE;
+    }
+
+    private void appendChild(int node, int child) {
+        parent[child] = node;
+        nextSibling[child] = NONE;
+        if (firstChild[node] == NONE) {
+            firstChild[node] = child;
+            return;
+        }
+        int sibling = firstChild[node];
+        while (nextSibling[sibling] != NONE) {
+            sibling = nextSibling[sibling];
+        }
+        nextSibling[sibling] = child;
+    }
+
+    private void invalidate() {
+        preorder = null;
+        leafByLabel = null;
+    }
+
+    private void ensureIndex() {
+        if (preorder != null) {
+            return;
+        }
+        preorder = new int[nodeCount];
+        preorderPosition = new int[nodeCount];
+        subtreeSize = new int[nodeCount];
+        depth = new int[nodeCount];
+        leafCount = 0;
+
+        int count = 0;
+        int node = root;
+        depth[root] = 0;
+        while (node != NONE) {
+            preorderPosition[node] = count;
+            preorder[count++] = node;
+            if (firstChild[node] != NONE) {
+                depth[firstChild[node]] = depth[node] + 1;
+                node = firstChild[node];
+                continue;
+            }
+            leafCount++;
+            // Climb until a node with an unvisited sibling is found
+            while (node != NONE && (node == root || nextSibling[node] == NONE)) {
+                node = node == root ? NONE : parent[node];
+            }
+            if (node != NONE) {
+                int sibling = nextSibling[node];
+                depth[sibling] = depth[node];
+                node = sibling;
+            }
+        }
+        // Subtree sizes in reverse preorder
+        for (int i = count - 1; i >= 0; i--) {
+            int current = preorder[i];
+            subtreeSize[current] += 1;
+            if (current != root) {
+                subtreeSize[parent[current]] += subtreeSize[current];
+            }
+        }
+    }
+}
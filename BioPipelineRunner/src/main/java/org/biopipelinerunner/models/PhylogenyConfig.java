@@ -1,16 +1,47 @@
 package org.biopipelinerunner.models;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class PhylogenyConfig {
+    public static final String MODE_SUPERMATRIX = "supermatrix";
+    public static final String MODE_GENE_TREES = "genetrees";
+    public static final String TOOL_IQTREE = "iqtree";
+    public static final String TOOL_FASTTREE = "fasttree";
+    public static final String BOOTSTRAP_ULTRAFAST = "ultrafast";
+    public static final String BOOTSTRAP_DISTRIBUTED = "distributed";
+    public static final String BACKEND_LOCAL = "local";
+    public static final String BACKEND_SLURM = "slurm";
+    
     private String inputPath;
     private String outputPath;
     private int threads;
     private String outgroup;
-    private String phylogenyTool; // e.g., "iqtree", "raxml"
+    private String phylogenyTool; // TOOL_IQTREE or TOOL_FASTTREE
     private String phyloScriptPath; // Added missing property
+    private ResourceLimits resourceLimits = new ResourceLimits();
+    private boolean useScratch;
+    private String scratchDirectory; // null picks /dev/shm or the temp directory
+    private long scratchLimitMegabytes = 4096;
+    private boolean keepIntermediates;
+    private String analysisMode = MODE_SUPERMATRIX; // or MODE_GENE_TREES
+    private String astralCommand = "astral"; // ASTER binary, or the path to an ASTRAL-III jar
+    private String fastTreeCommand; // null finds FastTreeMP, FastTree or fasttree on the PATH
+    private boolean fastTreePreview; // quick FastTree tree while IQ-TREE runs
+    private boolean neighborJoiningPreview = true; // BIONJ tree built in Java from the supermatrix
+    private boolean binaryMatrix = true; // memory-mappable copy of SUPERMATRIX.aln with gene partitions
+    private double minOccupancy = 1.0; // fraction of species a BUSCO must be single copy in
+    private List<String> excludedTaxa = new ArrayList<>();
+    private String bootstrapMode = BOOTSTRAP_ULTRAFAST; // or BOOTSTRAP_DISTRIBUTED
+    private int bootstrapReplicates = 100;
+    private long bootstrapSeed = 12345;
+    private String jobBackend = BACKEND_LOCAL; // where per-gene and bootstrap jobs run
+    private String clusterPartition; // null for the cluster default
+    private int clusterSlots = 64; // jobs queued on the cluster at once
     
     public PhylogenyConfig() {
         this.threads = Runtime.getRuntime().availableProcessors();
-        this.phylogenyTool = "iqtree";
+        this.phylogenyTool = TOOL_IQTREE;
     }
     
     public PhylogenyConfig(String inputPath, String outputPath, int threads, String outgroup, String phylogenyTool) {
@@ -61,6 +92,10 @@ public class PhylogenyConfig {
         this.phylogenyTool = phylogenyTool;
     }
     
+    public boolean isFastTree() {
+        return TOOL_FASTTREE.equals(phylogenyTool);
+    }
+    
     public String getPhyloScriptPath() {
         return phyloScriptPath;
     }
@@ -68,4 +103,183 @@ public class PhylogenyConfig {
     public void setPhyloScriptPath(String phyloScriptPath) {
         this.phyloScriptPath = phyloScriptPath;
     }
+    
+    public ResourceLimits getResourceLimits() {
+        return resourceLimits;
+    }
+    
+    public void setResourceLimits(ResourceLimits resourceLimits) {
+        this.resourceLimits = resourceLimits;
+    }
+    
+    public boolean isUseScratch() {
+        return useScratch;
+    }
+    
+    public void setUseScratch(boolean useScratch) {
+        this.useScratch = useScratch;
+    }
+    
+    public String getScratchDirectory() {
+        return scratchDirectory;
+    }
+    
+    public void setScratchDirectory(String scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+    }
+    
+    public long getScratchLimitMegabytes() {
+        return scratchLimitMegabytes;
+    }
+    
+    public void setScratchLimitMegabytes(long scratchLimitMegabytes) {
+        this.scratchLimitMegabytes = scratchLimitMegabytes;
+    }
+    
+    public boolean isKeepIntermediates() {
+        return keepIntermediates;
+    }
+    
+    public void setKeepIntermediates(boolean keepIntermediates) {
+        this.keepIntermediates = keepIntermediates;
+    }
+    
+    public String getAnalysisMode() {
+        return analysisMode;
+    }
+    
+    public void setAnalysisMode(String analysisMode) {
+        this.analysisMode = analysisMode;
+    }
+    
+    public boolean isGeneTreeMode() {
+        return MODE_GENE_TREES.equals(analysisMode);
+    }
+    
+    public String getAstralCommand() {
+        return astralCommand;
+    }
+    
+    public void setAstralCommand(String astralCommand) {
+        this.astralCommand = astralCommand;
+    }
+    
+    public String getFastTreeCommand() {
+        return fastTreeCommand;
+    }
+    
+    public void setFastTreeCommand(String fastTreeCommand) {
+        this.fastTreeCommand = fastTreeCommand;
+    }
+    
+    public boolean isFastTreePreview() {
+        return fastTreePreview;
+    }
+    
+    public void setFastTreePreview(boolean fastTreePreview) {
+        this.fastTreePreview = fastTreePreview;
+    }
+    
+    public boolean isNeighborJoiningPreview() {
+        return neighborJoiningPreview;
+    }
+    
+    public void setNeighborJoiningPreview(boolean neighborJoiningPreview) {
+        this.neighborJoiningPreview = neighborJoiningPreview;
+    }
+    
+    public boolean isBinaryMatrix() {
+        return binaryMatrix;
+    }
+    
+    public void setBinaryMatrix(boolean binaryMatrix) {
+        this.binaryMatrix = binaryMatrix;
+    }
+    
+    /**
+     * @return Fraction of the species (after exclusions) a BUSCO must be single copy in to be
+     *         used, 1 for all of them
+     */
+    public double getMinOccupancy() {
+        return minOccupancy;
+    }
+    
+    public void setMinOccupancy(double minOccupancy) {
+        this.minOccupancy = minOccupancy;
+    }
+    
+    /**
+     * @return Species left out of the analysis
+     */
+    public List<String> getExcludedTaxa() {
+        return excludedTaxa;
+    }
+    
+    public void setExcludedTaxa(List<String> excludedTaxa) {
+        this.excludedTaxa = excludedTaxa;
+    }
+    
+    /**
+     * @return true if genes are chosen from the occupancy index rather than the script's default
+     *         of single copy in all species
+     */
+    public boolean isGeneSelection() {
+        return minOccupancy < 1.0 || !excludedTaxa.isEmpty();
+    }
+    
+    public String getBootstrapMode() {
+        return bootstrapMode;
+    }
+    
+    public void setBootstrapMode(String bootstrapMode) {
+        this.bootstrapMode = bootstrapMode;
+    }
+    
+    /**
+     * @return true if standard bootstrap replicates run as separate jobs, which only applies
+     *         to an IQ-TREE supermatrix analysis
+     */
+    public boolean isDistributedBootstrap() {
+        return BOOTSTRAP_DISTRIBUTED.equals(bootstrapMode) && !isGeneTreeMode() && !isFastTree();
+    }
+    
+    public int getBootstrapReplicates() {
+        return bootstrapReplicates;
+    }
+    
+    public void setBootstrapReplicates(int bootstrapReplicates) {
+        this.bootstrapReplicates = bootstrapReplicates;
+    }
+    
+    public long getBootstrapSeed() {
+        return bootstrapSeed;
+    }
+    
+    public void setBootstrapSeed(long bootstrapSeed) {
+        this.bootstrapSeed = bootstrapSeed;
+    }
+    
+    public String getJobBackend() {
+        return jobBackend;
+    }
+    
+    public void setJobBackend(String jobBackend) {
+        this.jobBackend = jobBackend;
+    }
+    
+    public String getClusterPartition() {
+        return clusterPartition;
+    }
+    
+    public void setClusterPartition(String clusterPartition) {
+        this.clusterPartition = clusterPartition;
+    }
+    
+    public int getClusterSlots() {
+        return clusterSlots;
+    }
+    
+    public void setClusterSlots(int clusterSlots) {
+        this.clusterSlots = clusterSlots;
+    }
 }
@@ -0,0 +1,247 @@
+package org.biopipelinerunner.models;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.logging.Level;
+
+/**
+ * Something that happened during a pipeline run, as published on the
+ * {@link org.biopipelinerunner.utils.PipelineEventBus}. Events are immutable, so any number
+ * of subscribers can read them on their own threads.
+ */
+public abstract class PipelineEvent {
+    private final Instant time = Instant.now();
+
+    public Instant getTime() {
+        return time;
+    }
+
+    /**
+     * @return The event type followed by its fields, tab separated
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "\t" + describe();
+    }
+
+    protected abstract String describe();
+
+    /**
+     * A stage of the pipeline (Pre-flight, BUSCO, Phylogeny...) has started
+     */
+    public static class StageStarted extends PipelineEvent {
+        private final String stage;
+        private final String project;
+
+        public StageStarted(String stage, String project) {
+            this.stage = stage;
+            this.project = project;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        @Override
+        protected String describe() {
+            return stage + "\t" + project;
+        }
+    }
+
+    /**
+     * A stage of the pipeline is over
+     */
+    public static class StageFinished extends PipelineEvent {
+        private final String stage;
+        private final String project;
+        private final boolean succeeded;
+        private final long durationMillis;
+
+        public StageFinished(String stage, String project, boolean succeeded, long durationMillis) {
+            this.stage = stage;
+            this.project = project;
+            this.succeeded = succeeded;
+            this.durationMillis = durationMillis;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public boolean isSucceeded() {
+            return succeeded;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        protected String describe() {
+            return stage + "\t" + project + "\t" + (succeeded ? "succeeded" : "failed") + "\t" + durationMillis + " ms";
+        }
+    }
+
+    /**
+     * One job of a batch (a gene tree, a bootstrap batch, the BUSCO run of a genome) is done
+     */
+    public static class JobProgress extends PipelineEvent {
+        private final String job;
+        private final boolean succeeded;
+        private final int completed;
+        private final int total;
+
+        public JobProgress(String job, boolean succeeded, int completed, int total) {
+            this.job = job;
+            this.succeeded = succeeded;
+            this.completed = completed;
+            this.total = total;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        public boolean isSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * @return Jobs of the batch done so far, including this one
+         */
+        public int getCompleted() {
+            return completed;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        @Override
+        protected String describe() {
+            return job + "\t" + (succeeded ? "succeeded" : "failed") + "\t" + completed + "/" + total;
+        }
+    }
+
+    /**
+     * A message logged by one of the pipeline's loggers
+     */
+    public static class LogLine extends PipelineEvent {
+        private final Level level;
+        private final String source;
+        private final String message;
+
+        public LogLine(Level level, String source, String message) {
+            this.level = level;
+            this.source = source;
+            this.message = message;
+        }
+
+        public Level getLevel() {
+            return level;
+        }
+
+        /**
+         * @return Name of the logger, usually the class that logged the message
+         */
+        public String getSource() {
+            return source;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        protected String describe() {
+            return level + "\t" + source + "\t" + message;
+        }
+    }
+
+    /**
+     * Latest resource usage of all running processes of one external tool
+     */
+    public static class ResourceSample extends PipelineEvent {
+        private final String tool;
+        private final int processCount;
+        private final double cpuPercent;
+        private final double rssMegabytes;
+        private final double ioMegabytesPerSecond;
+
+        public ResourceSample(String tool, int processCount, double cpuPercent, double rssMegabytes,
+                              double ioMegabytesPerSecond) {
+            this.tool = tool;
+            this.processCount = processCount;
+            this.cpuPercent = cpuPercent;
+            this.rssMegabytes = rssMegabytes;
+            this.ioMegabytesPerSecond = ioMegabytesPerSecond;
+        }
+
+        public String getTool() {
+            return tool;
+        }
+
+        public int getProcessCount() {
+            return processCount;
+        }
+
+        public double getCpuPercent() {
+            return cpuPercent;
+        }
+
+        public double getRssMegabytes() {
+            return rssMegabytes;
+        }
+
+        public double getIoMegabytesPerSecond() {
+            return ioMegabytesPerSecond;
+        }
+
+        @Override
+        protected String describe() {
+            return String.format("%s\t%d\t%.1f%%\t%.1f MB\t%.1f MB/s", tool, processCount, cpuPercent, rssMegabytes,
+                    ioMegabytesPerSecond);
+        }
+    }
+
+    /**
+     * A result file or directory has been written
+     */
+    public static class ArtifactProduced extends PipelineEvent {
+        public static final String PREFLIGHT_REPORT = "preflight report";
+        public static final String BUSCO_RESULTS = "BUSCO results";
+        public static final String PREVIEW_TREE = "preview tree";
+        public static final String TREE = "tree";
+        public static final String TREE_FIGURES = "tree figures";
+        public static final String ARCHIVE = "archive";
+
+        private final String kind;
+        private final Path path;
+
+        public ArtifactProduced(String kind, Path path) {
+            this.kind = kind;
+            this.path = path;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        @Override
+        protected String describe() {
+            return kind + "\t" + path;
+        }
+    }
+}
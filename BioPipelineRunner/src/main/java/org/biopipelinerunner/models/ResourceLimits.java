@@ -0,0 +1,68 @@
+package org.biopipelinerunner.models;
+
+/**
+ * Per-job resource limits applied to external tools. A value of 0 means "no limit".
+ */
+public class ResourceLimits {
+    private long memoryMaxBytes;
+    private double cpuCores;
+    private int niceness;
+    private boolean pinCpus;
+
+    public ResourceLimits() {
+    }
+
+    public ResourceLimits(long memoryMaxBytes, double cpuCores, int niceness) {
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.cpuCores = cpuCores;
+        this.niceness = niceness;
+    }
+
+    /**
+     * @return Maximum memory the job may use, in bytes (0 for unlimited)
+     */
+    public long getMemoryMaxBytes() {
+        return memoryMaxBytes;
+    }
+
+    public void setMemoryMaxBytes(long memoryMaxBytes) {
+        this.memoryMaxBytes = memoryMaxBytes;
+    }
+
+    /**
+     * @return CPU bandwidth the job may use, in cores (0 for unlimited)
+     */
+    public double getCpuCores() {
+        return cpuCores;
+    }
+
+    public void setCpuCores(double cpuCores) {
+        this.cpuCores = cpuCores;
+    }
+
+    /**
+     * @return Scheduling niceness increment, 0 to 19
+     */
+    public int getNiceness() {
+        return niceness;
+    }
+
+    public void setNiceness(int niceness) {
+        this.niceness = niceness;
+    }
+
+    /**
+     * @return true if the job should be pinned to a dedicated, cache-local set of CPUs
+     */
+    public boolean isPinCpus() {
+        return pinCpus;
+    }
+
+    public void setPinCpus(boolean pinCpus) {
+        this.pinCpus = pinCpus;
+    }
+
+    public boolean isUnlimited() {
+        return memoryMaxBytes <= 0 && cpuCores <= 0 && niceness <= 0 && !pinCpus;
+    }
+}
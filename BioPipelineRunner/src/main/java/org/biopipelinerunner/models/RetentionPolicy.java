@@ -0,0 +1,82 @@
+package org.biopipelinerunner.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rules for pruning old run directories. A value of 0 disables the corresponding rule.
+ * Both rules are opt-in: the intermediates include the BUSCO results, which take hours to
+ * recompute, so by default nothing is deleted.
+ */
+public class RetentionPolicy {
+    private int keepLastRuns;
+    private int intermediateMaxAgeDays;
+    private List<String> intermediatePaths = Arrays.asList(
+        "busco_output",
+        "output/proteins",
+        "output/alignments",
+        "output/trimmed_alignments",
+        "output/gene_alignments",
+        "output/gene_trees"
+    );
+
+    public RetentionPolicy() {
+    }
+
+    public RetentionPolicy(int keepLastRuns, int intermediateMaxAgeDays) {
+        this.keepLastRuns = keepLastRuns;
+        this.intermediateMaxAgeDays = intermediateMaxAgeDays;
+    }
+
+    /**
+     * @return Number of most recent runs to keep per project; older runs are deleted entirely
+     *         (0, the default, keeps every run)
+     */
+    public int getKeepLastRuns() {
+        return keepLastRuns;
+    }
+
+    public void setKeepLastRuns(int keepLastRuns) {
+        this.keepLastRuns = keepLastRuns;
+    }
+
+    /**
+     * @return Age in days after which a kept run loses its intermediates (0, the default,
+     *         keeps them)
+     */
+    public int getIntermediateMaxAgeDays() {
+        return intermediateMaxAgeDays;
+    }
+
+    public void setIntermediateMaxAgeDays(int intermediateMaxAgeDays) {
+        this.intermediateMaxAgeDays = intermediateMaxAgeDays;
+    }
+
+    /**
+     * @return Paths, relative to a run directory, that hold intermediates; final trees,
+     *         plots and the results archive live outside them
+     */
+    public List<String> getIntermediatePaths() {
+        return intermediatePaths;
+    }
+
+    public void setIntermediatePaths(List<String> intermediatePaths) {
+        this.intermediatePaths = intermediatePaths;
+    }
+
+    /**
+     * @param directory Subdirectory of a run, e.g. "output"
+     * @return Glob patterns, relative to that subdirectory, of the intermediates inside it
+     */
+    public List<String> getIntermediateGlobs(String directory) {
+        String prefix = directory + "/";
+        List<String> globs = new ArrayList<>();
+        for (String path : intermediatePaths) {
+            if (path.startsWith(prefix)) {
+                globs.add(path.substring(prefix.length()) + "/**");
+            }
+        }
+        return globs;
+    }
+}
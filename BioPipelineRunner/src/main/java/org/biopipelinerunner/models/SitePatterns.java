@@ -0,0 +1,115 @@
+package org.biopipelinerunner.models;
+
+/**
+ * An alignment reduced to its distinct site patterns (columns), each with a weight: the number
+ * of sites it stands for. The alignment may be split into partitions (genes) of consecutive
+ * sites; patterns are only shared within a partition, and the patterns of each partition are
+ * consecutive and in the order they first occur. The pattern of every site is kept, so per
+ * pattern results can be expanded back to per site results.
+ */
+public class SitePatterns {
+    private final PackedAlignment patterns;
+    private final int[] weights;
+    private final int[] sitePatterns;
+    private final int[] partitionSiteEnds;
+    private final int[] partitionPatternEnds;
+
+    /**
+     * The arrays are used directly, not copied.
+     *
+     * @param patterns One column per pattern
+     * @param weights Number of sites of each pattern
+     * @param sitePatterns Pattern of each site
+     * @param partitionSiteEnds End (exclusive) of each partition's sites, ascending
+     * @param partitionPatternEnds End (exclusive) of each partition's patterns, ascending
+     */
+    public SitePatterns(PackedAlignment patterns, int[] weights, int[] sitePatterns, int[] partitionSiteEnds,
+                        int[] partitionPatternEnds) {
+        if (weights.length != patterns.getLength()) {
+            throw new IllegalArgumentException(patterns.getLength() + " patterns but " + weights.length + " weights");
+        }
+        if (partitionSiteEnds.length != partitionPatternEnds.length) {
+            throw new IllegalArgumentException("Partition tables differ in length");
+        }
+        long total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        if (total != sitePatterns.length) {
+            throw new IllegalArgumentException("Weights add up to " + total + ", expected " + sitePatterns.length + " sites");
+        }
+        this.patterns = patterns;
+        this.weights = weights;
+        this.sitePatterns = sitePatterns;
+        this.partitionSiteEnds = partitionSiteEnds;
+        this.partitionPatternEnds = partitionPatternEnds;
+    }
+
+    /**
+     * @return The patterns as an alignment with one column per pattern
+     */
+    public PackedAlignment getPatterns() {
+        return patterns;
+    }
+
+    public int getPatternCount() {
+        return weights.length;
+    }
+
+    public int getSiteCount() {
+        return sitePatterns.length;
+    }
+
+    public int getWeight(int pattern) {
+        return weights[pattern];
+    }
+
+    /**
+     * @return The weight of each pattern; must not be modified
+     */
+    public int[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * @return The pattern a site of the original alignment belongs to
+     */
+    public int getPattern(int site) {
+        return sitePatterns[site];
+    }
+
+    public int getPartitionCount() {
+        return partitionSiteEnds.length;
+    }
+
+    /**
+     * @return End (exclusive) of a partition's sites in the original alignment
+     */
+    public int getPartitionSiteEnd(int partition) {
+        return partitionSiteEnds[partition];
+    }
+
+    /**
+     * @return End (exclusive) of a partition's patterns
+     */
+    public int getPartitionPatternEnd(int partition) {
+        return partitionPatternEnds[partition];
+    }
+
+    /**
+     * Expand per pattern values, such as site log-likelihoods or rates, to every site
+     *
+     * @param values One value per pattern
+     * @return One value per site of the original alignment
+     */
+    public double[] expand(double[] values) {
+        if (values.length != weights.length) {
+            throw new IllegalArgumentException("Expected " + weights.length + " values, got " + values.length);
+        }
+        double[] expanded = new double[sitePatterns.length];
+        for (int site = 0; site < expanded.length; site++) {
+            expanded[site] = values[sitePatterns[site]];
+        }
+        return expanded;
+    }
+}
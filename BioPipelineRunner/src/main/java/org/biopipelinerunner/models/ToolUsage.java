@@ -0,0 +1,118 @@
+package org.biopipelinerunner.models;
+
+/**
+ * Rolling resource usage history for one external tool (all processes sharing a name).
+ * Samples are kept in fixed-size ring buffers so recording a sample never allocates.
+ */
+public class ToolUsage {
+    public static final int HISTORY_SIZE = 60;
+
+    private final String toolName;
+    private final double[] cpuPercent = new double[HISTORY_SIZE];
+    private final double[] rssMegabytes = new double[HISTORY_SIZE];
+    private final double[] ioMegabytesPerSecond = new double[HISTORY_SIZE];
+    private int head;
+    private int count;
+    private int idleSamples;
+    private int processCount;
+
+    // Accumulators for the sample being collected
+    private double pendingCpu;
+    private double pendingRss;
+    private double pendingIo;
+    private int pendingProcesses;
+
+    public ToolUsage(String toolName) {
+        this.toolName = toolName;
+    }
+
+    public String getToolName() {
+        return toolName;
+    }
+
+    /**
+     * Add one process' contribution to the sample currently being collected
+     */
+    public synchronized void accumulate(double cpu, double rssMb, double ioMbPerSecond) {
+        pendingCpu += cpu;
+        pendingRss += rssMb;
+        pendingIo += ioMbPerSecond;
+        pendingProcesses++;
+    }
+
+    /**
+     * Close the current sample and push it into the history
+     */
+    public synchronized void commitSample() {
+        cpuPercent[head] = pendingCpu;
+        rssMegabytes[head] = pendingRss;
+        ioMegabytesPerSecond[head] = pendingIo;
+        head = (head + 1) % HISTORY_SIZE;
+        if (count < HISTORY_SIZE) {
+            count++;
+        }
+        idleSamples = pendingProcesses == 0 ? idleSamples + 1 : 0;
+        processCount = pendingProcesses;
+        pendingCpu = 0;
+        pendingRss = 0;
+        pendingIo = 0;
+        pendingProcesses = 0;
+    }
+
+    /**
+     * @return Number of consecutive samples in which no process of this tool was running
+     */
+    public synchronized int getIdleSamples() {
+        return idleSamples;
+    }
+
+    public synchronized int getProcessCount() {
+        return processCount;
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    public synchronized double getLatestCpuPercent() {
+        return latest(cpuPercent);
+    }
+
+    public synchronized double getLatestRssMegabytes() {
+        return latest(rssMegabytes);
+    }
+
+    public synchronized double getLatestIoMegabytesPerSecond() {
+        return latest(ioMegabytesPerSecond);
+    }
+
+    /**
+     * Copy the CPU history, oldest first, into the destination array
+     *
+     * @param destination Array of at least {@link #HISTORY_SIZE} elements
+     * @return Number of samples copied
+     */
+    public synchronized int copyCpuHistory(double[] destination) {
+        return copyHistory(cpuPercent, destination);
+    }
+
+    public synchronized int copyRssHistory(double[] destination) {
+        return copyHistory(rssMegabytes, destination);
+    }
+
+    public synchronized int copyIoHistory(double[] destination) {
+        return copyHistory(ioMegabytesPerSecond, destination);
+    }
+
+    private double latest(double[] history) {
+        return count == 0 ? 0 : history[(head - 1 + HISTORY_SIZE) % HISTORY_SIZE];
+    }
+
+    private int copyHistory(double[] history, double[] destination) {
+        int start = (head - count + HISTORY_SIZE) % HISTORY_SIZE;
+        for (int i = 0; i < count; i++) {
+            destination[i] = history[(start + i) % HISTORY_SIZE];
+        }
+        return count;
+    }
+}
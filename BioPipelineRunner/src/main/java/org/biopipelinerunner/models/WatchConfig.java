@@ -0,0 +1,55 @@
+package org.biopipelinerunner.models;
+
+/**
+ * Settings of the watch-folder mode. A rebuild trigger set to 0, or to -1 for the hour, is
+ * disabled.
+ */
+public class WatchConfig {
+    private int settleSeconds = 30;
+    private int rebuildAfterGenomes = 10;
+    private int nightlyRebuildHour = 2;
+
+    public WatchConfig() {
+    }
+
+    public WatchConfig(int settleSeconds, int rebuildAfterGenomes, int nightlyRebuildHour) {
+        this.settleSeconds = settleSeconds;
+        this.rebuildAfterGenomes = rebuildAfterGenomes;
+        this.nightlyRebuildHour = nightlyRebuildHour;
+    }
+
+    /**
+     * @return Time a new file's size and modification time must stay unchanged before it
+     *         counts as completely copied
+     */
+    public int getSettleSeconds() {
+        return settleSeconds;
+    }
+
+    public void setSettleSeconds(int settleSeconds) {
+        this.settleSeconds = settleSeconds;
+    }
+
+    /**
+     * @return Number of newly analysed genomes that triggers a rebuild of the tree
+     */
+    public int getRebuildAfterGenomes() {
+        return rebuildAfterGenomes;
+    }
+
+    public void setRebuildAfterGenomes(int rebuildAfterGenomes) {
+        this.rebuildAfterGenomes = rebuildAfterGenomes;
+    }
+
+    /**
+     * @return Hour of the day, 0 to 23, at which the tree is rebuilt if any genome was added
+     *         since the last rebuild
+     */
+    public int getNightlyRebuildHour() {
+        return nightlyRebuildHour;
+    }
+
+    public void setNightlyRebuildHour(int nightlyRebuildHour) {
+        this.nightlyRebuildHour = nightlyRebuildHour;
+    }
+}
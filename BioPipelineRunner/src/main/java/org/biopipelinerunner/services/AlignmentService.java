@@ -1,9 +1,12 @@
 package org.biopipelinerunner.services;
 
 import org.biopipelinerunner.models.AlignmentConfig;
+import org.biopipelinerunner.utils.CommandLine;
 import org.biopipelinerunner.utils.ProcessExecutionService;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,11 +29,11 @@ public class AlignmentService {
      */
     public void runAlignment(AlignmentConfig config) throws IOException, InterruptedException {
         this.config = config;
-        String command = buildAlignmentCommand();
+        CommandLine command = buildAlignmentCommand();
         
         LOGGER.info("Running alignment with command: " + command);
         try {
-            String output = processExecutionService.executeCommand(command);
+            String output = processExecutionService.execute(command, config.getResourceLimits(), config.getThreads());
             LOGGER.info("Alignment completed successfully");
             LOGGER.fine(output);
         } catch (IOException e) {
@@ -43,29 +46,25 @@ public class AlignmentService {
         }
     }
     
-    private String buildAlignmentCommand() {
-        StringBuilder command = new StringBuilder();
+    private CommandLine buildAlignmentCommand() {
+        Path input = Paths.get(config.getInputPath());
+        Path output = Paths.get(config.getOutputPath());
         
         if ("mafft".equalsIgnoreCase(config.getAlignmentTool())) {
-            command.append("mafft --auto --thread ")
-                  .append(config.getThreads())
-                  .append(" ")
-                  .append(config.getInputPath())
-                  .append(" > ")
-                  .append(config.getOutputPath());
+            // MAFFT writes the alignment to standard output
+            return new CommandLine("mafft", "--auto")
+                    .add("--thread", config.getThreads())
+                    .addPath(input)
+                    .redirectOutput(output);
         } else if ("muscle".equalsIgnoreCase(config.getAlignmentTool())) {
-            command.append("muscle -in ")
-                  .append(config.getInputPath())
-                  .append(" -out ")
-                  .append(config.getOutputPath());
+            return new CommandLine("muscle")
+                    .add("-in", input)
+                    .add("-out", output);
         } else {
             LOGGER.warning("Unknown alignment tool specified: " + config.getAlignmentTool() + ". Defaulting to MUSCLE.");
-            command.append("muscle -in ")
-                  .append(config.getInputPath())
-                  .append(" -out ")
-                  .append(config.getOutputPath());
+            return new CommandLine("muscle")
+                    .add("-in", input)
+                    .add("-out", output);
         }
-        
-        return command.toString();
     }
-}
+}
\ No newline at end of file
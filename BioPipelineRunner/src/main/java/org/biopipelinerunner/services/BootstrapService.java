@@ -0,0 +1,148 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.PhyloTree;
+import org.biopipelinerunner.models.PhylogenyConfig;
+import org.biopipelinerunner.utils.Bipartitions;
+import org.biopipelinerunner.utils.CommandLine;
+import org.biopipelinerunner.utils.ConsensusTree;
+import org.biopipelinerunner.utils.NewickParser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Standard (non-parametric) bootstrap of the supermatrix as many small, independently seeded
+ * IQ-TREE jobs instead of one multi-threaded process. Each job runs a batch of replicates on
+ * one thread under the best-fit model of the ML search, so throughput grows with the number of
+ * job slots rather than with IQ-TREE's thread scaling. The replicate trees are merged into a
+ * majority-rule consensus in Java, and their support is mapped onto the ML tree.
+ */
+public class BootstrapService {
+    public static final String ALIGNMENT = "SUPERMATRIX.trimmed.aln";
+    public static final String REPLICATE_TREES = "SUPERMATRIX.trimmed.aln.boottrees";
+    public static final String CONSENSUS_TREE = "SUPERMATRIX.trimmed.aln.bootstrap.contree";
+    public static final String SUPPORT_TREE = "SUPERMATRIX.trimmed.aln.bootstrap.treefile";
+    private static final String ML_TREE_SUFFIX = ".treefile";
+    private static final Logger LOGGER = Logger.getLogger(BootstrapService.class.getName());
+    private static final String REPORT_SUFFIX = ".iqtree";
+    private static final String FALLBACK_MODEL = "MFP";
+    // Several batches per slot, so slots that finish early pick up more work
+    private static final int BATCHES_PER_SLOT = 4;
+    private static final Pattern BEST_MODEL = Pattern.compile("Best-fit model according to \\w+: (\\S+)");
+
+    private final PhylogenyConfig config;
+    private final JobBackend backend;
+    private final int slots;
+
+    /**
+     * @param config Configuration with the replicate count and seed
+     * @param backend Where the replicate jobs run
+     * @param slots Number of jobs running at once
+     */
+    public BootstrapService(PhylogenyConfig config, JobBackend backend, int slots) {
+        this.config = config;
+        this.backend = backend;
+        this.slots = Math.max(1, slots);
+    }
+
+    /**
+     * Run the replicates for the trimmed supermatrix in the output directory and write their
+     * trees, their majority-rule consensus and the ML tree with bootstrap support next to it
+     *
+     * @return The ML tree with bootstrap support, or the consensus tree if there is no ML tree
+     * @throws IOException if no replicate succeeded
+     */
+    public Path run(Path outputDirectory) throws IOException, InterruptedException {
+        Path alignment = outputDirectory.resolve(ALIGNMENT);
+        Path batchDirectory = outputDirectory.resolve("bootstrap");
+        Files.createDirectories(batchDirectory);
+        String model = readBestModel(outputDirectory.resolve(ALIGNMENT + REPORT_SUFFIX));
+
+        int replicates = Math.max(1, config.getBootstrapReplicates());
+        int batches = Math.min(replicates, slots * BATCHES_PER_SLOT);
+        // Only local slots are CPUs; cluster jobs keep to one CPU each
+        int jobThreads = backend instanceof LocalJobBackend ? JobScheduler.threadsPerJob(slots, batches) : 1;
+        List<JobScheduler.Job> jobs = new ArrayList<>(batches);
+        for (int batch = 0; batch < batches; batch++) {
+            // Spread the remainder over the first batches
+            int size = replicates / batches + (batch < replicates % batches ? 1 : 0);
+            String name = String.format("batch_%04d", batch);
+            CommandLine command = new CommandLine("iqtree")
+                    .add("-s", alignment)
+                    .add("-m", model)
+                    .add("-bo", size)
+                    .add("-seed", config.getBootstrapSeed() + batch)
+                    .add("-nt", jobThreads)
+                    .add("-quiet", "-safe", "-redo")
+                    .add("-pre", batchDirectory.resolve(name));
+            jobs.add(new JobScheduler.Job(name, command, config.getResourceLimits(), jobThreads, size));
+        }
+
+        LOGGER.info("Running " + replicates + " bootstrap replicates under " + model + " as " + batches
+                + " jobs on " + slots + " slots");
+        List<JobScheduler.JobResult> results = new JobScheduler(slots, backend).runAll(jobs);
+
+        NewickParser parser = new NewickParser();
+        List<PhyloTree> trees = new ArrayList<>(replicates);
+        Path replicateTrees = outputDirectory.resolve(REPLICATE_TREES);
+        try (BufferedWriter writer = Files.newBufferedWriter(replicateTrees, StandardCharsets.UTF_8)) {
+            for (JobScheduler.JobResult result : results) {
+                Path batchTrees = batchDirectory.resolve(result.getJob().getName() + ".boottrees");
+                if (!result.isSucceeded() || !Files.exists(batchTrees)) {
+                    continue;
+                }
+                String content = new String(Files.readAllBytes(batchTrees), StandardCharsets.UTF_8).trim();
+                trees.addAll(parser.parseAll(content));
+                writer.write(content);
+                writer.newLine();
+            }
+        }
+        if (trees.isEmpty()) {
+            throw new IOException("All " + batches + " bootstrap jobs failed");
+        }
+        if (trees.size() < replicates) {
+            LOGGER.warning("Only " + trees.size() + " of " + replicates + " bootstrap replicates finished");
+        }
+
+        Path consensusFile = outputDirectory.resolve(CONSENSUS_TREE);
+        PhyloTree consensus = ConsensusTree.majorityRule(trees);
+        Files.write(consensusFile, (consensus.toNewick() + "\n").getBytes(StandardCharsets.UTF_8));
+        LOGGER.info("Majority-rule consensus of " + trees.size() + " replicates written to " + consensusFile);
+
+        Path mlTreeFile = outputDirectory.resolve(ALIGNMENT + ML_TREE_SUFFIX);
+        if (!Files.exists(mlTreeFile)) {
+            LOGGER.warning("No ML tree " + mlTreeFile + " to map bootstrap support onto");
+            return consensusFile;
+        }
+        PhyloTree mlTree = NewickParser.readTree(mlTreeFile);
+        Bipartitions.mapSupport(mlTree, trees, Runtime.getRuntime().availableProcessors());
+        Path supportFile = outputDirectory.resolve(SUPPORT_TREE);
+        Files.write(supportFile, (mlTree.toNewick() + "\n").getBytes(StandardCharsets.UTF_8));
+        return supportFile;
+    }
+
+    /**
+     * @return The best-fit model from an IQ-TREE report, or "MFP" (select again per job) if
+     *         the report is missing
+     */
+    static String readBestModel(Path report) throws IOException {
+        if (Files.exists(report)) {
+            for (String line : Files.readAllLines(report, StandardCharsets.UTF_8)) {
+                Matcher matcher = BEST_MODEL.matcher(line);
+                if (matcher.find()) {
+                    return matcher.group(1);
+                }
+            }
+        }
+        LOGGER.warning("No best-fit model in " + report + "; each bootstrap job selects its own");
+        return FALLBACK_MODEL;
+    }
+}
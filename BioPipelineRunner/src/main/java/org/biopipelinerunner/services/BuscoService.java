@@ -1,16 +1,33 @@
 package org.biopipelinerunner.services;
 
 import org.biopipelinerunner.models.BuscoConfig;
-import org.biopipelinerunner.utils.PlatformUtils;
+import org.biopipelinerunner.models.GenomeCompleteness;
+import org.biopipelinerunner.models.PipelineEvent;
+import org.biopipelinerunner.utils.BuscoResultsIndex;
+import org.biopipelinerunner.utils.CommandLine;
+import org.biopipelinerunner.utils.PipelineEventBus;
 import org.biopipelinerunner.utils.ProcessExecutionService;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class BuscoService {
+    private static final Logger LOGGER = Logger.getLogger(BuscoService.class.getName());
+    private static final int RESULTS_POLL_SECONDS = 5;
     private final ProcessExecutionService processExecutionService;
+    private final LineageDatasetManager datasetManager;
+    private volatile BuscoResultsIndex resultsIndex = new BuscoResultsIndex();
+    private volatile Consumer<List<GenomeCompleteness>> completenessListener;
     private static final String[] AVAILABLE_LINEAGES = {
         "bacteria", "eukaryota", "archaea", "metazoa", "fungi", "embryophyta", "protists",
         "vertebrata", "arthropoda", "mollusca", "nematoda", "actinobacteria", "proteobacteria",
@@ -18,65 +35,202 @@ public class BuscoService {
     };
 
     public BuscoService() {
+        this(new LineageDatasetManager());
+    }
+
+    public BuscoService(LineageDatasetManager datasetManager) {
         this.processExecutionService = new ProcessExecutionService();
+        this.datasetManager = datasetManager;
     }
 
     public void runBusco(BuscoConfig buscoConfig) throws IOException, InterruptedException {
-        String buscoCommand = buildBuscoCommand(buscoConfig);
-        processExecutionService.executeCommand(buscoCommand);
+        String cachedLineage = cacheLineage(buscoConfig);
+        boolean offline = cachedLineage != null;
+        String lineage = offline ? cachedLineage : requestedLineage(buscoConfig);
+        Path outputDirectory = Paths.get(buscoConfig.getOutputDirectory());
+        CommandLine buscoCommand = buildBuscoCommand(buscoConfig, Paths.get(buscoConfig.getInputDirectory()),
+                outputDirectory.getFileName().toString(), outputDirectory.getParent(), lineage, offline);
+        int threads = getThreads(buscoConfig);
+        BuscoResultsIndex index = new BuscoResultsIndex();
+        resultsIndex = index;
+        ScheduledExecutorService watcher = watchResults(index, outputDirectory);
+        try {
+            processExecutionService.execute(buscoCommand, buscoConfig.getResourceLimits(), threads);
+        } finally {
+            watcher.shutdownNow();
+            watcher.awaitTermination(1, TimeUnit.MINUTES);
+            refreshResults(index, outputDirectory);
+        }
     }
 
-    private String buildBuscoCommand(BuscoConfig buscoConfig) {
-        StringBuilder command = new StringBuilder();
-        
+    /**
+     * Run BUSCO on one genome after the other as each becomes available, so compressed
+     * genomes are decompressed while BUSCO works on the ones before them. The results of
+     * each genome go to {@code <output directory>/<genome>}, as in a run on a directory.
+     * Genomes that can't be staged or that BUSCO fails on are skipped.
+     *
+     * @param buscoConfig BUSCO settings; the input directory is not used
+     * @param genomes Genomes in the order to run them
+     * @throws IOException if BUSCO failed on every genome
+     */
+    public void runBusco(BuscoConfig buscoConfig, List<InputStagingService.StagedGenome> genomes)
+            throws IOException, InterruptedException {
+        String cachedLineage = cacheLineage(buscoConfig);
+        boolean offline = cachedLineage != null;
+        String lineage = offline ? cachedLineage : requestedLineage(buscoConfig);
+        Path outputDirectory = Paths.get(buscoConfig.getOutputDirectory());
+        Files.createDirectories(outputDirectory);
+        int threads = getThreads(buscoConfig);
+        BuscoResultsIndex index = new BuscoResultsIndex();
+        resultsIndex = index;
+        ScheduledExecutorService watcher = watchResults(index, outputDirectory);
+        int completed = 0;
+        int done = 0;
+        try {
+            for (InputStagingService.StagedGenome genome : genomes) {
+                boolean succeeded = false;
+                try {
+                    Path input = genome.await();
+                    CommandLine buscoCommand = buildBuscoCommand(buscoConfig, input, genome.getName(),
+                            outputDirectory, lineage, offline);
+                    processExecutionService.execute(buscoCommand, buscoConfig.getResourceLimits(), threads);
+                    succeeded = true;
+                    completed++;
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Skipping " + genome.getName() + " in BUSCO", e);
+                } finally {
+                    genome.release();
+                }
+                PipelineEventBus events = PipelineEventBus.getDefault();
+                events.publish(new PipelineEvent.JobProgress("BUSCO " + genome.getName(), succeeded, ++done,
+                        genomes.size()));
+                if (succeeded) {
+                    events.publish(new PipelineEvent.ArtifactProduced(PipelineEvent.ArtifactProduced.BUSCO_RESULTS,
+                            outputDirectory.resolve(genome.getName())));
+                }
+            }
+        } finally {
+            watcher.shutdownNow();
+            watcher.awaitTermination(1, TimeUnit.MINUTES);
+            refreshResults(index, outputDirectory);
+        }
+        if (completed == 0) {
+            throw new IOException("BUSCO failed on all " + genomes.size() + " genomes");
+        }
+    }
+
+    private static String requestedLineage(BuscoConfig buscoConfig) {
+        return buscoConfig.getLineage() != null ? buscoConfig.getLineage() : "bacteria";
+    }
+
+    /**
+     * @return The name of the lineage dataset in the local cache, or null if BUSCO has to
+     *         download it itself
+     */
+    private String cacheLineage(BuscoConfig buscoConfig) {
+        String lineage = requestedLineage(buscoConfig);
+        if (buscoConfig.isDatasetCache()) {
+            try {
+                return datasetManager.ensureLineage(lineage).getFileName().toString();
+            } catch (IOException e) {
+                // BUSCO may still reach the server itself; it then fills the shared cache
+                LOGGER.log(Level.WARNING, "Lineage " + lineage + " is not cached, BUSCO will download it", e);
+            }
+        }
+        return null;
+    }
+
+    private static int getThreads(BuscoConfig buscoConfig) {
+        return buscoConfig.getThreads() > 0 ? buscoConfig.getThreads() : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Index the BUSCO results of each genome as its run finishes, so the completeness
+     * dashboard fills in while the other genomes are still being searched
+     */
+    private ScheduledExecutorService watchResults(BuscoResultsIndex index, Path outputDirectory) {
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "busco-results-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> refreshResults(index, outputDirectory),
+                RESULTS_POLL_SECONDS, RESULTS_POLL_SECONDS, TimeUnit.SECONDS);
+        return watcher;
+    }
+
+    private void refreshResults(BuscoResultsIndex index, Path outputDirectory) {
+        try {
+            if (index.refresh(outputDirectory)) {
+                Consumer<List<GenomeCompleteness>> listener = completenessListener;
+                if (listener != null) {
+                    listener.accept(index.getCompleteness());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not index the BUSCO results in " + outputDirectory, e);
+        }
+    }
+
+    /**
+     * @return Index of the results of the latest BUSCO run, filled in as genomes finish
+     */
+    public BuscoResultsIndex getResultsIndex() {
+        return resultsIndex;
+    }
+
+    /**
+     * Set the listener told about the completeness of all genomes whenever the results of
+     * another genome have been indexed. It is called on a background thread.
+     *
+     * @param completenessListener Listener, or null for none
+     */
+    public void setCompletenessListener(Consumer<List<GenomeCompleteness>> completenessListener) {
+        this.completenessListener = completenessListener;
+    }
+
+    private CommandLine buildBuscoCommand(BuscoConfig buscoConfig, Path input, String outputName, Path outPath,
+                                          String lineage, boolean offline) {
         // Use busco script location if provided, otherwise just call busco from PATH
         String buscoExec = buscoConfig.getBuscoPath() != null && !buscoConfig.getBuscoPath().isEmpty() ?
                 buscoConfig.getBuscoPath() : "busco";
         
-        command.append(buscoExec)
-              .append(" -i ").append(getPlatformPath(buscoConfig.getInputDirectory()))
-              .append(" -o ").append(getPlatformPath(Paths.get(buscoConfig.getOutputDirectory()).getFileName().toString()))
-              .append(" -m genome")  // Mode could be configurable: genome, proteins, transcriptome
-              .append(" -l ").append(buscoConfig.getLineage() != null ? buscoConfig.getLineage() : "bacteria")
-              .append(" --out-path ").append(getPlatformPath(Paths.get(buscoConfig.getOutputDirectory()).getParent().toString()))
-              .append(" --cpu ").append(buscoConfig.getThreads() > 0 ? buscoConfig.getThreads() : Runtime.getRuntime().availableProcessors());
-
-        return command.toString();
-    }
-    
-    private String getPlatformPath(String path) {
-        // If on Windows with WSL, convert the path to WSL format
-        if (PlatformUtils.isWindows() && PlatformUtils.isWslInstalled()) {
-            return PlatformUtils.convertWindowsPathToWsl(path);
+        CommandLine command = new CommandLine(buscoExec)
+                .add("-i", input)
+                .add("-o", outputName)
+                .add("-m", "genome")  // Mode could be configurable: genome, proteins, transcriptome
+                .add("-l", lineage)
+                .add("--out-path", outPath)
+                .add("--cpu", getThreads(buscoConfig));
+        if (buscoConfig.isDatasetCache()) {
+            command.add("--download_path", datasetManager.getCacheDirectory());
+            if (offline) {
+                command.add("--offline");
+            }
         }
-        return path;
-    }
 
+        return command;
+    }
+    
     public boolean checkBuscoInstallation() {
         try {
-            String command;
-            if (PlatformUtils.isWindows() && PlatformUtils.isWslInstalled()) {
-                command = "busco --version";
-            } else if (PlatformUtils.isWindows()) {
-                command = "busco --version";
-            } else {
-                command = "busco --version";
-            }
-            processExecutionService.executeCommand(command);
+            processExecutionService.execute(new CommandLine("busco", "--version"), null, 0);
             return true;
         } catch (IOException | InterruptedException e) {
             return false;
         }
     }
     
+    /**
+     * @return Lineages from the cached dataset listing, refreshed once it has expired, and
+     *         the lineages in the local cache; a built-in list if neither is available
+     */
     public String[] getAvailableLineages() {
-        try {
-            String output = processExecutionService.executeCommand("busco --list-datasets");
-            // Parse output to extract lineages
-            // This is a simplified version; actual implementation would parse the output
-            return AVAILABLE_LINEAGES;
-        } catch (IOException | InterruptedException e) {
-            return AVAILABLE_LINEAGES; // Return default list if command fails
-        }
+        List<String> lineages = datasetManager.getAvailableLineages();
+        return lineages.isEmpty() ? AVAILABLE_LINEAGES : lineages.toArray(new String[0]);
+    }
+    
+    public LineageDatasetManager getDatasetManager() {
+        return datasetManager;
     }
 }
@@ -0,0 +1,286 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.GenomeStats;
+import org.biopipelinerunner.utils.Decompressor;
+import org.biopipelinerunner.utils.FileUtils;
+import org.biopipelinerunner.utils.ScratchArea;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Makes genomes available as plain files for BUSCO. Plain genomes are used in place;
+ * compressed ones are decompressed into a scratch area, or into a directory of the run
+ * when scratch is full, a few genomes ahead of the one BUSCO is working on. Each
+ * decompressed file is deleted again once BUSCO is done with it.
+ */
+public class InputStagingService implements AutoCloseable {
+    public static final String FALLBACK_DIRECTORY = "busco_input";
+    private static final Logger LOGGER = Logger.getLogger(InputStagingService.class.getName());
+    // Decompressed genomes that may exist at the same time, including the one BUSCO is using
+    private static final int LOOKAHEAD = 2;
+    // Expected plain size per compressed byte; FASTA compresses about 3-4 fold
+    private static final int EXPANSION = 4;
+
+    private final String scratchRoot;
+    private final long scratchLimitBytes;
+    private final Path fallbackDirectory;
+    private final int threads;
+    private final PreflightService preflightService;
+    private final Semaphore slots = new Semaphore(LOOKAHEAD);
+    private final ExecutorService dispatcher;
+    private final ExecutorService decompressors;
+    private ScratchArea scratch;
+    private boolean scratchFailed;
+
+    /**
+     * @param scratchRoot Scratch root, or null for the default of {@link ScratchArea}
+     * @param scratchLimitBytes Maximum number of decompressed bytes on scratch
+     * @param fallbackDirectory Directory for genomes that don't fit on scratch
+     * @param threads Threads available for decompression
+     * @param preflightService Checks the genomes once they are decompressed
+     */
+    public InputStagingService(String scratchRoot, long scratchLimitBytes, Path fallbackDirectory, int threads,
+                               PreflightService preflightService) {
+        this.scratchRoot = scratchRoot;
+        this.scratchLimitBytes = scratchLimitBytes;
+        this.fallbackDirectory = fallbackDirectory;
+        this.threads = Math.max(1, threads);
+        this.preflightService = preflightService;
+        this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "genome-staging");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.decompressors = Executors.newFixedThreadPool(LOOKAHEAD, runnable -> {
+            Thread thread = new Thread(runnable, "genome-decompressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start staging the genomes in order. Compressed genomes are decompressed in the
+     * background as earlier ones are released.
+     *
+     * @param genomes Plain or compressed genome files
+     * @return One staged genome per file, in the same order
+     * @throws IOException if a file can't be read
+     */
+    public List<StagedGenome> stage(List<Path> genomes) throws IOException {
+        List<StagedGenome> staged = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (Path genome : genomes) {
+            String fileName = genome.getFileName().toString();
+            if (Decompressor.detect(genome) == Decompressor.Format.NONE) {
+                names.add(fileName);
+                staged.add(new StagedGenome(genome, fileName, null));
+                continue;
+            }
+            // BUSCO names its output after the genome, so keep the names unique
+            String name = Decompressor.plainName(fileName);
+            if (!names.add(name)) {
+                name = fileName;
+                names.add(name);
+            }
+            StagedGenome stagedGenome = new StagedGenome(genome, name, new CompletableFuture<>());
+            staged.add(stagedGenome);
+            dispatcher.execute(() -> dispatch(stagedGenome));
+        }
+        return staged;
+    }
+
+    /**
+     * Wait for a free slot, in genome order, before handing the genome to a decompressor
+     */
+    private void dispatch(StagedGenome genome) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            genome.future.completeExceptionally(e);
+            return;
+        }
+        genome.holdsSlot = true;
+        decompressors.execute(() -> {
+            try {
+                genome.future.complete(decompress(genome));
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                genome.future.completeExceptionally(e);
+            }
+        });
+    }
+
+    private Path decompress(StagedGenome genome) throws IOException, InterruptedException {
+        long expectedBytes = Files.size(genome.source) * EXPANSION;
+        int decompressionThreads = Math.max(1, threads / LOOKAHEAD);
+        Path target = allocate(genome, expectedBytes);
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(target.getParent());
+            Decompressor.decompress(genome.source, target, decompressionThreads);
+        } catch (IOException e) {
+            if (genome.reservedBytes == 0) {
+                throw e;
+            }
+            // The estimate was too low and scratch filled up; retry in the run directory
+            LOGGER.log(Level.WARNING, "Decompressing " + genome.name + " on scratch failed, retrying in "
+                    + fallbackDirectory, e);
+            Files.deleteIfExists(target);
+            genome.releaseScratch();
+            target = fallbackDirectory.resolve(genome.name);
+            genome.target = target;
+            Files.createDirectories(fallbackDirectory);
+            Decompressor.decompress(genome.source, target, decompressionThreads);
+        }
+        LOGGER.info(String.format("Decompressed %s to %s in %.1f s", genome.source.getFileName(), target,
+                (System.nanoTime() - start) / 1e9));
+        GenomeStats stats = preflightService.check(target, decompressionThreads);
+        if (!stats.isUsable()) {
+            throw new IOException(genome.source.getFileName() + ": " + stats.getProblem());
+        }
+        return target;
+    }
+
+    private synchronized Path allocate(StagedGenome genome, long expectedBytes) {
+        if (scratch == null && !scratchFailed) {
+            try {
+                scratch = ScratchArea.create(scratchRoot, "genomes", scratchLimitBytes);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "No scratch area for decompressed genomes, using " + fallbackDirectory, e);
+                scratchFailed = true;
+            }
+        }
+        Path target = scratch != null
+                ? scratch.allocate(genome.name, expectedBytes, fallbackDirectory)
+                : fallbackDirectory.resolve(genome.name);
+        if (scratch != null && target.startsWith(scratch.getDirectory())) {
+            genome.reservedBytes = expectedBytes;
+        }
+        genome.target = target;
+        return target;
+    }
+
+    /**
+     * Stop staging and delete all decompressed genomes
+     */
+    @Override
+    public void close() {
+        dispatcher.shutdownNow();
+        decompressors.shutdownNow();
+        try {
+            decompressors.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (scratch != null) {
+                scratch.cleanup();
+            }
+        }
+        if (Files.exists(fallbackDirectory) && !FileUtils.deleteDirectory(fallbackDirectory.toFile())) {
+            LOGGER.warning("Could not fully remove " + fallbackDirectory);
+        }
+    }
+
+    /**
+     * A genome on its way to BUSCO
+     */
+    public class StagedGenome {
+        private final Path source;
+        private final String name;
+        private final CompletableFuture<Path> future;
+        private final boolean compressed;
+        private volatile Path target;
+        private volatile long reservedBytes;
+        private volatile boolean holdsSlot;
+        private boolean released;
+
+        private StagedGenome(Path source, String name, CompletableFuture<Path> future) {
+            this.source = source;
+            this.name = name;
+            this.future = future != null ? future : CompletableFuture.completedFuture(source);
+            this.compressed = future != null;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        /**
+         * @return The name of the plain genome file, used to name its BUSCO run
+         */
+        public String getName() {
+            return name;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        /**
+         * Wait until the genome is available as a plain file
+         *
+         * @return The plain genome file
+         * @throws IOException if it couldn't be decompressed or is not usable
+         */
+        public Path await() throws IOException, InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof InterruptedException) {
+                    throw (InterruptedException) cause;
+                }
+                throw new IOException("Could not stage " + source, cause);
+            }
+        }
+
+        /**
+         * Delete the decompressed file and let the next genome be decompressed. Plain
+         * genomes are left alone.
+         */
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            Path file = target;
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not delete " + file, e);
+                }
+            }
+            releaseScratch();
+            if (holdsSlot) {
+                slots.release();
+            }
+        }
+
+        private void releaseScratch() {
+            synchronized (InputStagingService.this) {
+                if (reservedBytes > 0 && scratch != null) {
+                    scratch.release(reservedBytes);
+                }
+                reservedBytes = 0;
+            }
+        }
+    }
+}
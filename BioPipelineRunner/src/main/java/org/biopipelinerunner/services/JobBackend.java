@@ -0,0 +1,19 @@
+package org.biopipelinerunner.services;
+
+import java.io.IOException;
+
+/**
+ * Where {@link JobScheduler} jobs run: on this machine, or submitted to a cluster. A call
+ * blocks until the job has finished, so the scheduler's slot count caps how many jobs are in
+ * flight on the backend.
+ */
+public interface JobBackend {
+
+    /**
+     * Run a job and wait for it to finish
+     *
+     * @return The job's output, as far as the backend makes it available
+     * @throws IOException if the job fails or can't be started
+     */
+    String run(JobScheduler.Job job) throws IOException, InterruptedException;
+}
@@ -0,0 +1,193 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.PipelineEvent;
+import org.biopipelinerunner.models.ResourceLimits;
+import org.biopipelinerunner.utils.CommandLine;
+import org.biopipelinerunner.utils.PipelineEventBus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Runs many independent external jobs (e.g. one IQ-TREE search per gene) with a fixed number
+ * of concurrent slots. Jobs are started most expensive first, so the long ones don't end up
+ * running alone at the end. Jobs run on a {@link JobBackend}: locally through
+ * {@link ProcessExecutionService} by default, so resource limits and CPU pinning apply per
+ * job, or on a cluster.
+ */
+public class JobScheduler {
+    private static final Logger LOGGER = Logger.getLogger(JobScheduler.class.getName());
+
+    private final int slots;
+    private final JobBackend backend;
+
+    public JobScheduler(int slots) {
+        this(slots, new LocalJobBackend());
+    }
+
+    public JobScheduler(int slots, ProcessExecutionService processExecutionService) {
+        this(slots, new LocalJobBackend(processExecutionService));
+    }
+
+    /**
+     * @param slots Maximum number of jobs running at once
+     * @param backend Where the jobs run
+     */
+    public JobScheduler(int slots, JobBackend backend) {
+        this.slots = Math.max(1, slots);
+        this.backend = backend;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    /**
+     * Split local CPUs over the jobs that will run at once. Together the jobs use every CPU
+     * but no more, so pinned jobs get disjoint CPU sets instead of the first one leasing them all.
+     *
+     * @param cpus CPUs available to the jobs
+     * @param jobs Number of jobs to run
+     * @return Threads for each job, at least 1
+     */
+    public static int threadsPerJob(int cpus, int jobs) {
+        return Math.max(1, cpus / Math.max(1, Math.min(cpus, jobs)));
+    }
+
+    /**
+     * Run all jobs and wait for them to finish. A failing job doesn't stop the others.
+     *
+     * @param jobs Jobs to run
+     * @return One result per job, in completion order
+     * @throws InterruptedException if interrupted while waiting; jobs not yet started are skipped
+     */
+    public List<JobResult> runAll(List<Job> jobs) throws InterruptedException {
+        List<Job> ordered = new ArrayList<>(jobs);
+        ordered.sort(Comparator.comparingLong(Job::getCost).reversed());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(slots, Math.max(1, ordered.size())), runnable -> {
+            Thread thread = new Thread(runnable, "job-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<JobResult> completion = new ExecutorCompletionService<>(executor);
+        List<JobResult> results = new ArrayList<>(ordered.size());
+        try {
+            for (Job job : ordered) {
+                completion.submit(() -> run(job));
+            }
+            for (int i = 0; i < ordered.size(); i++) {
+                Future<JobResult> future = completion.take();
+                JobResult result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    result = new JobResult(null, false, String.valueOf(e.getCause()));
+                }
+                results.add(result);
+                PipelineEventBus.getDefault().publish(new PipelineEvent.JobProgress(
+                        result.getJob() != null ? result.getJob().getName() : "?", result.isSucceeded(), i + 1,
+                        ordered.size()));
+                if ((i + 1) % 10 == 0 || i + 1 == ordered.size()) {
+                    LOGGER.info("Finished " + (i + 1) + " of " + ordered.size() + " jobs");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    private JobResult run(Job job) throws InterruptedException {
+        try {
+            String output = backend.run(job);
+            return new JobResult(job, true, output);
+        } catch (IOException e) {
+            LOGGER.warning("Job " + job.getName() + " failed: " + e.getMessage());
+            return new JobResult(job, false, e.getMessage());
+        }
+    }
+
+    /**
+     * A command plus the resources it needs
+     */
+    public static class Job {
+        private final String name;
+        private final CommandLine command;
+        private final ResourceLimits limits;
+        private final int threads;
+        private final long cost;
+
+        /**
+         * @param name Name used in logs and results
+         * @param command Command to run
+         * @param limits Per-job limits, may be null
+         * @param threads Threads the job runs (sizes its CPU set when pinning)
+         * @param cost Relative cost estimate used to start expensive jobs first (e.g. input size)
+         */
+        public Job(String name, CommandLine command, ResourceLimits limits, int threads, long cost) {
+            this.name = name;
+            this.command = command;
+            this.limits = limits;
+            this.threads = threads;
+            this.cost = cost;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public CommandLine getCommand() {
+            return command;
+        }
+
+        public ResourceLimits getLimits() {
+            return limits;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public long getCost() {
+            return cost;
+        }
+    }
+
+    public static class JobResult {
+        private final Job job;
+        private final boolean succeeded;
+        private final String message;
+
+        public JobResult(Job job, boolean succeeded, String message) {
+            this.job = job;
+            this.succeeded = succeeded;
+            this.message = message;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        public boolean isSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * @return Command output on success, error description on failure
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+}
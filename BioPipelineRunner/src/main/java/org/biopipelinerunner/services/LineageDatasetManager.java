@@ -0,0 +1,374 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.LineageDataset;
+import org.biopipelinerunner.utils.FileUtils;
+import org.biopipelinerunner.utils.TarArchive;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps BUSCO lineage datasets in a local cache shared by all runs, laid out as BUSCO's own
+ * download directory ({@code file_versions.tsv} and {@code lineages/<name>}), so BUSCO can be
+ * run with {@code --offline --download_path} and never fetches or unpacks a dataset again.
+ *
+ * <p>Archives are verified against the MD5 checksum of the dataset listing before they are
+ * extracted, and a dataset is only replaced when the listing has a newer release. The
+ * listing itself is kept in the cache and fetched again once it is older than its time to
+ * live; without a connection, as on air-gapped nodes, the cached listing and datasets are
+ * used as they are.</p>
+ */
+public class LineageDatasetManager {
+    public static final String DEFAULT_SERVER = "https://busco-data.ezlab.org/v5/data/";
+    public static final String FILE_VERSIONS = "file_versions.tsv";
+    public static final Duration DEFAULT_LISTING_TTL = Duration.ofDays(1);
+    private static final Logger LOGGER = Logger.getLogger(LineageDatasetManager.class.getName());
+    private static final String VERSION_MARKER = ".dataset_version";
+    private static final String DATASET_CONFIG = "dataset.cfg";
+    private static final String LOCK_FILE = ".lock";
+    private static final int TIMEOUT_MILLIS = 10_000;
+    // After a failed listing download, don't block every caller on the timeout again
+    private static final long RETRY_MILLIS = 5 * 60 * 1000L;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final ConcurrentMap<Path, Object> CACHE_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path cacheDirectory;
+    private final URI server;
+    private volatile Duration listingTtl = DEFAULT_LISTING_TTL;
+    private List<LineageDataset> datasets;
+    private long listingModified;
+    private long lastFailure;
+
+    public LineageDatasetManager() {
+        this(Paths.get(System.getProperty("user.home"), "BioPipelineRunner", "busco_downloads"), URI.create(DEFAULT_SERVER));
+    }
+
+    /**
+     * @param cacheDirectory Shared dataset cache, used as BUSCO's download path
+     * @param server Data directory of the dataset server, or of a local mirror (file: URI)
+     */
+    public LineageDatasetManager(Path cacheDirectory, URI server) {
+        this.cacheDirectory = cacheDirectory;
+        String base = server.toString();
+        this.server = base.endsWith("/") ? server : URI.create(base + "/");
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public Duration getListingTtl() {
+        return listingTtl;
+    }
+
+    public void setListingTtl(Duration listingTtl) {
+        this.listingTtl = listingTtl;
+    }
+
+    /**
+     * Get the datasets on the server, from the cached listing while it is younger than its
+     * time to live. If the server can't be reached the cached listing is returned however old.
+     *
+     * @return Listed datasets, empty if there is neither a connection nor a cached listing
+     */
+    public synchronized List<LineageDataset> getDatasets() {
+        Path listing = cacheDirectory.resolve(FILE_VERSIONS);
+        long now = System.currentTimeMillis();
+        long modified = lastModified(listing);
+        boolean stale = modified == 0 || now - modified > listingTtl.toMillis();
+        if (stale && now - lastFailure > RETRY_MILLIS) {
+            try {
+                downloadListing(listing);
+                modified = lastModified(listing);
+            } catch (IOException e) {
+                lastFailure = now;
+                LOGGER.log(Level.WARNING, "Could not fetch the BUSCO dataset listing from " + server
+                        + (modified > 0 ? ", using the cached one" : ""), e);
+            }
+        }
+        if (modified == 0) {
+            return Collections.emptyList();
+        }
+        if (datasets == null || modified != listingModified) {
+            try {
+                datasets = readListing(listing);
+                listingModified = modified;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not read the dataset listing " + listing, e);
+                return Collections.emptyList();
+            }
+        }
+        return datasets;
+    }
+
+    private void downloadListing(Path listing) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        Path temp = Files.createTempFile(cacheDirectory, FILE_VERSIONS, ".tmp");
+        try {
+            try (InputStream in = open(FILE_VERSIONS)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // Reject an error page or truncated download before it replaces a good listing
+            readListing(temp);
+            Files.move(temp, listing, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Parse a file_versions.tsv listing: name, release, MD5 and, last, the dataset type
+     */
+    static List<LineageDataset> readListing(Path listing) throws IOException {
+        List<LineageDataset> result = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(listing, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 4 || !fields[2].matches("[0-9a-fA-F]{32}")) {
+                    throw new IOException(listing + ": invalid dataset line: " + line);
+                }
+                result.add(new LineageDataset(fields[0], fields[1], fields[2].toLowerCase(), fields[fields.length - 1]));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return Lineage names without their OrthoDB release, listed or installed, sorted
+     */
+    public List<String> getAvailableLineages() {
+        TreeSet<String> names = new TreeSet<>();
+        for (LineageDataset dataset : getDatasets()) {
+            if (dataset.isLineage()) {
+                names.add(dataset.getBaseName());
+            }
+        }
+        for (String installed : getInstalledLineages()) {
+            names.add(new LineageDataset(installed, "", "", LineageDataset.TYPE_LINEAGE).getBaseName());
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * @return Names of the lineage datasets present in the cache
+     */
+    public List<String> getInstalledLineages() {
+        List<String> names = new ArrayList<>();
+        Path lineages = cacheDirectory.resolve(LineageDataset.TYPE_LINEAGE);
+        if (Files.isDirectory(lineages)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(lineages, Files::isDirectory)) {
+                for (Path directory : stream) {
+                    if (!directory.getFileName().toString().startsWith(".")) {
+                        names.add(directory.getFileName().toString());
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not list the cached lineages in " + lineages, e);
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Make sure the latest release of a lineage is in the cache, downloading, verifying and
+     * extracting it if needed. Safe to call from several runs, and several processes, at once.
+     *
+     * @param lineage Dataset name ("bacteria_odb10") or lineage ("bacteria", for the latest
+     *                OrthoDB release)
+     * @return Directory of the dataset in the cache
+     * @throws IOException if the dataset is neither cached nor downloadable, or the archive
+     *                     doesn't match its checksum
+     */
+    public synchronized Path ensureLineage(String lineage) throws IOException {
+        LineageDataset dataset = resolve(lineage);
+        if (dataset == null) {
+            Path installed = findInstalled(lineage);
+            if (installed != null) {
+                LOGGER.info("Lineage " + lineage + " is not listed, using the cached " + installed.getFileName());
+                return installed;
+            }
+            throw new IOException("BUSCO lineage " + lineage + " is neither cached in " + cacheDirectory
+                    + " nor listed by " + server);
+        }
+        Path directory = cacheDirectory.resolve(LineageDataset.TYPE_LINEAGE).resolve(dataset.getName());
+        if (isCurrent(directory, dataset)) {
+            return directory;
+        }
+        Files.createDirectories(directory.getParent());
+        // A file lock is held by the whole JVM, so managers sharing the cache in this process
+        // have to take turns before asking for it, or the second one gets an OverlappingFileLockException
+        synchronized (CACHE_LOCKS.computeIfAbsent(cacheDirectory.toAbsolutePath().normalize(), path -> new Object())) {
+            try (FileChannel channel = FileChannel.open(cacheDirectory.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Released when the channel is closed
+                channel.lock();
+                // Another process may have installed it while this one waited for the lock
+                if (!isCurrent(directory, dataset)) {
+                    install(dataset, directory);
+                }
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * @return The listed dataset for a name, the latest OrthoDB release for a bare lineage
+     */
+    private LineageDataset resolve(String lineage) {
+        LineageDataset best = null;
+        for (LineageDataset dataset : getDatasets()) {
+            if (!dataset.isLineage()) {
+                continue;
+            }
+            if (dataset.getName().equals(lineage)) {
+                return dataset;
+            }
+            if (dataset.getBaseName().equals(lineage)
+                    && (best == null || dataset.getOrthoDbRelease() > best.getOrthoDbRelease())) {
+                best = dataset;
+            }
+        }
+        return best;
+    }
+
+    private Path findInstalled(String lineage) {
+        Path best = null;
+        int bestRelease = -1;
+        for (String name : getInstalledLineages()) {
+            LineageDataset dataset = new LineageDataset(name, "", "", LineageDataset.TYPE_LINEAGE);
+            if (name.equals(lineage)) {
+                return cacheDirectory.resolve(LineageDataset.TYPE_LINEAGE).resolve(name);
+            }
+            if (dataset.getBaseName().equals(lineage) && dataset.getOrthoDbRelease() > bestRelease) {
+                bestRelease = dataset.getOrthoDbRelease();
+                best = cacheDirectory.resolve(LineageDataset.TYPE_LINEAGE).resolve(name);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A dataset is current if the marker written on install, or the creation date in the
+     * dataset.cfg of a dataset BUSCO downloaded itself, matches the listed release
+     */
+    private static boolean isCurrent(Path directory, LineageDataset dataset) throws IOException {
+        Path marker = directory.resolve(VERSION_MARKER);
+        if (Files.exists(marker)) {
+            return new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim()
+                    .equals(dataset.getVersion() + " " + dataset.getMd5());
+        }
+        Path config = directory.resolve(DATASET_CONFIG);
+        if (Files.exists(config)) {
+            for (String line : Files.readAllLines(config, StandardCharsets.UTF_8)) {
+                if (line.trim().equals("creation=" + dataset.getVersion())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void install(LineageDataset dataset, Path directory) throws IOException {
+        long start = System.nanoTime();
+        Path lineages = directory.getParent();
+        Path archive = Files.createTempFile(lineages, "." + dataset.getName(), ".tar.gz");
+        Path extracted = Files.createTempDirectory(lineages, "." + dataset.getName());
+        try {
+            String md5 = download(dataset.getArchivePath(), archive);
+            if (!md5.equals(dataset.getMd5())) {
+                throw new IOException("Checksum mismatch for " + dataset + ": expected " + dataset.getMd5()
+                        + ", got " + md5);
+            }
+            TarArchive.extractGzip(archive, extracted);
+            // Archives hold a single top-level directory named after the dataset
+            Path content = extracted.resolve(dataset.getName());
+            if (!Files.isDirectory(content)) {
+                content = extracted;
+            }
+            Files.write(content.resolve(VERSION_MARKER),
+                    (dataset.getVersion() + " " + dataset.getMd5() + "\n").getBytes(StandardCharsets.UTF_8));
+            if (Files.exists(directory)) {
+                FileUtils.deleteTree(directory);
+            }
+            Files.move(content, directory, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info(String.format("Installed BUSCO dataset %s in %.1f s: %s", dataset,
+                    (System.nanoTime() - start) / 1e9, directory));
+        } finally {
+            Files.deleteIfExists(archive);
+            if (Files.exists(extracted)) {
+                FileUtils.deleteTree(extracted);
+            }
+        }
+    }
+
+    /**
+     * Copy a server file to disk
+     *
+     * @return Hex MD5 checksum of the downloaded bytes
+     */
+    private String download(String path, Path target) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 is not available", e);
+        }
+        try (InputStream in = new DigestInputStream(open(path), digest);
+             OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private InputStream open(String path) throws IOException {
+        URLConnection connection = server.resolve(path).toURL().openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        return connection.getInputStream();
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
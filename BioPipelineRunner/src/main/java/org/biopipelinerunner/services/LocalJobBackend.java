@@ -0,0 +1,23 @@
+package org.biopipelinerunner.services;
+
+import java.io.IOException;
+
+/**
+ * Runs jobs as local processes, with their resource limits and CPU pinning
+ */
+public class LocalJobBackend implements JobBackend {
+    private final ProcessExecutionService processExecutionService;
+
+    public LocalJobBackend() {
+        this(new ProcessExecutionService());
+    }
+
+    public LocalJobBackend(ProcessExecutionService processExecutionService) {
+        this.processExecutionService = processExecutionService;
+    }
+
+    @Override
+    public String run(JobScheduler.Job job) throws IOException, InterruptedException {
+        return processExecutionService.execute(job.getCommand(), job.getLimits(), job.getThreads());
+    }
+}
@@ -1,22 +1,60 @@
 package org.biopipelinerunner.services;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.biopipelinerunner.models.PhyloTree;
 import org.biopipelinerunner.models.PhylogenyConfig;
+import org.biopipelinerunner.models.PipelineEvent;
+import org.biopipelinerunner.models.SitePatterns;
+import org.biopipelinerunner.utils.BinaryMatrix;
+import org.biopipelinerunner.utils.CommandLine;
 import org.biopipelinerunner.utils.FileUtils;
+import org.biopipelinerunner.utils.MatrixConverter;
+import org.biopipelinerunner.utils.NeighborJoining;
+import org.biopipelinerunner.utils.OccupancyIndex;
+import org.biopipelinerunner.utils.PipelineEventBus;
 import org.biopipelinerunner.utils.PlatformUtils;
+import org.biopipelinerunner.utils.ScratchArea;
+import org.biopipelinerunner.utils.SitePatternCompressor;
 import org.biopipelinerunner.utils.ProcessExecutionService;
 
 public class PhylogenyService {
     private static final Logger LOGGER = Logger.getLogger(PhylogenyService.class.getName());
+    private static final String SUPERMATRIX_TREE = "SUPERMATRIX.trimmed.aln.contree";
+    private static final String FASTTREE_TREE = "SUPERMATRIX.trimmed.aln.fasttree.tre";
+    private static final String PREVIEW_TREE = "PREVIEW.fasttree.tre";
+    private static final String SUPERMATRIX = "SUPERMATRIX.aln";
+    private static final String SUPERMATRIX_PARTITIONS = "SUPERMATRIX.partitions";
+    private static final String SELECTED_GENES = "selected_genes.txt";
+    private static final String EXCLUDED_TAXA = "excluded_taxa.txt";
+    private static final String TRIMMED_SUPERMATRIX = "SUPERMATRIX.trimmed.aln";
+    private static final String SUPERMATRIX_READY = "SUPERMATRIX.trimmed.aln.ready";
+    private static final String NJ_TREE = "SUPERMATRIX.trimmed.aln.bionj.tre";
+    private static final long PREVIEW_POLL_SECONDS = 2;
+    private static final String SPECIES_TREE = "SPECIES_TREE.astral.tre";
+    private static final String GENE_TREES = "GENE_TREES.tre";
+    private static final String GENE_ALIGNMENT_SUFFIX = ".trimmed.aln";
+    // Same order as script_phylo.py; distributions install FastTree under different names
+    private static final List<String> FASTTREE_CANDIDATES = Arrays.asList("FastTreeMP", "FastTree", "fasttree");
     private PhylogenyConfig config;
     private final ProcessExecutionService processExecutionService;
+    private volatile Consumer<Path> previewListener;
 
     public PhylogenyService() {
         this.processExecutionService = new ProcessExecutionService();
@@ -77,46 +115,340 @@ public class PhylogenyService {
         }
         
         // Build the command
-        StringBuilder commandBuilder = new StringBuilder();
         String pythonExec = PlatformUtils.isWindows() ? "python" : "python3";
-        
-        commandBuilder.append(pythonExec)
-                     .append(" ")
-                     .append(getPlatformPath(scriptFile.getAbsolutePath()))
-                     .append(" -t ")
-                     .append(threads)
-                     .append(" -d ")
-                     .append(getPlatformPath(inputDirectory))
-                     .append(" -o ")
-                     .append(getPlatformPath(outputDirectory));
+        CommandLine command = new CommandLine(pythonExec)
+                .addPath(scriptFile.getAbsoluteFile().toPath())
+                .add("-t", threads)
+                .add("-d", Paths.get(inputDirectory))
+                .add("-o", Paths.get(outputDirectory));
         
         if (outgroup != null && !outgroup.isEmpty()) {
-            commandBuilder.append(" -og ").append(outgroup);
+            command.add("-og", outgroup);
+        }
+        
+        // Stage per-gene intermediates on fast local storage if requested
+        ScratchArea scratch = null;
+        if (config != null && config.isUseScratch()) {
+            scratch = ScratchArea.create(config.getScratchDirectory(), "phylogeny",
+                    config.getScratchLimitMegabytes() * 1024 * 1024);
+            command.add("--scratch", scratch.getDirectory())
+                   .add("--scratch-limit-mb", scratch.getLimitBytes() / (1024 * 1024));
+            if (config.isKeepIntermediates()) {
+                command.add("--keep-intermediates");
+            }
+        }
+        if (config != null && config.isGeneTreeMode()) {
+            command.add("--mode", PhylogenyConfig.MODE_GENE_TREES);
+        }
+        if (config != null && config.isFastTree()) {
+            command.add("--tool", PhylogenyConfig.TOOL_FASTTREE);
+        }
+        boolean fastTreePreview = config != null && config.isFastTreePreview() && !config.isFastTree() && !config.isGeneTreeMode();
+        if (fastTreePreview) {
+            command.add("--preview");
+        }
+        boolean njPreview = config != null && config.isNeighborJoiningPreview() && !config.isGeneTreeMode();
+        if (config != null && config.isGeneSelection()) {
+            writeGeneSelection(Paths.get(inputDirectory), Paths.get(outputDirectory), command);
+        }
+        if (config != null && config.isDistributedBootstrap()) {
+            // Replicates run below as separate jobs; the script only does the ML search
+            command.add("--bootstrap", "none");
         }
         
-        String command = commandBuilder.toString();
         LOGGER.info("Executing phylogeny command: " + command);
         
+        ScheduledExecutorService previewWatcher = fastTreePreview || njPreview
+                ? watchForPreviews(Paths.get(outputDirectory), fastTreePreview, njPreview, threads)
+                : null;
         try {
-            String output = processExecutionService.executeCommand(command);
-            LOGGER.info("Phylogenetic analysis completed successfully");
+            String output = processExecutionService.execute(command, config != null ? config.getResourceLimits() : null, threads);
             LOGGER.fine(output);
+            if (previewWatcher != null) {
+                // Let a preview being built finish, so it doesn't write pattern files alongside
+                previewWatcher.shutdown();
+                previewWatcher.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            if (config == null || (!config.isGeneTreeMode() && config.isBinaryMatrix())) {
+                writeBinaryMatrix(Paths.get(outputDirectory));
+            }
+            if (config != null && config.isGeneTreeMode()) {
+                runGeneTreeAnalysis(Paths.get(outputDirectory), threads);
+            } else if (config != null && config.isDistributedBootstrap()) {
+                Path outputPath = Paths.get(outputDirectory);
+                new BootstrapService(config, createJobBackend(outputPath.resolve("bootstrap")), getJobSlots(threads))
+                        .run(outputPath);
+            }
+            LOGGER.info("Phylogenetic analysis completed successfully");
+            PipelineEventBus.getDefault().publish(new PipelineEvent.ArtifactProduced(
+                    PipelineEvent.ArtifactProduced.TREE, Paths.get(getResultTreeFile(outputDirectory))));
         } catch (IOException | InterruptedException e) {
             LOGGER.log(Level.SEVERE, "Error running phylogenetic analysis", e);
             throw e;
+        } finally {
+            if (previewWatcher != null) {
+                previewWatcher.shutdownNow();
+            }
+            if (scratch != null) {
+                scratch.cleanup();
+            }
+        }
+    }
+    
+    /**
+     * Choose the genes at the configured occupancy from the index of the BUSCO runs and pass
+     * them, and the excluded species, to the script as list files in the output directory
+     */
+    private void writeGeneSelection(Path buscoDirectory, Path outputDirectory, CommandLine command)
+            throws IOException {
+        OccupancyIndex index = OccupancyIndex.load(buscoDirectory);
+        long start = System.nanoTime();
+        List<String> genes = index.select(config.getMinOccupancy(), config.getExcludedTaxa());
+        LOGGER.info(String.format("%d of %d BUSCOs are single copy in at least %.0f%% of the species (selected in %.1f ms)",
+                genes.size(), index.getGenes().size(), 100 * config.getMinOccupancy(), (System.nanoTime() - start) / 1e6));
+        if (genes.isEmpty()) {
+            throw new IOException("No BUSCOs reach " + Math.round(100 * config.getMinOccupancy()) + "% occupancy");
+        }
+        Path genesFile = outputDirectory.resolve(SELECTED_GENES);
+        Files.write(genesFile, genes, StandardCharsets.UTF_8);
+        command.add("--genes", genesFile);
+        if (!config.getExcludedTaxa().isEmpty()) {
+            Path taxaFile = outputDirectory.resolve(EXCLUDED_TAXA);
+            Files.write(taxaFile, config.getExcludedTaxa(), StandardCharsets.UTF_8);
+            command.add("--exclude-taxa", taxaFile);
         }
     }
     
-    private String getPlatformPath(String path) {
-        // If on Windows with WSL, convert the path to WSL format
-        if (PlatformUtils.isWindows() && PlatformUtils.isWslInstalled()) {
-            return PlatformUtils.convertWindowsPathToWsl(path);
+    /**
+     * Poll for preview input while the script runs and hand each preview tree to the preview
+     * listener once: the FastTree tree, which the script renames into place when complete,
+     * and a BIONJ tree built here as soon as the script marks the trimmed supermatrix ready.
+     */
+    private ScheduledExecutorService watchForPreviews(Path outputDirectory, boolean fastTree, boolean neighborJoining,
+                                                      int threads) throws IOException {
+        Path fastTreeFile = outputDirectory.resolve(PREVIEW_TREE);
+        Path readyFile = outputDirectory.resolve(SUPERMATRIX_READY);
+        // Files left over from an earlier run in the same directory must not be picked up
+        Files.deleteIfExists(fastTreeFile);
+        Files.deleteIfExists(readyFile);
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "phylogeny-preview-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        boolean[] pending = {fastTree, neighborJoining};
+        watcher.scheduleWithFixedDelay(() -> {
+            if (pending[1] && Files.exists(readyFile)) {
+                pending[1] = false;
+                try {
+                    publishPreview(buildNeighborJoiningTree(outputDirectory, threads));
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not build the neighbor-joining preview", e);
+                }
+            }
+            if (pending[0] && Files.exists(fastTreeFile)) {
+                pending[0] = false;
+                LOGGER.info("FastTree preview ready: " + fastTreeFile);
+                publishPreview(fastTreeFile);
+            }
+            if (!pending[0] && !pending[1]) {
+                watcher.shutdown();
+            }
+        }, PREVIEW_POLL_SECONDS, PREVIEW_POLL_SECONDS, TimeUnit.SECONDS);
+        return watcher;
+    }
+    
+    private void publishPreview(Path treeFile) {
+        PipelineEventBus.getDefault().publish(
+                new PipelineEvent.ArtifactProduced(PipelineEvent.ArtifactProduced.PREVIEW_TREE, treeFile));
+        Consumer<Path> listener = previewListener;
+        if (listener != null) {
+            listener.accept(treeFile);
         }
-        return path;
+    }
+    
+    /**
+     * Convert the untrimmed supermatrix and its gene partitions to a binary matrix next to it,
+     * for tools that open it later without parsing. Failures are logged only.
+     */
+    private void writeBinaryMatrix(Path outputDirectory) {
+        Path alignment = outputDirectory.resolve(SUPERMATRIX);
+        Path partitions = outputDirectory.resolve(SUPERMATRIX_PARTITIONS);
+        Path binary = outputDirectory.resolve(SUPERMATRIX + BinaryMatrix.EXTENSION);
+        try {
+            if (Files.exists(alignment)) {
+                long start = System.nanoTime();
+                MatrixConverter.toBinary(alignment, Files.exists(partitions) ? partitions : null, binary);
+                LOGGER.info(String.format("Binary matrix written in %.1f s: %s", (System.nanoTime() - start) / 1e9, binary));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not write the binary matrix " + binary, e);
+        }
+    }
+    
+    /**
+     * Build a BIONJ tree from the site patterns of the trimmed supermatrix in the output
+     * directory, compressing and storing them first if needed. The patterns are those of one
+     * partition: trimming removes columns, so the gene boundaries of the untrimmed supermatrix
+     * don't apply, and the distances don't depend on them.
+     *
+     * @return The tree file written
+     */
+    public Path buildNeighborJoiningTree(Path outputDirectory, int threads) throws IOException {
+        long start = System.nanoTime();
+        SitePatterns patterns = SitePatternCompressor.load(outputDirectory.resolve(TRIMMED_SUPERMATRIX));
+        PhyloTree tree = new NeighborJoining(threads).infer(patterns);
+        Path treeFile = outputDirectory.resolve(NJ_TREE);
+        Files.write(treeFile, (tree.toNewick() + "\n").getBytes(StandardCharsets.UTF_8));
+        LOGGER.info(String.format("BIONJ preview of %d taxa x %d sites (%d patterns) built in %.1f s: %s",
+                patterns.getPatterns().getTaxonCount(), patterns.getSiteCount(), patterns.getPatternCount(),
+                (System.nanoTime() - start) / 1e9, treeFile));
+        return treeFile;
+    }
+    
+    /**
+     * Set the listener told about preview trees (BIONJ, FastTree). It is called at most once
+     * per preview and analysis, on a background thread, while the main search is still running.
+     *
+     * @param previewListener Listener, or null for none
+     */
+    public void setPreviewListener(Consumer<Path> previewListener) {
+        this.previewListener = previewListener;
+    }
+    
+    /**
+     * @return The final tree of an analysis written to the given output directory
+     */
+    public String getResultTreeFile(String outputDirectory) {
+        String name = SUPERMATRIX_TREE;
+        if (config != null && config.isGeneTreeMode()) {
+            name = SPECIES_TREE;
+        } else if (config != null && config.isDistributedBootstrap()) {
+            name = Files.exists(Paths.get(outputDirectory, BootstrapService.SUPPORT_TREE))
+                    ? BootstrapService.SUPPORT_TREE : BootstrapService.CONSENSUS_TREE;
+        } else if (config != null && config.isFastTree()) {
+            name = FASTTREE_TREE;
+        }
+        return Paths.get(outputDirectory, name).toString();
+    }
+    
+    /**
+     * Infer one tree per gene alignment as independent single-thread IQ-TREE (or FastTree)
+     * jobs, then summarise the gene trees into a species tree with ASTRAL
+     */
+    private void runGeneTreeAnalysis(Path outputDirectory, int threads) throws IOException, InterruptedException {
+        Path alignmentDirectory = outputDirectory.resolve("gene_alignments");
+        Path geneTreeDirectory = outputDirectory.resolve("gene_trees");
+        Files.createDirectories(geneTreeDirectory);
+        
+        List<Path> alignments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(alignmentDirectory, "*" + GENE_ALIGNMENT_SUFFIX)) {
+            for (Path alignment : stream) {
+                alignments.add(alignment);
+            }
+        }
+        if (alignments.isEmpty()) {
+            throw new IOException("No gene alignments found in " + alignmentDirectory);
+        }
+        
+        // With fewer genes than local CPUs, each IQ-TREE job gets a share of the spare ones
+        int slots = getJobSlots(threads);
+        boolean local = !PhylogenyConfig.BACKEND_SLURM.equals(config.getJobBackend());
+        int jobThreads = local && !config.isFastTree() ? JobScheduler.threadsPerJob(threads, alignments.size()) : 1;
+        String fastTree = config.isFastTree() ? findFastTree() : null;
+        List<JobScheduler.Job> jobs = new ArrayList<>();
+        for (Path alignment : alignments) {
+            String fileName = alignment.getFileName().toString();
+            String gene = fileName.substring(0, fileName.length() - GENE_ALIGNMENT_SUFFIX.length());
+            CommandLine command;
+            if (config.isFastTree()) {
+                command = new CommandLine(fastTree, "-lg", "-gamma", "-quiet")
+                        .addPath(alignment)
+                        .redirectOutput(geneTreeDirectory.resolve(gene + ".treefile"));
+            } else {
+                command = new CommandLine("iqtree")
+                        .add("-s", alignment)
+                        .add("-m", "MFP")
+                        .add("-nt", jobThreads)
+                        .add("-quiet", "-safe", "-redo")
+                        .add("-pre", geneTreeDirectory.resolve(gene));
+            }
+            // Search time grows with alignment size, so use it to start the big genes first
+            jobs.add(new JobScheduler.Job(gene, command, config.getResourceLimits(), jobThreads, Files.size(alignment)));
+        }
+        
+        LOGGER.info("Inferring " + jobs.size() + " gene trees with " + Math.min(slots, jobs.size()) + " concurrent "
+                + (config.isFastTree() ? "FastTree" : "IQ-TREE") + " jobs of " + jobThreads + " threads");
+        List<JobScheduler.JobResult> results = new JobScheduler(slots, createJobBackend(geneTreeDirectory)).runAll(jobs);
+        
+        // Collect the gene trees into one file, one tree per line, as ASTRAL expects
+        Path geneTrees = outputDirectory.resolve(GENE_TREES);
+        int failed = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(geneTrees, StandardCharsets.UTF_8)) {
+            for (JobScheduler.JobResult result : results) {
+                Path treeFile = geneTreeDirectory.resolve(result.getJob().getName() + ".treefile");
+                if (result.isSucceeded() && Files.exists(treeFile)) {
+                    writer.write(new String(Files.readAllBytes(treeFile), StandardCharsets.UTF_8).trim());
+                    writer.newLine();
+                } else {
+                    failed++;
+                }
+            }
+        }
+        if (failed == results.size()) {
+            throw new IOException("All " + failed + " gene tree inferences failed");
+        }
+        if (failed > 0) {
+            LOGGER.warning(failed + " of " + results.size() + " gene tree inferences failed and were left out");
+        }
+        
+        String astral = config.getAstralCommand();
+        CommandLine command = astral.endsWith(".jar")
+                ? new CommandLine("java", "-jar").addPath(Paths.get(astral))
+                : new CommandLine(astral);
+        command.add("-i", geneTrees).add("-o", outputDirectory.resolve(SPECIES_TREE));
+        LOGGER.info("Summarising gene trees with ASTRAL: " + command);
+        processExecutionService.execute(command, config.getResourceLimits(), threads);
+    }
+    
+    /**
+     * @return The configured FastTree command, or else the first of FastTreeMP, FastTree and
+     *         fasttree on the PATH, like script_phylo.py's find_fasttree()
+     */
+    private String findFastTree() {
+        String configured = config.getFastTreeCommand();
+        if (configured != null && !configured.isEmpty()) {
+            return configured;
+        }
+        for (String candidate : FASTTREE_CANDIDATES) {
+            if (PlatformUtils.checkDependency(candidate)) {
+                return candidate;
+            }
+        }
+        // Cluster nodes may have it even if this machine doesn't; a local job fails with a clear error
+        LOGGER.warning("None of " + FASTTREE_CANDIDATES + " found on the PATH");
+        return "FastTree";
     }
 
-    private String buildCommand(List<File> inputFiles) {
-        StringBuilder commandBuilder = new StringBuilder();
+    /**
+     * @param workDirectory Directory of the jobs' output, which holds the cluster job logs
+     * @return The backend per-gene and bootstrap jobs run on
+     */
+    private JobBackend createJobBackend(Path workDirectory) {
+        if (PhylogenyConfig.BACKEND_SLURM.equals(config.getJobBackend())) {
+            return new SlurmJobBackend(workDirectory.resolve("logs"), config.getClusterPartition());
+        }
+        return new LocalJobBackend(processExecutionService);
+    }
+    
+    /**
+     * @return Jobs to run at once: one per local thread, or the configured number of queued cluster jobs
+     */
+    private int getJobSlots(int threads) {
+        return PhylogenyConfig.BACKEND_SLURM.equals(config.getJobBackend()) ? config.getClusterSlots() : threads;
+    }
+    
+    private CommandLine buildCommand(List<File> inputFiles) {
         String pythonExec = PlatformUtils.isWindows() ? "python" : "python3";
         
         if (config == null || config.getPhyloScriptPath() == null) {
@@ -124,20 +456,17 @@ public class PhylogenyService {
             return null;
         }
         
-        commandBuilder.append(pythonExec)
-                     .append(" ")
-                     .append(config.getPhyloScriptPath())
-                     .append(" ");
+        CommandLine command = new CommandLine(pythonExec, config.getPhyloScriptPath());
 
         for (File file : inputFiles) {
-            commandBuilder.append(getPlatformPath(file.getAbsolutePath())).append(" ");
+            command.addPath(file.getAbsoluteFile().toPath());
         }
 
         if (config.getOutgroup() != null && !config.getOutgroup().isEmpty()) {
-            commandBuilder.append("-og ").append(config.getOutgroup());
+            command.add("-og", config.getOutgroup());
         }
 
-        return commandBuilder.toString().trim();
+        return command;
     }
     
     /**
@@ -0,0 +1,161 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.GenomeStats;
+import org.biopipelinerunner.models.PipelineEvent;
+import org.biopipelinerunner.utils.Decompressor;
+import org.biopipelinerunner.utils.GenomeScanner;
+import org.biopipelinerunner.utils.PipelineEventBus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Pre-flight check of the genomes in an input directory before BUSCO is run on them. Every
+ * genome is scanned, the statistics are written to a report, and files that are malformed or
+ * duplicates of another genome are left out. Compressed genomes are checked once they have
+ * been decompressed, see {@link #check(Path, int)}.
+ */
+public class PreflightService {
+    public static final String REPORT = "preflight.tsv";
+    private static final Logger LOGGER = Logger.getLogger(PreflightService.class.getName());
+
+    private final List<GenomeStats> results = new ArrayList<>();
+    private final Map<String, Path> firstByHash = new HashMap<>();
+    private Path report;
+
+    /**
+     * Scan the plain genomes of a directory and list the genomes to run BUSCO on
+     *
+     * @param inputDirectory Directory of genome files
+     * @param workingDirectory Run directory for the report
+     * @param threads Number of scanning threads
+     * @return The usable plain genomes and all compressed ones, sorted by name
+     * @throws IOException if the genomes can't be read or none of them is usable
+     */
+    public synchronized List<Path> run(Path inputDirectory, Path workingDirectory, int threads)
+            throws IOException, InterruptedException {
+        List<Path> files = listGenomes(inputDirectory);
+        if (files.isEmpty()) {
+            throw new IOException("No genome files in " + inputDirectory);
+        }
+        List<Path> plain = new ArrayList<>();
+        for (Path file : files) {
+            if (Decompressor.detect(file) == Decompressor.Format.NONE) {
+                plain.add(file);
+            }
+        }
+        long start = System.nanoTime();
+        List<GenomeStats> scanned = GenomeScanner.scan(plain, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        startReport(workingDirectory);
+
+        long bytes = 0;
+        List<Path> genomes = new ArrayList<>(files);
+        for (GenomeStats stats : scanned) {
+            bytes += stats.getSize();
+            record(stats);
+            if (!stats.isUsable()) {
+                genomes.remove(stats.getFile());
+            }
+        }
+        LOGGER.info(String.format("Pre-flight scanned %d genomes (%.1f GB) in %.1f s, %d usable, %d compressed",
+                scanned.size(), bytes / 1e9, seconds, genomes.size() - (files.size() - plain.size()),
+                files.size() - plain.size()));
+        writeReport(results, report);
+        PipelineEventBus.getDefault().publish(
+                new PipelineEvent.ArtifactProduced(PipelineEvent.ArtifactProduced.PREFLIGHT_REPORT, report));
+        if (genomes.isEmpty()) {
+            throw new IOException("None of the " + files.size() + " genome files in " + inputDirectory + " is usable");
+        }
+        return genomes;
+    }
+
+    /**
+     * Forget the genomes checked so far and start a new report, for genomes that are only
+     * checked one at a time with {@link #check(Path, int)}
+     *
+     * @param workingDirectory Run directory for the report
+     */
+    public synchronized void startReport(Path workingDirectory) {
+        results.clear();
+        firstByHash.clear();
+        report = workingDirectory.resolve(REPORT);
+    }
+
+    /**
+     * Check a genome that only became available later, e.g. once it was decompressed, against
+     * the genomes checked so far, and add it to the report
+     *
+     * @param genome Plain genome file
+     * @param threads Number of scanning threads
+     * @return Its statistics; not usable if malformed or a duplicate of a genome checked before
+     */
+    public GenomeStats check(Path genome, int threads) throws IOException, InterruptedException {
+        GenomeStats stats = GenomeScanner.scan(Collections.singletonList(genome), threads).get(0);
+        synchronized (this) {
+            stats = record(stats);
+            if (report != null) {
+                writeReport(results, report);
+            }
+        }
+        return stats;
+    }
+
+    private GenomeStats record(GenomeStats stats) {
+        if (stats.getHash() != null) {
+            Path first = firstByHash.putIfAbsent(stats.getHash(), stats.getFile());
+            if (first != null && stats.isUsable()) {
+                stats = stats.withProblem("duplicate of " + first.getFileName());
+            }
+        }
+        if (!stats.isUsable()) {
+            LOGGER.warning("Skipping " + stats.getFile().getFileName() + ": " + stats.getProblem());
+        }
+        results.add(stats);
+        return stats;
+    }
+
+    /**
+     * @return Statistics of the genomes checked since the latest run started
+     */
+    public synchronized List<GenomeStats> getLastResults() {
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * @return The regular, non-hidden files of a directory, sorted by name
+     */
+    static List<Path> listGenomes(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (Files.isRegularFile(path) && !path.getFileName().toString().startsWith(".")) {
+                    files.add(path);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    static void writeReport(List<GenomeStats> results, Path report) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("file\tbytes\tsequences\tlength\tN50\tGC_percent\tN_percent\tsha256\tstatus");
+        for (GenomeStats stats : results) {
+            lines.add(String.format("%s\t%d\t%d\t%d\t%d\t%.2f\t%.4f\t%s\t%s", stats.getFile().getFileName(),
+                    stats.getSize(), stats.getSequenceCount(), stats.getTotalLength(), stats.getN50(),
+                    stats.getGcPercent(), stats.getNPercent(), stats.getHash() != null ? stats.getHash() : "",
+                    stats.isUsable() ? "ok" : stats.getProblem()));
+        }
+        Files.write(report, lines, StandardCharsets.UTF_8);
+    }
+}
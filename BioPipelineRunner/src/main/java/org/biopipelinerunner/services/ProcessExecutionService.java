@@ -1,6 +1,9 @@
 package org.biopipelinerunner.services;
 
+import org.biopipelinerunner.models.ResourceLimits;
+import org.biopipelinerunner.utils.CommandLine;
 import org.biopipelinerunner.utils.CommandLineUtils;
+import org.biopipelinerunner.utils.PlatformUtils;
 
 import java.io.IOException;
 
@@ -15,6 +18,11 @@ public class ProcessExecutionService {
         this.commandLineUtils = new CommandLineUtils();
     }
 
+    /**
+     * @deprecated Runs the command through a shell; use
+     *             {@link #execute(CommandLine, ResourceLimits, int)}
+     */
+    @Deprecated
     public String executeCommand(String command) {
         try {
             return CommandLineUtils.executeCommand(command);
@@ -23,6 +31,20 @@ public class ProcessExecutionService {
         }
     }
     
+    /**
+     * Run a command line directly, without a shell, with per-job resource limits
+     *
+     * @param commandLine The command to execute
+     * @param limits Limits for the job, or null to run unrestricted
+     * @param threads Number of threads the job runs
+     * @return Command output, empty if it went to a file
+     * @throws IOException if the command fails or is killed for exceeding its limits
+     * @throws InterruptedException if the command execution is interrupted
+     */
+    public String execute(CommandLine commandLine, ResourceLimits limits, int threads) throws IOException, InterruptedException {
+        return CommandLineUtils.execute(commandLine, limits, threads);
+    }
+
     public String executeCommandWithArgs(String... args) {
         try {
             return CommandLineUtils.executeCommandWithArgs(args);
@@ -32,16 +54,14 @@ public class ProcessExecutionService {
     }
     
     public boolean isProcessAvailable(String processName) {
+        String lookup = PlatformUtils.isWindows() && !PlatformUtils.isWslInstalled() ? "where" : "which";
         try {
-            String command;
-            if (org.biopipelinerunner.utils.PlatformUtils.isWindows()) {
-                command = "where " + processName;
-            } else {
-                command = "which " + processName;
-            }
-            executeCommand(command);
+            execute(new CommandLine(lookup, processName), null, 0);
             return true;
-        } catch (RuntimeException e) {
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
     }
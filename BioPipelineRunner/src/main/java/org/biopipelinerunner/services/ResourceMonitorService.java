@@ -0,0 +1,387 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.PipelineEvent;
+import org.biopipelinerunner.models.ToolUsage;
+import org.biopipelinerunner.utils.CommandLineUtils;
+import org.biopipelinerunner.utils.PipelineEventBus;
+import org.biopipelinerunner.utils.PlatformUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Samples CPU, resident memory and I/O of every process started by the application.
+ * The process tree is walked with {@link ProcessHandle}; on Linux the counters come from
+ * /proc, elsewhere only CPU time is available. Processes are grouped by tool name.
+ *
+ * <p>The /proc files of each process are opened once and re-read in place into a shared
+ * buffer on every sample, and parsed without building strings; only the name of a new process
+ * is decoded. Apart from the {@link ProcessHandle} walk of the process tree, a steady-state
+ * sample therefore doesn't allocate.</p>
+ */
+public class ResourceMonitorService {
+    private static final Logger LOGGER = Logger.getLogger(ResourceMonitorService.class.getName());
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    private final Map<String, ToolUsage> toolsByName = new HashMap<>();
+    private final List<ToolUsage> tools = new CopyOnWriteArrayList<>();
+    private final Map<Long, ProcessState> processes = new HashMap<>();
+    private final Consumer<ProcessHandle> processSampler = this::sampleProcess;
+    private final byte[] buffer = new byte[4096];
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private final boolean useProc = PlatformUtils.isLinux();
+
+    private ScheduledExecutorService scheduler;
+    private volatile Consumer<List<ToolUsage>> listener;
+    private long clockTicksPerSecond = 100;
+    private long pageSize = 4096;
+    private long generation;
+    private long lastSampleNanos;
+    private double elapsedSeconds;
+
+    /**
+     * Start sampling once per second on a background daemon thread
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        if (useProc) {
+            clockTicksPerSecond = readSystemConstant("CLK_TCK", clockTicksPerSecond);
+            pageSize = readSystemConstant("PAGESIZE", pageSize);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "resource-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastSampleNanos = 0;
+        scheduler.scheduleAtFixedRate(this::sampleSafely, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop sampling; the collected history is kept until the next {@link #start()}
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        for (ProcessState state : processes.values()) {
+            state.close();
+        }
+        processes.clear();
+    }
+
+    /**
+     * Register a callback invoked on the sampler thread after every sample
+     *
+     * @param listener Receives the live list of tools; must not block
+     */
+    public void setListener(Consumer<List<ToolUsage>> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return Live, thread-safe view of the tools seen so far
+     */
+    public List<ToolUsage> getTools() {
+        return tools;
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Resource sampling failed", e);
+        }
+    }
+
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        elapsedSeconds = lastSampleNanos == 0 ? SAMPLE_INTERVAL_MS / 1000.0 : (now - lastSampleNanos) / 1e9;
+        lastSampleNanos = now;
+        generation++;
+
+        ProcessHandle.current().descendants().forEach(processSampler);
+
+        Iterator<ProcessState> stateIterator = processes.values().iterator();
+        while (stateIterator.hasNext()) {
+            ProcessState state = stateIterator.next();
+            if (state.generation != generation) {
+                state.close();
+                stateIterator.remove();
+            }
+        }
+
+        for (ToolUsage usage : tools) {
+            usage.commitSample();
+            if (usage.getIdleSamples() >= ToolUsage.HISTORY_SIZE) {
+                tools.remove(usage);
+                toolsByName.remove(usage.getToolName());
+            }
+        }
+
+        Consumer<List<ToolUsage>> currentListener = listener;
+        if (currentListener != null) {
+            currentListener.accept(tools);
+        }
+        PipelineEventBus events = PipelineEventBus.getDefault();
+        for (ToolUsage usage : tools) {
+            if (usage.getProcessCount() > 0) {
+                events.publish(new PipelineEvent.ResourceSample(usage.getToolName(), usage.getProcessCount(),
+                        usage.getLatestCpuPercent(), usage.getLatestRssMegabytes(),
+                        usage.getLatestIoMegabytesPerSecond()));
+            }
+        }
+    }
+
+    private void sampleProcess(ProcessHandle handle) {
+        long pid = handle.pid();
+        ProcessState state = processes.get(pid);
+        boolean isNew = state == null;
+        if (isNew) {
+            String name = useProc ? readCommandName(pid) : null;
+            if (name == null) {
+                name = handle.info().command()
+                        .map(command -> command.substring(Math.max(command.lastIndexOf('/'), command.lastIndexOf('\\')) + 1))
+                        .orElse("pid " + pid);
+            }
+            state = new ProcessState(toolUsageFor(name));
+            if (useProc) {
+                state.stat = openProcFile(pid, "stat");
+                state.io = openProcFile(pid, "io");
+            }
+            processes.put(pid, state);
+        }
+        state.generation = generation;
+
+        long cpuNanos;
+        long rssBytes = 0;
+        long ioBytes = 0;
+        if (useProc) {
+            int length = readProcFile(state.stat);
+            if (length < 0) {
+                return;
+            }
+            cpuNanos = parseStatCpuTicks(buffer, length) * 1_000_000_000L / clockTicksPerSecond;
+            rssBytes = parseStatRssPages(buffer, length) * pageSize;
+            length = readProcFile(state.io);
+            if (length > 0) {
+                ioBytes = parseIoBytes(buffer, length);
+            }
+        } else {
+            cpuNanos = handle.info().totalCpuDuration().map(Duration::toNanos).orElse(0L);
+        }
+
+        double cpuPercent = 0;
+        double ioRate = 0;
+        if (!isNew) {
+            cpuPercent = Math.max(0, cpuNanos - state.cpuNanos) / (elapsedSeconds * 1e9) * 100.0;
+            ioRate = Math.max(0, ioBytes - state.ioBytes) / BYTES_PER_MEGABYTE / elapsedSeconds;
+        }
+        state.cpuNanos = cpuNanos;
+        state.ioBytes = ioBytes;
+        state.usage.accumulate(cpuPercent, rssBytes / BYTES_PER_MEGABYTE, ioRate);
+    }
+
+    private ToolUsage toolUsageFor(String name) {
+        ToolUsage usage = toolsByName.get(name);
+        if (usage == null) {
+            usage = new ToolUsage(name);
+            toolsByName.put(name, usage);
+            tools.add(usage);
+        }
+        return usage;
+    }
+
+    private String readCommandName(long pid) {
+        FileChannel comm = openProcFile(pid, "comm");
+        if (comm == null) {
+            return null;
+        }
+        int length = readProcFile(comm);
+        closeQuietly(comm);
+        while (length > 0 && buffer[length - 1] == '\n') {
+            length--;
+        }
+        return length > 0 ? new String(buffer, 0, length) : null;
+    }
+
+    /**
+     * @return /proc/&lt;pid&gt;/&lt;file&gt; opened for reading, or null if the process is gone
+     *         or the file is unreadable
+     */
+    private static FileChannel openProcFile(long pid, String file) {
+        try {
+            return FileChannel.open(Paths.get("/proc", Long.toString(pid), file), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read a /proc file from its start into the shared buffer. The kernel regenerates the
+     * content on every read, so an open file can be read again for each sample.
+     *
+     * @return Number of bytes read, or -1 if the file is null, the process is gone or the file
+     *         is unreadable
+     */
+    private int readProcFile(FileChannel channel) {
+        if (channel == null) {
+            return -1;
+        }
+        try {
+            byteBuffer.clear();
+            // A positional read advances the buffer but not the channel
+            while (byteBuffer.hasRemaining()) {
+                if (channel.read(byteBuffer, byteBuffer.position()) <= 0) {
+                    break;
+                }
+            }
+            return byteBuffer.position();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing was written
+            }
+        }
+    }
+
+    /**
+     * @return utime + stime in clock ticks from the content of /proc/&lt;pid&gt;/stat
+     */
+    static long parseStatCpuTicks(byte[] data, int length) {
+        int fieldsStart = statFieldsStart(data, length);
+        return parseField(data, length, fieldsStart, 14 - 3) + parseField(data, length, fieldsStart, 15 - 3);
+    }
+
+    /**
+     * @return Resident set size in pages from the content of /proc/&lt;pid&gt;/stat
+     */
+    static long parseStatRssPages(byte[] data, int length) {
+        return parseField(data, length, statFieldsStart(data, length), 24 - 3);
+    }
+
+    /**
+     * @return rchar + wchar from the content of /proc/&lt;pid&gt;/io
+     */
+    static long parseIoBytes(byte[] data, int length) {
+        // First two lines are rchar and wchar
+        int firstLineEnd = indexOf(data, length, 0, (byte) '\n');
+        if (firstLineEnd < 0) {
+            return parseNumberAfterColon(data, length, 0);
+        }
+        return parseNumberAfterColon(data, length, 0) + parseNumberAfterColon(data, length, firstLineEnd + 1);
+    }
+
+    /**
+     * The command name in field 2 may contain spaces and parentheses, so the remaining fields
+     * start after its last closing parenthesis
+     */
+    private static int statFieldsStart(byte[] data, int length) {
+        return lastIndexOf(data, length, (byte) ')') + 2;
+    }
+
+    private static long parseField(byte[] data, int length, int start, int fieldIndex) {
+        int position = start;
+        for (int field = 0; field < fieldIndex && position < length; position++) {
+            if (data[position] == ' ') {
+                field++;
+            }
+        }
+        return parseLong(data, length, position);
+    }
+
+    private static long parseNumberAfterColon(byte[] data, int length, int start) {
+        int colon = indexOf(data, length, start, (byte) ':');
+        if (colon < 0) {
+            return 0;
+        }
+        int position = colon + 1;
+        while (position < length && data[position] == ' ') {
+            position++;
+        }
+        return parseLong(data, length, position);
+    }
+
+    private static long parseLong(byte[] data, int length, int position) {
+        long value = 0;
+        while (position < length && data[position] >= '0' && data[position] <= '9') {
+            value = value * 10 + (data[position] - '0');
+            position++;
+        }
+        return value;
+    }
+
+    private static int indexOf(byte[] data, int length, int start, byte target) {
+        for (int i = start; i < length; i++) {
+            if (data[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] data, int length, byte target) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (data[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long readSystemConstant(String name, long defaultValue) {
+        try {
+            return Long.parseLong(CommandLineUtils.executeCommandWithArgs("getconf", name).trim());
+        } catch (IOException | NumberFormatException e) {
+            return defaultValue;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return defaultValue;
+        }
+    }
+
+    private static final class ProcessState {
+        private final ToolUsage usage;
+        private long cpuNanos;
+        private long ioBytes;
+        private long generation;
+
+        private FileChannel stat;
+        private FileChannel io;
+
+        private ProcessState(ToolUsage usage) {
+            this.usage = usage;
+        }
+
+        private void close() {
+            closeQuietly(stat);
+            closeQuietly(io);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.RetentionPolicy;
+import org.biopipelinerunner.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Prunes the per-run working directories (&lt;project&gt;_&lt;yyyyMMdd_HHmmss&gt;) according to a
+ * {@link RetentionPolicy}. Runs that are still in progress are never touched, and whole runs
+ * are only deleted when the policy asks for it; each such deletion is logged as a warning.
+ */
+public class RetentionService {
+    private static final Logger LOGGER = Logger.getLogger(RetentionService.class.getName());
+    private static final Pattern RUN_DIRECTORY = Pattern.compile("(.+)_(\\d{8}_\\d{6})");
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private final Path baseDirectory;
+    private final Set<Path> activeRuns = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "retention");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private volatile RetentionPolicy policy;
+
+    public RetentionService() {
+        this(Paths.get(System.getProperty("user.home"), "BioPipelineRunner"), new RetentionPolicy());
+    }
+
+    public RetentionService(Path baseDirectory, RetentionPolicy policy) {
+        this.baseDirectory = baseDirectory;
+        this.policy = policy;
+    }
+
+    public RetentionPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(RetentionPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Protect a run directory from pruning while its pipeline is running
+     */
+    public void markActive(Path runDirectory) {
+        activeRuns.add(runDirectory.toAbsolutePath().normalize());
+    }
+
+    public void markFinished(Path runDirectory) {
+        activeRuns.remove(runDirectory.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Apply the policy on a low-priority background thread
+     *
+     * @return Future holding the number of bytes freed
+     */
+    public Future<Long> applyAsync() {
+        return executor.submit(() -> {
+            try {
+                return apply(LocalDateTime.now());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Retention cleanup failed", e);
+                return 0L;
+            }
+        });
+    }
+
+    /**
+     * Apply the policy to all run directories
+     *
+     * @param now Reference time for age-based rules
+     * @return Number of bytes freed
+     * @throws IOException if the base directory cannot be listed
+     */
+    public long apply(LocalDateTime now) throws IOException {
+        if (!Files.isDirectory(baseDirectory)) {
+            return 0;
+        }
+        RetentionPolicy rules = policy;
+        Map<String, List<Run>> runsByProject = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(baseDirectory)) {
+            for (Path path : stream) {
+                Run run = parseRun(path);
+                if (run != null && !activeRuns.contains(path.toAbsolutePath().normalize())) {
+                    runsByProject.computeIfAbsent(run.project, project -> new ArrayList<>()).add(run);
+                }
+            }
+        }
+
+        long freed = 0;
+        LocalDateTime intermediateCutoff = now.minusDays(rules.getIntermediateMaxAgeDays());
+        for (List<Run> runs : runsByProject.values()) {
+            runs.sort(Comparator.comparing((Run run) -> run.timestamp).reversed());
+            if (rules.getKeepLastRuns() > 0 && runs.size() > rules.getKeepLastRuns()) {
+                // Whole runs include the final trees, so say exactly what goes before it goes
+                List<Run> expired = runs.subList(rules.getKeepLastRuns(), runs.size());
+                LOGGER.warning("Deleting " + expired.size() + " runs of project " + expired.get(0).project
+                        + " beyond the newest " + rules.getKeepLastRuns() + ": " + expired.stream()
+                        .map(run -> run.directory.getFileName().toString()).collect(Collectors.joining(", ")));
+            }
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = runs.get(i);
+                if (rules.getKeepLastRuns() > 0 && i >= rules.getKeepLastRuns()) {
+                    freed += delete(run.directory);
+                } else if (rules.getIntermediateMaxAgeDays() > 0 && run.timestamp.isBefore(intermediateCutoff)) {
+                    for (String intermediate : rules.getIntermediatePaths()) {
+                        freed += delete(run.directory.resolve(intermediate));
+                    }
+                }
+            }
+        }
+        if (freed > 0) {
+            LOGGER.info("Retention cleanup freed " + (freed / (1024 * 1024)) + " MB");
+        }
+        return freed;
+    }
+
+    private static Run parseRun(Path path) {
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            return null;
+        }
+        Matcher matcher = RUN_DIRECTORY.matcher(path.getFileName().toString());
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            return new Run(path, matcher.group(1), LocalDateTime.parse(matcher.group(2), TIMESTAMP));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static long delete(Path path) {
+        try {
+            long bytes = FileUtils.deleteTree(path);
+            if (bytes < 0) {
+                LOGGER.warning("Could not fully delete " + path);
+                return 0;
+            }
+            return bytes;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not delete " + path, e);
+            return 0;
+        }
+    }
+
+    private static final class Run {
+        private final Path directory;
+        private final String project;
+        private final LocalDateTime timestamp;
+
+        private Run(Path directory, String project, LocalDateTime timestamp) {
+            this.directory = directory;
+            this.project = project;
+            this.timestamp = timestamp;
+        }
+    }
+}
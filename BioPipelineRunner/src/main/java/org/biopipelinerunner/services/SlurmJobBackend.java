@@ -0,0 +1,58 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.ResourceLimits;
+import org.biopipelinerunner.utils.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+/**
+ * Submits jobs to a Slurm cluster with {@code sbatch --wait}, which returns when the job ends
+ * and fails if the job does. Job commands must only use paths on storage shared with the
+ * compute nodes. Each job gets as many CPUs as it runs threads, and the memory limit if one is
+ * set; its output goes to a log file per job.
+ */
+public class SlurmJobBackend implements JobBackend {
+    private static final Logger LOGGER = Logger.getLogger(SlurmJobBackend.class.getName());
+
+    private final Path logDirectory;
+    private final String partition;
+    private final ProcessExecutionService processExecutionService;
+
+    /**
+     * @param logDirectory Shared directory for the job logs
+     * @param partition Partition to submit to, or null for the cluster default
+     */
+    public SlurmJobBackend(Path logDirectory, String partition) {
+        this(logDirectory, partition, new ProcessExecutionService());
+    }
+
+    public SlurmJobBackend(Path logDirectory, String partition, ProcessExecutionService processExecutionService) {
+        this.logDirectory = logDirectory;
+        this.partition = partition;
+        this.processExecutionService = processExecutionService;
+    }
+
+    @Override
+    public String run(JobScheduler.Job job) throws IOException, InterruptedException {
+        Files.createDirectories(logDirectory);
+        CommandLine command = new CommandLine("sbatch", "--wait", "--parsable");
+        command.add("--job-name=" + job.getName());
+        command.add("--cpus-per-task=" + Math.max(1, job.getThreads()));
+        ResourceLimits limits = job.getLimits();
+        if (limits != null && limits.getMemoryMaxBytes() > 0) {
+            command.add("--mem=" + Math.max(1, limits.getMemoryMaxBytes() / (1024 * 1024)) + "M");
+        }
+        if (partition != null && !partition.isEmpty()) {
+            command.add("--partition=" + partition);
+        }
+        command.add("--output=" + CommandLine.toolPath(logDirectory.resolve(job.getName() + ".%j.log")));
+        // The job script is the only place a shell is still needed
+        command.add("--wrap=" + job.getCommand().toShellCommand());
+        LOGGER.fine("Submitting: " + command);
+        // sbatch itself only waits; the job's resources are enforced by Slurm
+        return processExecutionService.execute(command, null, 1);
+    }
+}
@@ -1,96 +1,221 @@
 package org.biopipelinerunner.services;
 
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
-import org.biopipelinerunner.utils.CommandLineUtils;
-import org.biopipelinerunner.utils.FileUtils;
-import org.biopipelinerunner.utils.PlatformUtils;
+import org.biopipelinerunner.controllers.TreeCanvas;
+import org.biopipelinerunner.models.PhyloTree;
+import org.biopipelinerunner.models.PipelineEvent;
+import org.biopipelinerunner.utils.NewickParser;
+import org.biopipelinerunner.utils.PipelineEventBus;
+import org.biopipelinerunner.utils.TreeExporter;
+import org.biopipelinerunner.utils.TreeLayout;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class VisualizationService {
-    private final ProcessExecutionService processExecutionService;
-    
-    public VisualizationService() {
-        this.processExecutionService = new ProcessExecutionService();
-    }
+    private static final Logger LOGGER = Logger.getLogger(VisualizationService.class.getName());
+    private static final double TREE_VIEW_HEIGHT = 600;
+    private static final double DEFAULT_IMAGE_WIDTH = 600;
+    private static final double PLACEHOLDER_HEIGHT = 80;
+    private static final int THUMBNAIL_CACHE_SIZE = 64;
+    private static final String[] TREE_EXTENSIONS = {".contree", ".treefile", ".nwk", ".newick", ".tre", ".tree", ".nex", ".nexus"};
+
+    private final ThumbnailCache<Image> thumbnailCache = new ThumbnailCache<>(THUMBNAIL_CACHE_SIZE);
 
     public void displayTree(String treeFilePath, VBox container) {
         File treeFile = new File(treeFilePath);
-        if (treeFile.exists()) {
-            Image treeImage = new Image(treeFile.toURI().toString());
-            ImageView imageView = new ImageView(treeImage);
-            imageView.setFitWidth(container.getWidth() * 0.9);
-            imageView.setPreserveRatio(true);
-            container.getChildren().add(imageView);
+        if (!treeFile.exists()) {
+            LOGGER.warning("Tree file not found: " + treeFilePath);
+        } else if (isTreeFile(treeFile)) {
+            try {
+                TreeCanvas treeCanvas = new TreeCanvas();
+                treeCanvas.setPrefSize(container.getWidth() * 0.9, TREE_VIEW_HEIGHT);
+                treeCanvas.setTree(NewickParser.readTree(treeFile.toPath()));
+                container.getChildren().add(treeCanvas);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Error reading tree file: " + treeFilePath, e);
+            }
         } else {
-            System.err.println("Tree file not found: " + treeFilePath);
+            displayFile(treeFile, container);
+        }
+    }
+
+    private static boolean isTreeFile(File file) {
+        String name = file.getName().toLowerCase();
+        for (String extension : TREE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
         }
+        return false;
     }
 
     public void displayResults(String resultsDirectory, VBox container) {
         File resultsDir = new File(resultsDirectory);
-        if (resultsDir.exists() && resultsDir.isDirectory()) {
-            for (File file : resultsDir.listFiles()) {
+        File[] files = resultsDir.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
                 if (file.getName().endsWith(".png") || file.getName().endsWith(".pdf")) {
                     displayFile(file, container);
                 }
             }
         } else {
-            System.err.println("Results directory not found: " + resultsDirectory);
+            LOGGER.warning("Results directory not found: " + resultsDirectory);
         }
     }
 
+    /**
+     * Render the tree as PDF, PNG and SVG figures in the output directory: "tree" (branch
+     * lengths and support), "tree_nolength", "tree_nonode" and "tree_no", as tree.py did
+     *
+     * @param treeFilePath Newick or NEXUS tree file
+     * @param outputDirectory Directory for the figures
+     * @param outgroup Leaf name(s) to root on, comma separated; may be empty
+     * @return true if all figures were written
+     */
     public boolean generateTreeVisualization(String treeFilePath, String outputDirectory, String outgroup) {
         try {
-            Path scriptPath = Paths.get(System.getProperty("user.dir"), "scripts", "tree.py");
-            File scriptFile = new File(scriptPath.toString());
-            
-            if (!scriptFile.exists()) {
-                // Try to find the script in the resources
-                String resourcePath = "/scripts/tree.py";
-                File tempFile = File.createTempFile("tree", ".py");
-                try {
-                    FileUtils.copyResourceToFile(resourcePath, tempFile);
-                    scriptFile = tempFile;
-                } catch (IOException e) {
-                    System.err.println("Could not find tree.py script: " + e.getMessage());
-                    return false;
+            PhyloTree tree = NewickParser.readTree(Paths.get(treeFilePath));
+            if (outgroup != null && !outgroup.trim().isEmpty()) {
+                if (tree.reroot(outgroup.trim().split("\\s*,\\s*"))) {
+                    LOGGER.info("Set outgroup to " + outgroup);
+                } else {
+                    LOGGER.warning("Could not set outgroup " + outgroup);
                 }
             }
-            
-            String pythonExecutable = PlatformUtils.isWindows() && PlatformUtils.isWslInstalled() ? 
-                    "python3" : (PlatformUtils.isWindows() ? "python" : "python3");
-            
-            String command;
-            if (outgroup != null && !outgroup.isEmpty()) {
-                command = pythonExecutable + " " + scriptFile.getAbsolutePath() + " " + outgroup;
-            } else {
-                command = pythonExecutable + " " + scriptFile.getAbsolutePath();
+            tree.ladderize(true);
+
+            TreeLayout phylogram = new TreeLayout(tree, true);
+            TreeLayout cladogram = new TreeLayout(tree, false);
+            Path outputPath = Paths.get(outputDirectory);
+            for (String format : new String[] {".pdf", ".png", ".svg"}) {
+                TreeExporter.export(phylogram, outputPath.resolve("tree" + format), true);
+                TreeExporter.export(cladogram, outputPath.resolve("tree_nolength" + format), true);
+                TreeExporter.export(phylogram, outputPath.resolve("tree_nonode" + format), false);
+                TreeExporter.export(cladogram, outputPath.resolve("tree_no" + format), false);
             }
-            
-            processExecutionService.executeCommand("cd " + outputDirectory + " && " + command);
+            PipelineEventBus.getDefault().publish(
+                    new PipelineEvent.ArtifactProduced(PipelineEvent.ArtifactProduced.TREE_FIGURES, outputPath));
             return true;
         } catch (Exception e) {
-            System.err.println("Error generating tree visualization: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Error generating tree visualization", e);
             return false;
         }
     }
 
+    /**
+     * Show an image without blocking the FX thread: a placeholder is added right away and
+     * replaced by the image once it has been decoded in the background at display size.
+     * PDFs can't be decoded by JavaFX and are listed by name only.
+     */
     private void displayFile(File file, VBox container) {
-        try {
-            Image fileImage = new Image(file.toURI().toString());
-            ImageView imageView = new ImageView(fileImage);
-            imageView.setFitWidth(container.getWidth() * 0.9);
-            imageView.setPreserveRatio(true);
-            container.getChildren().add(imageView);
-        } catch (Exception e) {
-            System.err.println("Error displaying file: " + file.getPath() + ": " + e.getMessage());
+        double width = container.getWidth() > 0 ? container.getWidth() * 0.9 : DEFAULT_IMAGE_WIDTH;
+        Label placeholder = new Label(file.getName());
+        placeholder.setMinSize(width, PLACEHOLDER_HEIGHT);
+        placeholder.setAlignment(Pos.CENTER);
+        placeholder.getStyleClass().add("image-placeholder");
+        if (file.getName().endsWith(".pdf")) {
+            placeholder.setText(file.getName() + " (PDF)");
+            container.getChildren().add(placeholder);
+            return;
+        }
+
+        Image image = loadImage(file, width, 0);
+        ImageView imageView = new ImageView(image);
+        imageView.setPreserveRatio(true);
+        imageView.setFitWidth(width);
+        StackPane pane = new StackPane(imageView);
+        container.getChildren().add(pane);
+        if (image.getProgress() < 1) {
+            ProgressIndicator indicator = new ProgressIndicator();
+            indicator.progressProperty().bind(image.progressProperty());
+            pane.getChildren().addAll(placeholder, indicator);
+            image.progressProperty().addListener((observable, oldValue, newValue) -> {
+                if (newValue.doubleValue() >= 1) {
+                    pane.getChildren().removeAll(placeholder, indicator);
+                }
+            });
+        }
+        image.errorProperty().addListener((observable, oldValue, error) -> {
+            if (error) {
+                LOGGER.log(Level.WARNING, "Error displaying file: " + file.getPath(), image.getException());
+                thumbnailCache.remove(file, width, 0);
+            }
+        });
+    }
+
+    /**
+     * Get an image scaled to the requested size, decoding it in the background the first time.
+     * Images are cached by path, modification time and size, so a file that is rewritten by a
+     * later run is decoded again.
+     *
+     * @param file Image file
+     * @param width Requested width in pixels, 0 to derive it from the height
+     * @param height Requested height in pixels, 0 to derive it from the width
+     * @return The image, possibly still loading
+     */
+    public Image loadImage(File file, double width, double height) {
+        return thumbnailCache.get(file, width, height, image -> !image.isError(),
+                () -> new Image(file.toURI().toString(), width, height, true, true, true));
+    }
+
+    /**
+     * Least recently used cache of decoded images keyed by path, modification time and size.
+     * Decoded thumbnails are small, so a fixed entry count bounds the heap.
+     */
+    static final class ThumbnailCache<V> {
+        private final Map<String, V> entries;
+
+        ThumbnailCache(int capacity) {
+            entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        /**
+         * @param reusable Whether a cached value can still be used
+         * @param loader Creates the value when there is no usable one
+         * @return The cached or newly created value
+         */
+        synchronized V get(File file, double width, double height, Predicate<V> reusable, Supplier<V> loader) {
+            String key = key(file, width, height);
+            V value = entries.get(key);
+            if (value == null || !reusable.test(value)) {
+                value = loader.get();
+                entries.put(key, value);
+            }
+            return value;
+        }
+
+        synchronized void remove(File file, double width, double height) {
+            entries.remove(key(file, width, height));
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        private static String key(File file, double width, double height) {
+            return file.getAbsolutePath() + '|' + file.lastModified() + '|' + Math.round(width) + 'x' + Math.round(height);
         }
     }
     
@@ -0,0 +1,286 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.BuscoConfig;
+import org.biopipelinerunner.models.GenomeStats;
+import org.biopipelinerunner.models.WatchConfig;
+import org.biopipelinerunner.utils.Decompressor;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches a project's input directory for new genome files. Each file is checked and run
+ * through BUSCO once it has been completely copied, i.e. once its size and modification time
+ * have stayed the same for a while. The tree is rebuilt in batches: after a number of new
+ * genomes, and at night if any genome arrived since the last rebuild.
+ *
+ * <p>Genomes are analysed one at a time on a single background thread, so BUSCO work is
+ * spread over the time the files arrive. A genome whose BUSCO output already exists is not
+ * analysed again, which makes restarting the watch cheap.</p>
+ */
+public class WatchFolderService {
+    private static final Logger LOGGER = Logger.getLogger(WatchFolderService.class.getName());
+    private static final long POLL_MILLIS = 1000;
+
+    private final BuscoService buscoService;
+    private final PreflightService preflightService;
+    private Thread watchThread;
+    private ExecutorService ingestExecutor;
+    private WatchService watchService;
+    // Only touched on the ingest thread
+    private int newGenomes;
+
+    /**
+     * Rebuilds the tree from all genomes analysed so far
+     */
+    public interface PhylogenyRebuild {
+        void rebuild(int newGenomes) throws Exception;
+    }
+
+    public WatchFolderService(BuscoService buscoService, PreflightService preflightService) {
+        this.buscoService = buscoService;
+        this.preflightService = preflightService;
+    }
+
+    /**
+     * Start watching. Files already in the directory whose BUSCO output is missing are
+     * analysed as well.
+     *
+     * @param inputDirectory Directory to watch
+     * @param projectDirectory Directory for the pre-flight report and decompressed genomes
+     * @param buscoConfig BUSCO settings; results go to its output directory
+     * @param watchConfig When files count as complete and when to rebuild the tree
+     * @param rebuild Rebuilds the tree, called on the analysis thread
+     * @throws IOException if the directory can't be watched
+     */
+    public synchronized void start(Path inputDirectory, Path projectDirectory, BuscoConfig buscoConfig,
+                                   WatchConfig watchConfig, PhylogenyRebuild rebuild) throws IOException {
+        if (isRunning()) {
+            throw new IllegalStateException("Already watching");
+        }
+        Files.createDirectories(projectDirectory);
+        Files.createDirectories(Paths.get(buscoConfig.getOutputDirectory()));
+        preflightService.startReport(projectDirectory);
+        newGenomes = 0;
+        watchService = FileSystems.getDefault().newWatchService();
+        try {
+            inputDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        ingestExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "watch-folder-ingest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService ingest = ingestExecutor;
+        WatchService watcher = watchService;
+        watchThread = new Thread(() -> watch(watcher, inputDirectory, watchConfig, file -> ingest.execute(
+                () -> ingest(file, projectDirectory, buscoConfig, watchConfig, rebuild)),
+                () -> ingest.execute(() -> rebuild(rebuild))), "watch-folder");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        LOGGER.info("Watching " + inputDirectory + " for new genomes");
+    }
+
+    /**
+     * Stop watching and cancel the genome being analysed, if any
+     */
+    public synchronized void stop() {
+        if (watchThread == null) {
+            return;
+        }
+        watchThread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not close the folder watch", e);
+        }
+        ingestExecutor.shutdownNow();
+        try {
+            watchThread.join(TimeUnit.SECONDS.toMillis(10));
+            ingestExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        watchThread = null;
+        LOGGER.info("Stopped watching");
+    }
+
+    public synchronized boolean isRunning() {
+        return watchThread != null && watchThread.isAlive();
+    }
+
+    private void watch(WatchService watcher, Path inputDirectory, WatchConfig watchConfig, Consumer<Path> settled,
+                       Runnable nightly) {
+        Map<Path, FileState> candidates = new LinkedHashMap<>();
+        LocalDateTime nextNightly = nextNightlyRebuild(LocalDateTime.now(), watchConfig.getNightlyRebuildHour());
+        try {
+            addExisting(inputDirectory, candidates);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events were lost; look at the whole directory again
+                            addExisting(inputDirectory, candidates);
+                        } else {
+                            Path file = inputDirectory.resolve((Path) event.context());
+                            if (!file.getFileName().toString().startsWith(".")) {
+                                candidates.putIfAbsent(file, new FileState());
+                            }
+                        }
+                    }
+                    if (!key.reset()) {
+                        LOGGER.warning("Stopped watching: " + inputDirectory + " is no longer accessible");
+                        return;
+                    }
+                }
+                settle(candidates, TimeUnit.SECONDS.toNanos(watchConfig.getSettleSeconds()), settled);
+                if (nextNightly != null && !LocalDateTime.now().isBefore(nextNightly)) {
+                    nightly.run();
+                    nextNightly = nextNightly.plusDays(1);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Stopped watching " + inputDirectory, e);
+        }
+    }
+
+    private static void addExisting(Path inputDirectory, Map<Path, FileState> candidates) throws IOException {
+        for (Path file : PreflightService.listGenomes(inputDirectory)) {
+            candidates.putIfAbsent(file, new FileState());
+        }
+    }
+
+    /**
+     * Hand over the files whose size and modification time haven't changed for the settle time
+     */
+    static void settle(Map<Path, FileState> candidates, long settleNanos, Consumer<Path> settled) {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Path, FileState>> it = candidates.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, FileState> entry = it.next();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Deleted or renamed again
+                it.remove();
+                continue;
+            }
+            if (!attributes.isRegularFile()) {
+                it.remove();
+                continue;
+            }
+            FileState state = entry.getValue();
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (state.changedNanos == 0 || size != state.size || modified != state.modified) {
+                state.size = size;
+                state.modified = modified;
+                state.changedNanos = now;
+            } else if (now - state.changedNanos >= settleNanos) {
+                it.remove();
+                settled.accept(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * @return The next time at the hour, or null if nightly rebuilds are off
+     */
+    static LocalDateTime nextNightlyRebuild(LocalDateTime now, int hour) {
+        if (hour < 0 || hour > 23) {
+            return null;
+        }
+        LocalDateTime next = LocalDate.from(now).atTime(hour, 0);
+        return next.isAfter(now) ? next : next.plusDays(1);
+    }
+
+    private void ingest(Path file, Path projectDirectory, BuscoConfig buscoConfig, WatchConfig watchConfig,
+                        PhylogenyRebuild rebuild) {
+        String name = Decompressor.plainName(file.getFileName().toString());
+        if (Files.exists(Paths.get(buscoConfig.getOutputDirectory(), name))) {
+            LOGGER.fine("BUSCO results of " + name + " already exist");
+            return;
+        }
+        int threads = buscoConfig.getThreads() > 0 ? buscoConfig.getThreads() : Runtime.getRuntime().availableProcessors();
+        LOGGER.info("New genome " + file.getFileName());
+        try {
+            if (Decompressor.detect(file) == Decompressor.Format.NONE) {
+                GenomeStats stats = preflightService.check(file, threads);
+                if (!stats.isUsable()) {
+                    LOGGER.warning("Skipping " + file.getFileName() + ": " + stats.getProblem());
+                    return;
+                }
+            }
+            try (InputStagingService staging = new InputStagingService(buscoConfig.getScratchDirectory(),
+                    buscoConfig.getScratchLimitMegabytes() * 1024 * 1024,
+                    projectDirectory.resolve(InputStagingService.FALLBACK_DIRECTORY), threads, preflightService)) {
+                buscoService.runBusco(buscoConfig, staging.stage(Collections.singletonList(file)));
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Skipping " + file.getFileName(), e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        newGenomes++;
+        LOGGER.info("BUSCO finished for " + name + ", " + newGenomes + " new genome(s) since the last tree");
+        if (watchConfig.getRebuildAfterGenomes() > 0 && newGenomes >= watchConfig.getRebuildAfterGenomes()) {
+            rebuild(rebuild);
+        }
+    }
+
+    private void rebuild(PhylogenyRebuild rebuild) {
+        if (newGenomes == 0 || Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        int count = newGenomes;
+        newGenomes = 0;
+        LOGGER.info("Rebuilding the tree with " + count + " new genome(s)");
+        try {
+            rebuild.rebuild(count);
+            LOGGER.info("Tree rebuilt");
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Rebuilding the tree failed", e);
+            // Try again with the next batch
+            newGenomes += count;
+        }
+    }
+
+    /**
+     * Size and modification time of a file when they were last seen to change
+     */
+    static class FileState {
+        private long size;
+        private long modified;
+        private long changedNanos;
+    }
+}
@@ -0,0 +1,160 @@
+package org.biopipelinerunner.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Hands out disjoint CPU sets to concurrently running jobs. A job is kept inside one
+ * L3 cache domain when it fits, otherwise inside one NUMA node, and whole physical
+ * cores are preferred so two jobs never share a core's SMT siblings.
+ */
+public class AffinityPlanner {
+    private static final Logger LOGGER = Logger.getLogger(AffinityPlanner.class.getName());
+    private static AffinityPlanner instance;
+
+    private final CpuTopology topology;
+    private final boolean[] busy;
+
+    public AffinityPlanner(CpuTopology topology) {
+        this.topology = topology;
+        this.busy = new boolean[topology.getCpuCount()];
+    }
+
+    /**
+     * @return The planner shared by every job launched from this application
+     */
+    public static synchronized AffinityPlanner getInstance() {
+        if (instance == null) {
+            instance = new AffinityPlanner(CpuTopology.detect());
+        }
+        return instance;
+    }
+
+    /**
+     * Reserve CPUs for a job
+     *
+     * @param count Number of logical CPUs the job will use
+     * @return The lease, or null if not enough CPUs are free (the job should then run unpinned)
+     */
+    public synchronized CpuLease acquire(int count) {
+        count = Math.max(1, Math.min(count, busy.length));
+        List<Integer> free = new ArrayList<>();
+        for (int i = 0; i < busy.length; i++) {
+            if (!busy[i]) {
+                free.add(i);
+            }
+        }
+        if (free.size() < count) {
+            LOGGER.info("Only " + free.size() + " free CPUs for a job requesting " + count + "; running unpinned");
+            return null;
+        }
+
+        List<Integer> chosen = bestFit(free, count, true);
+        if (chosen == null) {
+            chosen = bestFit(free, count, false);
+        }
+        if (chosen == null) {
+            // Spread over several nodes, still grouped by node and cache domain
+            chosen = orderForPlacement(free).subList(0, count);
+        }
+
+        int[] cpus = new int[count];
+        int node = topology.getNode(chosen.get(0));
+        for (int i = 0; i < count; i++) {
+            int index = chosen.get(i);
+            busy[index] = true;
+            cpus[i] = topology.getCpu(index);
+            if (topology.getNode(index) != node) {
+                node = -1;
+            }
+        }
+        return new CpuLease(cpus, node, chosen.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Return the CPUs of a finished job to the pool
+     */
+    public synchronized void release(CpuLease lease) {
+        if (lease == null) {
+            return;
+        }
+        for (int index : lease.indices) {
+            busy[index] = false;
+        }
+    }
+
+    /**
+     * Find the fullest cache domain (or NUMA node) that still has room for the job
+     */
+    private List<Integer> bestFit(List<Integer> free, int count, boolean byCacheDomain) {
+        Map<Integer, List<Integer>> groups = new HashMap<>();
+        for (int index : free) {
+            int key = byCacheDomain ? topology.getCacheDomain(index) : topology.getNode(index);
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(index);
+        }
+        List<Integer> best = null;
+        for (List<Integer> group : groups.values()) {
+            if (group.size() >= count && (best == null || group.size() < best.size()
+                    || (group.size() == best.size() && group.get(0) < best.get(0)))) {
+                best = group;
+            }
+        }
+        return best == null ? null : orderForPlacement(best).subList(0, count);
+    }
+
+    /**
+     * Order CPUs so that fully idle physical cores come first with their siblings adjacent
+     */
+    private List<Integer> orderForPlacement(List<Integer> candidates) {
+        Map<Long, Boolean> coreIdle = new HashMap<>();
+        for (int i = 0; i < busy.length; i++) {
+            coreIdle.merge(coreKey(i), !busy[i], Boolean::logicalAnd);
+        }
+        List<Integer> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator
+                .comparingInt((Integer index) -> topology.getNode(index))
+                .thenComparingInt(topology::getCacheDomain)
+                .thenComparing(index -> coreIdle.get(coreKey(index)) ? 0 : 1)
+                .thenComparingLong(this::coreKey)
+                .thenComparingInt(topology::getCpu));
+        return ordered;
+    }
+
+    private long coreKey(int index) {
+        return ((long) topology.getPackage(index) << 32) | (topology.getCore(index) & 0xffffffffL);
+    }
+
+    /**
+     * CPUs reserved for one job
+     */
+    public static class CpuLease {
+        private final int[] cpus;
+        private final int node;
+        private final int[] indices;
+
+        private CpuLease(int[] cpus, int node, int[] indices) {
+            this.cpus = cpus;
+            this.node = node;
+            this.indices = indices;
+        }
+
+        public int[] getCpus() {
+            return cpus.clone();
+        }
+
+        /**
+         * @return The NUMA node all CPUs belong to, or -1 if the lease spans nodes
+         */
+        public int getNode() {
+            return node;
+        }
+
+        public String getCpuList() {
+            return CpuTopology.formatCpuList(cpus);
+        }
+    }
+}
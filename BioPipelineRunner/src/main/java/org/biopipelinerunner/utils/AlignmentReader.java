@@ -0,0 +1,300 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PackedAlignment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads aligned FASTA files (such as SUPERMATRIX.trimmed.aln), PHYLIP files and binary matrices
+ * into a {@link PackedAlignment}. FASTA sequences may be wrapped over several lines. A text
+ * alignment is taken to be nucleotide if at least 90% of its letters are A, C, G, T, U or N,
+ * and protein otherwise.
+ */
+public class AlignmentReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final double NUCLEOTIDE_FRACTION = 0.9;
+    private static final byte[] AMINO_ACID_CODES = codeTable(PackedAlignment.AMINO_ACIDS);
+    private static final byte[] NUCLEOTIDE_CODES = codeTable(PackedAlignment.NUCLEOTIDES);
+
+    // Per byte: bit 0 set for letters, bit 1 for the nucleotide letters ACGTUN
+    private static final byte[] LETTER_KINDS = new byte[256];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            LETTER_KINDS[c] = 1;
+            LETTER_KINDS[Character.toLowerCase(c)] = 1;
+        }
+        for (char c : "ACGTUN".toCharArray()) {
+            LETTER_KINDS[c] = 3;
+            LETTER_KINDS[Character.toLowerCase(c)] = 3;
+        }
+        // RNA: U codes as T
+        NUCLEOTIDE_CODES['U'] = NUCLEOTIDE_CODES['T'];
+        NUCLEOTIDE_CODES['u'] = NUCLEOTIDE_CODES['T'];
+    }
+
+    private AlignmentReader() {
+    }
+
+    private static byte[] codeTable(String alphabet) {
+        byte[] table = new byte[128];
+        Arrays.fill(table, PackedAlignment.UNKNOWN);
+        for (int i = 0; i < alphabet.length(); i++) {
+            table[alphabet.charAt(i)] = (byte) i;
+            table[Character.toLowerCase(alphabet.charAt(i))] = (byte) i;
+        }
+        return table;
+    }
+
+    /**
+     * @return Table from letters to residue codes, {@link PackedAlignment#UNKNOWN} for gaps,
+     *         ambiguity codes and other bytes below 128
+     */
+    static byte[] codes(boolean nucleotide) {
+        return nucleotide ? NUCLEOTIDE_CODES : AMINO_ACID_CODES;
+    }
+
+    /**
+     * Read an alignment in any format known here: the binary matrix format of
+     * {@link BinaryMatrix}, aligned FASTA or relaxed PHYLIP
+     *
+     * @throws IOException if the file can't be read or is not a valid alignment
+     */
+    public static PackedAlignment read(Path file) throws IOException {
+        if (BinaryMatrix.isBinaryMatrix(file)) {
+            return BinaryMatrix.open(file).toPackedAlignment();
+        }
+        return isFasta(file) ? readFasta(file) : readPhylip(file);
+    }
+
+    /**
+     * @return true if the first non-blank character of a text alignment starts a FASTA header
+     */
+    static boolean isFasta(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            int b;
+            do {
+                b = in.read();
+            } while (b >= 0 && Character.isWhitespace(b));
+            return b == '>';
+        }
+    }
+
+    /**
+     * Read an aligned FASTA file. The name of a taxon is the first word of its header line.
+     *
+     * @throws IOException if the file can't be read, is empty or its sequences differ in length
+     */
+    public static PackedAlignment readFasta(Path file) throws IOException {
+        List<String> taxa = new ArrayList<>();
+        List<byte[]> sequences = readRawFasta(file, taxa);
+        return encode(file, taxa, sequences, isNucleotide(sequences));
+    }
+
+    /**
+     * Read an aligned FASTA file whose alphabet is known, such as a file of site patterns whose
+     * letter frequencies say little about its alphabet
+     *
+     * @param nucleotide true for nucleotides, false for amino acids
+     * @throws IOException if the file can't be read, is empty or its sequences differ in length
+     */
+    public static PackedAlignment readFasta(Path file, boolean nucleotide) throws IOException {
+        List<String> taxa = new ArrayList<>();
+        return encode(file, taxa, readRawFasta(file, taxa), nucleotide);
+    }
+
+    /**
+     * Read a relaxed PHYLIP file, sequential or interleaved: a line with the numbers of taxa
+     * and sites, then one line per taxon starting with its name, optionally followed by blocks
+     * continuing the taxa in the same order. Spaces within sequences are ignored.
+     *
+     * @throws IOException if the file can't be read or doesn't match its header
+     */
+    public static PackedAlignment readPhylip(Path file) throws IOException {
+        List<String> taxa = new ArrayList<>();
+        List<byte[]> sequences = readRawPhylip(file, taxa);
+        return encode(file, taxa, sequences, isNucleotide(sequences));
+    }
+
+    private static PackedAlignment encode(Path file, List<String> taxa, List<byte[]> sequences, boolean nucleotide) {
+        byte[] table = codes(nucleotide);
+        byte[][] rows = new byte[sequences.size()][];
+        for (int t = 0; t < rows.length; t++) {
+            byte[] row = sequences.get(t);
+            // Encode in place; the raw bytes aren't needed afterwards
+            for (int s = 0; s < row.length; s++) {
+                row[s] = row[s] >= 0 ? table[row[s]] : PackedAlignment.UNKNOWN;
+            }
+            rows[t] = row;
+        }
+        return new PackedAlignment(taxa, rows, nucleotide);
+    }
+
+    /**
+     * Read the sequences of an aligned FASTA file as they are written
+     *
+     * @param taxa Receives the taxon names
+     * @return One sequence per taxon, all of the same length
+     */
+    static List<byte[]> readRawFasta(Path file, List<String> taxa) throws IOException {
+        List<byte[]> sequences = new ArrayList<>();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        ByteArrayOutputStream sequence = new ByteArrayOutputStream();
+        boolean inHeader = false;
+        boolean atLineStart = true;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n' || b == '\r') {
+                        if (inHeader) {
+                            taxa.add(taxonName(header.toString("UTF-8")));
+                            header.reset();
+                            inHeader = false;
+                        }
+                        atLineStart = true;
+                    } else if (atLineStart && b == '>') {
+                        if (!taxa.isEmpty()) {
+                            sequences.add(sequence.toByteArray());
+                            sequence.reset();
+                        }
+                        inHeader = true;
+                        atLineStart = false;
+                    } else if (inHeader) {
+                        header.write(b);
+                    } else if (b != ' ' && b != '\t') {
+                        if (taxa.isEmpty()) {
+                            throw new IOException(file + ": not a FASTA file");
+                        }
+                        // Copy the run of residues up to the next space or line end at once
+                        int end = i + 1;
+                        while (end < read && !isSeparator(buffer[end])) {
+                            end++;
+                        }
+                        sequence.write(buffer, i, end - i);
+                        i = end - 1;
+                        atLineStart = false;
+                    }
+                }
+            }
+        }
+        if (inHeader) {
+            taxa.add(taxonName(header.toString("UTF-8")));
+        }
+        if (taxa.isEmpty()) {
+            throw new IOException(file + ": no sequences found");
+        }
+        sequences.add(sequence.toByteArray());
+        checkLengths(file, taxa, sequences, sequences.get(0).length);
+        return sequences;
+    }
+
+    /**
+     * Read the sequences of a relaxed PHYLIP file as they are written
+     *
+     * @param taxa Receives the taxon names
+     * @return One sequence per taxon, all of the same length
+     */
+    static List<byte[]> readRawPhylip(Path file, List<String> taxa) throws IOException {
+        List<ByteArrayOutputStream> sequences = new ArrayList<>();
+        int taxonCount;
+        int siteCount;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            String[] header = line != null ? line.trim().split("\\s+") : new String[0];
+            try {
+                taxonCount = Integer.parseInt(header[0]);
+                siteCount = Integer.parseInt(header[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException(file + ": not a PHYLIP file");
+            }
+            int next = 0;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                ByteArrayOutputStream sequence;
+                int offset = 0;
+                if (taxa.size() < taxonCount) {
+                    // First block: name, then the start of the sequence
+                    while (offset < trimmed.length() && !Character.isWhitespace(trimmed.charAt(offset))) {
+                        offset++;
+                    }
+                    taxa.add(trimmed.substring(0, offset));
+                    sequence = new ByteArrayOutputStream(siteCount);
+                    sequences.add(sequence);
+                } else {
+                    sequence = sequences.get(next);
+                    next = (next + 1) % taxonCount;
+                }
+                for (int i = offset; i < trimmed.length(); i++) {
+                    char c = trimmed.charAt(i);
+                    if (!Character.isWhitespace(c)) {
+                        sequence.write(c);
+                    }
+                }
+            }
+        }
+        if (taxa.size() != taxonCount || taxonCount == 0) {
+            throw new IOException(file + ": " + taxa.size() + " taxa, expected " + taxonCount);
+        }
+        List<byte[]> rows = new ArrayList<>(taxonCount);
+        for (ByteArrayOutputStream sequence : sequences) {
+            rows.add(sequence.toByteArray());
+        }
+        checkLengths(file, taxa, rows, siteCount);
+        return rows;
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == '\n' || b == '\r' || b == ' ' || b == '\t';
+    }
+
+    private static void checkLengths(Path file, List<String> taxa, List<byte[]> sequences, int length) throws IOException {
+        for (int t = 0; t < sequences.size(); t++) {
+            if (sequences.get(t).length != length) {
+                throw new IOException(file + ": sequence " + taxa.get(t) + " has length " + sequences.get(t).length
+                        + ", expected " + length);
+            }
+        }
+    }
+
+    private static String taxonName(String header) {
+        String trimmed = header.trim();
+        int space = 0;
+        while (space < trimmed.length() && !Character.isWhitespace(trimmed.charAt(space))) {
+            space++;
+        }
+        return trimmed.substring(0, space);
+    }
+
+    /**
+     * @return true if at least 90% of the letters are A, C, G, T, U or N
+     */
+    static boolean isNucleotide(List<byte[]> sequences) {
+        long letters = 0;
+        long nucleotides = 0;
+        for (byte[] sequence : sequences) {
+            for (byte b : sequence) {
+                int kind = LETTER_KINDS[b & 0xff];
+                letters += kind & 1;
+                nucleotides += kind >>> 1;
+            }
+        }
+        return letters > 0 && nucleotides >= NUCLEOTIDE_FRACTION * letters;
+    }
+}
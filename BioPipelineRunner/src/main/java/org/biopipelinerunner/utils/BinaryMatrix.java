@@ -0,0 +1,497 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.GenePartition;
+import org.biopipelinerunner.models.PackedAlignment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A supermatrix in a binary, memory-mapped format. Opening one reads only the header, taxon
+ * names and gene partitions; residues and column bitmaps are paged in by the operating system
+ * as they are used, so even a matrix of several GB opens at once and takes no heap.
+ *
+ * <p>Residues take one byte each, an index into the matrix's symbol table. The table starts
+ * with the residue states in {@link PackedAlignment} order, so those codes are the states
+ * themselves, followed by the gap and every other symbol found (ambiguity codes, '?', ...).
+ * Letters are stored upper case; otherwise the text alignment is kept exactly.</p>
+ *
+ * <p>Layout, little-endian, each section starting at the offset given in the header:</p>
+ * <pre>
+ *   header     magic "BPMATRIX", version, flags (bit 0: nucleotide), taxa, sites,
+ *              partitions, symbols, then the offsets of the sections below and the file length
+ *   symbols    one byte per symbol
+ *   taxa       per taxon: name length, UTF-8 name
+ *   partitions per gene: start site, end site (exclusive), name length, UTF-8 name
+ *   residues   one row of bytes per taxon
+ *   occupancy  per site: a bitmap over the taxa of those with a residue state
+ *   gaps       per site: a bitmap over the taxa of those with a gap
+ * </pre>
+ */
+public class BinaryMatrix {
+    public static final String EXTENSION = ".bmx";
+    private static final byte[] MAGIC = "BPMATRIX".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int FLAG_NUCLEOTIDE = 1;
+    private static final int HEADER_SIZE = 80;
+    private static final byte GAP = '-';
+    // Mapped segments hold whole records and stay well below the 2 GB limit of a buffer
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final int SITE_CHUNK = 8192;
+
+    private final List<String> taxa;
+    private final List<GenePartition> partitions;
+    private final byte[] symbols;
+    private final boolean nucleotide;
+    private final int siteCount;
+    private final int words;
+    private final Segments rows;
+    private final Segments occupancy;
+    private final Segments gaps;
+
+    private BinaryMatrix(List<String> taxa, List<GenePartition> partitions, byte[] symbols, boolean nucleotide,
+                         int siteCount, Segments rows, Segments occupancy, Segments gaps) {
+        this.taxa = taxa;
+        this.partitions = partitions;
+        this.symbols = symbols;
+        this.nucleotide = nucleotide;
+        this.siteCount = siteCount;
+        this.words = (taxa.size() + 63) >>> 6;
+        this.rows = rows;
+        this.occupancy = occupancy;
+        this.gaps = gaps;
+    }
+
+    /**
+     * @return true if the file starts with the magic bytes of the format
+     */
+    public static boolean isBinaryMatrix(Path file) throws IOException {
+        byte[] start = new byte[MAGIC.length];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read = 0;
+            int count;
+            while (read < start.length && (count = in.read(start, read, start.length - read)) > 0) {
+                read += count;
+            }
+            return read == start.length && Arrays.equals(start, MAGIC);
+        }
+    }
+
+    /**
+     * Map a binary matrix file
+     *
+     * @throws IOException if the file can't be read or is not a valid binary matrix
+     */
+    public static BinaryMatrix open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + ": not a binary matrix");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + ": unsupported binary matrix version " + version);
+            }
+            boolean nucleotide = (header.getInt() & FLAG_NUCLEOTIDE) != 0;
+            int taxonCount = header.getInt();
+            int siteCount = header.getInt();
+            int partitionCount = header.getInt();
+            int symbolCount = header.getInt();
+            long taxaOffset = header.getLong();
+            long partitionsOffset = header.getLong();
+            long residuesOffset = header.getLong();
+            long occupancyOffset = header.getLong();
+            long gapsOffset = header.getLong();
+            long length = header.getLong();
+            if (length != channel.size() || taxonCount < 0 || siteCount < 0) {
+                throw new IOException(file + ": truncated or damaged binary matrix");
+            }
+
+            // Everything before the residues is small and read onto the heap
+            ByteBuffer metadata = readFully(channel, HEADER_SIZE, (int) (residuesOffset - HEADER_SIZE));
+            byte[] symbols = new byte[symbolCount];
+            metadata.get(symbols);
+            metadata.position((int) (taxaOffset - HEADER_SIZE));
+            List<String> taxa = new ArrayList<>(taxonCount);
+            for (int t = 0; t < taxonCount; t++) {
+                taxa.add(readString(metadata));
+            }
+            metadata.position((int) (partitionsOffset - HEADER_SIZE));
+            List<GenePartition> partitions = new ArrayList<>(partitionCount);
+            for (int p = 0; p < partitionCount; p++) {
+                int start = metadata.getInt();
+                int end = metadata.getInt();
+                partitions.add(new GenePartition(readString(metadata), start, end));
+            }
+
+            long bitmapBytes = 8L * ((taxonCount + 63) >>> 6);
+            return new BinaryMatrix(Collections.unmodifiableList(taxa), Collections.unmodifiableList(partitions),
+                    symbols, nucleotide, siteCount,
+                    Segments.map(channel, residuesOffset, siteCount, taxonCount),
+                    Segments.map(channel, occupancyOffset, bitmapBytes, siteCount),
+                    Segments.map(channel, gapsOffset, bitmapBytes, siteCount));
+        } catch (IllegalArgumentException | BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException(file + ": damaged binary matrix: " + e.getMessage(), e);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a matrix from its text rows
+     *
+     * @param file File to write
+     * @param taxa Taxon names
+     * @param sequences Rows as read from a text alignment, all of the same length
+     * @param partitions Gene partitions, possibly none
+     * @param nucleotide true for nucleotides, false for amino acids
+     * @throws IOException if the file can't be written or there are more than 255 symbols
+     */
+    public static void write(Path file, List<String> taxa, List<byte[]> sequences, List<GenePartition> partitions,
+                             boolean nucleotide) throws IOException {
+        int taxonCount = taxa.size();
+        int siteCount = sequences.isEmpty() ? 0 : sequences.get(0).length;
+        for (GenePartition partition : partitions) {
+            if (partition.getEnd() > siteCount) {
+                throw new IOException("Partition " + partition + " extends past the " + siteCount + " sites");
+            }
+        }
+
+        // Residue states first, so their codes are the states, then the gap
+        String alphabet = nucleotide ? PackedAlignment.NUCLEOTIDES : PackedAlignment.AMINO_ACIDS;
+        int[] codes = new int[256];
+        Arrays.fill(codes, -1);
+        byte[] symbols = new byte[256];
+        int symbolCount = 0;
+        for (char c : (alphabet + (char) GAP).toCharArray()) {
+            codes[c] = symbolCount;
+            symbols[symbolCount++] = (byte) c;
+        }
+        boolean[] isState = new boolean[256];
+        Arrays.fill(isState, 0, alphabet.length(), true);
+        int gapCode = codes[GAP];
+
+        int words = (taxonCount + 63) >>> 6;
+        long[] occupied = new long[siteCount * words];
+        long[] gapped = new long[siteCount * words];
+        byte[] states = AlignmentReader.codes(nucleotide);
+
+        ByteBuffer metadata = ByteBuffer.allocate(metadataSize(taxa, partitions)).order(ByteOrder.LITTLE_ENDIAN);
+        long taxaOffset = HEADER_SIZE + 256;
+        long partitionsOffset = taxaOffset;
+        metadata.position(256);
+        for (String taxon : taxa) {
+            writeString(metadata, taxon);
+        }
+        partitionsOffset += metadata.position() - 256;
+        for (GenePartition partition : partitions) {
+            metadata.putInt(partition.getStart());
+            metadata.putInt(partition.getEnd());
+            writeString(metadata, partition.getName());
+        }
+        // Rows start on a cache line
+        long residuesOffset = align(HEADER_SIZE + metadata.position(), 64);
+        long occupancyOffset = align(residuesOffset + (long) taxonCount * siteCount, 8);
+        long gapsOffset = occupancyOffset + 8L * words * siteCount;
+        long length = gapsOffset + 8L * words * siteCount;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int t = 0; t < taxonCount; t++) {
+                if (sequences.get(t).length != siteCount) {
+                    throw new IOException("Sequence " + taxa.get(t) + " has length " + sequences.get(t).length
+                            + ", expected " + siteCount);
+                }
+            }
+            // Blocks of 64 taxa (one bitmap word) by chunks of sites, so the bitmap words of a
+            // chunk stay in cache while its rows are encoded
+            byte[] encoded = new byte[SITE_CHUNK];
+            long[] occupiedChunk = new long[SITE_CHUNK];
+            long[] gappedChunk = new long[SITE_CHUNK];
+            for (int word = 0; word < words; word++) {
+                int blockEnd = Math.min(taxonCount, (word + 1) << 6);
+                for (int chunk = 0; chunk < siteCount; chunk += SITE_CHUNK) {
+                    int chunkLength = Math.min(SITE_CHUNK, siteCount - chunk);
+                    Arrays.fill(occupiedChunk, 0);
+                    Arrays.fill(gappedChunk, 0);
+                    for (int t = word << 6; t < blockEnd; t++) {
+                        byte[] row = sequences.get(t);
+                        long bit = 1L << t;
+                        for (int i = 0; i < chunkLength; i++) {
+                            int symbol = row[chunk + i] & 0xff;
+                            int code = codes[symbol];
+                            if (code < 0) {
+                                int upper = symbol >= 'a' && symbol <= 'z' ? symbol - ('a' - 'A') : symbol;
+                                code = codes[upper];
+                                if (code < 0) {
+                                    if (symbolCount == 255) {
+                                        throw new IOException("More than 255 different symbols");
+                                    }
+                                    code = symbolCount;
+                                    codes[upper] = code;
+                                    // Such as U, read as T in nucleotides
+                                    isState[code] = upper < 128 && states[upper] >= 0;
+                                    symbols[symbolCount++] = (byte) upper;
+                                }
+                                // Lower case letters share the code of their upper case letter
+                                codes[symbol] = code;
+                            }
+                            encoded[i] = (byte) code;
+                            if (isState[code]) {
+                                occupiedChunk[i] |= bit;
+                            } else if (code == gapCode) {
+                                gappedChunk[i] |= bit;
+                            }
+                        }
+                        writeFully(channel, ByteBuffer.wrap(encoded, 0, chunkLength), residuesOffset + (long) t * siteCount + chunk);
+                    }
+                    for (int i = 0; i < chunkLength; i++) {
+                        occupied[(chunk + i) * words + word] = occupiedChunk[i];
+                        gapped[(chunk + i) * words + word] = gappedChunk[i];
+                    }
+                }
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            channel.position(occupancyOffset);
+            for (long[] bitmap : new long[][] {occupied, gapped}) {
+                for (long value : bitmap) {
+                    if (buffer.remaining() < 8) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putLong(value);
+                }
+                flush(channel, buffer);
+            }
+
+            // The symbol table is complete only now
+            metadata.position(0);
+            metadata.put(symbols, 0, symbolCount);
+            metadata.position(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putInt(VERSION).putInt(nucleotide ? FLAG_NUCLEOTIDE : 0)
+                    .putInt(taxonCount).putInt(siteCount).putInt(partitions.size()).putInt(symbolCount)
+                    .putLong(taxaOffset).putLong(partitionsOffset).putLong(residuesOffset)
+                    .putLong(occupancyOffset).putLong(gapsOffset).putLong(length);
+            header.flip();
+            writeFully(channel, header, 0);
+            writeFully(channel, metadata, HEADER_SIZE);
+            channel.truncate(length);
+        }
+    }
+
+    private static int metadataSize(List<String> taxa, List<GenePartition> partitions) {
+        int size = 256;
+        for (String taxon : taxa) {
+            size += 4 + taxon.getBytes(StandardCharsets.UTF_8).length;
+        }
+        for (GenePartition partition : partitions) {
+            size += 12 + partition.getName().getBytes(StandardCharsets.UTF_8).length;
+        }
+        return size;
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static long align(long offset, int alignment) {
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public List<String> getTaxa() {
+        return taxa;
+    }
+
+    public int getTaxonCount() {
+        return taxa.size();
+    }
+
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+    public boolean isNucleotide() {
+        return nucleotide;
+    }
+
+    /**
+     * @return Gene partitions, empty if the matrix was written without them
+     */
+    public List<GenePartition> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @return The symbol (upper case letter, gap, ...) of a residue code
+     */
+    public byte getSymbol(int code) {
+        return symbols[code];
+    }
+
+    /**
+     * @return Residue code of a taxon at a site, an index into the symbol table
+     */
+    public int getCode(int taxon, int site) {
+        return rows.buffer(taxon).get(rows.offset(taxon) + site) & 0xff;
+    }
+
+    /**
+     * Copy the residue codes of a taxon's row
+     *
+     * @param target Array of at least {@link #getSiteCount()} bytes
+     */
+    public void readRow(int taxon, byte[] target) {
+        ByteBuffer row = rows.buffer(taxon).duplicate();
+        row.position(rows.offset(taxon));
+        row.get(target, 0, siteCount);
+    }
+
+    /**
+     * @return true if the taxon has a residue state (not a gap or ambiguity code) at the site
+     */
+    public boolean isOccupied(int taxon, int site) {
+        return (occupancy.buffer(site).getLong(occupancy.offset(site) + 8 * (taxon >>> 6)) >>> taxon & 1) != 0;
+    }
+
+    /**
+     * @return true if the taxon has a gap at the site
+     */
+    public boolean isGap(int taxon, int site) {
+        return (gaps.buffer(site).getLong(gaps.offset(site) + 8 * (taxon >>> 6)) >>> taxon & 1) != 0;
+    }
+
+    /**
+     * @return Number of taxa with a residue state at the site
+     */
+    public int getOccupancy(int site) {
+        ByteBuffer buffer = occupancy.buffer(site);
+        int offset = occupancy.offset(site);
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(buffer.getLong(offset + 8 * w));
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of taxa with a gap at the site
+     */
+    public int getGapCount(int site) {
+        ByteBuffer buffer = gaps.buffer(site);
+        int offset = gaps.offset(site);
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(buffer.getLong(offset + 8 * w));
+        }
+        return count;
+    }
+
+    /**
+     * Copy the matrix onto the heap as a {@link PackedAlignment}, translating symbols to states
+     * with gaps and ambiguity codes unknown
+     */
+    public PackedAlignment toPackedAlignment() {
+        byte[] states = AlignmentReader.codes(nucleotide);
+        byte[] translation = new byte[256];
+        Arrays.fill(translation, PackedAlignment.UNKNOWN);
+        for (int code = 0; code < symbols.length; code++) {
+            int symbol = symbols[code] & 0xff;
+            translation[code] = symbol < 128 ? states[symbol] : PackedAlignment.UNKNOWN;
+        }
+        byte[][] packed = new byte[taxa.size()][siteCount];
+        for (int t = 0; t < packed.length; t++) {
+            byte[] row = packed[t];
+            readRow(t, row);
+            for (int site = 0; site < row.length; site++) {
+                row[site] = translation[row[site] & 0xff];
+            }
+        }
+        return new PackedAlignment(taxa, packed, nucleotide);
+    }
+
+    /**
+     * Fixed-size records mapped as a few read-only buffers, each holding whole records
+     */
+    private static class Segments {
+        private final ByteBuffer[] buffers;
+        private final int recordsPerSegment;
+        private final int recordSize;
+
+        private Segments(ByteBuffer[] buffers, int recordsPerSegment, int recordSize) {
+            this.buffers = buffers;
+            this.recordsPerSegment = recordsPerSegment;
+            this.recordSize = recordSize;
+        }
+
+        static Segments map(FileChannel channel, long offset, long recordSize, int records) throws IOException {
+            if (recordSize > Integer.MAX_VALUE) {
+                throw new IOException("Records of " + recordSize + " bytes are too large to map");
+            }
+            int perSegment = (int) Math.max(1, Math.min(records, SEGMENT_BYTES / Math.max(1, recordSize)));
+            int segments = records == 0 ? 0 : (records + perSegment - 1) / perSegment;
+            ByteBuffer[] buffers = new ByteBuffer[segments];
+            for (int s = 0; s < segments; s++) {
+                int count = Math.min(perSegment, records - s * perSegment);
+                buffers[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset + s * perSegment * recordSize,
+                        count * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new Segments(buffers, perSegment, (int) recordSize);
+        }
+
+        ByteBuffer buffer(int record) {
+            return buffers[record / recordsPerSegment];
+        }
+
+        int offset(int record) {
+            return (record % recordsPerSegment) * recordSize;
+        }
+    }
+}
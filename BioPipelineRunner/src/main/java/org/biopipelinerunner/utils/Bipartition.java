@@ -0,0 +1,90 @@
+package org.biopipelinerunner.utils;
+
+import java.util.Arrays;
+
+/**
+ * The split of a taxon set induced by one branch of a tree, stored as a packed bitset of the
+ * taxa on the side without taxon 0. Normalising to that side makes the same split from
+ * differently rooted trees compare equal. The hash is computed once, so bipartitions are cheap
+ * hash map keys. Immutable.
+ */
+public final class Bipartition {
+    private final long[] bits;
+    private final int size;
+    private final int hash;
+
+    private Bipartition(long[] bits) {
+        this.bits = bits;
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        this.size = count;
+        this.hash = Arrays.hashCode(bits);
+    }
+
+    /**
+     * Normalise the taxa below a branch into a bipartition
+     *
+     * @param source Array holding the bitset of the taxa below the branch
+     * @param offset Index of the bitset's first word in the array
+     * @param taxa Total number of taxa
+     */
+    public static Bipartition of(long[] source, int offset, int taxa) {
+        int words = (taxa + 63) >>> 6;
+        long[] bits = Arrays.copyOfRange(source, offset, offset + words);
+        if ((bits[0] & 1) != 0) {
+            for (int w = 0; w < words; w++) {
+                bits[w] = ~bits[w];
+            }
+            int unused = words * 64 - taxa;
+            if (unused > 0) {
+                bits[words - 1] &= -1L >>> unused;
+            }
+        }
+        return new Bipartition(bits);
+    }
+
+    /**
+     * @return Number of taxa on the side without taxon 0
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public boolean contains(int taxon) {
+        int word = taxon >>> 6;
+        return word < bits.length && (bits[word] & (1L << taxon)) != 0;
+    }
+
+    /**
+     * @return The first taxon at or after {@code from} on the side without taxon 0, or -1
+     */
+    public int nextTaxon(int from) {
+        int word = from >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+        long remaining = bits[word] & (-1L << from);
+        while (true) {
+            if (remaining != 0) {
+                return word * 64 + Long.numberOfTrailingZeros(remaining);
+            }
+            if (++word == bits.length) {
+                return -1;
+            }
+            remaining = bits[word];
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Bipartition && hash == ((Bipartition) other).hash
+                && Arrays.equals(bits, ((Bipartition) other).bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
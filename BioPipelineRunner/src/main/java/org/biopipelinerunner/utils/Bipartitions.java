@@ -0,0 +1,177 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Tree comparisons on {@link Bipartition}s: split extraction, support mapping and
+ * Robinson-Foulds distances. All trees compared must have the same taxa.
+ *
+ * <p>For distance matrices every distinct split of all trees is numbered once through a hash
+ * map, so each tree becomes an array of split numbers. Each row of the matrix marks its tree's
+ * numbers in a bitmask and compares the other trees against it with one bit test per split.</p>
+ */
+public class Bipartitions {
+
+    /**
+     * Receives the non-trivial splits of a tree
+     */
+    public interface Visitor {
+        /**
+         * @param split Split induced by the edge above the node
+         * @param node Tree node below the edge
+         */
+        void accept(Bipartition split, int node);
+    }
+
+    private Bipartitions() {
+    }
+
+    /**
+     * Visit the non-trivial splits of a tree (those with at least two taxa on each side), each
+     * once: the two edges below a bifurcating root induce the same split and only the first is
+     * visited.
+     *
+     * @throws IllegalArgumentException if the tree's taxa differ from the index
+     */
+    public static void forEach(PhyloTree tree, TaxonIndex taxa, Visitor visitor) {
+        int n = taxa.size();
+        if (tree.getLeafCount() != n) {
+            throw new IllegalArgumentException("Tree has " + tree.getLeafCount() + " taxa, expected " + n);
+        }
+        int words = taxa.words();
+        int root = tree.getRoot();
+        boolean bifurcatingRoot = tree.getChildCount(root) == 2;
+        long[] bits = new long[tree.getNodeCount() * words];
+        int[] preorder = tree.getPreorder();
+        for (int p = preorder.length - 1; p >= 0; p--) {
+            int node = preorder[p];
+            int parent = tree.getParent(node);
+            if (tree.isLeaf(node)) {
+                int taxon = taxa.indexOf(tree.getLabel(node));
+                if (taxon < 0) {
+                    throw new IllegalArgumentException("Unknown taxon " + tree.getLabel(node));
+                }
+                bits[node * words + (taxon >>> 6)] |= 1L << taxon;
+            } else if (parent != PhyloTree.NONE && !(bifurcatingRoot && parent == root && node != tree.getFirstChild(root))) {
+                Bipartition split = Bipartition.of(bits, node * words, n);
+                if (split.getSize() > 1 && split.getSize() < n - 1) {
+                    visitor.accept(split, node);
+                }
+            }
+            if (parent != PhyloTree.NONE) {
+                for (int w = 0; w < words; w++) {
+                    bits[parent * words + w] |= bits[node * words + w];
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the support of each internal edge of the reference tree to the percentage of trees
+     * (e.g. bootstrap replicates) containing its split
+     *
+     * @param reference Tree to annotate, modified in place
+     * @param trees Trees over the same taxa
+     * @param threads Threads to count with
+     */
+    public static void mapSupport(PhyloTree reference, List<PhyloTree> trees, int threads) {
+        TaxonIndex taxa = TaxonIndex.of(reference);
+        Map<Bipartition, Integer> referenceSplits = new HashMap<>();
+        forEach(reference, taxa, (split, node) -> referenceSplits.put(split, node));
+        AtomicIntegerArray counts = new AtomicIntegerArray(reference.getNodeCount());
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            pool.submit(() -> trees.parallelStream().forEach(tree -> forEach(tree, taxa, (split, node) -> {
+                Integer referenceNode = referenceSplits.get(split);
+                if (referenceNode != null) {
+                    counts.incrementAndGet(referenceNode);
+                }
+            }))).join();
+        } finally {
+            pool.shutdown();
+        }
+        for (int node : referenceSplits.values()) {
+            reference.setSupport(node, trees.isEmpty() ? Double.NaN : 100.0 * counts.get(node) / trees.size());
+        }
+    }
+
+    /**
+     * @return Number of splits found in exactly one of the two trees
+     */
+    public static int robinsonFoulds(PhyloTree first, PhyloTree second) {
+        return robinsonFouldsMatrix(Arrays.asList(first, second), 1)[0][1];
+    }
+
+    /**
+     * Robinson-Foulds distances between all pairs of trees: the number of splits found in
+     * exactly one tree of the pair
+     *
+     * @param trees Trees over the same taxa
+     * @param threads Threads to compute with
+     * @return Symmetric matrix of distances
+     */
+    public static int[][] robinsonFouldsMatrix(List<PhyloTree> trees, int threads) {
+        int count = trees.size();
+        int[][] distances = new int[count][count];
+        if (count < 2) {
+            return distances;
+        }
+        TaxonIndex taxa = TaxonIndex.of(trees.get(0));
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            Bipartition[][] splits = pool.submit(() -> trees.parallelStream()
+                    .map(tree -> splitsOf(tree, taxa))
+                    .toArray(Bipartition[][]::new)).join();
+
+            // Number each distinct split once, so trees become sorted arrays of numbers
+            Map<Bipartition, Integer> ids = new HashMap<>();
+            int[][] treeIds = new int[count][];
+            for (int t = 0; t < count; t++) {
+                treeIds[t] = new int[splits[t].length];
+                for (int s = 0; s < splits[t].length; s++) {
+                    Integer id = ids.get(splits[t][s]);
+                    if (id == null) {
+                        id = ids.size();
+                        ids.put(splits[t][s], id);
+                    }
+                    treeIds[t][s] = id;
+                }
+            }
+
+            int idWords = (ids.size() + 63) >>> 6;
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> {
+                long[] mask = new long[idWords];
+                for (int id : treeIds[i]) {
+                    mask[id >>> 6] |= 1L << id;
+                }
+                for (int j = i + 1; j < count; j++) {
+                    int shared = 0;
+                    for (int id : treeIds[j]) {
+                        shared += (int) (mask[id >>> 6] >>> id) & 1;
+                    }
+                    int distance = treeIds[i].length + treeIds[j].length - 2 * shared;
+                    distances[i][j] = distance;
+                    distances[j][i] = distance;
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        return distances;
+    }
+
+    private static Bipartition[] splitsOf(PhyloTree tree, TaxonIndex taxa) {
+        List<Bipartition> splits = new ArrayList<>(Math.max(0, taxa.size() - 3));
+        forEach(tree, taxa, (split, node) -> splits.add(split));
+        return splits.toArray(new Bipartition[0]);
+    }
+}
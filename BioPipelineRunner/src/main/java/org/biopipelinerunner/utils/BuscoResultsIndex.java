@@ -0,0 +1,425 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.GenomeCompleteness;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the BUSCO results of a run: status, score, length and contig of every
+ * BUSCO in every genome, read from BUSCO's {@code full_table.tsv} files, and the counts of
+ * the {@code short_summary*.txt} files for genomes without a full table.
+ *
+ * <p>Each genome is stored as columns indexed by gene (one byte per status, a float per
+ * score, ints for lengths and contig ids), so a few hundred genomes of a few thousand BUSCOs
+ * take a few megabytes. The index can be refreshed while BUSCO is running; only result files
+ * that are new or changed since the last refresh are read.</p>
+ *
+ * <p>Both BUSCO layouts are recognised: {@code <genome>/run_<lineage>/full_table.tsv} as
+ * written when BUSCO is given a directory of genomes, and {@code run_<genome>/full_table.tsv}
+ * directly under the scanned directory.</p>
+ */
+public class BuscoResultsIndex {
+    public static final byte MISSING = 0;
+    public static final byte SINGLE = 1;
+    public static final byte DUPLICATED = 2;
+    public static final byte FRAGMENTED = 3;
+    public static final String FULL_TABLE = "full_table.tsv";
+    private static final Logger LOGGER = Logger.getLogger(BuscoResultsIndex.class.getName());
+    private static final String SUMMARY_PREFIX = "short_summary";
+    private static final String RUN_PREFIX = "run_";
+    // genome/run_lineage/full_table.tsv
+    private static final int SCAN_DEPTH = 3;
+    private static final int INITIAL_GENES = 1024;
+
+    private final Map<String, Integer> geneIds = new HashMap<>();
+    private final List<String> genes = new ArrayList<>();
+    private final Map<String, GenomeColumns> genomes = new LinkedHashMap<>();
+    private final Map<String, int[]> summaries = new LinkedHashMap<>();
+    private final Map<Path, String> parsedVersions = new HashMap<>();
+
+    /**
+     * Read the result files below a BUSCO output directory that are new or have changed
+     * since the last call. Files that can't be read are logged and retried on the next call.
+     *
+     * @param buscoDirectory BUSCO output directory
+     * @return true if the index changed
+     * @throws IOException if the directory can't be listed
+     */
+    public synchronized boolean refresh(Path buscoDirectory) throws IOException {
+        if (!Files.isDirectory(buscoDirectory)) {
+            return false;
+        }
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(buscoDirectory, SCAN_DEPTH)) {
+            stream.filter(BuscoResultsIndex::isResultFile).forEach(files::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // Full tables first, so their genomes are known when the summaries are checked
+        files.sort(Comparator.comparing((Path file) -> !file.getFileName().toString().equals(FULL_TABLE))
+                .thenComparing(Comparator.naturalOrder()));
+        boolean changed = false;
+        for (Path file : files) {
+            String genome = genomeOf(buscoDirectory, file.getParent());
+            if (genome == null) {
+                continue;
+            }
+            String version;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                version = attributes.lastModifiedTime().toMillis() + ":" + attributes.size();
+            } catch (IOException e) {
+                continue;
+            }
+            if (version.equals(parsedVersions.get(file))) {
+                continue;
+            }
+            try {
+                if (file.getFileName().toString().equals(FULL_TABLE)) {
+                    readFullTable(genome, file);
+                } else {
+                    readSummary(genome, file);
+                }
+                parsedVersions.put(file, version);
+                changed = true;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not read BUSCO results " + file, e);
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isResultFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.equals(FULL_TABLE) || name.startsWith(SUMMARY_PREFIX) && name.endsWith(".txt");
+    }
+
+    /**
+     * @return The genome the results in a directory belong to, or null if it can't be told
+     */
+    static String genomeOf(Path buscoDirectory, Path directory) {
+        if (directory == null || directory.equals(buscoDirectory) || directory.getFileName() == null) {
+            return null;
+        }
+        String name = directory.getFileName().toString();
+        if (!name.startsWith(RUN_PREFIX)) {
+            return name;
+        }
+        Path parent = directory.getParent();
+        if (parent == null || parent.equals(buscoDirectory)) {
+            return name.substring(RUN_PREFIX.length());
+        }
+        return parent.getFileName().toString();
+    }
+
+    /**
+     * Read a BUSCO full table, replacing any earlier results of the genome
+     *
+     * @param genome Genome name
+     * @param file full_table.tsv of the genome
+     * @throws IOException if the file can't be read
+     */
+    public synchronized void readFullTable(String genome, Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            readFullTable(genome, reader);
+        }
+    }
+
+    /**
+     * Read a BUSCO full table from a stream. Columns are located from the "# Busco id" header,
+     * which differs between BUSCO versions ("Contig" or "Sequence", with or without strand);
+     * without a header the BUSCO 5 layout is assumed.
+     */
+    synchronized void readFullTable(String genome, BufferedReader reader) throws IOException {
+        GenomeColumns columns = new GenomeColumns(Math.max(INITIAL_GENES, genes.size()));
+        Map<String, Integer> contigIds = new HashMap<>();
+        int contigColumn = 2;
+        int scoreColumn = 6;
+        int lengthColumn = 7;
+        String[] fields = new String[16];
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("#")) {
+                if (line.startsWith("# Busco id")) {
+                    int count = split(line.substring(2), fields);
+                    for (int i = 0; i < count; i++) {
+                        if (fields[i].equals("Contig") || fields[i].equals("Sequence")) {
+                            contigColumn = i;
+                        } else if (fields[i].equals("Score")) {
+                            scoreColumn = i;
+                        } else if (fields[i].equals("Length")) {
+                            lengthColumn = i;
+                        }
+                    }
+                }
+                continue;
+            }
+            int count = split(line, fields);
+            if (count < 2) {
+                continue;
+            }
+            int gene = geneId(fields[0]);
+            columns.ensureCapacity(gene + 1);
+            byte status = parseStatus(fields[1]);
+            columns.copies[gene] = (byte) Math.min(Byte.MAX_VALUE, columns.copies[gene] + (status == MISSING ? 0 : 1));
+            float score = count > scoreColumn ? parseFloat(fields[scoreColumn]) : Float.NaN;
+            // Duplicated BUSCOs have one line per copy; the best scoring copy is kept
+            if (columns.status[gene] == MISSING || score > columns.score[gene]) {
+                columns.status[gene] = status;
+                columns.score[gene] = score;
+                columns.length[gene] = count > lengthColumn ? parseInt(fields[lengthColumn]) : 0;
+                if (count > contigColumn && !fields[contigColumn].isEmpty()) {
+                    String contig = fields[contigColumn];
+                    Integer id = contigIds.get(contig);
+                    if (id == null) {
+                        id = columns.contigs.size();
+                        contigIds.put(contig, id);
+                        columns.contigs.add(contig);
+                    }
+                    columns.contig[gene] = id;
+                }
+            }
+        }
+        genomes.put(genome, columns);
+    }
+
+    /**
+     * Read the counts of a BUSCO short summary, used for genomes without a full table
+     */
+    synchronized void readSummary(String genome, Path file) throws IOException {
+        int[] counts = new int[4];
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                int space = trimmed.indexOf('\t') > 0 ? trimmed.indexOf('\t') : trimmed.indexOf(' ');
+                if (space <= 0 || !Character.isDigit(trimmed.charAt(0))) {
+                    continue;
+                }
+                String label = trimmed.substring(space).trim();
+                int value = parseInt(trimmed.substring(0, space));
+                if (label.endsWith("(S)")) {
+                    counts[SINGLE - 1] = value;
+                } else if (label.endsWith("(D)")) {
+                    counts[DUPLICATED - 1] = value;
+                } else if (label.endsWith("(F)")) {
+                    counts[FRAGMENTED - 1] = value;
+                } else if (label.endsWith("(M)")) {
+                    counts[3] = value;
+                }
+            }
+        }
+        summaries.put(genome, counts);
+    }
+
+    private int geneId(String gene) {
+        Integer id = geneIds.get(gene);
+        if (id == null) {
+            id = genes.size();
+            geneIds.put(gene, id);
+            genes.add(gene);
+        }
+        return id;
+    }
+
+    private static byte parseStatus(String status) {
+        switch (status) {
+            case "Complete":
+                return SINGLE;
+            case "Duplicated":
+                return DUPLICATED;
+            case "Fragmented":
+                return FRAGMENTED;
+            default:
+                return MISSING;
+        }
+    }
+
+    /**
+     * Split a line at tabs into the given array, without allocating a regex
+     *
+     * @return The number of fields, at most the array length
+     */
+    private static int split(String line, String[] fields) {
+        int count = 0;
+        int start = 0;
+        while (count < fields.length) {
+            int tab = line.indexOf('\t', start);
+            fields[count++] = tab < 0 ? line.substring(start) : line.substring(start, tab);
+            if (tab < 0) {
+                break;
+            }
+            start = tab + 1;
+        }
+        return count;
+    }
+
+    private static float parseFloat(String value) {
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return Genomes with a full table, in the order they were first read
+     */
+    public synchronized List<String> getGenomes() {
+        return Collections.unmodifiableList(new ArrayList<>(genomes.keySet()));
+    }
+
+    /**
+     * @return BUSCO ids seen in any full table; a gene's position is its index
+     */
+    public synchronized List<String> getGenes() {
+        return Collections.unmodifiableList(new ArrayList<>(genes));
+    }
+
+    /**
+     * @return {@link #SINGLE}, {@link #DUPLICATED}, {@link #FRAGMENTED} or {@link #MISSING}
+     */
+    public synchronized byte getStatus(String genome, String gene) {
+        GenomeColumns columns = columns(genome, gene);
+        return columns != null ? columns.status[geneIds.get(gene)] : MISSING;
+    }
+
+    /**
+     * @return Number of copies found (complete or fragmented)
+     */
+    public synchronized int getCopies(String genome, String gene) {
+        GenomeColumns columns = columns(genome, gene);
+        return columns != null ? columns.copies[geneIds.get(gene)] : 0;
+    }
+
+    /**
+     * @return HMM score of the best copy, NaN if missing
+     */
+    public synchronized float getScore(String genome, String gene) {
+        GenomeColumns columns = columns(genome, gene);
+        return columns != null && columns.status[geneIds.get(gene)] != MISSING ? columns.score[geneIds.get(gene)] : Float.NaN;
+    }
+
+    /**
+     * @return Length of the best copy, 0 if missing
+     */
+    public synchronized int getLength(String genome, String gene) {
+        GenomeColumns columns = columns(genome, gene);
+        return columns != null ? columns.length[geneIds.get(gene)] : 0;
+    }
+
+    /**
+     * @return Contig or sequence of the best copy, null if missing
+     */
+    public synchronized String getContig(String genome, String gene) {
+        GenomeColumns columns = columns(genome, gene);
+        if (columns == null || columns.status[geneIds.get(gene)] == MISSING) {
+            return null;
+        }
+        return columns.contigs.get(columns.contig[geneIds.get(gene)]);
+    }
+
+    private GenomeColumns columns(String genome, String gene) {
+        GenomeColumns columns = genomes.get(genome);
+        Integer id = geneIds.get(gene);
+        return columns != null && id != null && id < columns.status.length ? columns : null;
+    }
+
+    /**
+     * Completeness of every genome, least complete first. For genomes with a full table,
+     * the number of BUSCOs that are single copy in all other such genomes but not in this one
+     * tells how much the genome alone shrinks a fully occupied supermatrix.
+     */
+    public synchronized List<GenomeCompleteness> getCompleteness() {
+        int geneCount = genes.size();
+        int[] singleCopies = new int[geneCount];
+        for (GenomeColumns columns : genomes.values()) {
+            int limit = Math.min(geneCount, columns.status.length);
+            for (int g = 0; g < limit; g++) {
+                if (columns.status[g] == SINGLE) {
+                    singleCopies[g]++;
+                }
+            }
+        }
+        List<GenomeCompleteness> result = new ArrayList<>();
+        for (Map.Entry<String, GenomeColumns> entry : genomes.entrySet()) {
+            byte[] status = entry.getValue().status;
+            int[] counts = new int[4];
+            int soleMissing = 0;
+            for (int g = 0; g < geneCount; g++) {
+                byte state = g < status.length ? status[g] : MISSING;
+                counts[state == MISSING ? 3 : state - 1]++;
+                if (state != SINGLE && singleCopies[g] == genomes.size() - 1) {
+                    soleMissing++;
+                }
+            }
+            result.add(new GenomeCompleteness(entry.getKey(), counts[0], counts[1], counts[2], counts[3],
+                    genomes.size() > 1 ? soleMissing : 0));
+        }
+        for (Map.Entry<String, int[]> entry : summaries.entrySet()) {
+            if (!genomes.containsKey(entry.getKey())) {
+                int[] counts = entry.getValue();
+                result.add(new GenomeCompleteness(entry.getKey(), counts[0], counts[1], counts[2], counts[3], -1));
+            }
+        }
+        result.sort(Comparator.comparingDouble(GenomeCompleteness::getCompletePercent)
+                .thenComparing(GenomeCompleteness::getGenome));
+        return result;
+    }
+
+    /**
+     * Status, copy number, score, length and contig of one genome, indexed by gene id
+     */
+    private static final class GenomeColumns {
+        private byte[] status;
+        private byte[] copies;
+        private float[] score;
+        private int[] length;
+        private int[] contig;
+        private final List<String> contigs = new ArrayList<>();
+
+        private GenomeColumns(int capacity) {
+            status = new byte[capacity];
+            copies = new byte[capacity];
+            score = new float[capacity];
+            length = new int[capacity];
+            contig = new int[capacity];
+        }
+
+        private void ensureCapacity(int genes) {
+            if (genes > status.length) {
+                int capacity = Math.max(genes, status.length * 2);
+                status = Arrays.copyOf(status, capacity);
+                copies = Arrays.copyOf(copies, capacity);
+                score = Arrays.copyOf(score, capacity);
+                length = Arrays.copyOf(length, capacity);
+                contig = Arrays.copyOf(contig, capacity);
+            }
+        }
+    }
+}
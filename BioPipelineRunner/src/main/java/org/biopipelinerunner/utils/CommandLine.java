@@ -0,0 +1,128 @@
+package org.biopipelinerunner.utils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * An external tool invocation as an argument vector, run directly by {@link CommandLineUtils}
+ * without a shell in between. Arguments are passed as they are, so paths with spaces or
+ * quotes need no escaping, and standard output can go to a file instead of through a shell
+ * {@code >} redirect.
+ *
+ * <p>Paths added with {@link #addPath(Path)} are converted when the tools run under WSL.
+ * {@link #getOutputFile()} keeps its local form because the JVM opens it, but the redirect in
+ * {@link #toShellCommand()} is converted like any other path since a shell on the tool side
+ * opens it there.</p>
+ */
+public class CommandLine {
+    private static final Pattern SAFE_ARGUMENT = Pattern.compile("[A-Za-z0-9_@%+=:,./-]+");
+
+    private final List<String> arguments = new ArrayList<>();
+    private Path outputFile;
+
+    /**
+     * @param program Executable to run, looked up on the PATH unless it is a path
+     * @param arguments First arguments
+     */
+    public CommandLine(String program, String... arguments) {
+        this.arguments.add(program);
+        this.arguments.addAll(Arrays.asList(arguments));
+    }
+
+    public CommandLine add(String... values) {
+        arguments.addAll(Arrays.asList(values));
+        return this;
+    }
+
+    /**
+     * Add an option followed by its value
+     */
+    public CommandLine add(String option, Object value) {
+        arguments.add(option);
+        arguments.add(String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * Add an option followed by a path, in the form the tool sees it
+     */
+    public CommandLine add(String option, Path path) {
+        arguments.add(option);
+        return addPath(path);
+    }
+
+    /**
+     * Add a path in the form the tool sees it
+     */
+    public CommandLine addPath(Path path) {
+        arguments.add(toolPath(path));
+        return this;
+    }
+
+    /**
+     * @return The path as the tools see it, i.e. converted to its /mnt form under WSL
+     */
+    public static String toolPath(Path path) {
+        String value = path.toString();
+        if (PlatformUtils.isWindows() && PlatformUtils.isWslInstalled()) {
+            value = PlatformUtils.convertWindowsPathToWsl(value);
+        }
+        return value;
+    }
+
+    /**
+     * Write the tool's standard output to a file, replacing it
+     */
+    public CommandLine redirectOutput(Path file) {
+        this.outputFile = file;
+        return this;
+    }
+
+    /**
+     * @return The program followed by its arguments
+     */
+    public List<String> getArguments() {
+        return Collections.unmodifiableList(arguments);
+    }
+
+    /**
+     * @return File standard output goes to, or null if it is captured
+     */
+    public Path getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * @return The command as a POSIX shell command line, for where only a shell string is
+     *         accepted (e.g. {@code sbatch --wrap}) and for logs
+     */
+    public String toShellCommand() {
+        StringBuilder command = new StringBuilder();
+        for (String argument : arguments) {
+            if (command.length() > 0) {
+                command.append(' ');
+            }
+            command.append(quote(argument));
+        }
+        if (outputFile != null) {
+            command.append(" > ").append(quote(toolPath(outputFile)));
+        }
+        return command.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toShellCommand();
+    }
+
+    private static String quote(String value) {
+        if (SAFE_ARGUMENT.matcher(value).matches()) {
+            return value;
+        }
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+}
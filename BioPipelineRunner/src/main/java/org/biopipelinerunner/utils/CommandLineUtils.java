@@ -1,5 +1,7 @@
 package org.biopipelinerunner.utils;
 
+import org.biopipelinerunner.models.ResourceLimits;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -9,6 +11,14 @@ import java.util.List;
 
 public class CommandLineUtils {
 
+    /**
+     * Execute a shell command line through bash, cmd.exe or WSL's bash
+     *
+     * @deprecated Nothing in the pipeline needs a shell any more; build a {@link CommandLine}
+     *             and use {@link #execute(CommandLine, ResourceLimits, int)}, which also takes
+     *             resource limits and handles paths with spaces
+     */
+    @Deprecated
     public static String executeCommand(String command) throws IOException, InterruptedException {
         ProcessBuilder processBuilder = new ProcessBuilder();
         
@@ -23,32 +33,7 @@ public class CommandLineUtils {
             processBuilder.command("bash", "-c", command);
         }
         
-        Process process = processBuilder.start();
-        StringBuilder output = new StringBuilder();
-        StringBuilder error = new StringBuilder();
-        
-        // Handle standard output
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-        }
-        
-        // Handle error output
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                error.append(line).append("\n");
-            }
-        }
-
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new IOException("Command execution failed with exit code: " + exitCode + "\nError: " + error.toString());
-        }
-
-        return output.toString().trim();
+        return runProcess(processBuilder, command, null);
     }
     
     public static String executeCommandWithArgs(String... args) throws IOException, InterruptedException {
@@ -74,7 +59,63 @@ public class CommandLineUtils {
         }
         
         processBuilder.command(command);
-        Process process = processBuilder.start();
+        return runProcess(processBuilder, String.join(" ", args), null);
+    }
+
+    /**
+     * Run a command line directly, without a shell, under the given resource limits
+     *
+     * @param commandLine Program, arguments and output file
+     * @param limits Limits for the job, or null to run unrestricted
+     * @param threads Threads the job runs, used to size its CPU set when pinning is enabled
+     * @return Trimmed standard output of the command, empty if it went to a file
+     * @throws IOException if the command fails, including when it is killed for exceeding its limits
+     * @throws InterruptedException if interrupted while waiting for the command
+     */
+    public static String execute(CommandLine commandLine, ResourceLimits limits, int threads)
+            throws IOException, InterruptedException {
+        ResourceLimiter.LimitedJob job = ResourceLimiter.prepare(limits, threads);
+        List<String> command = new ArrayList<>();
+        if (PlatformUtils.isWindows() && PlatformUtils.isWslInstalled()) {
+            command.add("wsl.exe");
+            command.add("-e");
+        }
+        command.addAll(job != null ? job.wrapArgs(commandLine.getArguments()) : commandLine.getArguments());
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        if (commandLine.getOutputFile() != null) {
+            processBuilder.redirectOutput(commandLine.getOutputFile().toFile());
+        }
+        return runProcess(processBuilder, commandLine.toShellCommand(), job);
+    }
+
+    /**
+     * Start the process, collect its output and wait for it to exit. Each run is
+     * recorded as a {@link ProcessExecutionEvent} when a JFR recording is active.
+     *
+     * @param processBuilder Fully configured process builder
+     * @param description Human-readable command line, used for the JFR event
+     * @param job Resource-limited job the process runs in, or null
+     * @return Trimmed standard output of the process
+     * @throws IOException if the process cannot be started or exits with a non-zero code
+     * @throws InterruptedException if interrupted while waiting for the process
+     */
+    private static String runProcess(ProcessBuilder processBuilder, String description, ResourceLimiter.LimitedJob job)
+            throws IOException, InterruptedException {
+        ProcessExecutionEvent event = new ProcessExecutionEvent();
+        event.begin();
+        Process process;
+        try {
+            process = processBuilder.start();
+        } catch (IOException e) {
+            event.exitCode = -1;
+            commitEvent(event, description);
+            if (job != null) {
+                job.close();
+            }
+            throw e;
+        }
+        event.pid = process.pid();
         
         StringBuilder output = new StringBuilder();
         StringBuilder error = new StringBuilder();
@@ -95,11 +136,35 @@ public class CommandLineUtils {
             }
         }
 
-        int exitCode = process.waitFor();
+        int exitCode;
+        String limitFailure = null;
+        try {
+            exitCode = process.waitFor();
+            if (exitCode != 0 && job != null) {
+                limitFailure = job.describeFailure(exitCode, error.toString());
+            }
+        } finally {
+            event.exitCode = process.isAlive() ? -1 : process.exitValue();
+            commitEvent(event, description);
+            if (job != null) {
+                job.close();
+            }
+        }
+        if (limitFailure != null) {
+            throw new IOException(limitFailure + " (exit code " + exitCode + ")\nError: " + error.toString());
+        }
         if (exitCode != 0) {
             throw new IOException("Command execution failed with exit code: " + exitCode + "\nError: " + error.toString());
         }
 
         return output.toString().trim();
     }
+    
+    private static void commitEvent(ProcessExecutionEvent event, String description) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.command = description;
+            event.commit();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consensus of a set of trees over the same taxa, such as bootstrap replicates. The
+ * {@link Bipartition}s of all trees are counted in a hash map and those found in more than the
+ * threshold fraction of the trees are assembled into the consensus.
+ */
+public class ConsensusTree {
+
+    private ConsensusTree() {
+    }
+
+    /**
+     * Majority-rule consensus: splits found in more than half of the trees
+     */
+    public static PhyloTree majorityRule(List<PhyloTree> trees) {
+        return build(trees, 0.5);
+    }
+
+    /**
+     * Strict consensus: splits found in all trees
+     */
+    public static PhyloTree strict(List<PhyloTree> trees) {
+        return build(trees, 1);
+    }
+
+    /**
+     * Build a consensus tree, rooted on the first taxon in label order. Internal nodes carry
+     * the percentage of trees containing their split as support, and every branch the mean
+     * length it has in those trees.
+     *
+     * @param trees Trees over the same taxa
+     * @param threshold Fraction of trees a split must exceed to be included, at least 0.5;
+     *                  1 keeps only splits found in all trees (strict consensus)
+     * @throws IllegalArgumentException if the trees don't share the same taxa
+     */
+    public static PhyloTree build(List<PhyloTree> trees, double threshold) {
+        if (trees.isEmpty()) {
+            throw new IllegalArgumentException("No trees");
+        }
+        if (threshold < 0.5) {
+            throw new IllegalArgumentException("Threshold below 0.5 can give incompatible splits: " + threshold);
+        }
+        TaxonIndex taxa = TaxonIndex.of(trees.get(0));
+        int n = taxa.size();
+
+        // Per split: trees containing it, summed branch length, trees with a length for it
+        Map<Bipartition, double[]> counts = new HashMap<>();
+        double[] leafLength = new double[n];
+        int[] leafLengthCount = new int[n];
+        for (int t = 0; t < trees.size(); t++) {
+            PhyloTree tree = trees.get(t);
+            try {
+                Bipartitions.forEach(tree, taxa, (split, node) -> {
+                    double[] stats = counts.computeIfAbsent(split, key -> new double[3]);
+                    stats[0]++;
+                    if (!Double.isNaN(tree.getBranchLength(node))) {
+                        stats[1] += tree.getBranchLength(node);
+                        stats[2]++;
+                    }
+                });
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Tree " + (t + 1) + ": " + e.getMessage(), e);
+            }
+            for (int leaf : tree.getLeaves(tree.getRoot())) {
+                int taxon = taxa.indexOf(tree.getLabel(leaf));
+                if (!Double.isNaN(tree.getBranchLength(leaf))) {
+                    leafLength[taxon] += tree.getBranchLength(leaf);
+                    leafLengthCount[taxon]++;
+                }
+            }
+        }
+
+        int required = threshold >= 1 ? trees.size() : (int) Math.floor(threshold * trees.size()) + 1;
+        List<Map.Entry<Bipartition, double[]>> selected = new ArrayList<>();
+        for (Map.Entry<Bipartition, double[]> entry : counts.entrySet()) {
+            if (entry.getValue()[0] >= required) {
+                selected.add(entry);
+            }
+        }
+        // Larger clusters first, so each one's parent is already placed
+        selected.sort((a, b) -> Integer.compare(b.getKey().getSize(), a.getKey().getSize()));
+
+        int nodeCount = n + 1 + selected.size();
+        int root = n;
+        int[] parent = new int[nodeCount];
+        double[] branchLength = new double[nodeCount];
+        double[] support = new double[nodeCount];
+        String[] labels = new String[nodeCount];
+        Arrays.fill(branchLength, Double.NaN);
+        Arrays.fill(support, Double.NaN);
+        parent[root] = PhyloTree.NONE;
+        // Deepest cluster placed so far that contains each taxon
+        int[] owner = new int[n];
+        Arrays.fill(owner, root);
+        for (int i = 0; i < selected.size(); i++) {
+            int node = n + 1 + i;
+            Bipartition split = selected.get(i).getKey();
+            double[] stats = selected.get(i).getValue();
+            parent[node] = owner[split.nextTaxon(0)];
+            support[node] = 100.0 * stats[0] / trees.size();
+            branchLength[node] = stats[2] > 0 ? stats[1] / stats[2] : Double.NaN;
+            for (int taxon = split.nextTaxon(0); taxon >= 0; taxon = split.nextTaxon(taxon + 1)) {
+                owner[taxon] = node;
+            }
+        }
+        for (int taxon = 0; taxon < n; taxon++) {
+            parent[taxon] = owner[taxon];
+            labels[taxon] = taxa.getName(taxon);
+            branchLength[taxon] = leafLengthCount[taxon] > 0 ? leafLength[taxon] / leafLengthCount[taxon] : Double.NaN;
+        }
+
+        int[] firstChild = new int[nodeCount];
+        int[] nextSibling = new int[nodeCount];
+        Arrays.fill(firstChild, PhyloTree.NONE);
+        Arrays.fill(nextSibling, PhyloTree.NONE);
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            if (parent[node] != PhyloTree.NONE) {
+                nextSibling[node] = firstChild[parent[node]];
+                firstChild[parent[node]] = node;
+            }
+        }
+        return new PhyloTree(nodeCount, root, parent, firstChild, nextSibling, branchLength, support, labels);
+    }
+}
@@ -0,0 +1,177 @@
+package org.biopipelinerunner.utils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logical CPU layout of the machine: which package, physical core, L3 cache domain and
+ * NUMA node every online CPU belongs to. Read from /sys/devices/system on Linux.
+ */
+public class CpuTopology {
+    private static final Logger LOGGER = Logger.getLogger(CpuTopology.class.getName());
+    private static final Path SYS_CPU = Paths.get("/sys/devices/system/cpu");
+    private static final Path SYS_NODE = Paths.get("/sys/devices/system/node");
+
+    private final int[] cpus;
+    private final int[] packages;
+    private final int[] cores;
+    private final int[] cacheDomains;
+    private final int[] nodes;
+
+    /**
+     * All arrays are indexed the same way: entry i describes logical CPU cpus[i]
+     */
+    public CpuTopology(int[] cpus, int[] packages, int[] cores, int[] cacheDomains, int[] nodes) {
+        this.cpus = cpus;
+        this.packages = packages;
+        this.cores = cores;
+        this.cacheDomains = cacheDomains;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Detect the topology of this machine, falling back to a flat single-node layout
+     * when sysfs is not available
+     */
+    public static CpuTopology detect() {
+        if (PlatformUtils.isLinux() && Files.isDirectory(SYS_CPU)) {
+            try {
+                return read(SYS_CPU, SYS_NODE);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not read CPU topology from sysfs", e);
+            }
+        }
+        return flat(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * A topology where every CPU is its own core in one package, cache domain and node
+     */
+    public static CpuTopology flat(int cpuCount) {
+        int[] cpus = new int[cpuCount];
+        for (int i = 0; i < cpuCount; i++) {
+            cpus[i] = i;
+        }
+        return new CpuTopology(cpus, new int[cpuCount], cpus.clone(), new int[cpuCount], new int[cpuCount]);
+    }
+
+    static CpuTopology read(Path sysCpu, Path sysNode) throws IOException {
+        int[] cpus = parseCpuList(readString(sysCpu.resolve("online")));
+        int count = cpus.length;
+        int[] packages = new int[count];
+        int[] cores = new int[count];
+        int[] cacheDomains = new int[count];
+        int[] nodes = new int[count];
+
+        Map<Integer, Integer> nodeByCpu = new HashMap<>();
+        if (Files.isDirectory(sysNode)) {
+            try (DirectoryStream<Path> nodeDirs = Files.newDirectoryStream(sysNode, "node[0-9]*")) {
+                for (Path nodeDir : nodeDirs) {
+                    int node = Integer.parseInt(nodeDir.getFileName().toString().substring(4));
+                    for (int cpu : parseCpuList(readString(nodeDir.resolve("cpulist")))) {
+                        nodeByCpu.put(cpu, node);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            Path cpuDir = sysCpu.resolve("cpu" + cpus[i]);
+            packages[i] = readInt(cpuDir.resolve("topology/physical_package_id"), 0);
+            cores[i] = readInt(cpuDir.resolve("topology/core_id"), cpus[i]);
+            // Prefer the L3 cache id; older kernels only expose the sharing list
+            Path l3 = cpuDir.resolve("cache/index3");
+            if (Files.exists(l3.resolve("id"))) {
+                cacheDomains[i] = packages[i] * 1000 + readInt(l3.resolve("id"), 0);
+            } else if (Files.exists(l3.resolve("shared_cpu_list"))) {
+                cacheDomains[i] = 1_000_000 + parseCpuList(readString(l3.resolve("shared_cpu_list")))[0];
+            } else {
+                cacheDomains[i] = packages[i] * 1000;
+            }
+            nodes[i] = nodeByCpu.getOrDefault(cpus[i], 0);
+        }
+        return new CpuTopology(cpus, packages, cores, cacheDomains, nodes);
+    }
+
+    /**
+     * Parse a kernel CPU list such as "0-3,8,10-11"
+     */
+    public static int[] parseCpuList(String list) {
+        List<Integer> result = new ArrayList<>();
+        for (String part : list.trim().split(",")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            int dash = part.indexOf('-');
+            if (dash < 0) {
+                result.add(Integer.parseInt(part.trim()));
+            } else {
+                int from = Integer.parseInt(part.substring(0, dash).trim());
+                int to = Integer.parseInt(part.substring(dash + 1).trim());
+                for (int cpu = from; cpu <= to; cpu++) {
+                    result.add(cpu);
+                }
+            }
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Format CPUs as a comma-separated list accepted by taskset and numactl
+     */
+    public static String formatCpuList(int[] cpuList) {
+        StringBuilder builder = new StringBuilder();
+        for (int cpu : cpuList) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(cpu);
+        }
+        return builder.toString();
+    }
+
+    private static String readString(Path path) throws IOException {
+        return new String(Files.readAllBytes(path)).trim();
+    }
+
+    private static int readInt(Path path, int defaultValue) {
+        try {
+            return Integer.parseInt(readString(path));
+        } catch (IOException | NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public int getCpuCount() {
+        return cpus.length;
+    }
+
+    public int getCpu(int index) {
+        return cpus[index];
+    }
+
+    public int getPackage(int index) {
+        return packages[index];
+    }
+
+    public int getCore(int index) {
+        return cores[index];
+    }
+
+    public int getCacheDomain(int index) {
+        return cacheDomains[index];
+    }
+
+    public int getNode(int index) {
+        return nodes[index];
+    }
+}
@@ -0,0 +1,308 @@
+package org.biopipelinerunner.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Detects compressed genome files and decompresses them to plain files.
+ *
+ * <p>BGZF files (gzip written by bgzip, made of independent blocks of at most 64 KB) are
+ * inflated in parallel, a batch of blocks per task, and written in order. Other gzip files
+ * can only be inflated sequentially. bzip2 and zstd are handed to the first of lbzip2, pbzip2
+ * or bzip2, respectively pzstd or zstd, found on the PATH; the parallel tools come first.</p>
+ */
+public class Decompressor {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Compressed bytes per parallel task; BGZF blocks are at most 64 KB
+    private static final int BATCH_BYTES = 4 << 20;
+    // Inflated bytes per task, as runs of Ns compress extremely well
+    private static final int BATCH_INFLATED_BYTES = 64 << 20;
+    private static final int BGZF_HEADER = 18;
+    private static final int GZIP_TRAILER = 8;
+    private static final String[] SUFFIXES = {".gz", ".bgz", ".bz2", ".zst", ".zstd"};
+
+    public enum Format {
+        NONE, GZIP, BGZF, BZIP2, ZSTD
+    }
+
+    private Decompressor() {
+    }
+
+    /**
+     * Detect the compression of a file from its first bytes
+     */
+    public static Format detect(Path file) throws IOException {
+        byte[] head = new byte[16];
+        int length;
+        try (InputStream in = Files.newInputStream(file)) {
+            length = in.readNBytes(head, 0, head.length);
+        }
+        if (length >= 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b) {
+            return length >= 16 && isBgzfHeader(head, 0) ? Format.BGZF : Format.GZIP;
+        }
+        if (length >= 3 && head[0] == 'B' && head[1] == 'Z' && head[2] == 'h') {
+            return Format.BZIP2;
+        }
+        if (length >= 4 && (head[0] & 0xff) == 0x28 && (head[1] & 0xff) == 0xb5 && (head[2] & 0xff) == 0x2f
+                && (head[3] & 0xff) == 0xfd) {
+            return Format.ZSTD;
+        }
+        return Format.NONE;
+    }
+
+    /**
+     * @return The file name without its compression suffix, e.g. "genome.fna" for "genome.fna.gz"
+     */
+    public static String plainName(String fileName) {
+        String lower = fileName.toLowerCase();
+        for (String suffix : SUFFIXES) {
+            if (lower.endsWith(suffix) && fileName.length() > suffix.length()) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return fileName;
+    }
+
+    /**
+     * Decompress a file
+     *
+     * @param source Compressed file
+     * @param target Plain file to write
+     * @param threads Threads to use where the format allows parallel decompression
+     * @return Number of bytes written
+     * @throws IOException if the file is corrupt or truncated, or no tool for the format is installed
+     */
+    public static long decompress(Path source, Path target, int threads) throws IOException, InterruptedException {
+        Format format = detect(source);
+        switch (format) {
+            case BGZF:
+                return inflateBgzf(source, target, Math.max(1, threads));
+            case GZIP:
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(source), BUFFER_SIZE)) {
+                    return Files.copy(in, target);
+                }
+            case BZIP2:
+                return runTool(source, target, "bzip2", new String[][] {
+                        {"lbzip2", "-dc", "-n", String.valueOf(threads)},
+                        {"pbzip2", "-dc", "-p" + threads},
+                        {"bzip2", "-dc"}});
+            case ZSTD:
+                return runTool(source, target, "zstd", new String[][] {
+                        {"pzstd", "-dc", "-p", String.valueOf(threads)},
+                        {"zstd", "-dcq"}});
+            default:
+                Files.copy(source, target);
+                return Files.size(target);
+        }
+    }
+
+    /**
+     * Decompress with the first of the given tools found on the PATH, writing its output straight to the target
+     */
+    private static long runTool(Path source, Path target, String format, String[][] candidates)
+            throws IOException, InterruptedException {
+        for (String[] candidate : candidates) {
+            Path tool = findOnPath(candidate[0]);
+            if (tool == null) {
+                continue;
+            }
+            List<String> command = new ArrayList<>(Arrays.asList(candidate));
+            command.set(0, tool.toString());
+            command.add(source.toString());
+            Path log = target.resolveSibling(target.getFileName() + ".log");
+            Process process = new ProcessBuilder(command)
+                    .redirectOutput(target.toFile())
+                    .redirectError(log.toFile())
+                    .start();
+            try {
+                int exitCode = process.waitFor();
+                if (exitCode != 0) {
+                    String error = new String(Files.readAllBytes(log), StandardCharsets.UTF_8).trim();
+                    throw new IOException(candidate[0] + " failed on " + source + " with exit code " + exitCode
+                            + (error.isEmpty() ? "" : ": " + error));
+                }
+            } finally {
+                process.destroy();
+                Files.deleteIfExists(log);
+            }
+            return Files.size(target);
+        }
+        throw new IOException("Decompressing " + source + " needs " + format + " on the PATH");
+    }
+
+    /**
+     * @return The executable of that name in a PATH directory, or null
+     */
+    static Path findOnPath(String name) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            if (directory.isEmpty()) {
+                continue;
+            }
+            for (String candidate : PlatformUtils.isWindows() ? new String[] {name + ".exe", name} : new String[] {name}) {
+                Path file = Paths.get(directory, candidate);
+                if (Files.isRegularFile(file) && Files.isExecutable(file)) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inflate a BGZF file: batches of whole blocks are read in order, inflated on the pool
+     * and written in order, with at most two batches per thread in flight
+     */
+    static long inflateBgzf(Path source, Path target, int threads) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bgzf-inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE)) {
+            long size = channel.size();
+            long position = 0;
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            while (position < size) {
+                int length = (int) Math.min(BATCH_BYTES, size - position);
+                byte[] batch = new byte[length];
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of " + source);
+                    }
+                }
+                int end = 0;
+                long inflated = 0;
+                while (end + BGZF_HEADER <= length && inflated < BATCH_INFLATED_BYTES) {
+                    if (!isBgzfHeader(batch, end)) {
+                        throw new IOException(source + ": not a BGZF block at byte " + (position + end));
+                    }
+                    int blockSize = blockSize(batch, end);
+                    if (end + blockSize > length) {
+                        break;
+                    }
+                    inflated += readIntLE(batch, end + blockSize - 4) & 0xffffffffL;
+                    end += blockSize;
+                }
+                if (end == 0) {
+                    throw new IOException(source + ": truncated BGZF block at byte " + position);
+                }
+                int batchEnd = end;
+                long batchPosition = position;
+                pending.add(pool.submit(() -> inflateBlocks(batch, batchEnd, source, batchPosition)));
+                position += end;
+                if (pending.size() >= 2 * threads) {
+                    written += write(pending.poll(), out);
+                }
+            }
+            while (!pending.isEmpty()) {
+                written += write(pending.poll(), out);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return written;
+    }
+
+    private static long write(Future<byte[]> future, OutputStream out) throws IOException, InterruptedException {
+        try {
+            byte[] data = future.get();
+            out.write(data);
+            return data.length;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static byte[] inflateBlocks(byte[] batch, int end, Path source, long position) throws IOException {
+        int total = 0;
+        for (int offset = 0; offset < end; offset += blockSize(batch, offset)) {
+            total += readIntLE(batch, offset + blockSize(batch, offset) - 4);
+        }
+        byte[] data = new byte[total];
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        try {
+            int written = 0;
+            for (int offset = 0; offset < end; ) {
+                int blockSize = blockSize(batch, offset);
+                int extraLength = (batch[offset + 10] & 0xff) | (batch[offset + 11] & 0xff) << 8;
+                int dataStart = offset + 12 + extraLength;
+                int dataLength = offset + blockSize - GZIP_TRAILER - dataStart;
+                int expected = readIntLE(batch, offset + blockSize - 4);
+                inflater.reset();
+                inflater.setInput(batch, dataStart, dataLength);
+                int inflated = 0;
+                while (inflated < expected && !inflater.finished()) {
+                    int count = inflater.inflate(data, written + inflated, expected - inflated);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += count;
+                }
+                crc.reset();
+                crc.update(data, written, inflated);
+                if (inflated != expected || (int) crc.getValue() != readIntLE(batch, offset + blockSize - 8)) {
+                    throw new IOException(source + ": corrupt BGZF block at byte " + (position + offset));
+                }
+                written += inflated;
+                offset += blockSize;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(source + ": corrupt BGZF data after byte " + position, e);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    /**
+     * @return true if a gzip member header with the BGZF "BC" extra subfield starts at the offset
+     */
+    private static boolean isBgzfHeader(byte[] data, int offset) {
+        return (data[offset] & 0xff) == 0x1f && (data[offset + 1] & 0xff) == 0x8b && data[offset + 2] == 8
+                && (data[offset + 3] & 4) != 0 && data[offset + 12] == 'B' && data[offset + 13] == 'C'
+                && data[offset + 14] == 2 && data[offset + 15] == 0;
+    }
+
+    private static int blockSize(byte[] data, int offset) {
+        return ((data[offset + 16] & 0xff) | (data[offset + 17] & 0xff) << 8) + 1;
+    }
+
+    private static int readIntLE(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16
+                | (data[offset + 3] & 0xff) << 24;
+    }
+}
@@ -9,7 +9,7 @@ public class DependencyManager {
     );
     
     private static final List<String> REQUIRED_PYTHON_PACKAGES = Arrays.asList(
-        "biopython", "ete3"
+        "biopython"
     );
 
     public static Map<String, Boolean> checkDependencies() {
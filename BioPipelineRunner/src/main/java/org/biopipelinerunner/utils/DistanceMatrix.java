@@ -0,0 +1,302 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PackedAlignment;
+import org.biopipelinerunner.models.SitePatterns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Symmetric matrix of pairwise distances between the taxa of an alignment, stored as one flat
+ * n x n array. Sites where either taxon has a gap or ambiguity code are left out of that pair's
+ * comparison (pairwise deletion).
+ *
+ * <p>Rows are first packed into bit planes, 64 sites per word: one plane marks the sites with
+ * a known residue and one plane holds each bit of the residue code (five for proteins, two for
+ * nucleotides). Two taxa then differ at the sites where any plane differs, so a word of 64
+ * sites costs a few XORs and two bit counts. Distances are computed in parallel over square
+ * tiles of taxon pairs; within a tile the words are visited in chunks, so the tile's rows stay
+ * in cache while every pair in the tile is compared over the chunk.</p>
+ *
+ * <p>Weighted {@link SitePatterns} keep the bit counting: a pattern of weight w is placed once
+ * in the group of each bit set in w, and each group is padded to whole words, so every word
+ * carries a single power-of-two weight to multiply its counts by.</p>
+ */
+public class DistanceMatrix {
+    /**
+     * Distance assigned to pairs whose corrected distance is undefined because they differ at
+     * (almost) every site
+     */
+    public static final double SATURATED_DISTANCE = 10;
+
+    private static final int TILE_SIZE = 32;
+    private static final int WORD_CHUNK = 256;
+
+    public enum Model {
+        /** Proportion of differing sites */
+        P_DISTANCE,
+        /** Jukes-Cantor for nucleotides, Kimura's approximation for proteins */
+        CORRECTED
+    }
+
+    private final List<String> taxa;
+    private final double[] values;
+    private final int size;
+
+    /**
+     * @param taxa Taxon names
+     * @param values Distances, row-major n x n; used directly, not copied
+     */
+    public DistanceMatrix(List<String> taxa, double[] values) {
+        if (values.length != taxa.size() * taxa.size()) {
+            throw new IllegalArgumentException("Expected " + taxa.size() * taxa.size() + " values, got " + values.length);
+        }
+        this.taxa = taxa;
+        this.values = values;
+        this.size = taxa.size();
+    }
+
+    /**
+     * Compute the distances between all taxa of an alignment
+     *
+     * @param alignment Alignment
+     * @param model Distance model
+     * @param pool Pool to run the tiles on
+     */
+    public static DistanceMatrix compute(PackedAlignment alignment, Model model, ForkJoinPool pool) {
+        int[] columns = new int[alignment.getLength()];
+        for (int site = 0; site < columns.length; site++) {
+            columns[site] = site;
+        }
+        int[] wordWeights = new int[(columns.length + 63) >>> 6];
+        Arrays.fill(wordWeights, 1);
+        return compute(alignment, columns, wordWeights, model, pool);
+    }
+
+    /**
+     * Compute the distances between all taxa from the site patterns of an alignment; the
+     * result is the same as for the full alignment
+     *
+     * @param patterns Weighted site patterns
+     * @param model Distance model
+     * @param pool Pool to run the tiles on
+     */
+    public static DistanceMatrix compute(SitePatterns patterns, Model model, ForkJoinPool pool) {
+        int[] weights = patterns.getWeights();
+        // Words needed by each bit of the weights
+        int[] groupWords = new int[Integer.SIZE];
+        for (int bit = 0; bit < Integer.SIZE; bit++) {
+            int count = 0;
+            for (int weight : weights) {
+                count += weight >>> bit & 1;
+            }
+            groupWords[bit] = (count + 63) >>> 6;
+        }
+        int[] columns = new int[IntStream.of(groupWords).sum() << 6];
+        int[] wordWeights = new int[columns.length >>> 6];
+        Arrays.fill(columns, -1);
+        int word = 0;
+        for (int bit = 0; bit < Integer.SIZE; bit++) {
+            int position = word << 6;
+            for (int pattern = 0; pattern < weights.length; pattern++) {
+                if ((weights[pattern] >>> bit & 1) != 0) {
+                    columns[position++] = pattern;
+                }
+            }
+            Arrays.fill(wordWeights, word, word + groupWords[bit], 1 << bit);
+            word += groupWords[bit];
+        }
+        return compute(patterns.getPatterns(), columns, wordWeights, model, pool);
+    }
+
+    /**
+     * @param columns Alignment column at each packed position, -1 for padding
+     * @param wordWeights Weight of the sites in each word of 64 positions
+     */
+    private static DistanceMatrix compute(PackedAlignment alignment, int[] columns, int[] wordWeights, Model model,
+                                          ForkJoinPool pool) {
+        int n = alignment.getTaxonCount();
+        double[] values = new double[n * n];
+        List<int[]> tiles = new ArrayList<>();
+        for (int first = 0; first < n; first += TILE_SIZE) {
+            for (int second = first; second < n; second += TILE_SIZE) {
+                tiles.add(new int[] {first, second});
+            }
+        }
+        long[][] packed = pool.submit(() -> IntStream.range(0, n).parallel()
+                .mapToObj(taxon -> pack(alignment, taxon, columns))
+                .toArray(long[][]::new)).join();
+        pool.invoke(new TileTask(packed, planeCount(alignment), wordWeights, model, alignment.isNucleotide(), tiles, 0,
+                tiles.size(), values));
+
+        // Pairs without a single shared site get the largest distance seen
+        double max = 0;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                max = Math.max(max, value);
+            }
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (Double.isNaN(values[i])) {
+                values[i] = max;
+            }
+        }
+        return new DistanceMatrix(alignment.getTaxa(), values);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getTaxon(int taxon) {
+        return taxa.get(taxon);
+    }
+
+    public List<String> getTaxa() {
+        return taxa;
+    }
+
+    public double get(int i, int j) {
+        return values[i * size + j];
+    }
+
+    /**
+     * @return Copy of the row-major n x n values
+     */
+    public double[] toArray() {
+        return values.clone();
+    }
+
+    /**
+     * @return Planes per word: the known-site plane plus one per bit of the residue code
+     */
+    private static int planeCount(PackedAlignment alignment) {
+        return 1 + 32 - Integer.numberOfLeadingZeros(alignment.getStateCount() - 1);
+    }
+
+    /**
+     * Pack one row into bit planes, stored word by word: for word w, element
+     * {@code w * planes} is the known-site plane and the following elements the code bits
+     */
+    private static long[] pack(PackedAlignment alignment, int taxon, int[] columns) {
+        int planes = planeCount(alignment);
+        byte[] row = alignment.getRow(taxon);
+        int words = (columns.length + 63) >>> 6;
+        long[] packed = new long[words * planes];
+        for (int site = 0; site < columns.length; site++) {
+            int code = columns[site] >= 0 ? row[columns[site]] : PackedAlignment.UNKNOWN;
+            if (code < 0) {
+                continue;
+            }
+            int base = (site >>> 6) * planes;
+            long bit = 1L << site;
+            packed[base] |= bit;
+            for (int plane = 1; plane < planes; plane++, code >>>= 1) {
+                if ((code & 1) != 0) {
+                    packed[base + plane] |= bit;
+                }
+            }
+        }
+        return packed;
+    }
+
+    private static double distance(int differences, int compared, Model model, boolean nucleotide) {
+        if (compared == 0) {
+            return Double.NaN;
+        }
+        double p = (double) differences / compared;
+        if (model == Model.P_DISTANCE) {
+            return p;
+        }
+        double argument = nucleotide ? 1 - 4.0 / 3.0 * p : 1 - p - 0.2 * p * p;
+        return argument > 0 ? Math.min(-(nucleotide ? 0.75 : 1.0) * Math.log(argument), SATURATED_DISTANCE) : SATURATED_DISTANCE;
+    }
+
+    /**
+     * Computes a range of tiles, splitting it in half until a single tile is left
+     */
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[][] packed;
+        private final int planes;
+        private final int[] wordWeights;
+        private final Model model;
+        private final boolean nucleotide;
+        private final List<int[]> tiles;
+        private final int from;
+        private final int to;
+        private final double[] values;
+
+        TileTask(long[][] packed, int planes, int[] wordWeights, Model model, boolean nucleotide, List<int[]> tiles,
+                 int from, int to, double[] values) {
+            this.packed = packed;
+            this.planes = planes;
+            this.wordWeights = wordWeights;
+            this.model = model;
+            this.nucleotide = nucleotide;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.values = values;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(packed, planes, wordWeights, model, nucleotide, tiles, from, middle, values),
+                          new TileTask(packed, planes, wordWeights, model, nucleotide, tiles, middle, to, values));
+                return;
+            }
+            int n = packed.length;
+            int firstStart = tiles.get(from)[0];
+            int secondStart = tiles.get(from)[1];
+            int firstEnd = Math.min(firstStart + TILE_SIZE, n);
+            int secondEnd = Math.min(secondStart + TILE_SIZE, n);
+            int[] differences = new int[TILE_SIZE * TILE_SIZE];
+            int[] compared = new int[TILE_SIZE * TILE_SIZE];
+
+            int length = n > 0 ? packed[0].length : 0;
+            int chunkLength = WORD_CHUNK * planes;
+            for (int chunk = 0; chunk < length; chunk += chunkLength) {
+                int chunkEnd = Math.min(chunk + chunkLength, length);
+                for (int i = firstStart; i < firstEnd; i++) {
+                    long[] a = packed[i];
+                    // On the diagonal tile only the upper triangle is needed
+                    for (int j = Math.max(secondStart, i + 1); j < secondEnd; j++) {
+                        long[] b = packed[j];
+                        int diff = 0;
+                        int count = 0;
+                        for (int w = chunk, word = chunk / planes; w < chunkEnd; w += planes, word++) {
+                            long known = a[w] & b[w];
+                            long mismatch = 0;
+                            for (int plane = 1; plane < planes; plane++) {
+                                mismatch |= a[w + plane] ^ b[w + plane];
+                            }
+                            int weight = wordWeights[word];
+                            count += weight * Long.bitCount(known);
+                            diff += weight * Long.bitCount(known & mismatch);
+                        }
+                        int cell = (i - firstStart) * TILE_SIZE + (j - secondStart);
+                        differences[cell] += diff;
+                        compared[cell] += count;
+                    }
+                }
+            }
+
+            for (int i = firstStart; i < firstEnd; i++) {
+                for (int j = Math.max(secondStart, i + 1); j < secondEnd; j++) {
+                    int cell = (i - firstStart) * TILE_SIZE + (j - secondStart);
+                    double d = distance(differences[cell], compared[cell], model, nucleotide);
+                    values[i * n + j] = d;
+                    values[j * n + i] = d;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PipelineEvent;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Subscriber that appends every pipeline event to a tab-separated file, one line per event.
+ * Lines are flushed when a stage finishes and when the writer is closed. To stop logging
+ * without losing events still buffered for the writer, use {@link #closeAfterPending}.
+ */
+public class EventLogWriter implements Flow.Subscriber<PipelineEvent>, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(EventLogWriter.class.getName());
+
+    private final Path file;
+    private final BufferedWriter writer;
+    private final CompletableFuture<Void> closedFuture = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private boolean closed;
+
+    /**
+     * @param file File to append to; created if it doesn't exist
+     * @throws IOException if the file can't be opened
+     */
+    public EventLogWriter(Path file) throws IOException {
+        this.file = file;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (closed) {
+            subscription.cancel();
+        } else {
+            subscription.request(Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public synchronized void onNext(PipelineEvent event) {
+        if (closed) {
+            return;
+        }
+        if (event instanceof EndOfLog) {
+            if (((EndOfLog) event).writer == this) {
+                close();
+            }
+            return;
+        }
+        try {
+            writer.write(event.getTime() + "\t" + event);
+            writer.newLine();
+            if (event instanceof PipelineEvent.StageFinished) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write to " + file + ", no longer logging events there", e);
+            close();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        close();
+    }
+
+    @Override
+    public void onComplete() {
+        close();
+    }
+
+    /**
+     * Close the file once every event published on the bus before this call has been written.
+     * Returns at once: an end marker is published behind those events and the file is closed
+     * on the subscriber thread when it arrives, so the caller never waits for file I/O. If the
+     * marker is dropped because this writer's buffer is full, the file is closed after the timeout.
+     *
+     * @param bus Bus the writer is subscribed to
+     * @param timeout Longest time to wait for the marker
+     * @param unit Unit of the timeout
+     * @return Completes once the file is closed
+     */
+    public CompletableFuture<Void> closeAfterPending(PipelineEventBus bus, long timeout, TimeUnit unit) {
+        bus.publish(new EndOfLog(this));
+        return closedFuture.completeOnTimeout(null, timeout, unit).thenRun(this::close);
+    }
+
+    /**
+     * Unsubscribe and close the file, dropping events not yet delivered to the writer
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not close " + file, e);
+        }
+        closedFuture.complete(null);
+    }
+
+    /**
+     * Marks the end of the events a writer has to log; not written to any file
+     */
+    private static final class EndOfLog extends PipelineEvent {
+        private final EventLogWriter writer;
+
+        private EndOfLog(EventLogWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        protected String describe() {
+            return writer.getFile().toString();
+        }
+    }
+}
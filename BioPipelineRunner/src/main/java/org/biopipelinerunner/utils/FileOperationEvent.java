@@ -0,0 +1,32 @@
+package org.biopipelinerunner.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for Java-side file operations such as copying, deleting and zipping.
+ */
+@Name("org.biopipelinerunner.FileOperation")
+@Label("File Operation")
+@Category({"BioPipelineRunner", "File I/O"})
+@Description("File operation performed by the application")
+@StackTrace(false)
+public class FileOperationEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Source")
+    public String source;
+
+    @Label("Destination")
+    public String destination;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -1,14 +1,25 @@
 package org.biopipelinerunner.utils;
 
 import java.io.*;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FileUtils {
 
     public static void copyFile(File source, File destination) throws IOException {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
         Files.copy(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        commitEvent(event, "copy", source, destination);
     }
 
     public static void createDirectory(File directory) throws IOException {
@@ -22,24 +33,97 @@ public class FileUtils {
     }
 
     public static boolean deleteDirectory(File directory) {
-        if (directory.isDirectory()) {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    deleteDirectory(file);
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        long freed;
+        try {
+            freed = deleteTree(directory.toPath());
+        } catch (IOException e) {
+            freed = -1;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            // The tree is gone by now, so record what deleting it freed
+            event.operation = "delete";
+            event.source = directory.getPath();
+            event.bytes = Math.max(0, freed);
+            event.commit();
+        }
+        return freed >= 0;
+    }
+    
+    /**
+     * Delete a file or directory tree. Symbolic links are removed, never followed, so a link
+     * out of a run directory can't take anything else with it. Files are deleted in parallel,
+     * directories afterwards, deepest first.
+     *
+     * @param root File or directory to delete
+     * @return Number of bytes freed, or -1 if some entries could not be deleted
+     * @throws IOException if the tree cannot be walked
+     */
+    public static long deleteTree(Path root) throws IOException {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+            return 0;
+        }
+        List<Path> files = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        AtomicLong bytes = new AtomicLong();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                if (attrs.isRegularFile()) {
+                    bytes.addAndGet(attrs.size());
                 }
+                return FileVisitResult.CONTINUE;
             }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                directories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        boolean complete = files.parallelStream().map(FileUtils::deleteQuietly).reduce(true, Boolean::logicalAnd);
+        for (Path directory : directories) {
+            complete &= deleteQuietly(directory);
+        }
+        return complete ? bytes.get() : -1;
+    }
+    
+    private static boolean deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            return true;
+        } catch (IOException e) {
+            return false;
         }
-        return directory.delete();
     }
     
     public static void copyResourceToFile(String resourcePath, File destination) throws IOException {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
         try (InputStream inputStream = FileUtils.class.getResourceAsStream(resourcePath)) {
             if (inputStream == null) {
                 throw new IOException("Resource not found: " + resourcePath);
             }
             Files.copy(inputStream, destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "copyResource";
+            event.source = resourcePath;
+            event.destination = destination.getPath();
+            event.bytes = destination.length();
+            event.commit();
+        }
     }
     
     public static void copyScriptToWorkingDirectory(String scriptName, File workingDirectory) throws IOException {
@@ -50,35 +134,36 @@ public class FileUtils {
     }
     
     public static void zipDirectory(File directory, File zipFile) throws IOException {
-        ProcessBuilder processBuilder = new ProcessBuilder();
-        if (PlatformUtils.isWindows()) {
-            // Use PowerShell to create zip on Windows
-            processBuilder.command(
-                "powershell.exe", 
-                "-Command", 
-                "Compress-Archive", 
-                "-Path", directory.getAbsolutePath() + "\\*", 
-                "-DestinationPath", zipFile.getAbsolutePath()
-            );
-        } else {
-            // Use zip command on Linux/Mac
-            processBuilder.command(
-                "zip", 
-                "-r", 
-                zipFile.getAbsolutePath(),
-                "."
-            );
-            processBuilder.directory(directory);
-        }
-        
-        try {
-            Process process = processBuilder.start();
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new IOException("Failed to create zip archive. Exit code: " + exitCode);
-            }
-        } catch (InterruptedException e) {
-            throw new IOException("Zip process interrupted", e);
+        zipDirectory(directory, zipFile, Collections.emptyList());
+    }
+
+    /**
+     * Zip the contents of a directory in-process, compressing on all cores
+     *
+     * @param directory Directory to archive
+     * @param zipFile Archive to create
+     * @param excludeGlobs Glob patterns (relative to the directory) of files to leave out
+     * @throws IOException if the archive cannot be written
+     */
+    public static void zipDirectory(File directory, File zipFile, List<String> excludeGlobs) throws IOException {
+        FileOperationEvent event = new FileOperationEvent();
+        event.begin();
+        new ParallelZipArchiver(Runtime.getRuntime().availableProcessors(), excludeGlobs)
+                .archive(directory.toPath(), zipFile.toPath());
+        commitEvent(event, "zip", directory, zipFile);
+    }
+    
+    /**
+     * Commit a file operation event; sizes are only looked up when a recording wants the event.
+     */
+    private static void commitEvent(FileOperationEvent event, String operation, File source, File destination) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.source = source.getPath();
+            event.destination = destination.getPath();
+            event.bytes = destination.length();
+            event.commit();
         }
     }
 }
\ No newline at end of file
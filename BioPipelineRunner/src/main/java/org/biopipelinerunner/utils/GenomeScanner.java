@@ -0,0 +1,422 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.GenomeStats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks genome FASTA files before they are handed to BUSCO: size, sequence count, N50, GC
+ * content, N fraction and a content hash, and whether the file is usable at all.
+ *
+ * <p>Files are split into chunks that start at line starts, and all chunks of all files are
+ * memory-mapped and scanned in parallel, so a few large assemblies are scanned as fast as
+ * many small ones. Each chunk is scanned in one pass: a byte histogram of the sequence lines
+ * (four interleaved tables, so consecutive bytes don't wait on each other's counter) and a
+ * SHA-256 of the chunk. The file hash is the SHA-256 of its chunk hashes.</p>
+ *
+ * <p>Files are flagged when they are empty, compressed, don't start with a FASTA header,
+ * contain bytes that can't be sequence data, have headers without sequence, as in a
+ * truncated file, or have the same content as an earlier file.</p>
+ */
+public class GenomeScanner {
+    private static final int CHUNK_SIZE = 64 << 20;
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int LANES = 4;
+    private static final int WHITESPACE = 0;
+    private static final int AT = 1;
+    private static final int GC = 2;
+    private static final int N = 3;
+    private static final int OTHER = 4;
+    private static final int INVALID = 5;
+    private static final byte[] CLASSES = new byte[256];
+
+    static {
+        Arrays.fill(CLASSES, (byte) INVALID);
+        // Any letter is a residue, so protein files for BUSCO's proteins mode pass as well
+        for (char c = 'A'; c <= 'Z'; c++) {
+            CLASSES[c] = OTHER;
+            CLASSES[Character.toLowerCase(c)] = OTHER;
+        }
+        for (char c : "ATUatu".toCharArray()) {
+            CLASSES[c] = AT;
+        }
+        for (char c : "GCgc".toCharArray()) {
+            CLASSES[c] = GC;
+        }
+        CLASSES['N'] = N;
+        CLASSES['n'] = N;
+        CLASSES['*'] = OTHER;
+        CLASSES['-'] = OTHER;
+        CLASSES['.'] = OTHER;
+        for (char c : "\n\r\t ".toCharArray()) {
+            CLASSES[c] = WHITESPACE;
+        }
+    }
+
+    private GenomeScanner() {
+    }
+
+    /**
+     * Scan genome files in parallel
+     *
+     * @param files Genome files; of files with the same content, all but the first are flagged
+     * @param threads Number of scanning threads
+     * @return Statistics in the order of the files
+     * @throws IOException if a file can't be read
+     */
+    public static List<GenomeStats> scan(List<Path> files, int threads) throws IOException, InterruptedException {
+        return scan(files, threads, CHUNK_SIZE);
+    }
+
+    static List<GenomeStats> scan(List<Path> files, int threads, int chunkSize) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "genome-scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<List<Future<ChunkStats>>> pending = new ArrayList<>();
+            List<String> headProblems = new ArrayList<>();
+            List<Long> sizes = new ArrayList<>();
+            for (Path file : files) {
+                List<Future<ChunkStats>> chunks = new ArrayList<>();
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    String problem = checkHead(channel);
+                    if (problem == null) {
+                        long[] bounds = chunkBounds(channel, chunkSize);
+                        for (int c = 0; c + 1 < bounds.length; c++) {
+                            long start = bounds[c];
+                            long end = bounds[c + 1];
+                            chunks.add(pool.submit(() -> scanChunk(file, start, end)));
+                        }
+                    }
+                    sizes.add(size);
+                    headProblems.add(problem);
+                }
+                pending.add(chunks);
+            }
+
+            List<GenomeStats> result = new ArrayList<>();
+            Map<String, Path> firstByHash = new HashMap<>();
+            for (int f = 0; f < files.size(); f++) {
+                List<ChunkStats> chunks = new ArrayList<>();
+                for (Future<ChunkStats> future : pending.get(f)) {
+                    chunks.add(get(future));
+                }
+                GenomeStats stats = merge(files.get(f), sizes.get(f), chunks, headProblems.get(f));
+                if (stats.getHash() != null) {
+                    Path first = firstByHash.putIfAbsent(stats.getHash(), stats.getFile());
+                    if (first != null && stats.isUsable()) {
+                        stats = stats.withProblem("duplicate of " + first.getFileName());
+                    }
+                }
+                result.add(stats);
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ChunkStats get(Future<ChunkStats> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * @return Why the start of the file shows it isn't a plain FASTA file, or null
+     */
+    private static String checkHead(FileChannel channel) throws IOException {
+        if (channel.size() == 0) {
+            return "empty file";
+        }
+        ByteBuffer head = ByteBuffer.allocate(4);
+        channel.read(head, 0);
+        if (head.position() >= 2 && (head.get(0) & 0xff) == 0x1f && (head.get(1) & 0xff) == 0x8b) {
+            return "gzip-compressed";
+        }
+        if (head.position() >= 3 && head.get(0) == 'B' && head.get(1) == 'Z' && head.get(2) == 'h') {
+            return "bzip2-compressed";
+        }
+        if (head.position() >= 4 && head.getInt(0) == 0x28b52ffd) {
+            return "zstd-compressed";
+        }
+        return null;
+    }
+
+    /**
+     * @return Chunk boundaries: 0, the first line start at least a chunk size after the
+     *         previous boundary, and the file size
+     */
+    static long[] chunkBounds(FileChannel channel, int chunkSize) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer window = ByteBuffer.allocate(1 << 16);
+        long position = chunkSize;
+        while (position < size) {
+            long lineStart = -1;
+            long scan = position - 1;
+            while (lineStart < 0 && scan < size) {
+                window.clear();
+                int read = channel.read(window, scan);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (window.get(i) == '\n') {
+                        lineStart = scan + i + 1;
+                        break;
+                    }
+                }
+                scan += read;
+            }
+            if (lineStart < 0 || lineStart >= size) {
+                break;
+            }
+            bounds.add(lineStart);
+            position = lineStart + chunkSize;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    static ChunkStats scanChunk(Path file, long start, long end) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+        ChunkStats stats = new ChunkStats();
+        byte[] block = new byte[(int) Math.min(BLOCK_SIZE, end - start)];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            while (buffer.hasRemaining()) {
+                int length = Math.min(block.length, buffer.remaining());
+                buffer.get(block, 0, length);
+                digest.update(block, 0, length);
+                stats.scan(block, length);
+            }
+        }
+        stats.finish(digest.digest());
+        return stats;
+    }
+
+    private static GenomeStats merge(Path file, long size, List<ChunkStats> chunks, String problem) {
+        if (problem != null) {
+            return new GenomeStats(file, size, 0, 0, 0, 0, 0, 0, null, problem);
+        }
+        long[] classes = new long[INVALID + 1];
+        LongList lengths = new LongList();
+        long current = 0;
+        long orphan = 0;
+        boolean started = false;
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (ChunkStats chunk : chunks) {
+            digest.update(chunk.digest);
+            for (int c = 0; c < classes.length; c++) {
+                classes[c] += chunk.classes[c];
+            }
+            // A chunk's leading residues continue the sequence of the chunks before it
+            if (!chunk.sawHeader) {
+                if (started) {
+                    current += chunk.leading;
+                } else {
+                    orphan += chunk.leading;
+                }
+                continue;
+            }
+            if (started) {
+                lengths.add(current + chunk.leading);
+            } else {
+                orphan += chunk.leading;
+            }
+            for (int i = 0; i < chunk.lengths.size; i++) {
+                lengths.add(chunk.lengths.values[i]);
+            }
+            current = chunk.trailing;
+            started = true;
+        }
+        if (started) {
+            lengths.add(current);
+        }
+
+        long[] sorted = Arrays.copyOf(lengths.values, lengths.size);
+        Arrays.sort(sorted);
+        long total = 0;
+        int empty = 0;
+        for (long length : sorted) {
+            total += length;
+            if (length == 0) {
+                empty++;
+            }
+        }
+        long n50 = 0;
+        long cumulative = 0;
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            cumulative += sorted[i];
+            if (2 * cumulative >= total) {
+                n50 = sorted[i];
+                break;
+            }
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b & 0xff));
+        }
+
+        if (!started || orphan > 0) {
+            problem = "not a FASTA file (no header before the first sequence)";
+        } else if (classes[INVALID] > 0) {
+            problem = classes[INVALID] + " bytes that are not sequence data (binary or corrupt file)";
+        } else if (empty > 0) {
+            problem = empty + " header(s) without sequence (truncated file?)";
+        } else if (total == 0) {
+            problem = "no sequence data";
+        }
+        return new GenomeStats(file, size, sorted.length, total, n50, classes[GC], classes[AT], classes[N],
+                hash.toString(), problem);
+    }
+
+    /**
+     * Residue counts, complete sequence lengths and the partial sequences at both ends of one chunk
+     */
+    static final class ChunkStats {
+        private final int[] histogram = new int[LANES * 256];
+        private final long[] classes = new long[INVALID + 1];
+        private final LongList lengths = new LongList();
+        private boolean inHeader;
+        private boolean sawHeader;
+        private long histogrammed;
+        private long segmentStart;
+        // Residues before the first header, and after the last one
+        private long leading;
+        private long trailing;
+        private byte[] digest;
+
+        /**
+         * Count the sequence bytes of a block, skipping header lines. Headers are found by
+         * searching for '>', which can't occur in sequence lines.
+         */
+        private void scan(byte[] block, int length) {
+            int i = 0;
+            while (i < length) {
+                if (inHeader) {
+                    while (i < length && block[i] != '\n') {
+                        i++;
+                    }
+                    if (i < length) {
+                        inHeader = false;
+                        i++;
+                    }
+                    continue;
+                }
+                int header = i;
+                while (header < length && block[header] != '>') {
+                    header++;
+                }
+                histogram(block, i, header);
+                if (header < length) {
+                    long residues = residues();
+                    if (sawHeader) {
+                        lengths.add(residues - segmentStart);
+                    } else {
+                        leading = residues;
+                        sawHeader = true;
+                    }
+                    segmentStart = residues;
+                    inHeader = true;
+                    i = header + 1;
+                } else {
+                    i = header;
+                }
+            }
+        }
+
+        private void histogram(byte[] block, int from, int to) {
+            int[] counts = histogram;
+            int i = from;
+            for (; i + 3 < to; i += 4) {
+                counts[block[i] & 0xff]++;
+                counts[256 + (block[i + 1] & 0xff)]++;
+                counts[512 + (block[i + 2] & 0xff)]++;
+                counts[768 + (block[i + 3] & 0xff)]++;
+            }
+            for (; i < to; i++) {
+                counts[block[i] & 0xff]++;
+            }
+            histogrammed += to - from;
+        }
+
+        private long residues() {
+            long whitespace = 0;
+            for (int lane = 0; lane < LANES; lane++) {
+                whitespace += histogram[lane * 256 + '\n'] + histogram[lane * 256 + '\r']
+                        + histogram[lane * 256 + '\t'] + histogram[lane * 256 + ' '];
+            }
+            return histogrammed - whitespace;
+        }
+
+        private void finish(byte[] digest) {
+            long residues = residues();
+            if (sawHeader) {
+                trailing = residues - segmentStart;
+            } else {
+                leading = residues;
+            }
+            for (int b = 0; b < 256; b++) {
+                long count = 0;
+                for (int lane = 0; lane < LANES; lane++) {
+                    count += histogram[lane * 256 + b];
+                }
+                classes[CLASSES[b]] += count;
+            }
+            this.digest = digest;
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
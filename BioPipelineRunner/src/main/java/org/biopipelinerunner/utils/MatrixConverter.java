@@ -0,0 +1,116 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.GenePartition;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts alignments between aligned FASTA or relaxed PHYLIP text and the {@link BinaryMatrix}
+ * format, and reads gene partition files.
+ */
+public class MatrixConverter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // "[model,] name = start-end", as written for RAxML and IQ-TREE (1-based, inclusive)
+    private static final Pattern PARTITION_LINE = Pattern.compile("^(?:[^,=]+,)?\\s*(\\S+)\\s*=\\s*(\\d+)\\s*-\\s*(\\d+)\\s*$");
+
+    private MatrixConverter() {
+    }
+
+    /**
+     * Convert a FASTA or PHYLIP alignment to a binary matrix
+     *
+     * @param alignment Text alignment
+     * @param partitionFile Gene partitions in RAxML format, or null for none
+     * @param output Binary matrix to write
+     * @throws IOException if a file can't be read or written or is invalid
+     */
+    public static void toBinary(Path alignment, Path partitionFile, Path output) throws IOException {
+        List<String> taxa = new ArrayList<>();
+        List<byte[]> sequences = AlignmentReader.isFasta(alignment)
+                ? AlignmentReader.readRawFasta(alignment, taxa)
+                : AlignmentReader.readRawPhylip(alignment, taxa);
+        List<GenePartition> partitions = partitionFile != null ? readPartitions(partitionFile) : Collections.emptyList();
+        BinaryMatrix.write(output, taxa, sequences, partitions, AlignmentReader.isNucleotide(sequences));
+    }
+
+    /**
+     * Write a binary matrix as aligned FASTA, one line per sequence
+     */
+    public static void toFasta(BinaryMatrix matrix, Path output) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE)) {
+            byte[] row = new byte[matrix.getSiteCount() + 1];
+            for (int t = 0; t < matrix.getTaxonCount(); t++) {
+                out.write(('>' + matrix.getTaxa().get(t) + '\n').getBytes(StandardCharsets.UTF_8));
+                writeRow(matrix, t, row, out);
+            }
+        }
+    }
+
+    /**
+     * Write a binary matrix as relaxed sequential PHYLIP, one line per sequence
+     */
+    public static void toPhylip(BinaryMatrix matrix, Path output) throws IOException {
+        int width = 0;
+        for (String taxon : matrix.getTaxa()) {
+            width = Math.max(width, taxon.length());
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE)) {
+            out.write((matrix.getTaxonCount() + " " + matrix.getSiteCount() + "\n").getBytes(StandardCharsets.UTF_8));
+            byte[] row = new byte[matrix.getSiteCount() + 1];
+            for (int t = 0; t < matrix.getTaxonCount(); t++) {
+                StringBuilder name = new StringBuilder(matrix.getTaxa().get(t));
+                while (name.length() < width + 2) {
+                    name.append(' ');
+                }
+                out.write(name.toString().getBytes(StandardCharsets.UTF_8));
+                writeRow(matrix, t, row, out);
+            }
+        }
+    }
+
+    private static void writeRow(BinaryMatrix matrix, int taxon, byte[] row, OutputStream out) throws IOException {
+        matrix.readRow(taxon, row);
+        for (int site = 0; site < matrix.getSiteCount(); site++) {
+            row[site] = matrix.getSymbol(row[site] & 0xff);
+        }
+        row[row.length - 1] = '\n';
+        out.write(row);
+    }
+
+    /**
+     * Read a gene partition file in RAxML format, one "model, name = start-end" line per gene
+     * with 1-based inclusive sites. Blank lines and lines starting with # are skipped.
+     *
+     * @throws IOException if the file can't be read or a line is not a partition
+     */
+    public static List<GenePartition> readPartitions(Path file) throws IOException {
+        List<GenePartition> partitions = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            Matcher matcher = PARTITION_LINE.matcher(trimmed);
+            if (!matcher.matches()) {
+                throw new IOException(file + ": invalid partition line: " + line);
+            }
+            int start = Integer.parseInt(matcher.group(2));
+            int end = Integer.parseInt(matcher.group(3));
+            if (start < 1 || end < start) {
+                throw new IOException(file + ": invalid range in " + line);
+            }
+            partitions.add(new GenePartition(matcher.group(1), start - 1, end));
+        }
+        return partitions;
+    }
+}
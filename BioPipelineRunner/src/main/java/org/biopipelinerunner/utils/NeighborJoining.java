@@ -0,0 +1,318 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PackedAlignment;
+import org.biopipelinerunner.models.PhyloTree;
+import org.biopipelinerunner.models.SitePatterns;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Neighbor-joining (Saitou and Nei 1987) and BIONJ (Gascuel 1997) trees from a distance
+ * matrix, meant as a quick first look at a supermatrix before a maximum-likelihood search.
+ *
+ * <p>The working matrix is kept compact: a joined pair is replaced by its new node in the
+ * lower slot and the last active row moves into the upper slot, so the minimum search scans
+ * one contiguous triangle whose size shrinks with every join. Row sums are updated
+ * incrementally, and the search is split over rows on the fork/join pool once the matrix is
+ * large enough to be worth it. The result is unrooted, drawn with a trifurcating root.</p>
+ */
+public class NeighborJoining {
+    private static final int PARALLEL_SEARCH_SIZE = 256;
+    private static final int SEARCH_ROWS_PER_TASK = 32;
+
+    private final int threads;
+
+    /**
+     * @param threads Threads for the distance computation and the minimum search
+     */
+    public NeighborJoining(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Compute corrected distances for an alignment and build a BIONJ tree from them
+     */
+    public PhyloTree infer(PackedAlignment alignment) {
+        return infer(alignment, DistanceMatrix.Model.CORRECTED, true);
+    }
+
+    /**
+     * Compute distances for an alignment and build a tree from them
+     *
+     * @param alignment Alignment
+     * @param model Distance model
+     * @param bionj true for BIONJ, false for plain neighbor-joining
+     */
+    public PhyloTree infer(PackedAlignment alignment, DistanceMatrix.Model model, boolean bionj) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return build(DistanceMatrix.compute(alignment, model, pool), bionj, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Compute corrected distances from the site patterns of an alignment and build a BIONJ
+     * tree from them
+     */
+    public PhyloTree infer(SitePatterns patterns) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return build(DistanceMatrix.compute(patterns, DistanceMatrix.Model.CORRECTED, pool), true, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Build a tree from a distance matrix
+     *
+     * @param distances Distances
+     * @param bionj true for BIONJ, false for plain neighbor-joining
+     */
+    public PhyloTree build(DistanceMatrix distances, boolean bionj) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return build(distances, bionj, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private PhyloTree build(DistanceMatrix distances, boolean bionj, ForkJoinPool pool) {
+        int n = distances.getSize();
+        if (n == 0) {
+            throw new IllegalArgumentException("No taxa");
+        }
+        // n leaves and n - 2 internal nodes, or a lone leaf, or two leaves under a root
+        int nodeCount = n >= 3 ? 2 * n - 2 : 2 * n - 1;
+        int[] parent = new int[nodeCount];
+        double[] branchLength = new double[nodeCount];
+        double[] support = new double[nodeCount];
+        String[] labels = new String[nodeCount];
+        Arrays.fill(parent, PhyloTree.NONE);
+        Arrays.fill(branchLength, Double.NaN);
+        Arrays.fill(support, Double.NaN);
+        for (int taxon = 0; taxon < n; taxon++) {
+            labels[taxon] = distances.getTaxon(taxon);
+        }
+        int root = nodeCount - 1;
+        if (n == 2) {
+            parent[0] = root;
+            parent[1] = root;
+            branchLength[0] = distances.get(0, 1) / 2;
+            branchLength[1] = distances.get(0, 1) / 2;
+        } else if (n > 2) {
+            new Agglomeration(distances, bionj, pool, parent, branchLength).run();
+        }
+        return link(nodeCount, root, parent, branchLength, support, labels);
+    }
+
+    private static PhyloTree link(int nodeCount, int root, int[] parent, double[] branchLength,
+                                  double[] support, String[] labels) {
+        int[] firstChild = new int[nodeCount];
+        int[] nextSibling = new int[nodeCount];
+        Arrays.fill(firstChild, PhyloTree.NONE);
+        Arrays.fill(nextSibling, PhyloTree.NONE);
+        // Prepend in reverse, so children end up in ascending order
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            if (parent[node] != PhyloTree.NONE) {
+                nextSibling[node] = firstChild[parent[node]];
+                firstChild[parent[node]] = node;
+            }
+        }
+        return new PhyloTree(nodeCount, root, parent, firstChild, nextSibling, branchLength, support, labels);
+    }
+
+    /**
+     * State of one run of the agglomeration. Slots 0..active-1 of the working matrices hold
+     * the current clusters; {@code nodeOf} maps a slot to its tree node.
+     */
+    private static class Agglomeration {
+        private final int stride;
+        private final double[] d;
+        private final double[] v;
+        private final double[] rowSum;
+        private final int[] nodeOf;
+        private final ForkJoinPool pool;
+        private final int[] parent;
+        private final double[] branchLength;
+        private int active;
+        private int nextNode;
+
+        Agglomeration(DistanceMatrix distances, boolean bionj, ForkJoinPool pool, int[] parent, double[] branchLength) {
+            this.stride = distances.getSize();
+            this.d = distances.toArray();
+            this.v = bionj ? d.clone() : null;
+            this.rowSum = new double[stride];
+            this.nodeOf = new int[stride];
+            this.pool = pool;
+            this.parent = parent;
+            this.branchLength = branchLength;
+            this.active = stride;
+            this.nextNode = stride;
+            for (int i = 0; i < stride; i++) {
+                nodeOf[i] = i;
+                double sum = 0;
+                for (int k = 0; k < stride; k++) {
+                    sum += d[i * stride + k];
+                }
+                rowSum[i] = sum;
+            }
+        }
+
+        void run() {
+            while (active > 3) {
+                Candidate best = active >= PARALLEL_SEARCH_SIZE
+                        ? pool.invoke(new SearchTask(this, 1, active))
+                        : search(1, active);
+                join(best.j, best.i);
+            }
+            // Join the last three clusters to a common root
+            int root = nextNode;
+            double d01 = d[1];
+            double d02 = d[2];
+            double d12 = d[stride + 2];
+            attach(nodeOf[0], root, (d01 + d02 - d12) / 2);
+            attach(nodeOf[1], root, (d01 + d12 - d02) / 2);
+            attach(nodeOf[2], root, (d02 + d12 - d01) / 2);
+        }
+
+        /**
+         * Find the pair (i, j), j &lt; i, minimising the Q criterion among rows [from, to)
+         */
+        Candidate search(int from, int to) {
+            double factor = active - 2;
+            Candidate best = new Candidate();
+            for (int i = from; i < to; i++) {
+                int row = i * stride;
+                double ri = rowSum[i];
+                for (int j = 0; j < i; j++) {
+                    double q = factor * d[row + j] - ri - rowSum[j];
+                    if (q < best.q) {
+                        best.q = q;
+                        best.i = i;
+                        best.j = j;
+                    }
+                }
+            }
+            return best;
+        }
+
+        private void attach(int node, int newParent, double length) {
+            parent[node] = newParent;
+            branchLength[node] = Math.max(0, length);
+        }
+
+        /**
+         * Join the clusters in slots a &lt; b into a new node in slot a, and move the last
+         * active slot into b
+         */
+        private void join(int a, int b) {
+            int n = active;
+            double dab = d[a * stride + b];
+            double lengthA = 0.5 * dab + (rowSum[a] - rowSum[b]) / (2.0 * (n - 2));
+            double lengthB = dab - lengthA;
+
+            double lambda = 0.5;
+            if (v != null) {
+                double vab = v[a * stride + b];
+                if (vab > 0) {
+                    double sum = 0;
+                    for (int k = 0; k < n; k++) {
+                        if (k != a && k != b) {
+                            sum += v[b * stride + k] - v[a * stride + k];
+                        }
+                    }
+                    lambda = Math.min(1, Math.max(0, 0.5 + sum / (2.0 * (n - 2) * vab)));
+                }
+            }
+
+            int node = nextNode++;
+            attach(nodeOf[a], node, lengthA);
+            attach(nodeOf[b], node, lengthB);
+
+            double newRowSum = 0;
+            for (int k = 0; k < n; k++) {
+                if (k == a || k == b) {
+                    continue;
+                }
+                double dak = d[a * stride + k];
+                double dbk = d[b * stride + k];
+                double duk = lambda * (dak - lengthA) + (1 - lambda) * (dbk - lengthB);
+                rowSum[k] += duk - dak - dbk;
+                newRowSum += duk;
+                d[a * stride + k] = duk;
+                d[k * stride + a] = duk;
+                if (v != null) {
+                    double vuk = lambda * v[a * stride + k] + (1 - lambda) * v[b * stride + k]
+                            - lambda * (1 - lambda) * v[a * stride + b];
+                    v[a * stride + k] = vuk;
+                    v[k * stride + a] = vuk;
+                }
+            }
+            d[a * stride + a] = 0;
+            rowSum[a] = newRowSum;
+            nodeOf[a] = node;
+
+            int last = n - 1;
+            if (b != last) {
+                moveSlot(last, b, d);
+                if (v != null) {
+                    moveSlot(last, b, v);
+                }
+                rowSum[b] = rowSum[last];
+                nodeOf[b] = nodeOf[last];
+            }
+            active = n - 1;
+        }
+
+        private void moveSlot(int from, int to, double[] matrix) {
+            for (int k = 0; k < active; k++) {
+                matrix[to * stride + k] = matrix[from * stride + k];
+                matrix[k * stride + to] = matrix[k * stride + from];
+            }
+            matrix[to * stride + to] = 0;
+        }
+    }
+
+    private static class Candidate {
+        double q = Double.POSITIVE_INFINITY;
+        int i;
+        int j;
+    }
+
+    /**
+     * Minimum search over a range of rows, split in half until it is small
+     */
+    private static class SearchTask extends RecursiveTask<Candidate> {
+        private static final long serialVersionUID = 1L;
+
+        private final Agglomeration agglomeration;
+        private final int from;
+        private final int to;
+
+        SearchTask(Agglomeration agglomeration, int from, int to) {
+            this.agglomeration = agglomeration;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Candidate compute() {
+            if (to - from <= SEARCH_ROWS_PER_TASK) {
+                return agglomeration.search(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            SearchTask upper = new SearchTask(agglomeration, middle, to);
+            upper.fork();
+            Candidate lower = new SearchTask(agglomeration, from, middle).compute();
+            Candidate higher = upper.join();
+            // Ties go to the lower rows, as in the sequential search
+            return higher.q < lower.q ? higher : lower;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses Newick and NEXUS tree files (such as IQ-TREE .treefile, .contree and .ufboot output)
+ * into {@link PhyloTree}s in a single pass over the text. Labels are interned per parser, so
+ * trees read by the same parser share one String instance per taxon.
+ *
+ * <p>Numeric labels on internal nodes are read as support values. IQ-TREE writes
+ * "SH-aLRT/UFBoot" pairs when both are computed; the last value (UFBoot) is used.</p>
+ */
+public class NewickParser {
+    private static final String DELIMITERS = "()[]':;,";
+
+    private final Map<String, String> labelPool = new HashMap<>();
+    private CharSequence text;
+    private int position;
+
+    // Node arrays for the tree being built
+    private int nodeCount;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] lastChild;
+    private double[] branchLength;
+    private double[] support;
+    private String[] labels;
+
+    /**
+     * Read the first tree of a Newick or NEXUS file
+     */
+    public static PhyloTree readTree(Path file) throws IOException {
+        List<PhyloTree> trees = readTrees(file);
+        if (trees.isEmpty()) {
+            throw new IOException("No tree found in " + file);
+        }
+        return trees.get(0);
+    }
+
+    /**
+     * Read all trees of a Newick or NEXUS file
+     */
+    public static List<PhyloTree> readTrees(Path file) throws IOException {
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        try {
+            return new NewickParser().parseAll(content);
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parse the first tree in the text
+     */
+    public PhyloTree parse(CharSequence content) throws IOException {
+        List<PhyloTree> trees = parseAll(content);
+        if (trees.isEmpty()) {
+            throw new IOException("No tree found");
+        }
+        return trees.get(0);
+    }
+
+    /**
+     * Parse every tree in the text; NEXUS input is recognised by its #NEXUS header
+     */
+    public List<PhyloTree> parseAll(CharSequence content) throws IOException {
+        text = content;
+        position = 0;
+        try {
+            skipWhitespaceAndComments();
+            if (matchesIgnoreCase("#NEXUS")) {
+                return parseNexus();
+            }
+            List<PhyloTree> trees = new ArrayList<>();
+            while (position < text.length()) {
+                trees.add(parseTree(Collections.emptyMap()));
+                skipWhitespaceAndComments();
+            }
+            return trees;
+        } finally {
+            text = null;
+        }
+    }
+
+    private List<PhyloTree> parseNexus() throws IOException {
+        List<PhyloTree> trees = new ArrayList<>();
+        Map<String, String> translation = new HashMap<>();
+        boolean inTrees = false;
+        position += "#NEXUS".length();
+        while (true) {
+            skipWhitespaceAndComments();
+            if (position >= text.length()) {
+                return trees;
+            }
+            String keyword = readWord().toLowerCase();
+            if (keyword.equals("begin")) {
+                skipWhitespaceAndComments();
+                inTrees = readWord().equalsIgnoreCase("trees");
+                skipStatement();
+            } else if (!inTrees) {
+                skipStatement();
+            } else if (keyword.equals("translate")) {
+                readTranslation(translation);
+            } else if (keyword.equals("tree") || keyword.equals("utree")) {
+                while (position < text.length() && text.charAt(position) != '=') {
+                    position++;
+                }
+                position++;
+                skipWhitespaceAndComments();
+                trees.add(parseTree(translation));
+            } else if (keyword.equals("end") || keyword.equals("endblock")) {
+                inTrees = false;
+                skipStatement();
+            } else {
+                skipStatement();
+            }
+        }
+    }
+
+    private void readTranslation(Map<String, String> translation) throws IOException {
+        while (true) {
+            skipWhitespaceAndComments();
+            String key = readLabel();
+            skipWhitespaceAndComments();
+            String label = readLabel();
+            translation.put(key, intern(label));
+            skipWhitespaceAndComments();
+            char c = position < text.length() ? text.charAt(position++) : ';';
+            if (c == ';') {
+                return;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ';' in translate block");
+            }
+        }
+    }
+
+    private PhyloTree parseTree(Map<String, String> translation) throws IOException {
+        reset();
+        int root = addNode(PhyloTree.NONE);
+        int current = root;
+        while (true) {
+            skipWhitespaceAndComments();
+            if (position >= text.length()) {
+                // Tolerate a missing final semicolon
+                if (current != root) {
+                    throw error("Unbalanced parentheses");
+                }
+                break;
+            }
+            char c = text.charAt(position);
+            if (c == '(') {
+                position++;
+                current = addNode(current);
+            } else if (c == ',') {
+                position++;
+                if (parent[current] == PhyloTree.NONE) {
+                    throw error("Unexpected ','");
+                }
+                current = addNode(parent[current]);
+            } else if (c == ')') {
+                position++;
+                current = parent[current];
+                if (current == PhyloTree.NONE) {
+                    throw error("Unbalanced parentheses");
+                }
+            } else if (c == ':') {
+                position++;
+                skipWhitespaceAndComments();
+                branchLength[current] = readNumber();
+            } else if (c == ';') {
+                position++;
+                if (current != root) {
+                    throw error("Unbalanced parentheses");
+                }
+                break;
+            } else {
+                assignLabel(current, readLabel(), translation);
+            }
+        }
+        return new PhyloTree(nodeCount, root, parent, firstChild, nextSibling, branchLength, support, labels);
+    }
+
+    private void assignLabel(int node, String label, Map<String, String> translation) {
+        if (firstChild[node] != PhyloTree.NONE) {
+            double value = parseSupport(label);
+            if (!Double.isNaN(value)) {
+                support[node] = value;
+                return;
+            }
+        } else {
+            String translated = translation.get(label);
+            if (translated != null) {
+                labels[node] = translated;
+                return;
+            }
+        }
+        labels[node] = intern(label);
+    }
+
+    private static double parseSupport(String label) {
+        String value = label.substring(label.lastIndexOf('/') + 1);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private String intern(String label) {
+        String pooled = labelPool.putIfAbsent(label, label);
+        return pooled != null ? pooled : label;
+    }
+
+    private String readLabel() throws IOException {
+        if (position < text.length() && text.charAt(position) == '\'') {
+            StringBuilder label = new StringBuilder();
+            position++;
+            while (true) {
+                if (position >= text.length()) {
+                    throw error("Unterminated quoted label");
+                }
+                char c = text.charAt(position++);
+                if (c == '\'') {
+                    // A doubled quote is an escaped quote
+                    if (position < text.length() && text.charAt(position) == '\'') {
+                        position++;
+                    } else {
+                        return label.toString();
+                    }
+                }
+                label.append(c);
+            }
+        }
+        int start = position;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (DELIMITERS.indexOf(c) >= 0 || Character.isWhitespace(c)) {
+                break;
+            }
+            position++;
+        }
+        if (position == start) {
+            throw error("Unexpected '" + text.charAt(position) + "'");
+        }
+        return text.subSequence(start, position).toString();
+    }
+
+    private double readNumber() throws IOException {
+        int start = position;
+        while (position < text.length() && "0123456789.eE+-".indexOf(text.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return Double.parseDouble(text.subSequence(start, position).toString());
+        } catch (NumberFormatException e) {
+            throw error("Invalid branch length");
+        }
+    }
+
+    private String readWord() {
+        int start = position;
+        while (position < text.length() && Character.isLetter(text.charAt(position))) {
+            position++;
+        }
+        if (position == start && position < text.length()) {
+            position++;
+        }
+        return text.subSequence(start, position).toString();
+    }
+
+    private void skipStatement() {
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '[') {
+                skipWhitespaceAndComments();
+                continue;
+            }
+            position++;
+            if (c == ';') {
+                return;
+            }
+        }
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '[') {
+                while (position < text.length() && text.charAt(position) != ']') {
+                    position++;
+                }
+                position++;
+            } else if (Character.isWhitespace(c)) {
+                position++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private boolean matchesIgnoreCase(String prefix) {
+        return text.length() - position >= prefix.length()
+                && text.subSequence(position, position + prefix.length()).toString().equalsIgnoreCase(prefix);
+    }
+
+    private IOException error(String message) {
+        return new IOException("Malformed tree at character " + position + ": " + message);
+    }
+
+    private void reset() {
+        int capacity = 64;
+        nodeCount = 0;
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        lastChild = new int[capacity];
+        branchLength = new double[capacity];
+        support = new double[capacity];
+        labels = new String[capacity];
+    }
+
+    private int addNode(int parentNode) {
+        if (nodeCount == parent.length) {
+            int capacity = nodeCount * 2;
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            lastChild = Arrays.copyOf(lastChild, capacity);
+            branchLength = Arrays.copyOf(branchLength, capacity);
+            support = Arrays.copyOf(support, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+        }
+        int node = nodeCount++;
+        parent[node] = parentNode;
+        firstChild[node] = PhyloTree.NONE;
+        nextSibling[node] = PhyloTree.NONE;
+        lastChild[node] = PhyloTree.NONE;
+        branchLength[node] = Double.NaN;
+        support[node] = Double.NaN;
+        if (parentNode != PhyloTree.NONE) {
+            if (firstChild[parentNode] == PhyloTree.NONE) {
+                firstChild[parentNode] = node;
+            } else {
+                nextSibling[lastChild[parentNode]] = node;
+            }
+            lastChild[parentNode] = node;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,381 @@
+package org.biopipelinerunner.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Gene x taxon occupancy of a set of BUSCO runs: for every BUSCO and species, the number of
+ * copies found and the length of the sequence. It is built once by scanning the
+ * {@code run_<species>/busco_sequences} directories and stored next to them, so genes can be
+ * selected at any occupancy threshold without reading the runs again.
+ *
+ * <p>Each gene keeps a bitmap of the taxa in which it is single copy. A selection masks out
+ * the excluded taxa and counts the remaining bits, so choosing genes among thousands takes
+ * well under a millisecond per threshold.</p>
+ */
+public class OccupancyIndex {
+    public static final String FILE_NAME = "busco_occupancy.idx";
+    /** Copy number of a BUSCO found only as a fragment */
+    public static final int FRAGMENTED = -1;
+    private static final Logger LOGGER = Logger.getLogger(OccupancyIndex.class.getName());
+    private static final int MAGIC = 0x4250_4f43; // "BPOC"
+    private static final int VERSION = 1;
+    private static final String RUN_PREFIX = "run_";
+    private static final String SEQUENCE_DIRECTORY = "busco_sequences";
+    private static final String SINGLE_COPY = "single_copy_busco_sequences";
+    private static final String MULTI_COPY = "multi_copy_busco_sequences";
+    private static final String FRAGMENTED_COPY = "fragmented_busco_sequences";
+    private static final String SEQUENCE_SUFFIX = ".faa";
+
+    private final List<String> taxa;
+    private final List<String> genes;
+    private final byte[] copies;
+    private final int[] lengths;
+    private final long sourceModified;
+    private final int words;
+    private final long[] singleCopy;
+    private final Map<String, Integer> taxonIndex = new HashMap<>();
+
+    /**
+     * @param taxa Species, one per BUSCO run
+     * @param genes BUSCO ids
+     * @param copies Copy numbers, gene-major (gene * taxa + taxon): 0 missing, 1 single copy,
+     *               more for duplicated, {@link #FRAGMENTED} for fragments
+     * @param lengths Sequence lengths, gene-major; the longest copy for duplicated BUSCOs
+     * @param sourceModified Latest modification time of the scanned directories
+     */
+    public OccupancyIndex(List<String> taxa, List<String> genes, byte[] copies, int[] lengths, long sourceModified) {
+        if (copies.length != taxa.size() * genes.size() || lengths.length != copies.length) {
+            throw new IllegalArgumentException("Expected " + taxa.size() * genes.size() + " cells");
+        }
+        this.taxa = Collections.unmodifiableList(new ArrayList<>(taxa));
+        this.genes = Collections.unmodifiableList(new ArrayList<>(genes));
+        this.copies = copies;
+        this.lengths = lengths;
+        this.sourceModified = sourceModified;
+        this.words = (taxa.size() + 63) >>> 6;
+        this.singleCopy = new long[genes.size() * words];
+        for (int g = 0; g < genes.size(); g++) {
+            for (int t = 0; t < taxa.size(); t++) {
+                if (copies[g * taxa.size() + t] == 1) {
+                    singleCopy[g * words + (t >>> 6)] |= 1L << t;
+                }
+            }
+        }
+        for (int t = 0; t < taxa.size(); t++) {
+            taxonIndex.put(taxa.get(t), t);
+        }
+    }
+
+    /**
+     * Index of a directory of BUSCO runs: read from {@link #FILE_NAME} in it if that is current,
+     * otherwise built by scanning the runs and stored
+     *
+     * @throws IOException if the runs can't be read
+     */
+    public static OccupancyIndex load(Path buscoDirectory) throws IOException {
+        Path indexFile = buscoDirectory.resolve(FILE_NAME);
+        List<Path> runs = findRuns(buscoDirectory);
+        if (Files.exists(indexFile)) {
+            try {
+                OccupancyIndex index = read(indexFile);
+                if (index.sourceModified == latestModification(runs) && index.taxa.equals(taxonNames(runs))) {
+                    return index;
+                }
+                LOGGER.info("BUSCO runs changed since " + indexFile + " was built; rebuilding it");
+            } catch (IOException e) {
+                LOGGER.warning("Rebuilding unreadable occupancy index " + indexFile + ": " + e.getMessage());
+            }
+        }
+        OccupancyIndex index = build(runs);
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            LOGGER.warning("Could not store the occupancy index in " + indexFile + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Scan a directory of BUSCO runs
+     */
+    public static OccupancyIndex build(Path buscoDirectory) throws IOException {
+        return build(findRuns(buscoDirectory));
+    }
+
+    private static OccupancyIndex build(List<Path> runs) throws IOException {
+        long start = System.nanoTime();
+        List<String> taxa = taxonNames(runs);
+        // Per taxon: BUSCO id to {copies, length}
+        List<Map<String, int[]>> found = new ArrayList<>();
+        for (int t = 0; t < runs.size(); t++) {
+            found.add(new HashMap<>());
+        }
+        try {
+            IntStream.range(0, runs.size()).parallel().forEach(t -> {
+                try {
+                    Path sequences = runs.get(t).resolve(SEQUENCE_DIRECTORY);
+                    scan(sequences.resolve(FRAGMENTED_COPY), found.get(t), true);
+                    scan(sequences.resolve(MULTI_COPY), found.get(t), false);
+                    scan(sequences.resolve(SINGLE_COPY), found.get(t), false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        TreeSet<String> geneSet = new TreeSet<>();
+        for (Map<String, int[]> taxon : found) {
+            geneSet.addAll(taxon.keySet());
+        }
+        List<String> genes = new ArrayList<>(geneSet);
+        byte[] copies = new byte[genes.size() * taxa.size()];
+        int[] lengths = new int[copies.length];
+        for (int g = 0; g < genes.size(); g++) {
+            for (int t = 0; t < taxa.size(); t++) {
+                int[] entry = found.get(t).get(genes.get(g));
+                if (entry != null) {
+                    copies[g * taxa.size() + t] = (byte) Math.max(FRAGMENTED, Math.min(entry[0], Byte.MAX_VALUE));
+                    lengths[g * taxa.size() + t] = entry[1];
+                }
+            }
+        }
+        LOGGER.info(String.format("Occupancy index of %d BUSCOs in %d species built in %.1f s", genes.size(), taxa.size(),
+                (System.nanoTime() - start) / 1e9));
+        return new OccupancyIndex(taxa, genes, copies, lengths, latestModification(runs));
+    }
+
+    /**
+     * Record the sequence files of one directory; single copy entries override the others
+     *
+     * @param fragments true if the directory holds fragments
+     */
+    private static void scan(Path directory, Map<String, int[]> found, boolean fragments) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEQUENCE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int[] counts = countSequences(file);
+                if (fragments) {
+                    counts[0] = FRAGMENTED;
+                }
+                found.put(name.substring(0, name.length() - SEQUENCE_SUFFIX.length()), counts);
+            }
+        }
+    }
+
+    /**
+     * @return Number of records in a FASTA file and the length of the longest
+     */
+    private static int[] countSequences(Path file) throws IOException {
+        int records = 0;
+        int longest = 0;
+        int length = 0;
+        boolean inHeader = false;
+        boolean atLineStart = true;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '\n' || b == '\r') {
+                    inHeader = false;
+                    atLineStart = true;
+                } else if (atLineStart && b == '>') {
+                    records++;
+                    longest = Math.max(longest, length);
+                    length = 0;
+                    inHeader = true;
+                    atLineStart = false;
+                } else {
+                    if (!inHeader && !Character.isWhitespace(b) && b != '*') {
+                        length++;
+                    }
+                    atLineStart = false;
+                }
+            }
+        }
+        return new int[] {records, Math.max(longest, length)};
+    }
+
+    private static List<Path> findRuns(Path buscoDirectory) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(buscoDirectory, RUN_PREFIX + "*")) {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry)) {
+                    runs.add(entry);
+                }
+            }
+        }
+        runs.sort(null);
+        return runs;
+    }
+
+    private static List<String> taxonNames(List<Path> runs) {
+        List<String> names = new ArrayList<>(runs.size());
+        for (Path run : runs) {
+            names.add(run.getFileName().toString().substring(RUN_PREFIX.length()));
+        }
+        return names;
+    }
+
+    /**
+     * @return Latest modification time of the sequence directories, which changes whenever a
+     *         BUSCO is added or removed
+     */
+    private static long latestModification(List<Path> runs) throws IOException {
+        long latest = 0;
+        for (Path run : runs) {
+            Path sequences = run.resolve(SEQUENCE_DIRECTORY);
+            for (String kind : new String[] {SINGLE_COPY, MULTI_COPY, FRAGMENTED_COPY}) {
+                Path directory = sequences.resolve(kind);
+                if (Files.isDirectory(directory)) {
+                    latest = Math.max(latest, Files.getLastModifiedTime(directory).toMillis());
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Read a stored index
+     *
+     * @throws IOException if the file can't be read or is not an occupancy index
+     */
+    public static OccupancyIndex read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + ": not an occupancy index of this version");
+            }
+            long sourceModified = in.readLong();
+            List<String> taxa = readNames(in);
+            List<String> genes = readNames(in);
+            byte[] copies = new byte[taxa.size() * genes.size()];
+            in.readFully(copies);
+            int[] lengths = new int[copies.length];
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = in.readInt();
+            }
+            return new OccupancyIndex(taxa, genes, copies, lengths, sourceModified);
+        }
+    }
+
+    private static List<String> readNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    /**
+     * Store the index, replacing the file atomically
+     */
+    public void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceModified);
+            for (List<String> names : Arrays.asList(taxa, genes)) {
+                out.writeInt(names.size());
+                for (String name : names) {
+                    out.writeUTF(name);
+                }
+            }
+            out.write(copies);
+            for (int length : lengths) {
+                out.writeInt(length);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public List<String> getTaxa() {
+        return taxa;
+    }
+
+    public List<String> getGenes() {
+        return genes;
+    }
+
+    /**
+     * @return Copy number of a gene in a taxon: 0 missing, 1 single copy, more for duplicated
+     *         (capped at 127), {@link #FRAGMENTED} for fragments
+     */
+    public int getCopies(int gene, int taxon) {
+        return copies[gene * taxa.size() + taxon];
+    }
+
+    /**
+     * @return Sequence length of a gene in a taxon, 0 if missing
+     */
+    public int getLength(int gene, int taxon) {
+        return lengths[gene * taxa.size() + taxon];
+    }
+
+    /**
+     * Genes that are single copy in at least the given fraction of the taxa left after the
+     * exclusions. Threshold 1 gives the genes single copy in every remaining taxon.
+     *
+     * @param minOccupancy Fraction of taxa, 0 to 1
+     * @param excludedTaxa Taxa to leave out; unknown names are ignored
+     * @return BUSCO ids in index order
+     */
+    public List<String> select(double minOccupancy, Collection<String> excludedTaxa) {
+        long[] mask = includedMask(excludedTaxa);
+        int included = 0;
+        for (long word : mask) {
+            included += Long.bitCount(word);
+        }
+        // Small tolerance so that e.g. 0.9 of 10 taxa asks for 9, not 10
+        int required = Math.max(1, (int) Math.ceil(minOccupancy * included - 1e-9));
+        List<String> selected = new ArrayList<>();
+        for (int g = 0; g < genes.size(); g++) {
+            int count = 0;
+            for (int w = 0; w < words; w++) {
+                count += Long.bitCount(singleCopy[g * words + w] & mask[w]);
+            }
+            if (count >= required) {
+                selected.add(genes.get(g));
+            }
+        }
+        return selected;
+    }
+
+    private long[] includedMask(Collection<String> excludedTaxa) {
+        long[] mask = new long[words];
+        for (int t = 0; t < taxa.size(); t++) {
+            mask[t >>> 6] |= 1L << t;
+        }
+        for (String taxon : excludedTaxa) {
+            Integer index = taxonIndex.get(taxon);
+            if (index != null) {
+                mask[index >>> 6] &= ~(1L << index);
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,484 @@
+package org.biopipelinerunner.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes ZIP archives using all cores. Every file is cut into fixed-size blocks that are
+ * deflated in parallel (each primed with the preceding 32 KiB as dictionary and ended with
+ * a sync flush, the same trick pigz uses), so the concatenated blocks form one valid deflate
+ * stream. A single writer thread emits entries in order and finishes with the central
+ * directory, switching to Zip64 records when sizes or offsets need it. Files that are already
+ * compressed are stored as-is.
+ */
+public class ParallelZipArchiver {
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    // Deflate can grow incompressible data slightly, so switch to Zip64 with some margin
+    private static final long ZIP64_ENTRY_THRESHOLD = 0xF0000000L;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+        "png", "jpg", "jpeg", "gif", "pdf", "zip", "gz", "bz2", "xz", "zst", "7z", "jar"
+    ));
+
+    private final int threads;
+    private final List<PathMatcher> excludes = new ArrayList<>();
+    private final int compressionLevel;
+
+    public ParallelZipArchiver() {
+        this(Runtime.getRuntime().availableProcessors(), Collections.emptyList());
+    }
+
+    /**
+     * @param threads Number of compression threads
+     * @param excludeGlobs Glob patterns, relative to the archived directory, of files to skip
+     *                     (e.g. "proteins/**")
+     */
+    public ParallelZipArchiver(int threads, List<String> excludeGlobs) {
+        this.threads = Math.max(1, threads);
+        this.compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        for (String glob : excludeGlobs) {
+            excludes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+    }
+
+    /**
+     * Archive the contents of a directory; entry names are relative to the directory
+     *
+     * @param directory Directory to archive
+     * @param zipFile Archive to create (replaced if it exists)
+     * @throws IOException if reading a file or writing the archive fails
+     */
+    public void archive(Path directory, Path zipFile) throws IOException {
+        List<Entry> entries = collectEntries(directory, zipFile);
+        List<Callable<Chunk>> tasks = new ArrayList<>();
+        for (Entry entry : entries) {
+            int firstTask = tasks.size();
+            if (entry.method == METHOD_STORED) {
+                tasks.add(() -> checksum(entry.file));
+            } else {
+                long blocks = Math.max(1, (entry.size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+                for (long block = 0; block < blocks; block++) {
+                    long offset = block * BLOCK_SIZE;
+                    boolean last = block == blocks - 1;
+                    tasks.add(() -> deflateBlock(entry.file, offset, last));
+                }
+            }
+            entry.taskCount = tasks.size() - firstTask;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "zip-deflate");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (CountingOutputStream out = new CountingOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(zipFile), 1 << 16))) {
+            TaskWindow window = new TaskWindow(executor, tasks, threads * 4);
+            for (Entry entry : entries) {
+                writeEntry(out, entry, window);
+            }
+            writeCentralDirectory(out, entries);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Entry> collectEntries(Path directory, Path zipFile) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Path absoluteZip = zipFile.toAbsolutePath().normalize();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                Path relative = directory.relativize(file);
+                if (!attrs.isRegularFile() || file.toAbsolutePath().normalize().equals(absoluteZip) || isExcluded(relative)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String name = relative.toString().replace(File.separatorChar, '/');
+                entries.add(new Entry(file, name, attrs.size(), attrs.lastModifiedTime().toMillis(),
+                        isAlreadyCompressed(name) ? METHOD_STORED : METHOD_DEFLATED));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return entries;
+    }
+
+    private boolean isExcluded(Path relative) {
+        for (PathMatcher matcher : excludes) {
+            if (matcher.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAlreadyCompressed(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && STORED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private Chunk checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        Chunk chunk = new Chunk();
+        chunk.crc = crc.getValue();
+        return chunk;
+    }
+
+    private Chunk deflateBlock(Path file, long offset, boolean last) throws IOException {
+        byte[] dictionary = null;
+        byte[] data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int length = (int) Math.max(0, Math.min(BLOCK_SIZE, channel.size() - offset));
+            data = readFully(channel, offset, length);
+            if (offset > 0) {
+                dictionary = readFully(channel, offset - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+        }
+
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data);
+            ByteArrayBuilder compressed = new ByteArrayBuilder(data.length / 2 + 64);
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.deflateFrom(deflater, Deflater.NO_FLUSH);
+                }
+            } else {
+                // A sync flush ends on a byte boundary so the next block can be appended directly
+                do {
+                    compressed.deflateFrom(deflater, Deflater.SYNC_FLUSH);
+                } while (compressed.isFull());
+            }
+            Chunk chunk = new Chunk();
+            chunk.data = compressed.bytes();
+            chunk.dataLength = compressed.length();
+            chunk.uncompressed = data;
+            return chunk;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("File changed while archiving");
+            }
+        }
+        return buffer.array();
+    }
+
+    private void writeEntry(CountingOutputStream out, Entry entry, TaskWindow window) throws IOException {
+        entry.localHeaderOffset = out.count;
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        boolean zip64 = entry.size >= ZIP64_ENTRY_THRESHOLD;
+
+        if (entry.method == METHOD_STORED) {
+            entry.crc = window.next().crc;
+            entry.compressedSize = entry.size;
+            writeLocalHeader(out, entry, name, FLAG_UTF8, zip64, entry.size, entry.size);
+            Files.copy(entry.file, out);
+            if (Files.size(entry.file) != entry.size) {
+                throw new IOException("File changed while archiving: " + entry.file);
+            }
+            return;
+        }
+
+        writeLocalHeader(out, entry, name, FLAG_UTF8 | FLAG_DATA_DESCRIPTOR, zip64, 0, 0);
+        CRC32 crc = new CRC32();
+        long start = out.count;
+        for (int i = 0; i < entry.taskCount; i++) {
+            Chunk chunk = window.next();
+            crc.update(chunk.uncompressed);
+            out.write(chunk.data, 0, chunk.dataLength);
+        }
+        entry.crc = crc.getValue();
+        entry.compressedSize = out.count - start;
+
+        writeInt(out, 0x08074b50);
+        writeInt(out, entry.crc);
+        if (zip64) {
+            writeLong(out, entry.compressedSize);
+            writeLong(out, entry.size);
+        } else {
+            writeInt(out, entry.compressedSize);
+            writeInt(out, entry.size);
+        }
+    }
+
+    private void writeLocalHeader(OutputStream out, Entry entry, byte[] name, int flags, boolean zip64,
+                                  long compressedSize, long size) throws IOException {
+        writeInt(out, 0x04034b50);
+        writeShort(out, zip64 ? 45 : 20);
+        writeShort(out, flags);
+        writeShort(out, entry.method);
+        writeInt(out, entry.dosTime);
+        writeInt(out, (flags & FLAG_DATA_DESCRIPTOR) != 0 ? 0 : entry.crc);
+        writeInt(out, zip64 ? ZIP64_LIMIT : compressedSize);
+        writeInt(out, zip64 ? ZIP64_LIMIT : size);
+        writeShort(out, name.length);
+        writeShort(out, zip64 ? 20 : 0);
+        out.write(name);
+        if (zip64) {
+            writeShort(out, 0x0001);
+            writeShort(out, 16);
+            writeLong(out, size);
+            writeLong(out, compressedSize);
+        }
+    }
+
+    private void writeCentralDirectory(CountingOutputStream out, List<Entry> entries) throws IOException {
+        long centralStart = out.count;
+        for (Entry entry : entries) {
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            boolean sizeOverflow = entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+            boolean offsetOverflow = entry.localHeaderOffset >= ZIP64_LIMIT;
+            int extraLength = (sizeOverflow ? 16 : 0) + (offsetOverflow ? 8 : 0);
+            boolean usedDescriptor = entry.method == METHOD_DEFLATED;
+
+            writeInt(out, 0x02014b50);
+            writeShort(out, 45);
+            writeShort(out, extraLength > 0 || entry.size >= ZIP64_ENTRY_THRESHOLD ? 45 : 20);
+            writeShort(out, FLAG_UTF8 | (usedDescriptor ? FLAG_DATA_DESCRIPTOR : 0));
+            writeShort(out, entry.method);
+            writeInt(out, entry.dosTime);
+            writeInt(out, entry.crc);
+            writeInt(out, sizeOverflow ? ZIP64_LIMIT : entry.compressedSize);
+            writeInt(out, sizeOverflow ? ZIP64_LIMIT : entry.size);
+            writeShort(out, name.length);
+            writeShort(out, extraLength > 0 ? extraLength + 4 : 0);
+            writeShort(out, 0);
+            writeShort(out, 0);
+            writeShort(out, 0);
+            writeInt(out, 0);
+            writeInt(out, offsetOverflow ? ZIP64_LIMIT : entry.localHeaderOffset);
+            out.write(name);
+            if (extraLength > 0) {
+                writeShort(out, 0x0001);
+                writeShort(out, extraLength);
+                if (sizeOverflow) {
+                    writeLong(out, entry.size);
+                    writeLong(out, entry.compressedSize);
+                }
+                if (offsetOverflow) {
+                    writeLong(out, entry.localHeaderOffset);
+                }
+            }
+        }
+        long centralSize = out.count - centralStart;
+
+        boolean zip64 = entries.size() >= 0xFFFF || centralStart >= ZIP64_LIMIT || centralSize >= ZIP64_LIMIT;
+        if (zip64) {
+            long zip64EndOffset = out.count;
+            writeInt(out, 0x06064b50);
+            writeLong(out, 44);
+            writeShort(out, 45);
+            writeShort(out, 45);
+            writeInt(out, 0);
+            writeInt(out, 0);
+            writeLong(out, entries.size());
+            writeLong(out, entries.size());
+            writeLong(out, centralSize);
+            writeLong(out, centralStart);
+
+            writeInt(out, 0x07064b50);
+            writeInt(out, 0);
+            writeLong(out, zip64EndOffset);
+            writeInt(out, 1);
+        }
+
+        writeInt(out, 0x06054b50);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, zip64 ? 0xFFFF : entries.size());
+        writeShort(out, zip64 ? 0xFFFF : entries.size());
+        writeInt(out, zip64 ? ZIP64_LIMIT : centralSize);
+        writeInt(out, zip64 ? ZIP64_LIMIT : centralStart);
+        writeShort(out, 0);
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, long value) throws IOException {
+        writeShort(out, (int) (value & 0xffff));
+        writeShort(out, (int) ((value >>> 16) & 0xffff));
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        writeInt(out, value & ZIP64_LIMIT);
+        writeInt(out, value >>> 32);
+    }
+
+    private static int toDosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((time.getYear() - 1980) << 25) | (time.getMonthValue() << 21) | (time.getDayOfMonth() << 16)
+                | (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1);
+    }
+
+    /**
+     * Submits tasks ahead of the writer, keeping a bounded number of results in memory
+     */
+    private static final class TaskWindow {
+        private final ExecutorService executor;
+        private final List<Callable<Chunk>> tasks;
+        private final int size;
+        private final Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        private int submitted;
+
+        private TaskWindow(ExecutorService executor, List<Callable<Chunk>> tasks, int size) {
+            this.executor = executor;
+            this.tasks = tasks;
+            this.size = size;
+        }
+
+        private Chunk next() throws IOException {
+            while (inFlight.size() < size && submitted < tasks.size()) {
+                inFlight.add(executor.submit(tasks.get(submitted++)));
+            }
+            try {
+                return inFlight.remove().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Archiving interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Path file;
+        private final String name;
+        private final long size;
+        private final int dosTime;
+        private final int method;
+        private int taskCount;
+        private long crc;
+        private long compressedSize;
+        private long localHeaderOffset;
+
+        private Entry(Path file, String name, long size, long lastModified, int method) {
+            this.file = file;
+            this.name = name;
+            this.size = size;
+            this.dosTime = toDosTime(lastModified);
+            this.method = method;
+        }
+    }
+
+    private static final class Chunk {
+        private long crc;
+        private byte[] data;
+        private int dataLength;
+        private byte[] uncompressed;
+    }
+
+    /**
+     * Growable output buffer for one deflated block
+     */
+    private static final class ByteArrayBuilder {
+        private byte[] buffer;
+        private int length;
+
+        private ByteArrayBuilder(int capacity) {
+            buffer = new byte[Math.max(capacity, 1024)];
+        }
+
+        private void deflateFrom(Deflater deflater, int flush) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length, flush);
+        }
+
+        private boolean isFull() {
+            return length == buffer.length;
+        }
+
+        private byte[] bytes() {
+            return buffer;
+        }
+
+        private int length() {
+            return length;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
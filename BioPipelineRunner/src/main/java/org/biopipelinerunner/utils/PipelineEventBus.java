@@ -0,0 +1,202 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PipelineEvent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Publishes {@link PipelineEvent}s to any number of subscribers (the UI, an event log file,
+ * a command line progress printer...) through {@link java.util.concurrent.Flow}.
+ *
+ * <p>Every subscriber has its own bounded buffer and is fed on its own pool thread, at the
+ * rate it requests events. Publishing never blocks: when a subscriber falls so far behind
+ * that its buffer is full, events are dropped for that subscriber only, and counted.</p>
+ *
+ * <p>The default bus also receives everything the pipeline's loggers log at INFO and above,
+ * as {@link PipelineEvent.LogLine}s.</p>
+ */
+public class PipelineEventBus implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_CAPACITY = 1024;
+    private static final Logger LOGGER = Logger.getLogger(PipelineEventBus.class.getName());
+    // Held strongly, as the log manager only keeps weak references to loggers
+    private static final Logger PIPELINE_LOGGER = Logger.getLogger("org.biopipelinerunner");
+    private static final PipelineEventBus DEFAULT = createDefault();
+
+    private final ExecutorService executor;
+    private final SubmissionPublisher<PipelineEvent> publisher;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param bufferCapacity Events buffered per subscriber before events are dropped for it
+     */
+    public PipelineEventBus(int bufferCapacity) {
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+    }
+
+    private static PipelineEventBus createDefault() {
+        PipelineEventBus bus = new PipelineEventBus(DEFAULT_BUFFER_CAPACITY);
+        PIPELINE_LOGGER.addHandler(new LogHandler(bus));
+        return bus;
+    }
+
+    /**
+     * @return The bus the pipeline's services publish on
+     */
+    public static PipelineEventBus getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Hand an event to all subscribers without waiting for any of them
+     */
+    public void publish(PipelineEvent event) {
+        if (publisher.isClosed() || !publisher.hasSubscribers()) {
+            return;
+        }
+        publisher.offer(event, (subscriber, droppedEvent) -> {
+            dropped.incrementAndGet();
+            return false;
+        });
+    }
+
+    public void subscribe(Flow.Subscriber<? super PipelineEvent> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Subscribe to the events of one type
+     *
+     * @param type Event class, or {@code PipelineEvent.class} for all events
+     * @param consumer Called for each event, one at a time, on a pool thread
+     * @return The subscription; close it to unsubscribe
+     */
+    public <T extends PipelineEvent> Listener<T> subscribe(Class<T> type, Consumer<? super T> consumer) {
+        Listener<T> listener = new Listener<>(type, consumer);
+        publisher.subscribe(listener);
+        return listener;
+    }
+
+    /**
+     * @return Events not delivered to some subscriber because its buffer was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() {
+        publisher.close();
+        executor.shutdown();
+    }
+
+    /**
+     * Subscriber that passes the events of one type to a consumer, requesting them in
+     * batches so that a slow consumer only ever holds back its own buffer
+     */
+    public static class Listener<T extends PipelineEvent> implements Flow.Subscriber<PipelineEvent>, AutoCloseable {
+        private static final int BATCH = 64;
+
+        private final Class<T> type;
+        private final Consumer<? super T> consumer;
+        private volatile Flow.Subscription subscription;
+        private volatile boolean closed;
+        private int received;
+
+        private Listener(Class<T> type, Consumer<? super T> consumer) {
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (closed) {
+                subscription.cancel();
+            } else {
+                subscription.request(BATCH);
+            }
+        }
+
+        @Override
+        public void onNext(PipelineEvent event) {
+            if (type.isInstance(event)) {
+                try {
+                    consumer.accept(type.cast(event));
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Event subscriber failed on " + event, e);
+                }
+            }
+            if (++received == BATCH) {
+                received = 0;
+                subscription.request(BATCH);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            LOGGER.log(Level.WARNING, "Event subscription ended", throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    /**
+     * Forwards log records to the bus. Records of the bus itself are left out, so a failing
+     * subscriber can't feed itself.
+     */
+    private static class LogHandler extends Handler {
+        private final PipelineEventBus bus;
+
+        private LogHandler(PipelineEventBus bus) {
+            this.bus = bus;
+            setLevel(Level.INFO);
+            setFormatter(new SimpleFormatter());
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            if (!isLoggable(record) || LOGGER.getName().equals(record.getLoggerName())) {
+                return;
+            }
+            String message = getFormatter().formatMessage(record);
+            if (record.getThrown() != null) {
+                message += ": " + record.getThrown();
+            }
+            bus.publish(new PipelineEvent.LogLine(record.getLevel(), record.getLoggerName(), message));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
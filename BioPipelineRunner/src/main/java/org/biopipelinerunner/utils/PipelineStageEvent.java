@@ -0,0 +1,61 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PipelineEvent;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning one pipeline stage (BUSCO, phylogeny, visualization, archive...).
+ */
+@Name("org.biopipelinerunner.PipelineStage")
+@Label("Pipeline Stage")
+@Category({"BioPipelineRunner", "Pipeline"})
+@Description("A stage of a pipeline run")
+@StackTrace(false)
+public class PipelineStageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Project")
+    public String project;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+
+    private transient long startMillis;
+
+    /**
+     * Begin a stage event for the given stage and project
+     *
+     * @param stage Stage name
+     * @param project Project name, may be null
+     * @return The started event; pass it to {@link #end(boolean)} when the stage is over
+     */
+    public static PipelineStageEvent start(String stage, String project) {
+        PipelineStageEvent event = new PipelineStageEvent();
+        event.stage = stage;
+        event.project = project;
+        event.startMillis = System.currentTimeMillis();
+        event.begin();
+        PipelineEventBus.getDefault().publish(new PipelineEvent.StageStarted(stage, project));
+        return event;
+    }
+
+    /**
+     * End the stage, commit the event if recording is enabled and publish it on the
+     * {@link PipelineEventBus}
+     *
+     * @param succeeded Whether the stage completed without error
+     */
+    public void end(boolean succeeded) {
+        this.succeeded = succeeded;
+        commit();
+        PipelineEventBus.getDefault().publish(new PipelineEvent.StageFinished(stage, project, succeeded,
+                System.currentTimeMillis() - startMillis));
+    }
+}
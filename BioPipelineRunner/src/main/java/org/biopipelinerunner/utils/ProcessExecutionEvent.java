@@ -0,0 +1,28 @@
+package org.biopipelinerunner.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event covering the lifetime of one external process, from launch to exit.
+ * The event duration is the wall-clock time the tool ran.
+ */
+@Name("org.biopipelinerunner.ProcessExecution")
+@Label("Process Execution")
+@Category({"BioPipelineRunner", "Process"})
+@Description("External tool launched by the pipeline")
+@StackTrace(false)
+public class ProcessExecutionEvent extends jdk.jfr.Event {
+
+    @Label("Command")
+    public String command;
+
+    @Label("PID")
+    public long pid;
+
+    @Label("Exit Code")
+    public int exitCode;
+}
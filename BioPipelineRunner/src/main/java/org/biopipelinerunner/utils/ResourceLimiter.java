@@ -0,0 +1,289 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.ResourceLimits;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Applies {@link ResourceLimits} to external tools.
+ * On Linux with a delegated cgroup v2 hierarchy each job gets its own cgroup with
+ * memory.max, cpu.max and swap disabled, so an out-of-memory job is killed as a whole
+ * instead of pushing the workstation into swap. Otherwise the limits fall back to
+ * prlimit for memory (Linux and WSL only) and nice for priority (CPU bandwidth cannot
+ * be capped there).
+ * Jobs that ask for pinning are bound to CPUs from the {@link AffinityPlanner} with
+ * taskset, or numactl when the CPUs share a NUMA node. numactl only prefers that node's
+ * memory, so a job that outgrows it spills over to the other nodes instead of being killed.
+ */
+public class ResourceLimiter {
+    private static final Logger LOGGER = Logger.getLogger(ResourceLimiter.class.getName());
+    private static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+    private static final long CPU_PERIOD_MICROS = 100_000;
+    private static final AtomicLong JOB_COUNTER = new AtomicLong();
+    // Exit messages of tools whose allocation failed under an address space limit
+    private static final Pattern ALLOCATION_FAILURE = Pattern.compile(
+            "out of memory|cannot allocate memory|bad_alloc|MemoryError|memory allocation fail", Pattern.CASE_INSENSITIVE);
+
+    private static Path cgroupBase;
+    private static boolean cgroupProbed;
+    private static Boolean numactlAvailable;
+
+    /**
+     * Prepare a limited job for the given limits
+     *
+     * @param limits Limits to apply, may be null
+     * @return The job wrapper, or null if no limits need to be applied
+     */
+    public static LimitedJob prepare(ResourceLimits limits) {
+        return prepare(limits, 0);
+    }
+
+    /**
+     * Prepare a limited job for the given limits
+     *
+     * @param limits Limits to apply, may be null
+     * @param threads Threads the job will run, used to size its CPU set when pinning
+     *                (0 to derive it from the CPU limit)
+     * @return The job wrapper, or null if no limits need to be applied
+     */
+    public static LimitedJob prepare(ResourceLimits limits, int threads) {
+        if (limits == null || limits.isUnlimited()) {
+            return null;
+        }
+        if (PlatformUtils.isWindows() && !PlatformUtils.isWslInstalled()) {
+            LOGGER.warning("Resource limits are not supported on native Windows; running without limits");
+            return null;
+        }
+        if (limits.getMemoryMaxBytes() > 0 && !isPrlimitAvailable()) {
+            LOGGER.warning("Memory limits are not supported on " + PlatformUtils.getOSName() + "; running without them");
+        }
+        Path cgroup = PlatformUtils.isLinux() ? createJobCgroup(limits) : null;
+        AffinityPlanner.CpuLease lease = null;
+        if (limits.isPinCpus() && PlatformUtils.isLinux()) {
+            int cpus = threads > 0 ? threads : (int) Math.max(1, Math.ceil(limits.getCpuCores()));
+            lease = AffinityPlanner.getInstance().acquire(cpus);
+        }
+        return new LimitedJob(limits, cgroup, lease);
+    }
+
+    /**
+     * @return true if per-job cgroup v2 limits can be used on this machine
+     */
+    public static boolean isCgroupV2Available() {
+        return findCgroupBase() != null;
+    }
+
+    private static synchronized Path findCgroupBase() {
+        if (cgroupProbed) {
+            return cgroupBase;
+        }
+        cgroupProbed = true;
+        if (!Files.exists(CGROUP_ROOT.resolve("cgroup.controllers"))) {
+            return null;
+        }
+        try {
+            // A cgroup v2 only system has a single "0::<path>" line
+            String ownPath = null;
+            for (String line : Files.readAllLines(Paths.get("/proc/self/cgroup"))) {
+                if (line.startsWith("0::")) {
+                    ownPath = line.substring(3);
+                }
+            }
+            if (ownPath == null) {
+                return null;
+            }
+            // Jobs can't live under our own cgroup (no internal processes rule), so use its parent
+            Path own = CGROUP_ROOT.resolve(ownPath.substring(1));
+            Path base = own.equals(CGROUP_ROOT) ? CGROUP_ROOT : own.getParent();
+            if (base != null && Files.isWritable(base) && Files.isWritable(base.resolve("cgroup.procs"))
+                    && enableControllers(base)) {
+                cgroupBase = base;
+                LOGGER.info("Using cgroup v2 resource limits under " + base);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "cgroup v2 not usable", e);
+        }
+        return cgroupBase;
+    }
+
+    private static boolean enableControllers(Path base) throws IOException {
+        String enabled = new String(Files.readAllBytes(base.resolve("cgroup.subtree_control")), StandardCharsets.UTF_8);
+        if (enabled.contains("memory") && enabled.contains("cpu")) {
+            return true;
+        }
+        try {
+            Files.write(base.resolve("cgroup.subtree_control"), "+memory +cpu".getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Path createJobCgroup(ResourceLimits limits) {
+        Path base = findCgroupBase();
+        if (base == null) {
+            return null;
+        }
+        if (limits.getMemoryMaxBytes() > 0 && !isPrlimitAvailable()) {
+            LOGGER.warning("Memory limits are not supported on " + PlatformUtils.getOSName() + "; running without them");
+        }
+        Path cgroup = base.resolve("biopipelinerunner-" + ProcessHandle.current().pid() + "-" + JOB_COUNTER.incrementAndGet());
+        try {
+            Files.createDirectory(cgroup);
+            if (limits.getMemoryMaxBytes() > 0) {
+                writeControl(cgroup, "memory.max", Long.toString(limits.getMemoryMaxBytes()));
+                writeControl(cgroup, "memory.swap.max", "0");
+                writeControl(cgroup, "memory.oom.group", "1");
+            }
+            if (limits.getCpuCores() > 0) {
+                long quota = Math.max(1000, Math.round(limits.getCpuCores() * CPU_PERIOD_MICROS));
+                writeControl(cgroup, "cpu.max", quota + " " + CPU_PERIOD_MICROS);
+            }
+            return cgroup;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not set up cgroup " + cgroup + ", falling back to rlimits", e);
+            removeCgroup(cgroup);
+            return null;
+        }
+    }
+
+    private static void writeControl(Path cgroup, String file, String value) throws IOException {
+        Path control = cgroup.resolve(file);
+        if (Files.exists(control)) {
+            Files.write(control, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * @return true if jobs run on Linux, natively or in WSL, where util-linux provides prlimit
+     */
+    private static boolean isPrlimitAvailable() {
+        return PlatformUtils.isLinux() || (PlatformUtils.isWindows() && PlatformUtils.isWslInstalled());
+    }
+
+    private static synchronized boolean isNumactlAvailable() {
+        if (numactlAvailable == null) {
+            numactlAvailable = PlatformUtils.checkDependency("numactl");
+        }
+        return numactlAvailable;
+    }
+
+    private static void removeCgroup(Path cgroup) {
+        try {
+            Files.deleteIfExists(cgroup);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not remove cgroup " + cgroup, e);
+        }
+    }
+
+    /**
+     * A single job running under resource limits. Wraps the command before launch and
+     * reports on the limits after the process has exited.
+     */
+    public static class LimitedJob {
+        private final ResourceLimits limits;
+        private final Path cgroup;
+        private final AffinityPlanner.CpuLease lease;
+
+        LimitedJob(ResourceLimits limits, Path cgroup, AffinityPlanner.CpuLease lease) {
+            this.limits = limits;
+            this.cgroup = cgroup;
+            this.lease = lease;
+        }
+
+        /**
+         * Wrap an argument vector with the helpers that apply the limits
+         */
+        public List<String> wrapArgs(List<String> args) {
+            List<String> wrapped = new ArrayList<>();
+            if (cgroup != null) {
+                wrapped.add("sh");
+                wrapped.add("-c");
+                wrapped.add("echo $$ > \"$0/cgroup.procs\" && exec \"$@\"");
+                wrapped.add(cgroup.toString());
+            } else if (limits.getMemoryMaxBytes() > 0 && isPrlimitAvailable()) {
+                wrapped.add("prlimit");
+                wrapped.add("--as=" + limits.getMemoryMaxBytes());
+                wrapped.add("--");
+            }
+            if (limits.getNiceness() > 0) {
+                wrapped.add("nice");
+                wrapped.add("-n");
+                wrapped.add(Integer.toString(limits.getNiceness()));
+            }
+            if (lease != null && lease.getNode() >= 0 && isNumactlAvailable()) {
+                wrapped.add("numactl");
+                wrapped.add("--physcpubind=" + lease.getCpuList());
+                wrapped.add("--preferred=" + lease.getNode());
+                wrapped.add("--");
+            } else if (lease != null) {
+                wrapped.add("taskset");
+                wrapped.add("-c");
+                wrapped.add(lease.getCpuList());
+            }
+            wrapped.addAll(args);
+            return wrapped;
+        }
+
+        /**
+         * @return true if the kernel killed the job for exceeding its cgroup memory limit
+         */
+        public boolean wasOomKilled() {
+            if (cgroup == null) {
+                return false;
+            }
+            try {
+                for (String line : Files.readAllLines(cgroup.resolve("memory.events"))) {
+                    if (line.startsWith("oom_kill ") && Long.parseLong(line.substring(9).trim()) > 0) {
+                        return true;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.log(Level.FINE, "Could not read memory.events for " + cgroup, e);
+            }
+            return false;
+        }
+
+        /**
+         * Explain a non-zero exit in terms of the limits that were applied
+         *
+         * @param exitCode Exit code of the job
+         * @param error Standard error of the job
+         * @return The explanation, or null if the failure doesn't look limit-related
+         */
+        public String describeFailure(int exitCode, String error) {
+            long megabytes = limits.getMemoryMaxBytes() / (1024 * 1024);
+            if (wasOomKilled()) {
+                return "Job was killed after exceeding its memory limit of " + megabytes + " MB";
+            }
+            // Under prlimit a failed allocation ends the tool with an error or a signal (abort, segfault)
+            boolean allocationFailure = exitCode > 128 || (error != null && ALLOCATION_FAILURE.matcher(error).find());
+            if (cgroup == null && limits.getMemoryMaxBytes() > 0 && isPrlimitAvailable() && allocationFailure) {
+                return "Job may have exceeded its memory limit of " + megabytes + " MB";
+            }
+            return null;
+        }
+
+        /**
+         * Release the job's cgroup and CPUs once all of its processes have exited
+         */
+        public void close() {
+            if (cgroup != null) {
+                removeCgroup(cgroup);
+            }
+            if (lease != null) {
+                AffinityPlanner.getInstance().release(lease);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.biopipelinerunner.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+/**
+ * A per-run directory on fast local storage (tmpfs or a local NVMe path) for short-lived
+ * intermediates. Space is reserved up front against a size limit; once the limit would be
+ * exceeded, callers are pointed at their fallback directory instead ("spilling").
+ */
+public class ScratchArea {
+    private static final Logger LOGGER = Logger.getLogger(ScratchArea.class.getName());
+    private static final Path SHARED_MEMORY = Paths.get("/dev/shm");
+
+    private final Path directory;
+    private final long limitBytes;
+    private long reservedBytes;
+
+    private ScratchArea(Path directory, long limitBytes) {
+        this.directory = directory;
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * Create a scratch directory for one run
+     *
+     * @param root Scratch root, or null to use {@link #defaultRoot()}
+     * @param name Name of the run, used in the directory name
+     * @param limitBytes Maximum number of bytes to place on scratch
+     * @return The scratch area
+     * @throws IOException if the directory cannot be created
+     */
+    public static ScratchArea create(String root, String name, long limitBytes) throws IOException {
+        Path rootPath = root != null && !root.isEmpty() ? Paths.get(root) : defaultRoot();
+        Files.createDirectories(rootPath);
+        Path directory = Files.createTempDirectory(rootPath, "biopipelinerunner-" + name + "-");
+        // Never plan for more than the file system can actually hold
+        long usable = Files.getFileStore(directory).getUsableSpace();
+        long limit = Math.min(limitBytes, usable);
+        LOGGER.info("Scratch area " + directory + " with limit " + (limit / (1024 * 1024)) + " MB");
+        return new ScratchArea(directory, limit);
+    }
+
+    /**
+     * @return /dev/shm when it is available and writable, otherwise the JVM temp directory
+     */
+    public static Path defaultRoot() {
+        if (PlatformUtils.isLinux() && Files.isDirectory(SHARED_MEMORY) && Files.isWritable(SHARED_MEMORY)) {
+            return SHARED_MEMORY;
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Pick the location for a new file, reserving its expected size on scratch if it fits
+     *
+     * @param name Relative file name inside the scratch area
+     * @param expectedBytes Expected size of the file
+     * @param fallbackDirectory Directory to use when scratch is full
+     * @return Path on scratch, or in the fallback directory when spilling
+     */
+    public synchronized Path allocate(String name, long expectedBytes, Path fallbackDirectory) {
+        if (reservedBytes + expectedBytes <= limitBytes) {
+            reservedBytes += expectedBytes;
+            return directory.resolve(name);
+        }
+        return fallbackDirectory.resolve(name);
+    }
+
+    /**
+     * Give back space once a scratch file has been deleted
+     */
+    public synchronized void release(long bytes) {
+        reservedBytes = Math.max(0, reservedBytes - bytes);
+    }
+
+    /**
+     * Remove the scratch directory and everything in it
+     */
+    public synchronized void cleanup() {
+        File scratchDirectory = directory.toFile();
+        if (scratchDirectory.exists() && !FileUtils.deleteDirectory(scratchDirectory)) {
+            LOGGER.warning("Could not fully remove scratch directory " + directory);
+        }
+        reservedBytes = 0;
+    }
+}
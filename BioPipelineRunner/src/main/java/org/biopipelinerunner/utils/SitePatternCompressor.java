@@ -0,0 +1,311 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PackedAlignment;
+import org.biopipelinerunner.models.SitePatterns;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Collapses identical columns of an alignment into weighted {@link SitePatterns}, and stores
+ * them next to the alignment so later analyses of the same matrix skip parsing and compressing
+ * the full text.
+ *
+ * <p>Each column is hashed to 64 bits while streaming through the rows one after the other,
+ * so the alignment is read in memory order. Columns are then looked up by hash in an
+ * open-addressing table holding the first site of each pattern; a matching hash is confirmed
+ * by comparing the two columns. Gaps and ambiguity codes are all one unknown state here, so
+ * columns differing only in those collapse together.</p>
+ *
+ * <p>For an alignment file {@code X} three files are written: {@code X.patterns}, the
+ * patterns as aligned FASTA; {@code X.patterns.weights}, one weight per line (the site weight
+ * format of RAxML-NG); and {@code X.patterns.sites}, a header line with the alphabet, site
+ * and pattern counts followed by one line per partition listing the pattern of each site.</p>
+ */
+public class SitePatternCompressor {
+    public static final String PATTERNS_SUFFIX = ".patterns";
+    public static final String WEIGHTS_SUFFIX = ".patterns.weights";
+    public static final String SITES_SUFFIX = ".patterns.sites";
+    private static final Logger LOGGER = Logger.getLogger(SitePatternCompressor.class.getName());
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final String NUCLEOTIDE = "nucleotide";
+    private static final String PROTEIN = "protein";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SitePatternCompressor() {
+    }
+
+    /**
+     * Compress an alignment as a single partition
+     */
+    public static SitePatterns compress(PackedAlignment alignment) {
+        return compress(alignment, new int[] {alignment.getLength()});
+    }
+
+    /**
+     * Compress an alignment, sharing patterns only within each partition
+     *
+     * @param alignment Alignment
+     * @param partitionEnds End (exclusive) of each partition's sites, ascending; the last one
+     *                      must be the alignment length
+     */
+    public static SitePatterns compress(PackedAlignment alignment, int[] partitionEnds) {
+        int length = alignment.getLength();
+        int taxa = alignment.getTaxonCount();
+        if (partitionEnds.length == 0 || partitionEnds[partitionEnds.length - 1] != length) {
+            throw new IllegalArgumentException("Partitions must end at the alignment length " + length);
+        }
+
+        long[] hashes = new long[length];
+        for (int t = 0; t < taxa; t++) {
+            byte[] row = alignment.getRow(t);
+            for (int site = 0; site < length; site++) {
+                hashes[site] = (hashes[site] + row[site] + 2) * HASH_MULTIPLIER;
+            }
+        }
+
+        int[] sitePatterns = new int[length];
+        int[] firstSites = new int[length];
+        int[] weights = new int[length];
+        int[] partitionPatternEnds = new int[partitionEnds.length];
+        int patternCount = 0;
+        int start = 0;
+        for (int partition = 0; partition < partitionEnds.length; partition++) {
+            int end = partitionEnds[partition];
+            if (end < start) {
+                throw new IllegalArgumentException("Partition ends are not ascending: " + Arrays.toString(partitionEnds));
+            }
+            // Table of pattern numbers, at most half full
+            int capacity = Integer.highestOneBit(Math.max(1, end - start)) << 2;
+            int mask = capacity - 1;
+            int shift = Long.numberOfLeadingZeros(capacity) + 1;
+            int[] table = new int[capacity];
+            Arrays.fill(table, -1);
+            for (int site = start; site < end; site++) {
+                long hash = hashes[site];
+                // The top bits of the hash are the best mixed
+                int slot = (int) ((hash * HASH_MULTIPLIER) >>> shift);
+                while (true) {
+                    int pattern = table[slot];
+                    if (pattern < 0) {
+                        table[slot] = patternCount;
+                        firstSites[patternCount] = site;
+                        weights[patternCount] = 1;
+                        sitePatterns[site] = patternCount++;
+                        break;
+                    }
+                    int first = firstSites[pattern];
+                    if (hashes[first] == hash && sameColumn(alignment, first, site)) {
+                        weights[pattern]++;
+                        sitePatterns[site] = pattern;
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+            }
+            partitionPatternEnds[partition] = patternCount;
+            start = end;
+        }
+
+        byte[][] rows = new byte[taxa][patternCount];
+        for (int t = 0; t < taxa; t++) {
+            byte[] row = alignment.getRow(t);
+            byte[] patternRow = rows[t];
+            for (int pattern = 0; pattern < patternCount; pattern++) {
+                patternRow[pattern] = row[firstSites[pattern]];
+            }
+        }
+        return new SitePatterns(new PackedAlignment(alignment.getTaxa(), rows, alignment.isNucleotide()),
+                Arrays.copyOf(weights, patternCount), sitePatterns, partitionEnds.clone(), partitionPatternEnds);
+    }
+
+    private static boolean sameColumn(PackedAlignment alignment, int first, int second) {
+        for (int t = 0; t < alignment.getTaxonCount(); t++) {
+            byte[] row = alignment.getRow(t);
+            if (row[first] != row[second]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Patterns of an alignment file: read from the stored pattern files if they are at least
+     * as new as the alignment, otherwise compressed from the alignment and stored
+     *
+     * @throws IOException if the alignment or the pattern files can't be read or written
+     */
+    public static SitePatterns load(Path alignmentFile) throws IOException {
+        if (isUpToDate(alignmentFile)) {
+            try {
+                return read(alignmentFile);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warning("Compressing again, stored site patterns are unusable: " + e.getMessage());
+            }
+        }
+        long start = System.nanoTime();
+        PackedAlignment alignment = AlignmentReader.readFasta(alignmentFile);
+        SitePatterns patterns = compress(alignment);
+        write(patterns, alignmentFile);
+        LOGGER.info(String.format("%s: %d sites compressed to %d patterns in %.1f s", alignmentFile.getFileName(),
+                patterns.getSiteCount(), patterns.getPatternCount(), (System.nanoTime() - start) / 1e9));
+        return patterns;
+    }
+
+    /**
+     * @return true if all pattern files of the alignment file exist and are at least as new
+     */
+    public static boolean isUpToDate(Path alignmentFile) throws IOException {
+        if (!Files.exists(alignmentFile)) {
+            return false;
+        }
+        long modified = Files.getLastModifiedTime(alignmentFile).toMillis();
+        for (String suffix : new String[] {PATTERNS_SUFFIX, WEIGHTS_SUFFIX, SITES_SUFFIX}) {
+            Path file = sibling(alignmentFile, suffix);
+            if (!Files.exists(file) || Files.getLastModifiedTime(file).toMillis() < modified) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the pattern files of an alignment file
+     */
+    public static void write(SitePatterns patterns, Path alignmentFile) throws IOException {
+        PackedAlignment alignment = patterns.getPatterns();
+        String alphabet = alignment.isNucleotide() ? PackedAlignment.NUCLEOTIDES : PackedAlignment.AMINO_ACIDS;
+        byte[] letters = new byte[alphabet.length() + 1];
+        letters[0] = '-';
+        for (int i = 0; i < alphabet.length(); i++) {
+            letters[i + 1] = (byte) alphabet.charAt(i);
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(sibling(alignmentFile, PATTERNS_SUFFIX)), BUFFER_SIZE)) {
+            byte[] line = new byte[alignment.getLength() + 1];
+            line[line.length - 1] = '\n';
+            for (int t = 0; t < alignment.getTaxonCount(); t++) {
+                out.write(('>' + alignment.getTaxon(t) + '\n').getBytes(StandardCharsets.UTF_8));
+                byte[] row = alignment.getRow(t);
+                for (int site = 0; site < row.length; site++) {
+                    // UNKNOWN (-1) maps to the gap
+                    line[site] = letters[row[site] + 1];
+                }
+                out.write(line);
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(sibling(alignmentFile, WEIGHTS_SUFFIX), StandardCharsets.UTF_8)) {
+            for (int weight : patterns.getWeights()) {
+                writer.write(Integer.toString(weight));
+                writer.newLine();
+            }
+        }
+        // Written last: its presence means the other two are complete
+        try (BufferedWriter writer = Files.newBufferedWriter(sibling(alignmentFile, SITES_SUFFIX), StandardCharsets.UTF_8)) {
+            writer.write((alignment.isNucleotide() ? NUCLEOTIDE : PROTEIN) + " " + patterns.getSiteCount() + " "
+                    + patterns.getPatternCount());
+            writer.newLine();
+            int site = 0;
+            for (int partition = 0; partition < patterns.getPartitionCount(); partition++) {
+                StringBuilder line = new StringBuilder();
+                for (; site < patterns.getPartitionSiteEnd(partition); site++) {
+                    if (line.length() > 0) {
+                        line.append(' ');
+                    }
+                    line.append(patterns.getPattern(site));
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Read the pattern files of an alignment file
+     *
+     * @throws IOException if a file is missing or the files don't agree
+     */
+    public static SitePatterns read(Path alignmentFile) throws IOException {
+        Path sitesFile = sibling(alignmentFile, SITES_SUFFIX);
+        String[] header;
+        List<int[]> partitions = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(sitesFile, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            header = line != null ? line.trim().split("\\s+") : new String[0];
+            if (header.length != 3 || !(NUCLEOTIDE.equals(header[0]) || PROTEIN.equals(header[0]))) {
+                throw new IOException(sitesFile + ": invalid header " + line);
+            }
+            while ((line = reader.readLine()) != null) {
+                partitions.add(parseIntegers(line));
+            }
+        }
+        int siteCount = Integer.parseInt(header[1]);
+        int patternCount = Integer.parseInt(header[2]);
+
+        int[] sitePatterns = new int[siteCount];
+        int[] partitionSiteEnds = new int[partitions.size()];
+        int[] partitionPatternEnds = new int[partitions.size()];
+        int site = 0;
+        for (int partition = 0; partition < partitions.size(); partition++) {
+            int[] values = partitions.get(partition);
+            if (site + values.length > siteCount) {
+                throw new IOException(sitesFile + ": more than " + siteCount + " sites");
+            }
+            System.arraycopy(values, 0, sitePatterns, site, values.length);
+            site += values.length;
+            partitionSiteEnds[partition] = site;
+            int end = partition > 0 ? partitionPatternEnds[partition - 1] : 0;
+            for (int value : values) {
+                if (value < 0 || value >= patternCount) {
+                    throw new IOException(sitesFile + ": pattern " + value + " out of range");
+                }
+                end = Math.max(end, value + 1);
+            }
+            partitionPatternEnds[partition] = end;
+        }
+        if (site != siteCount) {
+            throw new IOException(sitesFile + ": " + site + " sites, expected " + siteCount);
+        }
+
+        List<String> weightLines = Files.readAllLines(sibling(alignmentFile, WEIGHTS_SUFFIX), StandardCharsets.UTF_8);
+        int[] weights = parseIntegers(String.join(" ", weightLines));
+        PackedAlignment alignment = AlignmentReader.readFasta(sibling(alignmentFile, PATTERNS_SUFFIX), NUCLEOTIDE.equals(header[0]));
+        if (alignment.getLength() != patternCount || weights.length != patternCount) {
+            throw new IOException(alignmentFile + ": pattern files disagree on the number of patterns");
+        }
+        try {
+            return new SitePatterns(alignment, weights, sitePatterns, partitionSiteEnds, partitionPatternEnds);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(alignmentFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static int[] parseIntegers(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) {
+            return new int[0];
+        }
+        String[] fields = trimmed.split("\\s+");
+        int[] values = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = Integer.parseInt(fields[i]);
+        }
+        return values;
+    }
+
+    private static Path sibling(Path alignmentFile, String suffix) {
+        Path name = Paths.get(alignmentFile.getFileName() + suffix);
+        Path parent = alignmentFile.getParent();
+        return parent != null ? parent.resolve(name) : name;
+    }
+}
@@ -0,0 +1,212 @@
+package org.biopipelinerunner.utils;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts tar and tar.gz archives (ustar, with GNU long names and pax path headers), as
+ * used for BUSCO datasets. Only directories and regular files are extracted; links and
+ * entries that would end up outside the target directory are skipped.
+ */
+public class TarArchive {
+    private static final int BLOCK_SIZE = 512;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private TarArchive() {
+    }
+
+    /**
+     * Extract a .tar.gz archive
+     *
+     * @param archive Archive file
+     * @param target Directory to extract into, created if needed
+     * @return Number of files extracted
+     * @throws IOException if the archive can't be read or is truncated
+     */
+    public static int extractGzip(Path archive, Path target) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(archive), BUFFER_SIZE)) {
+            return extract(in, target);
+        }
+    }
+
+    /**
+     * Extract an uncompressed tar stream
+     *
+     * @return Number of files extracted
+     */
+    public static int extract(InputStream stream, Path target) throws IOException {
+        InputStream in = new BufferedInputStream(stream, BUFFER_SIZE);
+        Path root = target.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] buffer = new byte[BUFFER_SIZE];
+        String longName = null;
+        int files = 0;
+        while (readBlock(in, header)) {
+            if (isZero(header)) {
+                break;
+            }
+            long size = parseSize(header);
+            char type = (char) header[156];
+            String name = longName != null ? longName : headerName(header);
+            longName = null;
+            if (type == 'L' || type == 'x') {
+                // GNU long name or pax extended header for the next entry
+                byte[] data = readData(in, size);
+                longName = type == 'L' ? trimNul(data) : paxPath(data);
+                continue;
+            }
+            Path path = root.resolve(name).normalize();
+            if (!path.startsWith(root) || path.equals(root)) {
+                skip(in, padded(size));
+                continue;
+            }
+            if (type == '5') {
+                Files.createDirectories(path);
+                skip(in, padded(size));
+            } else if (type == '0' || type == '\0' || type == '7') {
+                Files.createDirectories(path.getParent());
+                try (OutputStream out = Files.newOutputStream(path)) {
+                    long remaining = size;
+                    while (remaining > 0) {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read < 0) {
+                            throw new EOFException("Truncated archive at " + name);
+                        }
+                        out.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+                skip(in, padded(size) - size);
+                files++;
+            } else {
+                skip(in, padded(size));
+            }
+        }
+        return files;
+    }
+
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int offset = 0;
+        while (offset < block.length) {
+            int read = in.read(block, offset, block.length - offset);
+            if (read < 0) {
+                if (offset == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated tar header");
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    private static byte[] readData(InputStream in, long size) throws IOException {
+        if (size > Integer.MAX_VALUE - BLOCK_SIZE) {
+            throw new IOException("Tar header too large: " + size);
+        }
+        byte[] data = new byte[(int) size];
+        int offset = 0;
+        while (offset < data.length) {
+            int read = in.read(data, offset, data.length - offset);
+            if (read < 0) {
+                throw new EOFException("Truncated tar header");
+            }
+            offset += read;
+        }
+        skip(in, padded(size) - size);
+        return data;
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Truncated archive");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static long padded(long size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String headerName(byte[] header) {
+        String name = field(header, 0, 100);
+        // ustar splits long paths into a prefix and a name
+        if (header[257] == 'u' && header[258] == 's' && header[345] != 0) {
+            name = field(header, 345, 155) + "/" + name;
+        }
+        return name;
+    }
+
+    /**
+     * Entry size: octal digits, or big-endian binary when the high bit is set (GNU, over 8 GB)
+     */
+    private static long parseSize(byte[] header) throws IOException {
+        if ((header[124] & 0x80) != 0) {
+            long size = 0;
+            for (int i = 128; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xff);
+            }
+            return size;
+        }
+        String octal = field(header, 124, 12).trim();
+        try {
+            return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid tar entry size: " + octal);
+        }
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static String trimNul(byte[] data) {
+        int end = data.length;
+        while (end > 0 && data[end - 1] == 0) {
+            end--;
+        }
+        return new String(data, 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The path record of a pax header ("<length> path=<value>\n" records), or null
+     */
+    private static String paxPath(byte[] data) {
+        String records = new String(data, StandardCharsets.UTF_8);
+        for (String record : records.split("\n")) {
+            int key = record.indexOf(" path=");
+            if (key > 0) {
+                return record.substring(key + 6);
+            }
+        }
+        return null;
+    }
+}
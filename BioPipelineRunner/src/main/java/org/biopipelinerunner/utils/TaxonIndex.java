@@ -0,0 +1,65 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed numbering of the taxa shared by a set of trees, in label order, used as bit positions
+ * of {@link Bipartition}s
+ */
+public class TaxonIndex {
+    private final String[] names;
+    private final Map<String, Integer> indices;
+
+    /**
+     * @param names Taxon names, without duplicates
+     */
+    public TaxonIndex(String[] names) {
+        this.names = names.clone();
+        this.indices = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            if (indices.put(names[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate taxon " + names[i]);
+            }
+        }
+    }
+
+    /**
+     * Number the leaves of a tree by label
+     */
+    public static TaxonIndex of(PhyloTree tree) {
+        int[] leaves = tree.getLeaves(tree.getRoot());
+        String[] names = new String[leaves.length];
+        for (int i = 0; i < leaves.length; i++) {
+            names[i] = tree.getLabel(leaves[i]);
+        }
+        Arrays.sort(names);
+        return new TaxonIndex(names);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return Number of 64-bit words a bitset over the taxa takes
+     */
+    public int words() {
+        return (names.length + 63) >>> 6;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return Index of the taxon, or -1 if it isn't in the index
+     */
+    public int indexOf(String name) {
+        Integer index = indices.get(name);
+        return index != null ? index : -1;
+    }
+}
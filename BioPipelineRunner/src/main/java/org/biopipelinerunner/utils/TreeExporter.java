@@ -0,0 +1,338 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a laid-out tree as SVG, PDF or PNG without a GUI toolkit or external tools, so the
+ * figures can be produced on the pipeline thread. All three formats share one drawing
+ * routine; the full tree is drawn, with row height shrunk (and labels dropped when too small)
+ * to keep very large trees within the format's size limits.
+ */
+public class TreeExporter {
+    private static final double WIDTH = 800;
+    private static final double MARGIN = 20;
+    private static final double MAX_ROW_HEIGHT = 12;
+    private static final double MIN_LABEL_SIZE = 4;
+    private static final double MAX_HEIGHT = 14400;
+    private static final int MAX_PNG_HEIGHT = 16000;
+
+    /**
+     * Export by file extension (.svg, .pdf or .png)
+     */
+    public static void export(TreeLayout layout, Path file, boolean showSupport) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".svg")) {
+            exportSvg(layout, file, showSupport);
+        } else if (name.endsWith(".pdf")) {
+            exportPdf(layout, file, showSupport);
+        } else if (name.endsWith(".png")) {
+            exportPng(layout, file, showSupport);
+        } else {
+            throw new IOException("Unsupported tree export format: " + file.getFileName());
+        }
+    }
+
+    public static void exportSvg(TreeLayout layout, Path file, boolean showSupport) throws IOException {
+        Geometry geometry = new Geometry(layout, MAX_HEIGHT);
+        SvgSink sink = new SvgSink();
+        draw(layout, geometry, sink, showSupport);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(String.format(Locale.ROOT,
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%.0f\" height=\"%.0f\" viewBox=\"0 0 %.0f %.0f\">\n"
+                    + "<rect width=\"100%%\" height=\"100%%\" fill=\"white\"/>\n",
+                    WIDTH, geometry.height, WIDTH, geometry.height));
+            writer.write("<path fill=\"none\" stroke=\"black\" stroke-width=\"1\" d=\"");
+            writer.write(sink.path.toString());
+            writer.write("\"/>\n<g font-family=\"Helvetica, Arial, sans-serif\">\n");
+            writer.write(sink.text.toString());
+            writer.write("</g>\n</svg>\n");
+        }
+    }
+
+    public static void exportPdf(TreeLayout layout, Path file, boolean showSupport) throws IOException {
+        Geometry geometry = new Geometry(layout, MAX_HEIGHT);
+        PdfSink sink = new PdfSink(geometry.height);
+        draw(layout, geometry, sink, showSupport);
+        writePdf(file, WIDTH, geometry.height, sink.finish());
+    }
+
+    public static void exportPng(TreeLayout layout, Path file, boolean showSupport) throws IOException {
+        Geometry geometry = new Geometry(layout, MAX_PNG_HEIGHT);
+        BufferedImage image = new BufferedImage((int) WIDTH, (int) Math.ceil(geometry.height), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setColor(Color.BLACK);
+            graphics.setStroke(new BasicStroke(1f));
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            draw(layout, geometry, new GraphicsSink(graphics), showSupport);
+        } finally {
+            graphics.dispose();
+        }
+        if (!ImageIO.write(image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    private static void draw(TreeLayout layout, Geometry geometry, Sink sink, boolean showSupport) {
+        PhyloTree tree = layout.getTree();
+        for (int node : tree.getPreorder()) {
+            double x = geometry.x(layout.getX(node));
+            double y = geometry.y(layout.getY(node));
+            int parent = tree.getParent(node);
+            if (parent != PhyloTree.NONE) {
+                sink.line(geometry.x(layout.getX(parent)), y, x, y);
+            }
+            if (!tree.isLeaf(node)) {
+                int first = tree.getFirstChild(node);
+                int last = first;
+                for (int child = first; child != PhyloTree.NONE; child = tree.getNextSibling(child)) {
+                    last = child;
+                }
+                sink.line(x, geometry.y(layout.getY(first)), x, geometry.y(layout.getY(last)));
+                if (showSupport && parent != PhyloTree.NONE && !Double.isNaN(tree.getSupport(node))
+                        && geometry.fontSize >= MIN_LABEL_SIZE) {
+                    sink.text(x - 2, y - 2, formatNumber(tree.getSupport(node)), geometry.fontSize * 0.75, true);
+                }
+            } else if (geometry.fontSize >= MIN_LABEL_SIZE && tree.getLabel(node) != null) {
+                sink.text(x + 4, y + geometry.fontSize / 3, tree.getLabel(node), geometry.fontSize, false);
+            }
+        }
+        if (layout.isUsingBranchLengths() && layout.getWidth() > 0) {
+            // Scale bar with a round length of roughly a tenth of the tree depth
+            double length = Math.pow(10, Math.floor(Math.log10(layout.getWidth() / 5)));
+            double y = geometry.height - MARGIN / 2;
+            sink.line(MARGIN, y, MARGIN + length * geometry.scaleX, y);
+            sink.text(MARGIN + length * geometry.scaleX + 4, y + 3, formatNumber(length), 9, false);
+        }
+    }
+
+    static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e9) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.3g", value);
+    }
+
+    private static void writePdf(Path file, double width, double height, String content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+            deflater.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        String[] objects = {
+            "<< /Type /Catalog /Pages 2 0 R >>",
+            "<< /Type /Pages /Kids [3 0 R] /Count 1 >>",
+            String.format(Locale.ROOT, "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 %.2f %.2f] "
+                    + "/Resources << /Font << /F1 4 0 R >> >> /Contents 5 0 R >>", width, height),
+            "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>",
+        };
+        try (OutputStream out = Files.newOutputStream(file)) {
+            CountingWriter writer = new CountingWriter(out);
+            writer.write("%PDF-1.4\n");
+            List<Long> offsets = new ArrayList<>();
+            for (int i = 0; i < objects.length; i++) {
+                offsets.add(writer.count);
+                writer.write((i + 1) + " 0 obj\n" + objects[i] + "\nendobj\n");
+            }
+            offsets.add(writer.count);
+            byte[] stream = compressed.toByteArray();
+            writer.write("5 0 obj\n<< /Length " + stream.length + " /Filter /FlateDecode >>\nstream\n");
+            writer.write(stream);
+            writer.write("\nendstream\nendobj\n");
+            long xref = writer.count;
+            writer.write("xref\n0 6\n0000000000 65535 f \n");
+            for (long offset : offsets) {
+                writer.write(String.format(Locale.ROOT, "%010d 00000 n \n", offset));
+            }
+            writer.write("trailer\n<< /Size 6 /Root 1 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+        }
+    }
+
+    /**
+     * Maps layout coordinates to output units
+     */
+    private static final class Geometry {
+        private final double rowHeight;
+        private final double fontSize;
+        private final double scaleX;
+        private final double height;
+
+        private Geometry(TreeLayout layout, double maxHeight) {
+            int leaves = Math.max(1, layout.getLeafCount());
+            rowHeight = Math.min(MAX_ROW_HEIGHT, (maxHeight - 3 * MARGIN) / leaves);
+            fontSize = Math.min(10, rowHeight * 0.8);
+            int longestLabel = 0;
+            PhyloTree tree = layout.getTree();
+            if (fontSize >= MIN_LABEL_SIZE) {
+                for (int node = 0; node < tree.getNodeCount(); node++) {
+                    if (tree.isLeaf(node) && tree.getLabel(node) != null) {
+                        longestLabel = Math.max(longestLabel, tree.getLabel(node).length());
+                    }
+                }
+            }
+            double labelWidth = Math.min(WIDTH / 2, longestLabel * fontSize * 0.6 + 8);
+            scaleX = (WIDTH - 2 * MARGIN - labelWidth) / Math.max(layout.getWidth(), 1e-9);
+            height = leaves * rowHeight + 3 * MARGIN;
+        }
+
+        private double x(double layoutX) {
+            return MARGIN + layoutX * scaleX;
+        }
+
+        private double y(double layoutY) {
+            return MARGIN + (layoutY + 0.5) * rowHeight;
+        }
+    }
+
+    private interface Sink {
+        void line(double x1, double y1, double x2, double y2);
+
+        /**
+         * @param alignRight true to end the text at x, false to start it there
+         */
+        void text(double x, double y, String text, double size, boolean alignRight);
+    }
+
+    private static final class SvgSink implements Sink {
+        private final StringBuilder path = new StringBuilder();
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void line(double x1, double y1, double x2, double y2) {
+            path.append(String.format(Locale.ROOT, "M%.2f %.2fL%.2f %.2f", x1, y1, x2, y2));
+        }
+
+        @Override
+        public void text(double x, double y, String value, double size, boolean alignRight) {
+            text.append(String.format(Locale.ROOT, "<text x=\"%.2f\" y=\"%.2f\" font-size=\"%.1f\"%s>", x, y, size,
+                    alignRight ? " text-anchor=\"end\"" : ""));
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '<') {
+                    text.append("&lt;");
+                } else if (c == '>') {
+                    text.append("&gt;");
+                } else if (c == '&') {
+                    text.append("&amp;");
+                } else {
+                    text.append(c);
+                }
+            }
+            text.append("</text>\n");
+        }
+    }
+
+    private static final class PdfSink implements Sink {
+        private final StringBuilder content = new StringBuilder("0.8 w\n");
+        private final double pageHeight;
+        private boolean pathOpen;
+
+        private PdfSink(double pageHeight) {
+            this.pageHeight = pageHeight;
+        }
+
+        @Override
+        public void line(double x1, double y1, double x2, double y2) {
+            pathOpen = true;
+            content.append(String.format(Locale.ROOT, "%.2f %.2f m %.2f %.2f l\n",
+                    x1, pageHeight - y1, x2, pageHeight - y2));
+        }
+
+        @Override
+        public void text(double x, double y, String value, double size, boolean alignRight) {
+            // Standard fonts carry no metrics here, so right alignment uses Helvetica's average width
+            double start = alignRight ? x - value.length() * size * 0.55 : x;
+            StringBuilder escaped = new StringBuilder();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '(' || c == ')' || c == '\\') {
+                    escaped.append('\\').append(c);
+                } else {
+                    escaped.append(c < 256 ? c : '?');
+                }
+            }
+            // Path construction and text objects can't interleave, so stroke pending lines first
+            strokePath();
+            content.append(String.format(Locale.ROOT, "BT /F1 %.1f Tf %.2f %.2f Td (%s) Tj ET\n",
+                    size, start, pageHeight - y, escaped));
+        }
+
+        private void strokePath() {
+            if (pathOpen) {
+                content.append("S\n");
+                pathOpen = false;
+            }
+        }
+
+        private String finish() {
+            strokePath();
+            return content.toString();
+        }
+    }
+
+    private static final class GraphicsSink implements Sink {
+        private final Graphics2D graphics;
+        private final Line2D.Double line = new Line2D.Double();
+
+        private GraphicsSink(Graphics2D graphics) {
+            this.graphics = graphics;
+        }
+
+        @Override
+        public void line(double x1, double y1, double x2, double y2) {
+            line.setLine(x1, y1, x2, y2);
+            graphics.draw(line);
+        }
+
+        @Override
+        public void text(double x, double y, String value, double size, boolean alignRight) {
+            Font font = graphics.getFont();
+            if (font.getSize2D() != (float) size) {
+                graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 1).deriveFont((float) size));
+            }
+            float start = (float) (alignRight ? x - graphics.getFontMetrics().stringWidth(value) : x);
+            graphics.drawString(value, start, (float) y);
+        }
+    }
+
+    private static final class CountingWriter {
+        private final OutputStream out;
+        private long count;
+
+        private CountingWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        private void write(String value) throws IOException {
+            write(value.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            count += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+
+/**
+ * Rectangular ("phylogram") coordinates for a {@link PhyloTree}. The x coordinate is the
+ * distance from the root (branch lengths, or edge counts for a cladogram); the y coordinate
+ * is in leaf slots, so leaf i sits at y = i and an internal node halfway between its first
+ * and last child. Because leaves are numbered in preorder, every subtree covers the
+ * contiguous slot range {@link #getFirstLeaf(int)}..{@link #getLastLeaf(int)}.
+ */
+public class TreeLayout {
+    private final PhyloTree tree;
+    private final boolean useBranchLengths;
+    private final double[] x;
+    private final double[] y;
+    private final double[] subtreeMaxX;
+    private final int[] firstLeaf;
+    private final int[] lastLeaf;
+    private double width;
+
+    public TreeLayout(PhyloTree tree, boolean useBranchLengths) {
+        this.tree = tree;
+        this.useBranchLengths = useBranchLengths && hasBranchLengths(tree);
+        int count = tree.getNodeCount();
+        x = new double[count];
+        y = new double[count];
+        subtreeMaxX = new double[count];
+        firstLeaf = new int[count];
+        lastLeaf = new int[count];
+        compute();
+    }
+
+    private static boolean hasBranchLengths(PhyloTree tree) {
+        for (int node = 0; node < tree.getNodeCount(); node++) {
+            if (node != tree.getRoot() && !Double.isNaN(tree.getBranchLength(node))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compute() {
+        int[] preorder = tree.getPreorder();
+        int leaves = 0;
+        for (int node : preorder) {
+            int parent = tree.getParent(node);
+            if (parent == PhyloTree.NONE) {
+                x[node] = 0;
+            } else {
+                double length = useBranchLengths ? tree.getBranchLength(node) : 1;
+                x[node] = x[parent] + (Double.isNaN(length) || length < 0 ? 0 : length);
+            }
+            if (tree.isLeaf(node)) {
+                firstLeaf[node] = leaves;
+                lastLeaf[node] = leaves;
+                y[node] = leaves++;
+            }
+        }
+        width = 0;
+        for (int i = preorder.length - 1; i >= 0; i--) {
+            int node = preorder[i];
+            if (tree.isLeaf(node)) {
+                subtreeMaxX[node] = x[node];
+            } else {
+                int first = tree.getFirstChild(node);
+                int last = first;
+                double maxX = x[node];
+                for (int child = first; child != PhyloTree.NONE; child = tree.getNextSibling(child)) {
+                    maxX = Math.max(maxX, subtreeMaxX[child]);
+                    last = child;
+                }
+                subtreeMaxX[node] = maxX;
+                firstLeaf[node] = firstLeaf[first];
+                lastLeaf[node] = lastLeaf[last];
+                y[node] = (y[first] + y[last]) / 2;
+            }
+            width = Math.max(width, x[node]);
+        }
+    }
+
+    public PhyloTree getTree() {
+        return tree;
+    }
+
+    public boolean isUsingBranchLengths() {
+        return useBranchLengths;
+    }
+
+    public double getX(int node) {
+        return x[node];
+    }
+
+    public double getY(int node) {
+        return y[node];
+    }
+
+    /**
+     * @return Largest x coordinate in the subtree of the node
+     */
+    public double getSubtreeMaxX(int node) {
+        return subtreeMaxX[node];
+    }
+
+    public int getFirstLeaf(int node) {
+        return firstLeaf[node];
+    }
+
+    public int getLastLeaf(int node) {
+        return lastLeaf[node];
+    }
+
+    /**
+     * @return Largest x coordinate in the tree
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    public int getLeafCount() {
+        return tree.getLeafCount();
+    }
+
+    /**
+     * Visit the nodes a view of the given leaf slots has to draw, in preorder. Subtrees
+     * entirely outside the slots are skipped, and clades spanning fewer than
+     * {@code collapseSlots} leaf slots are reported once as collapsed instead of node by node.
+     *
+     * @param firstSlot First visible leaf slot (may be fractional)
+     * @param lastSlot Last visible leaf slot
+     * @param collapseSlots Leaf slot span below which a clade is collapsed, 0 to never collapse
+     * @param visitor Receives the nodes to draw
+     */
+    public void visit(double firstSlot, double lastSlot, double collapseSlots, Visitor visitor) {
+        int[] preorder = tree.getPreorder();
+        int i = 0;
+        while (i < preorder.length) {
+            int node = preorder[i];
+            if (lastLeaf[node] < firstSlot || firstLeaf[node] > lastSlot) {
+                // Nothing below this node can be visible
+                i += tree.getSubtreeSize(node);
+            } else if (!tree.isLeaf(node) && lastLeaf[node] - firstLeaf[node] + 1 < collapseSlots) {
+                visitor.collapsed(node);
+                i += tree.getSubtreeSize(node);
+            } else {
+                visitor.node(node);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Receives the nodes of a {@link #visit} in preorder
+     */
+    public interface Visitor {
+        /**
+         * A node to draw with its branch (and, for a leaf, its label)
+         */
+        void node(int node);
+
+        /**
+         * A clade too thin to draw node by node, whose subtree is not visited further
+         */
+        void collapsed(int node);
+    }
+}
@@ -3,6 +3,8 @@
 import argparse
 import multiprocessing as mp
 import os
+import shutil
+import signal
 import sys
 import traceback
 from time import gmtime, strftime
@@ -40,8 +42,36 @@ muscle = "muscle"
 iqtree = "iqtree"
 trimal = "trimal"
 raxmlHPC = "raxmlHPC-PTHREADS"
+fasttree_candidates = ["FastTreeMP", "FastTree", "fasttree"]
 outg = ""
 
+PREVIEW_TREE = "PREVIEW.fasttree.tre"
+FASTTREE_TREE = "SUPERMATRIX.trimmed.aln.fasttree.tre"
+SUPERMATRIX_READY = "SUPERMATRIX.trimmed.aln.ready"
+SUPERMATRIX_PARTITIONS = "SUPERMATRIX.partitions"
+
+def find_fasttree():
+    """Return the first FastTree binary found on the PATH, or None."""
+    for candidate in fasttree_candidates:
+        if check_dependency(candidate):
+            return candidate
+    return None
+
+def start_fasttree(fasttree, alignment, output, threads):
+    """Start FastTree in the background. The tree is written to a temporary file and renamed
+    when complete, so readers never see a partial tree."""
+    env = dict(os.environ, OMP_NUM_THREADS=str(max(1, threads)))
+    tmp = output + ".tmp"
+    cmd = f"{fasttree} -lg -gamma -quiet {alignment} > {tmp} && mv {tmp} {output}"
+    logger.info(f"Running: {cmd}")
+    # Own process group, so stopping it also stops FastTree and not just the shell
+    return subprocess.Popen(cmd, shell=True, env=env, start_new_session=True)
+
+def read_list(path):
+    """Return the non-empty lines of a file, in order."""
+    with open(path) as fi:
+        return [line.strip() for line in fi if line.strip()]
+
 def run_muscle(io):
     """Run MUSCLE alignment on a pair of input and output files."""
     try:
@@ -70,6 +100,52 @@ def run_trimal(io):
         logger.error(f"Error running TrimAl: {str(e)}")
         return False
 
+class ScratchArea:
+    """Places per-gene intermediates in a fast local directory (e.g. /dev/shm), spilling
+    to the working directory once the size limit would be exceeded."""
+
+    SUBDIRS = ("proteins", "alignments", "trimmed_alignments")
+
+    def __init__(self, scratch_root, working_directory, limit_bytes):
+        self.scratch_root = scratch_root
+        self.working_directory = working_directory
+        self.limit_bytes = limit_bytes
+        self.used_bytes = 0
+        for subdir in self.SUBDIRS:
+            os.makedirs(os.path.join(working_directory, subdir), exist_ok=True)
+            if scratch_root:
+                os.makedirs(os.path.join(scratch_root, subdir), exist_ok=True)
+
+    def path(self, subdir, name, expected_bytes):
+        """Return where to write an intermediate, reserving its expected size on scratch."""
+        if self.scratch_root and self.used_bytes + expected_bytes <= self.limit_bytes:
+            self.used_bytes += expected_bytes
+            return os.path.join(self.scratch_root, subdir, name)
+        return os.path.join(self.working_directory, subdir, name)
+
+    def refresh(self):
+        """Replace the running estimate with the real size of what is on scratch."""
+        if not self.scratch_root:
+            return
+        total = 0
+        for subdir in self.SUBDIRS:
+            with os.scandir(os.path.join(self.scratch_root, subdir)) as entries:
+                total += sum(entry.stat().st_size for entry in entries if entry.is_file())
+        self.used_bytes = total
+
+    def finish(self, keep_intermediates):
+        """Copy intermediates back in a single pass if requested, then release scratch."""
+        if not self.scratch_root:
+            return
+        if keep_intermediates:
+            logger.info(f"Copying intermediates from {self.scratch_root} to {self.working_directory}")
+            for subdir in self.SUBDIRS:
+                source_dir = os.path.join(self.scratch_root, subdir)
+                target_dir = os.path.join(self.working_directory, subdir)
+                for name in os.listdir(source_dir):
+                    shutil.copyfile(os.path.join(source_dir, name), os.path.join(target_dir, name))
+        shutil.rmtree(self.scratch_root, ignore_errors=True)
+
 def main():
     parser = argparse.ArgumentParser(description="Perform phylogenomic reconstruction using BUSCOs")
 
@@ -78,6 +154,26 @@ def main():
     parser.add_argument("-o", "--output", type=str, help="Output directory to store results", required=True)
     parser.add_argument("-og", "--outgroup", type=str, help="Name of organism to root the tree", required=False)
     parser.add_argument("-v", "--verbose", action="store_true", help="Enable verbose output")
+    parser.add_argument("--scratch", type=str, help="Fast local directory for per-gene intermediates", required=False)
+    parser.add_argument("--scratch-limit-mb", type=int, default=4096,
+                        help="Size limit of the scratch directory before spilling to the output directory")
+    parser.add_argument("--keep-intermediates", action="store_true",
+                        help="Copy per-gene intermediates back from the scratch directory when done")
+    parser.add_argument("--tool", choices=["iqtree", "fasttree"], default="iqtree",
+                        help="Tree inference engine for the supermatrix")
+    parser.add_argument("--preview", action="store_true",
+                        help=f"Run FastTree alongside IQ-TREE and write a quick preview tree to {PREVIEW_TREE}")
+    parser.add_argument("--bootstrap", choices=["ultrafast", "none"], default="ultrafast",
+                        help="ultrafast: IQ-TREE -bb 1000 -alrt 1000; none: ML tree and best-fit model only, "
+                             "for bootstrap replicates run by the caller as separate jobs")
+    parser.add_argument("--mode", choices=["supermatrix", "genetrees"], default="supermatrix",
+                        help="supermatrix: concatenate and run IQ-TREE; genetrees: stop after trimming and "
+                             "leave one alignment per gene in gene_alignments/ for per-gene inference")
+    parser.add_argument("--genes", type=str, required=False,
+                        help="File with the BUSCO ids to use, one per line, instead of those single copy in all species; "
+                             "species missing a gene get gaps in the supermatrix")
+    parser.add_argument("--exclude-taxa", type=str, required=False,
+                        help="File with species to leave out, one per line")
 
     args = parser.parse_args()
 
@@ -85,8 +181,15 @@ def main():
         logger.setLevel(logging.DEBUG)
 
     # Check dependencies
-    dependencies = [muscle, trimal, iqtree]
+    dependencies = [muscle, trimal]
+    if args.tool == "iqtree" and args.mode == "supermatrix":
+        dependencies.append(iqtree)
     missing_deps = [dep for dep in dependencies if not check_dependency(dep)]
+    fasttree = find_fasttree() if args.tool == "fasttree" or args.preview else None
+    if args.tool == "fasttree" and fasttree is None:
+        missing_deps.append("FastTree")
+    if args.preview and args.tool == "iqtree" and fasttree is None:
+        logger.warning("FastTree not found; running without a preview tree")
     if missing_deps:
         logger.error(f"Missing dependencies: {', '.join(missing_deps)}")
         logger.error("Please install all required dependencies before running this script.")
@@ -116,7 +219,11 @@ def main():
         os.mkdir(working_directory)
         logger.info(f"Created output directory: {working_directory}")
 
-    busco_dirs = [item for item in os.listdir(".") if item.startswith("run_") and os.path.isdir(item)]
+    selected_genes = read_list(args.genes) if args.genes else None
+    selected_set = set(selected_genes) if selected_genes is not None else None
+    excluded_taxa = set(read_list(args.exclude_taxa)) if args.exclude_taxa else set()
+    busco_dirs = [item for item in os.listdir(".") if item.startswith("run_") and os.path.isdir(item)
+                  and item[len("run_"):] not in excluded_taxa]
     logger.info(f"Found {len(busco_dirs)} BUSCO runs:")
 
     for directory in busco_dirs:
@@ -140,7 +247,7 @@ def main():
             os.chdir(busco_seq_dir)
 
             for busco in os.listdir("."):
-                if busco.endswith(".faa"):
+                if busco.endswith(".faa") and (selected_set is None or busco[:-4] in selected_set):
                     busco_name = busco[:-4]
                     try:
                         record = SeqIO.read(busco, "fasta")
@@ -163,25 +270,39 @@ def main():
 
     logger.info("")
 
-    single_copy_buscos = [busco for busco in buscos if len(buscos[busco]) == len(all_species)]
+    if selected_genes is not None:
+        # Chosen by the caller from the occupancy index
+        single_copy_buscos = [busco for busco in selected_genes if busco in buscos]
+    else:
+        single_copy_buscos = [busco for busco in buscos if len(buscos[busco]) == len(all_species)]
 
     if len(single_copy_buscos) == 0:
         logger.error("No single-copy BUSCOs found in all species! Cannot create phylogeny.")
         sys.exit(0)
+    elif selected_genes is not None:
+        logger.info(f"Using {len(single_copy_buscos)} selected BUSCOs in {len(all_species)} species")
     else:
         logger.info(f"{len(single_copy_buscos)} BUSCOs are single copy in all {len(all_species)} species")
 
     os.chdir(working_directory)
-    os.makedirs("proteins", exist_ok=True)
-    os.makedirs("alignments", exist_ok=True)
-    os.makedirs("trimmed_alignments", exist_ok=True)
+    scratch_root = None
+    if args.scratch:
+        scratch_root = os.path.join(os.path.abspath(args.scratch), "intermediates")
+        logger.info(f"Staging per-gene intermediates in {scratch_root} (limit {args.scratch_limit_mb} MB)")
+    scratch = ScratchArea(scratch_root, working_directory, args.scratch_limit_mb * 1024 * 1024)
 
+    protein_files = {}
     for busco in single_copy_buscos:
         busco_seqs = buscos[busco]
-        SeqIO.write(busco_seqs, os.path.join(working_directory, "proteins", busco + ".faa"), "fasta")
+        expected = sum(len(record.seq) * 61 // 60 + len(record.id) + 4 for record in busco_seqs)
+        protein_files[busco] = scratch.path("proteins", busco + ".faa", expected)
+        SeqIO.write(busco_seqs, protein_files[busco], "fasta")
+    scratch.refresh()
 
-    mp_commands = [[os.path.join(working_directory, "proteins", busco + ".faa"),
-                    os.path.join(working_directory, "alignments", busco + ".aln")] for busco in single_copy_buscos]
+    # Alignments grow with gaps; reserve some headroom over the unaligned size
+    alignment_files = {busco: scratch.path("alignments", busco + ".aln", os.path.getsize(protein_files[busco]) * 3 // 2)
+                       for busco in single_copy_buscos}
+    mp_commands = [[protein_files[busco], alignment_files[busco]] for busco in single_copy_buscos]
 
     logger.info(f"Running MUSCLE alignments for {len(mp_commands)} sequences...")
     
@@ -195,8 +316,11 @@ def main():
     else:
         logger.info("All MUSCLE alignments completed successfully.")
 
-    mp_commands = [[os.path.join(working_directory, "alignments", busco + ".aln"),
-                    os.path.join(working_directory, "trimmed_alignments", busco + ".trimmed.aln")] for busco in single_copy_buscos]
+    scratch.refresh()
+    trimmed_files = {busco: scratch.path("trimmed_alignments", busco + ".trimmed.aln",
+                                         os.path.getsize(alignment_files[busco]) if os.path.exists(alignment_files[busco]) else 0)
+                     for busco in single_copy_buscos}
+    mp_commands = [[alignment_files[busco], trimmed_files[busco]] for busco in single_copy_buscos]
 
     logger.info(f"Running TrimAl on {len(mp_commands)} alignments...")
     
@@ -210,23 +334,50 @@ def main():
     else:
         logger.info("All TrimAl operations completed successfully.")
 
+    if args.mode == "genetrees":
+        # Gene trees are inferred by the caller as independent jobs
+        gene_directory = os.path.join(working_directory, "gene_alignments")
+        os.makedirs(gene_directory, exist_ok=True)
+        for busco, trimmed in trimmed_files.items():
+            if os.path.exists(trimmed) and os.path.getsize(trimmed) > 0:
+                shutil.copyfile(trimmed, os.path.join(gene_directory, busco + ".trimmed.aln"))
+        scratch.finish(args.keep_intermediates)
+        logger.info(f"Wrote {len(os.listdir(gene_directory))} gene alignments to {gene_directory}")
+        return
+
     logger.info("Creating supermatrix...")
-    os.chdir(os.path.join(working_directory, "trimmed_alignments"))
-    alignments = {species: "" for species in all_species}
+    alignments = {species: [] for species in all_species}
+    partitions = []
+    position = 0
 
-    for alignment in os.listdir("."):
+    for busco, alignment in trimmed_files.items():
+        if not os.path.exists(alignment):
+            continue
         try:
-            for record in SeqIO.parse(alignment, "fasta"):
-                if str(record.id) in alignments:
-                    alignments[str(record.id)] += str(record.seq)
+            records = {str(record.id): str(record.seq) for record in SeqIO.parse(alignment, "fasta")}
         except Exception as e:
             logger.error(f"Error processing alignment {alignment}: {str(e)}")
+            continue
+        length = max((len(seq) for seq in records.values()), default=0)
+        if length == 0:
+            continue
+        # Species missing from a gene get gaps, so every row keeps the same gene boundaries
+        for species in alignments:
+            alignments[species].append(records.get(species, "-" * length))
+        partitions.append((busco, position + 1, position + length))
+        position += length
 
     os.chdir(working_directory)
     with open("SUPERMATRIX.aln", "w") as fo:
         for species in alignments:
             fo.write(">" + species + "\n")
-            fo.write(alignments[species] + "\n")
+            fo.write("".join(alignments[species]) + "\n")
+    # Gene boundaries in the untrimmed supermatrix, in RAxML/IQ-TREE partition format
+    with open(SUPERMATRIX_PARTITIONS, "w") as fo:
+        for busco, start, end in partitions:
+            fo.write(f"LG, {busco} = {start}-{end}\n")
+
+    scratch.finish(args.keep_intermediates)
 
     logger.info("Running final trimming on supermatrix...")
     trimal_cmd = f"{trimal} -in SUPERMATRIX.aln -out SUPERMATRIX.trimmed.aln -automated1"
@@ -236,14 +387,37 @@ def main():
         logger.error(f"Error running TrimAl on supermatrix: {str(e)}")
         sys.exit(1)
 
+    # Tells the caller the trimmed supermatrix is complete and can be read (e.g. for an NJ preview)
+    open(SUPERMATRIX_READY, "w").close()
+
+    if args.tool == "fasttree":
+        logger.info("Running FastTree on trimmed supermatrix...")
+        if start_fasttree(fasttree, "SUPERMATRIX.trimmed.aln", FASTTREE_TREE, threads).wait() != 0:
+            logger.error("Error running FastTree")
+            sys.exit(1)
+        logger.info("FastTree completed successfully")
+        logger.info("Phylogenetic analysis completed successfully!")
+        return
+
+    preview = None
+    if args.preview and fasttree is not None:
+        # A quick approximate topology while the much slower IQ-TREE search runs
+        logger.info("Starting FastTree preview...")
+        preview = start_fasttree(fasttree, "SUPERMATRIX.trimmed.aln", PREVIEW_TREE, min(2, threads))
+
     logger.info("Running IQ-TREE on trimmed supermatrix...")
-    iqtree_cmd = f"{iqtree} -s SUPERMATRIX.trimmed.aln -bb 1000 -alrt 1000 -nt AUTO -ntmax {threads} -safe"
+    support_options = "-bb 1000 -alrt 1000 " if args.bootstrap == "ultrafast" else ""
+    iqtree_cmd = f"{iqtree} -s SUPERMATRIX.trimmed.aln {support_options}-nt AUTO -ntmax {threads} -safe"
     try:
         subprocess.run(iqtree_cmd, shell=True, check=True)
         logger.info("IQ-TREE completed successfully")
     except subprocess.CalledProcessError as e:
         logger.error(f"Error running IQ-TREE: {str(e)}")
         sys.exit(1)
+    finally:
+        if preview is not None and preview.poll() is None:
+            logger.info("IQ-TREE finished before the FastTree preview; stopping it")
+            os.killpg(preview.pid, signal.SIGTERM)
 
     logger.info("Phylogenetic analysis completed successfully!")
 
@@ -0,0 +1,43 @@
+package org.biopipelinerunner.models;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ToolUsageTest {
+
+    @Test
+    public void testSampleSumsProcesses() {
+        ToolUsage usage = new ToolUsage("iqtree");
+        usage.accumulate(100, 200, 1);
+        usage.accumulate(50, 300, 2);
+        usage.commitSample();
+
+        assertEquals(2, usage.getProcessCount());
+        assertEquals(150, usage.getLatestCpuPercent(), 1e-9);
+        assertEquals(500, usage.getLatestRssMegabytes(), 1e-9);
+        assertEquals(3, usage.getLatestIoMegabytesPerSecond(), 1e-9);
+        assertEquals(0, usage.getIdleSamples());
+
+        usage.commitSample();
+        assertEquals(0, usage.getProcessCount());
+        assertEquals(0, usage.getLatestCpuPercent(), 1e-9);
+        assertEquals(1, usage.getIdleSamples());
+    }
+
+    @Test
+    public void testHistoryKeepsTheLatestSamplesOldestFirst() {
+        ToolUsage usage = new ToolUsage("mafft");
+        int samples = ToolUsage.HISTORY_SIZE + 5;
+        for (int i = 0; i < samples; i++) {
+            usage.accumulate(i, 0, 0);
+            usage.commitSample();
+        }
+
+        double[] history = new double[ToolUsage.HISTORY_SIZE];
+        assertEquals(ToolUsage.HISTORY_SIZE, usage.copyCpuHistory(history));
+        assertEquals(ToolUsage.HISTORY_SIZE, usage.getSampleCount());
+        assertEquals(5, history[0], 1e-9);
+        assertEquals(samples - 1, history[ToolUsage.HISTORY_SIZE - 1], 1e-9);
+    }
+}
@@ -0,0 +1,103 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.PhyloTree;
+import org.biopipelinerunner.models.PhylogenyConfig;
+import org.biopipelinerunner.utils.NewickParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BootstrapServiceTest {
+    private static final List<String> REPLICATES = Arrays.asList(
+            "((A,B),(C,D),E);", "((A,B),(C,E),D);", "((B,A),C,(D,E));", "(A,(B,C),(D,E));");
+
+    @Test
+    public void testMergesBatchesAndMapsSupport(@TempDir Path tempDir) throws Exception {
+        write(tempDir.resolve(BootstrapService.ALIGNMENT + ".iqtree"), "Best-fit model according to BIC: LG+G4\n");
+        write(tempDir.resolve(BootstrapService.ALIGNMENT + ".treefile"), "((A:1,B:1):1,(C:1,D:1):1,E:1);\n");
+        List<List<String>> submitted = Collections.synchronizedList(new ArrayList<>());
+
+        Path result = new BootstrapService(config(4), job -> {
+            List<String> arguments = job.getCommand().getArguments();
+            submitted.add(arguments);
+            // Stands in for IQ-TREE: each batch of one replicate writes its tree under -pre
+            int batch = Integer.parseInt(job.getName().substring("batch_".length()));
+            write(Paths.get(arguments.get(arguments.indexOf("-pre") + 1) + ".boottrees"), REPLICATES.get(batch) + "\n");
+            return "";
+        }, 1).run(tempDir);
+
+        assertEquals(tempDir.resolve(BootstrapService.SUPPORT_TREE), result);
+        assertEquals(4, submitted.size());
+        for (List<String> arguments : submitted) {
+            assertEquals("LG+G4", arguments.get(arguments.indexOf("-m") + 1));
+            assertEquals("1", arguments.get(arguments.indexOf("-bo") + 1));
+            // Cluster jobs keep to one thread
+            assertEquals("1", arguments.get(arguments.indexOf("-nt") + 1));
+        }
+        Set<String> seeds = new HashSet<>();
+        for (List<String> arguments : submitted) {
+            seeds.add(arguments.get(arguments.indexOf("-seed") + 1));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("7", "8", "9", "10")), seeds);
+
+        assertEquals(4, NewickParser.readTrees(tempDir.resolve(BootstrapService.REPLICATE_TREES)).size());
+        PhyloTree consensus = NewickParser.readTree(tempDir.resolve(BootstrapService.CONSENSUS_TREE));
+        assertEquals(5, consensus.getLeafCount());
+        PhyloTree support = NewickParser.readTree(result);
+        assertEquals(75, support.getSupport(support.getCommonAncestor(support.findLeaf("A"), support.findLeaf("B"))), 1e-9);
+        assertEquals(25, support.getSupport(support.getCommonAncestor(support.findLeaf("C"), support.findLeaf("D"))), 1e-9);
+    }
+
+    @Test
+    public void testFailedBatchesAreSkipped(@TempDir Path tempDir) throws Exception {
+        Path result = new BootstrapService(config(4), job -> {
+            if (job.getName().equals("batch_0003")) {
+                throw new IOException("node lost");
+            }
+            List<String> arguments = job.getCommand().getArguments();
+            write(Paths.get(arguments.get(arguments.indexOf("-pre") + 1) + ".boottrees"), "((A,B),(C,D),E);\n");
+            return "";
+        }, 1).run(tempDir);
+
+        // Without an ML tree the consensus is the result
+        assertEquals(tempDir.resolve(BootstrapService.CONSENSUS_TREE), result);
+        assertEquals(3, NewickParser.readTrees(tempDir.resolve(BootstrapService.REPLICATE_TREES)).size());
+        PhyloTree consensus = NewickParser.readTree(result);
+        assertTrue(consensus.reroot("E"));
+        assertEquals(100, consensus.getSupport(consensus.getCommonAncestor(consensus.findLeaf("A"), consensus.findLeaf("B"))), 1e-9);
+    }
+
+    @Test
+    public void testFailsWhenNoBatchSucceeds(@TempDir Path tempDir) {
+        BootstrapService service = new BootstrapService(config(2), job -> {
+            throw new IOException("iqtree not found");
+        }, 2);
+
+        IOException e = assertThrows(IOException.class, () -> service.run(tempDir));
+        assertTrue(e.getMessage().contains("bootstrap jobs failed"), e.getMessage());
+    }
+
+    private static PhylogenyConfig config(int replicates) {
+        PhylogenyConfig config = new PhylogenyConfig();
+        config.setBootstrapReplicates(replicates);
+        config.setBootstrapSeed(7);
+        return config;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,80 @@
+package org.biopipelinerunner.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InputStagingServiceTest {
+
+    @Test
+    public void testCompressedGenomesAreStagedAndRemoved(@TempDir Path tempDir) throws Exception {
+        Path input = Files.createDirectories(tempDir.resolve("input"));
+        Path plain = write(input.resolve("a.fna"), ">a\nACGTACGT\n");
+        Path first = gzip(input.resolve("b.fna.gz"), ">b\nGGGGCCCC\n");
+        Path second = gzip(input.resolve("c.fna.gz"), ">c\nATATATAT\n");
+        Path copy = gzip(input.resolve("d.fna.gz"), ">a\nACGTACGT\n");
+        Path broken = Files.write(input.resolve("e.fna.gz"), new byte[] {0x1f, (byte) 0x8b, 8, 0, 0, 0});
+
+        PreflightService preflight = new PreflightService();
+        List<Path> genomes = preflight.run(input, tempDir, 2);
+        assertEquals(Arrays.asList(plain, first, second, copy, broken), genomes);
+
+        Path scratchRoot = tempDir.resolve("scratch");
+        Path fallback = tempDir.resolve("run").resolve(InputStagingService.FALLBACK_DIRECTORY);
+        try (InputStagingService staging = new InputStagingService(scratchRoot.toString(), 1 << 20, fallback, 2,
+                preflight)) {
+            List<InputStagingService.StagedGenome> staged = staging.stage(genomes);
+            assertEquals(5, staged.size());
+
+            assertFalse(staged.get(0).isCompressed());
+            assertEquals(plain, staged.get(0).await());
+            staged.get(0).release();
+            assertTrue(Files.exists(plain));
+
+            Path decompressed = staged.get(1).await();
+            assertEquals("b.fna", staged.get(1).getName());
+            assertTrue(decompressed.startsWith(scratchRoot));
+            assertEquals(">b\nGGGGCCCC\n", new String(Files.readAllBytes(decompressed), StandardCharsets.US_ASCII));
+            staged.get(1).release();
+            assertFalse(Files.exists(decompressed));
+
+            assertTrue(Files.exists(staged.get(2).await()));
+            staged.get(2).release();
+
+            IOException duplicate = assertThrows(IOException.class, () -> staged.get(3).await());
+            assertTrue(duplicate.getMessage().contains("duplicate of a.fna"), duplicate.getMessage());
+            staged.get(3).release();
+
+            assertThrows(IOException.class, () -> staged.get(4).await());
+            staged.get(4).release();
+        }
+        // The header, the plain genome and the three genomes that could be decompressed
+        assertEquals(5, Files.readAllLines(tempDir.resolve(PreflightService.REPORT)).size());
+        try (Stream<Path> leftovers = Files.list(scratchRoot)) {
+            assertEquals(0, leftovers.count());
+        }
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private static Path gzip(Path file, String content) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        return file;
+    }
+}
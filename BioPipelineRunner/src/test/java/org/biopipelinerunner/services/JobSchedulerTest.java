@@ -0,0 +1,55 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.utils.CommandLine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EnabledOnOs({OS.LINUX, OS.MAC})
+public class JobSchedulerTest {
+
+    @Test
+    public void testFailingJobDoesNotStopOthers() throws InterruptedException {
+        JobScheduler scheduler = new JobScheduler(2);
+        List<JobScheduler.JobResult> results = scheduler.runAll(Arrays.asList(
+            new JobScheduler.Job("ok1", new CommandLine("echo", "one"), null, 1, 1),
+            new JobScheduler.Job("broken", new CommandLine("sh", "-c", "exit 3"), null, 1, 5),
+            new JobScheduler.Job("ok2", new CommandLine("echo", "two"), null, 1, 2)
+        ));
+
+        assertEquals(3, results.size());
+        for (JobScheduler.JobResult result : results) {
+            assertEquals(!result.getJob().getName().equals("broken"), result.isSucceeded(), result.getJob().getName());
+        }
+    }
+
+    @Test
+    public void testJobsRunConcurrently() throws InterruptedException {
+        List<JobScheduler.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            jobs.add(new JobScheduler.Job("sleep" + i, new CommandLine("sleep", "0.5"), null, 1, i));
+        }
+        long start = System.nanoTime();
+        List<JobScheduler.JobResult> results = new JobScheduler(4).runAll(jobs);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(4, results.size());
+        assertTrue(results.stream().allMatch(JobScheduler.JobResult::isSucceeded));
+        assertTrue(seconds < 1.5, "Took " + seconds + " s");
+    }
+
+    @Test
+    public void testCpusAreSplitOverConcurrentJobs() {
+        assertEquals(4, JobScheduler.threadsPerJob(16, 4));
+        assertEquals(5, JobScheduler.threadsPerJob(16, 3));
+        assertEquals(1, JobScheduler.threadsPerJob(16, 100));
+        assertEquals(16, JobScheduler.threadsPerJob(16, 1));
+        assertEquals(1, JobScheduler.threadsPerJob(1, 0));
+    }
+}
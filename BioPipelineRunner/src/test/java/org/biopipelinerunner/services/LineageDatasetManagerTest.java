@@ -0,0 +1,148 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.LineageDataset;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineageDatasetManagerTest {
+
+    @Test
+    public void testDownloadsVerifiesAndReusesDatasets(@TempDir Path tempDir) throws Exception {
+        Path server = tempDir.resolve("server");
+        Path cache = tempDir.resolve("cache");
+        String bacteria10 = publish(server, "bacteria_odb10", "2020-03-06", "creation=2020-03-06");
+        String bacteria12 = publish(server, "bacteria_odb12", "2024-11-14", "creation=2024-11-14");
+        writeListing(server, "bacteria_odb10\t2020-03-06\t" + bacteria10 + "\tbacteria\tlineages",
+                "bacteria_odb12\t2024-11-14\t" + bacteria12 + "\tbacteria\tlineages",
+                "eukaryota_odb10\t2024-01-08\t" + bacteria10 + "\teukaryota\tlineages",
+                "list_of_reference_markers.bacteria_odb10\t2021-02-19\t" + bacteria10 + "\tplacement_files");
+
+        LineageDatasetManager manager = new LineageDatasetManager(cache, server.toUri());
+        assertEquals(Arrays.asList("bacteria", "eukaryota"), manager.getAvailableLineages());
+
+        // A bare lineage resolves to its latest OrthoDB release
+        Path installed = manager.ensureLineage("bacteria");
+        assertEquals(cache.resolve("lineages").resolve("bacteria_odb12"), installed);
+        assertEquals("creation=2024-11-14", new String(Files.readAllBytes(installed.resolve("dataset.cfg")),
+                StandardCharsets.UTF_8));
+        assertTrue(Files.exists(installed.resolve("hmms").resolve("1at2.hmm")));
+        assertEquals(Arrays.asList("bacteria_odb12"), manager.getInstalledLineages());
+
+        // Installed datasets are used without the server, and without checking it again
+        Files.delete(server.resolve("lineages").resolve("bacteria_odb12.2024-11-14.tar.gz"));
+        assertEquals(installed, manager.ensureLineage("bacteria_odb12"));
+
+        // A corrupt archive is rejected and leaves nothing behind
+        Files.write(server.resolve("lineages").resolve("eukaryota_odb10.2024-01-08.tar.gz"), new byte[] {1, 2, 3});
+        IOException error = assertThrows(IOException.class, () -> manager.ensureLineage("eukaryota"));
+        assertTrue(error.getMessage().contains("Checksum mismatch"), error.getMessage());
+        assertEquals(Arrays.asList("bacteria_odb12"), manager.getInstalledLineages());
+
+        // The listing is cached until its time to live expires
+        writeListing(server, "bacteria_odb10\t2020-03-06\t" + bacteria10 + "\tbacteria\tlineages");
+        assertEquals(4, manager.getDatasets().size());
+        Path listing = cache.resolve(LineageDatasetManager.FILE_VERSIONS);
+        Files.setLastModifiedTime(listing, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofDays(2).toMillis()));
+        List<LineageDataset> refreshed = manager.getDatasets();
+        assertEquals(1, refreshed.size());
+        assertEquals("bacteria_odb10", refreshed.get(0).getName());
+
+        // Offline, the cached listing and datasets keep working however old they are
+        LineageDatasetManager offline = new LineageDatasetManager(cache, tempDir.resolve("unreachable").toUri());
+        offline.setListingTtl(Duration.ZERO);
+        assertEquals(1, offline.getDatasets().size());
+        assertEquals(installed, offline.ensureLineage("bacteria_odb12"));
+        assertThrows(IOException.class, () -> offline.ensureLineage("archaea"));
+    }
+
+    @Test
+    public void testManagersSharingACacheInstallConcurrently(@TempDir Path tempDir) throws Exception {
+        Path server = tempDir.resolve("server");
+        Path cache = tempDir.resolve("cache");
+        String checksum = publish(server, "fungi_odb10", "2024-01-08", "creation=2024-01-08");
+        writeListing(server, "fungi_odb10\t2024-01-08\t" + checksum + "\tfungi\tlineages");
+
+        // Separate managers, as separate services create them, in one JVM
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Path>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                LineageDatasetManager manager = new LineageDatasetManager(cache, server.toUri());
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return manager.ensureLineage("fungi");
+                }));
+            }
+            start.countDown();
+            for (Future<Path> result : results) {
+                assertEquals(cache.resolve("lineages").resolve("fungi_odb10"), result.get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void writeListing(Path server, String... lines) throws IOException {
+        Files.createDirectories(server);
+        Files.write(server.resolve(LineageDatasetManager.FILE_VERSIONS), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a dataset archive the way the BUSCO server lays it out
+     *
+     * @return Hex MD5 of the archive
+     */
+    private static String publish(Path server, String name, String version, String config) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            writeEntry(out, name + "/", '5', new byte[0]);
+            writeEntry(out, name + "/dataset.cfg", '0', config.getBytes(StandardCharsets.UTF_8));
+            writeEntry(out, name + "/hmms/1at2.hmm", '0', new byte[700]);
+            out.write(new byte[1024]);
+        }
+        Path archive = server.resolve("lineages").resolve(name + "." + version + ".tar.gz");
+        Files.createDirectories(archive.getParent());
+        Files.write(archive, bytes.toByteArray());
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(bytes.toByteArray())) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private static void writeEntry(OutputStream out, String name, char type, byte[] data) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        byte[] size = String.format("%011o", data.length).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        System.arraycopy("ustar".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 5);
+        out.write(header);
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+}
@@ -0,0 +1,61 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.ToolUsage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResourceMonitorServiceTest {
+
+    @Test
+    public void testParseStat() {
+        // The command name may hold spaces and parentheses
+        byte[] stat = ("4242 (my (tool) x) S 1 4242 4242 0 -1 4194560 1000 0 0 0 "
+                + "250 50 0 0 20 0 4 0 12345 987654321 2048 18446744073709551615\n").getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(300, ResourceMonitorService.parseStatCpuTicks(stat, stat.length));
+        assertEquals(2048, ResourceMonitorService.parseStatRssPages(stat, stat.length));
+    }
+
+    @Test
+    public void testParseIo() {
+        byte[] io = ("rchar: 1000\nwchar: 234\nsyscr: 10\nsyscw: 5\nread_bytes: 4096\nwrite_bytes: 0\n")
+                .getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(1234, ResourceMonitorService.parseIoBytes(io, io.length));
+        // Only part of the file fitted in the buffer
+        assertEquals(1000, ResourceMonitorService.parseIoBytes(io, 11));
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void testSamplesChildProcesses() throws Exception {
+        Process sleep = new ProcessBuilder("sleep", "30").start();
+        ResourceMonitorService monitor = new ResourceMonitorService();
+        CountDownLatch sampled = new CountDownLatch(2);
+        monitor.setListener(tools -> {
+            for (ToolUsage usage : tools) {
+                if (usage.getToolName().equals("sleep") && usage.getProcessCount() == 1) {
+                    sampled.countDown();
+                }
+            }
+        });
+        try {
+            monitor.start();
+            assertTrue(sampled.await(10, TimeUnit.SECONDS));
+            ToolUsage usage = monitor.getTools().stream()
+                    .filter(tool -> tool.getToolName().equals("sleep"))
+                    .findFirst().orElseThrow(AssertionError::new);
+            assertTrue(usage.getLatestRssMegabytes() > 0);
+        } finally {
+            monitor.stop();
+            sleep.destroy();
+        }
+    }
+}
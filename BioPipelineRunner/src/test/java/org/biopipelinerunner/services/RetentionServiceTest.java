@@ -0,0 +1,108 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.RetentionPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetentionServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 30, 12, 0);
+
+    @TempDir
+    Path baseDirectory;
+
+    @Test
+    public void testKeepsLastRunsPerProject() throws IOException {
+        Path oldest = createRun("primates_20240601_090000");
+        Path middle = createRun("primates_20240615_090000");
+        Path newest = createRun("primates_20240629_090000");
+        Path otherProject = createRun("fungi_20240101_090000");
+        Path unrelated = Files.createDirectories(baseDirectory.resolve("notes"));
+
+        RetentionService service = new RetentionService(baseDirectory, new RetentionPolicy(2, 0));
+        assertTrue(service.apply(NOW) > 0);
+
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(middle));
+        assertTrue(Files.exists(newest));
+        assertTrue(Files.exists(otherProject));
+        assertTrue(Files.exists(unrelated));
+    }
+
+    @Test
+    public void testDropsIntermediatesButKeepsFinalTrees() throws IOException {
+        Path old = createRun("primates_20240601_090000");
+        Path recent = createRun("primates_20240629_090000");
+
+        RetentionService service = new RetentionService(baseDirectory, new RetentionPolicy(0, 7));
+        service.apply(NOW);
+
+        assertFalse(Files.exists(old.resolve("busco_output")));
+        assertFalse(Files.exists(old.resolve("output/alignments")));
+        assertTrue(Files.exists(old.resolve("output/SUPERMATRIX.trimmed.aln.contree")));
+        assertTrue(Files.exists(old.resolve("primates_results.zip")));
+        assertTrue(Files.exists(recent.resolve("busco_output/run/full_table.tsv")));
+    }
+
+    @Test
+    public void testActiveRunsAndSymlinkTargetsAreUntouched() throws IOException {
+        Path active = createRun("primates_20240101_090000");
+        Path outside = Files.createDirectories(baseDirectory.resolve("shared-data"));
+        Files.write(outside.resolve("genome.fna"), ">chr1\nACGT\n".getBytes(StandardCharsets.US_ASCII));
+        Path old = createRun("primates_20240102_090000");
+        try {
+            Files.createSymbolicLink(old.resolve("busco_output/genomes"), outside);
+        } catch (UnsupportedOperationException | IOException e) {
+            // Symlinks may be unavailable (e.g. Windows without privileges); the rest still applies
+        }
+
+        RetentionService service = new RetentionService(baseDirectory, new RetentionPolicy(0, 7));
+        service.markActive(active);
+        service.apply(NOW);
+
+        assertTrue(Files.exists(active.resolve("busco_output")));
+        assertFalse(Files.exists(old.resolve("busco_output")));
+        assertTrue(Files.exists(outside.resolve("genome.fna")));
+    }
+
+    @Test
+    public void testDefaultPolicyDeletesNothing() throws IOException {
+        Path oldest = createRun("primates_20240101_090000");
+        for (int day = 10; day < 20; day++) {
+            createRun("primates_202406" + day + "_090000");
+        }
+
+        RetentionService service = new RetentionService(baseDirectory, new RetentionPolicy());
+        service.apply(NOW);
+
+        assertTrue(Files.exists(oldest.resolve("output/SUPERMATRIX.trimmed.aln.contree")));
+        assertTrue(Files.exists(oldest.resolve("busco_output/run/full_table.tsv")));
+        assertTrue(Files.exists(oldest.resolve("output/alignments/gene1.aln")));
+        try (Stream<Path> runs = Files.list(baseDirectory)) {
+            assertEquals(11, runs.count());
+        }
+    }
+
+    private Path createRun(String name) throws IOException {
+        Path run = Files.createDirectories(baseDirectory.resolve(name));
+        write(run.resolve("busco_output/run/full_table.tsv"), "# BUSCO\n");
+        write(run.resolve("output/alignments/gene1.aln"), ">a\nMKV\n");
+        write(run.resolve("output/SUPERMATRIX.trimmed.aln.contree"), "(A,B,C);\n");
+        write(run.resolve("primates_results.zip"), "PK");
+        return run;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,59 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.ResourceLimits;
+import org.biopipelinerunner.utils.CommandLine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+public class SlurmJobBackendTest {
+
+    @Test
+    public void testSubmitsJobWithItsResources(@TempDir Path tempDir) throws Exception {
+        ProcessExecutionService processExecutionService = mock(ProcessExecutionService.class);
+        when(processExecutionService.execute(any(), any(), anyInt())).thenReturn("4242");
+        Path logDirectory = tempDir.resolve("logs");
+        SlurmJobBackend backend = new SlurmJobBackend(logDirectory, "short", processExecutionService);
+        CommandLine iqtree = new CommandLine("iqtree").add("-s", Paths.get("/data/my run/SUPERMATRIX.aln")).add("-nt", 4);
+        ResourceLimits limits = new ResourceLimits(2L * 1024 * 1024 * 1024, 0, 0);
+
+        assertEquals("4242", backend.run(new JobScheduler.Job("batch_0001", iqtree, limits, 4, 1)));
+
+        ArgumentCaptor<CommandLine> submitted = ArgumentCaptor.forClass(CommandLine.class);
+        // Slurm enforces the limits, so sbatch itself runs without them
+        verify(processExecutionService).execute(submitted.capture(), isNull(), eq(1));
+        assertEquals(Arrays.asList("sbatch", "--wait", "--parsable",
+                "--job-name=batch_0001",
+                "--cpus-per-task=4",
+                "--mem=2048M",
+                "--partition=short",
+                "--output=" + CommandLine.toolPath(logDirectory.resolve("batch_0001.%j.log")),
+                "--wrap=iqtree -s '/data/my run/SUPERMATRIX.aln' -nt 4"), submitted.getValue().getArguments());
+        assertTrue(Files.isDirectory(logDirectory));
+    }
+
+    @Test
+    public void testOmitsUnsetMemoryAndPartition(@TempDir Path tempDir) throws Exception {
+        ProcessExecutionService processExecutionService = mock(ProcessExecutionService.class);
+        SlurmJobBackend backend = new SlurmJobBackend(tempDir, null, processExecutionService);
+
+        backend.run(new JobScheduler.Job("job", new CommandLine("true"), null, 0, 1));
+
+        ArgumentCaptor<CommandLine> submitted = ArgumentCaptor.forClass(CommandLine.class);
+        verify(processExecutionService).execute(submitted.capture(), isNull(), eq(1));
+        assertEquals(Arrays.asList("sbatch", "--wait", "--parsable", "--job-name=job", "--cpus-per-task=1",
+                "--output=" + CommandLine.toolPath(tempDir.resolve("job.%j.log")), "--wrap=true"),
+                submitted.getValue().getArguments());
+    }
+}
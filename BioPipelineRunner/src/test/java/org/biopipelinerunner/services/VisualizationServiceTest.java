@@ -0,0 +1,58 @@
+package org.biopipelinerunner.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VisualizationServiceTest {
+
+    @Test
+    public void testRewrittenFileIsLoadedAgain(@TempDir Path tempDir) throws IOException {
+        File image = Files.write(tempDir.resolve("tree.png"), new byte[] {1}).toFile();
+        assertTrue(image.setLastModified(1_000_000_000L));
+        VisualizationService.ThumbnailCache<String> cache = new VisualizationService.ThumbnailCache<>(4);
+        AtomicInteger loads = new AtomicInteger();
+
+        String first = cache.get(image, 300, 0, value -> true, () -> "v" + loads.incrementAndGet());
+        assertEquals("v1", cache.get(image, 300, 0, value -> true, () -> "v" + loads.incrementAndGet()));
+        assertEquals("v1", first);
+        // Another size of the same file is a separate entry
+        assertEquals("v2", cache.get(image, 600, 0, value -> true, () -> "v" + loads.incrementAndGet()));
+
+        assertTrue(image.setLastModified(2_000_000_000L));
+        assertEquals("v3", cache.get(image, 300, 0, value -> true, () -> "v" + loads.incrementAndGet()));
+        // A value that can't be reused (e.g. failed to decode) is replaced
+        assertEquals("v4", cache.get(image, 300, 0, value -> false, () -> "v" + loads.incrementAndGet()));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted(@TempDir Path tempDir) throws IOException {
+        VisualizationService.ThumbnailCache<String> cache = new VisualizationService.ThumbnailCache<>(2);
+        File a = Files.write(tempDir.resolve("a.png"), new byte[] {1}).toFile();
+        File b = Files.write(tempDir.resolve("b.png"), new byte[] {1}).toFile();
+        File c = Files.write(tempDir.resolve("c.png"), new byte[] {1}).toFile();
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(a, 100, 0, value -> true, () -> "a" + loads.incrementAndGet());
+        cache.get(b, 100, 0, value -> true, () -> "b" + loads.incrementAndGet());
+        // Touch a, so b is now the least recently used
+        assertEquals("a1", cache.get(a, 100, 0, value -> true, () -> "a" + loads.incrementAndGet()));
+        cache.get(c, 100, 0, value -> true, () -> "c" + loads.incrementAndGet());
+        assertEquals(2, cache.size());
+
+        assertEquals("a1", cache.get(a, 100, 0, value -> true, () -> "a" + loads.incrementAndGet()));
+        assertEquals("b4", cache.get(b, 100, 0, value -> true, () -> "b" + loads.incrementAndGet()));
+        assertEquals(2, cache.size());
+
+        cache.remove(b, 100, 0);
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,109 @@
+package org.biopipelinerunner.services;
+
+import org.biopipelinerunner.models.BuscoConfig;
+import org.biopipelinerunner.models.WatchConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class WatchFolderServiceTest {
+
+    @Test
+    public void testFilesSettleOnceUnchanged(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("a.fna");
+        Files.write(file, ">a\nACGT\n".getBytes(StandardCharsets.US_ASCII));
+        Map<Path, WatchFolderService.FileState> candidates = new LinkedHashMap<>();
+        candidates.put(file, new WatchFolderService.FileState());
+        candidates.put(tempDir.resolve("gone.fna"), new WatchFolderService.FileState());
+        List<Path> settled = new ArrayList<>();
+
+        // First seen: not settled yet, and the deleted file is dropped
+        WatchFolderService.settle(candidates, 0, settled::add);
+        assertTrue(settled.isEmpty());
+        assertEquals(Collections.singleton(file), candidates.keySet());
+
+        // Still being written
+        Files.write(file, ">a\nACGTACGT\n".getBytes(StandardCharsets.US_ASCII));
+        WatchFolderService.settle(candidates, 0, settled::add);
+        assertTrue(settled.isEmpty());
+
+        WatchFolderService.settle(candidates, TimeUnit.HOURS.toNanos(1), settled::add);
+        assertTrue(settled.isEmpty());
+        WatchFolderService.settle(candidates, 0, settled::add);
+        assertEquals(Collections.singletonList(file), settled);
+        assertTrue(candidates.isEmpty());
+    }
+
+    @Test
+    public void testNextNightlyRebuild() {
+        LocalDateTime evening = LocalDateTime.of(2024, 6, 1, 22, 30);
+        assertEquals(LocalDateTime.of(2024, 6, 2, 2, 0), WatchFolderService.nextNightlyRebuild(evening, 2));
+        assertEquals(LocalDateTime.of(2024, 6, 1, 23, 0), WatchFolderService.nextNightlyRebuild(evening, 23));
+        assertNull(WatchFolderService.nextNightlyRebuild(evening, -1));
+    }
+
+    @Test
+    public void testNewGenomesAreAnalysedAndTreeRebuiltInBatches(@TempDir Path tempDir) throws Exception {
+        Path input = Files.createDirectories(tempDir.resolve("input"));
+        Path project = tempDir.resolve("project");
+        Path buscoOutput = project.resolve("busco_output");
+        Files.createDirectories(buscoOutput.resolve("old.fna"));
+        write(input.resolve("old.fna"), ">old\nACGTACGT\n");
+
+        BuscoService buscoService = mock(BuscoService.class);
+        List<String> analysed = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            List<InputStagingService.StagedGenome> genomes = invocation.getArgument(1);
+            for (InputStagingService.StagedGenome genome : genomes) {
+                genome.await();
+                analysed.add(genome.getName());
+                Files.createDirectories(buscoOutput.resolve(genome.getName()));
+                genome.release();
+            }
+            return null;
+        }).when(buscoService).runBusco(any(BuscoConfig.class), anyList());
+
+        CountDownLatch rebuilt = new CountDownLatch(1);
+        List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        BuscoConfig buscoConfig = new BuscoConfig(null, input.toString(), buscoOutput.toString(), 1, null);
+        WatchFolderService watchFolderService = new WatchFolderService(buscoService, new PreflightService());
+        watchFolderService.start(input, project, buscoConfig, new WatchConfig(1, 2, -1), newGenomes -> {
+            batches.add(newGenomes);
+            rebuilt.countDown();
+        });
+        try {
+            write(input.resolve("a.fna"), ">a\nACGTACGT\n");
+            write(input.resolve("b.fna"), ">b\nGGGGCCCC\n");
+            write(input.resolve(".partial"), ">c\nGGGGCCCC\n");
+            assertTrue(rebuilt.await(30, TimeUnit.SECONDS));
+        } finally {
+            watchFolderService.stop();
+        }
+        assertFalse(watchFolderService.isRunning());
+        Collections.sort(analysed);
+        assertEquals(Arrays.asList("a.fna", "b.fna"), analysed);
+        assertEquals(Collections.singletonList(2), batches);
+        assertTrue(Files.exists(project.resolve(PreflightService.REPORT)));
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,96 @@
+package org.biopipelinerunner.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AffinityPlannerTest {
+
+    private CpuTopology topology;
+
+    /**
+     * Two sockets, each with two L3 domains of four SMT-2 cores (32 logical CPUs).
+     * CPU n and n + 16 are siblings, like a typical Linux numbering.
+     */
+    @BeforeEach
+    public void setUp() {
+        int count = 32;
+        int[] cpus = new int[count];
+        int[] packages = new int[count];
+        int[] cores = new int[count];
+        int[] cacheDomains = new int[count];
+        int[] nodes = new int[count];
+        for (int cpu = 0; cpu < count; cpu++) {
+            int physical = cpu % 16;
+            cpus[cpu] = cpu;
+            packages[cpu] = physical / 8;
+            cores[cpu] = physical % 8;
+            cacheDomains[cpu] = physical / 4;
+            nodes[cpu] = physical / 8;
+        }
+        topology = new CpuTopology(cpus, packages, cores, cacheDomains, nodes);
+    }
+
+    @Test
+    public void testSmallJobStaysInOneCacheDomainOnWholeCores() {
+        AffinityPlanner planner = new AffinityPlanner(topology);
+        AffinityPlanner.CpuLease lease = planner.acquire(4);
+
+        assertNotNull(lease);
+        Set<Integer> domains = new HashSet<>();
+        Set<Integer> physicalCores = new HashSet<>();
+        for (int cpu : lease.getCpus()) {
+            domains.add(topology.getCacheDomain(cpu));
+            physicalCores.add(cpu % 16);
+        }
+        assertEquals(1, domains.size());
+        assertEquals(2, physicalCores.size());
+        assertEquals(0, lease.getNode());
+    }
+
+    @Test
+    public void testConcurrentLeasesAreDisjoint() {
+        AffinityPlanner planner = new AffinityPlanner(topology);
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 8; i++) {
+            AffinityPlanner.CpuLease lease = planner.acquire(4);
+            assertNotNull(lease);
+            for (int cpu : lease.getCpus()) {
+                assertTrue(used.add(cpu), "CPU " + cpu + " handed out twice");
+            }
+        }
+        assertNull(planner.acquire(1));
+    }
+
+    @Test
+    public void testLargeJobStaysOnOneNode() {
+        AffinityPlanner planner = new AffinityPlanner(topology);
+        AffinityPlanner.CpuLease lease = planner.acquire(12);
+
+        assertNotNull(lease);
+        assertTrue(lease.getNode() >= 0);
+    }
+
+    @Test
+    public void testReleaseReturnsCpus() {
+        AffinityPlanner planner = new AffinityPlanner(topology);
+        AffinityPlanner.CpuLease lease = planner.acquire(32);
+        assertNotNull(lease);
+        assertEquals(-1, lease.getNode());
+        assertNull(planner.acquire(1));
+
+        planner.release(lease);
+        assertNotNull(planner.acquire(32));
+    }
+
+    @Test
+    public void testParseAndFormatCpuList() {
+        int[] cpus = CpuTopology.parseCpuList("0-3,8,10-11\n");
+        assertArrayEquals(new int[] {0, 1, 2, 3, 8, 10, 11}, cpus);
+        assertEquals("0,1,2,3,8,10,11", CpuTopology.formatCpuList(cpus));
+    }
+}
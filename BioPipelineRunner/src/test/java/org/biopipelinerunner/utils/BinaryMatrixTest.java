@@ -0,0 +1,86 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.GenePartition;
+import org.biopipelinerunner.models.PackedAlignment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryMatrixTest {
+
+    @Test
+    public void testFastaRoundTripWithPartitionsAndBitmaps(@TempDir Path tempDir) throws IOException {
+        Path fasta = tempDir.resolve("SUPERMATRIX.aln");
+        Files.write(fasta, Arrays.asList(">sp1 first", "MKVL-AW", "X", ">sp2", "mkvlqaw?", ">sp3", "--------"),
+                StandardCharsets.UTF_8);
+        Path partitions = tempDir.resolve("SUPERMATRIX.partitions");
+        Files.write(partitions, Arrays.asList("LG, 10at2759 = 1-3", "", "LG, 20at2759 = 4-8"), StandardCharsets.UTF_8);
+        Path binary = tempDir.resolve("SUPERMATRIX.aln" + BinaryMatrix.EXTENSION);
+        MatrixConverter.toBinary(fasta, partitions, binary);
+
+        assertTrue(BinaryMatrix.isBinaryMatrix(binary));
+        assertFalse(BinaryMatrix.isBinaryMatrix(fasta));
+        BinaryMatrix matrix = BinaryMatrix.open(binary);
+        assertEquals(Arrays.asList("sp1", "sp2", "sp3"), matrix.getTaxa());
+        assertEquals(8, matrix.getSiteCount());
+        assertFalse(matrix.isNucleotide());
+        List<GenePartition> genes = matrix.getPartitions();
+        assertEquals(2, genes.size());
+        assertEquals("20at2759", genes.get(1).getName());
+        assertEquals(3, genes.get(1).getStart());
+        assertEquals(8, genes.get(1).getEnd());
+
+        // Residue states are their own codes
+        assertEquals(PackedAlignment.AMINO_ACIDS.indexOf('K'), matrix.getCode(1, 1));
+        assertEquals(2, matrix.getOccupancy(0));
+        assertEquals(1, matrix.getOccupancy(4));
+        assertEquals(2, matrix.getGapCount(4));
+        assertTrue(matrix.isGap(0, 4));
+        assertFalse(matrix.isOccupied(0, 7));
+        assertFalse(matrix.isGap(0, 7));
+        assertEquals(0, matrix.getOccupancy(7));
+
+        PackedAlignment expected = AlignmentReader.readFasta(fasta);
+        PackedAlignment mapped = AlignmentReader.read(binary);
+        for (int t = 0; t < expected.getTaxonCount(); t++) {
+            assertArrayEquals(expected.getRow(t), mapped.getRow(t));
+        }
+
+        Path back = tempDir.resolve("back.fasta");
+        MatrixConverter.toFasta(matrix, back);
+        assertEquals(Arrays.asList(">sp1", "MKVL-AWX", ">sp2", "MKVLQAW?", ">sp3", "--------"),
+                Files.readAllLines(back, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPhylipInterleavedAndSequential(@TempDir Path tempDir) throws IOException {
+        Path interleaved = tempDir.resolve("genes.phy");
+        Files.write(interleaved, Arrays.asList("3 12", "taxon_a ACGT ACGT", "taxon_b ACGA ACGT", "taxon_c AC-T NCGT",
+                "", "ACGT", "ACGA", "ACG-"), StandardCharsets.UTF_8);
+        PackedAlignment text = AlignmentReader.read(interleaved);
+        assertTrue(text.isNucleotide());
+        assertEquals(12, text.getLength());
+
+        Path binary = tempDir.resolve("genes.bmx");
+        MatrixConverter.toBinary(interleaved, null, binary);
+        BinaryMatrix matrix = BinaryMatrix.open(binary);
+        assertTrue(matrix.getPartitions().isEmpty());
+        assertEquals(2, matrix.getOccupancy(4));
+
+        Path sequential = tempDir.resolve("sequential.phy");
+        MatrixConverter.toPhylip(matrix, sequential);
+        assertEquals("taxon_c  AC-TNCGTACG-", Files.readAllLines(sequential, StandardCharsets.UTF_8).get(3));
+        PackedAlignment reread = AlignmentReader.read(sequential);
+        for (int t = 0; t < text.getTaxonCount(); t++) {
+            assertArrayEquals(text.getRow(t), reread.getRow(t));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BipartitionsTest {
+
+    @Test
+    public void testRobinsonFouldsIgnoresRootingAndOrder() throws IOException {
+        NewickParser parser = new NewickParser();
+        PhyloTree tree = parser.parse("(((A,B),C),(D,(E,F)));");
+        PhyloTree rerooted = parser.parse("(F,E,(D,(C,(B,A))));");
+        PhyloTree different = parser.parse("(((A,C),B),(D,(E,F)));");
+
+        assertEquals(0, Bipartitions.robinsonFoulds(tree, rerooted));
+        // {A,B} vs {A,C}; {A,B,C} = {D,E,F} and {E,F} are shared
+        assertEquals(2, Bipartitions.robinsonFoulds(tree, different));
+        assertThrows(IllegalArgumentException.class,
+                () -> Bipartitions.robinsonFoulds(tree, parser.parse("((A,B),(C,D));")));
+    }
+
+    @Test
+    public void testMatrixMatchesPairwiseDistances() throws IOException {
+        // Trees over 150 taxa, so splits span several words
+        Random random = new Random(7);
+        List<PhyloTree> trees = new ArrayList<>();
+        for (int t = 0; t < 12; t++) {
+            trees.add(new NewickParser().parse(randomTree(150, random)));
+        }
+        int[][] matrix = Bipartitions.robinsonFouldsMatrix(trees, 4);
+        for (int i = 0; i < trees.size(); i++) {
+            assertEquals(0, matrix[i][i]);
+            for (int j = 0; j < trees.size(); j++) {
+                assertEquals(matrix[i][j], matrix[j][i]);
+                if (i < j && j < 4) {
+                    assertEquals(Bipartitions.robinsonFoulds(trees.get(i), trees.get(j)), matrix[i][j]);
+                }
+            }
+        }
+        assertTrue(matrix[0][1] > 0 && matrix[0][1] <= 2 * (150 - 3));
+    }
+
+    @Test
+    public void testMapSupport() throws IOException {
+        NewickParser parser = new NewickParser();
+        PhyloTree reference = parser.parse("((A,B),(C,D),E);");
+        List<PhyloTree> replicates = parser.parseAll("((A,B),(C,D),E);((A,B),(C,E),D);((B,A),C,(D,E));(A,(B,C),(D,E));");
+
+        Bipartitions.mapSupport(reference, replicates, 2);
+        assertEquals(75, reference.getSupport(reference.getCommonAncestor(reference.findLeaf("A"), reference.findLeaf("B"))), 1e-9);
+        assertEquals(25, reference.getSupport(reference.getCommonAncestor(reference.findLeaf("C"), reference.findLeaf("D"))), 1e-9);
+    }
+
+    private static String randomTree(int taxa, Random random) {
+        List<String> clades = new ArrayList<>();
+        for (int i = 0; i < taxa; i++) {
+            clades.add("t" + i);
+        }
+        while (clades.size() > 2) {
+            String first = clades.remove(random.nextInt(clades.size()));
+            String second = clades.remove(random.nextInt(clades.size()));
+            clades.add("(" + first + "," + second + ")");
+        }
+        return "(" + String.join(",", clades) + ");";
+    }
+}
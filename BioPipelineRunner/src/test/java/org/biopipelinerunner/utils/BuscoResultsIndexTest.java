@@ -0,0 +1,104 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.GenomeCompleteness;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BuscoResultsIndexTest {
+    private static final String HEADER = "# Busco id\tStatus\tSequence\tGene Start\tGene End\tStrand\tScore\tLength"
+            + "\tOrthoDB url\tDescription";
+
+    @Test
+    public void testIndexesTablesAndSummaries(@TempDir Path tempDir) throws IOException {
+        writeTable(tempDir.resolve("genomeA.fna").resolve("run_bacteria_odb10"),
+                "1at2\tComplete\tcontig_1\t100\t400\t+\t250.5\t100",
+                "2at2\tComplete\tcontig_2\t50\t350\t-\t180.0\t90",
+                "3at2\tComplete\tcontig_1\t900\t1200\t+\t120.0\t95");
+        writeTable(tempDir.resolve("genomeB.fna").resolve("run_bacteria_odb10"),
+                "1at2\tDuplicated\tscaffold_7\t1\t300\t+\t200.0\t98",
+                "1at2\tDuplicated\tscaffold_9\t1\t300\t+\t240.0\t99",
+                "2at2\tComplete\tscaffold_7\t400\t700\t+\t170.0\t88",
+                "3at2\tMissing");
+        // BUSCO 3 layout, directly below the output directory
+        writeTable(tempDir.resolve("run_genomeC"),
+                "1at2\tComplete\tctg\t1\t300\t210.0\t97",
+                "2at2\tFragmented\tctg\t400\t500\t60.0\t30",
+                "3at2\tComplete\tctg\t900\t1200\t110.0\t94");
+        Path summaryOnly = tempDir.resolve("genomeD.fna");
+        Files.createDirectories(summaryOnly);
+        Files.write(summaryOnly.resolve("short_summary.specific.bacteria_odb10.genomeD.fna.txt"), Arrays.asList(
+                "# BUSCO version is: 5.4.3", "\tC:50.0%[S:25.0%,D:25.0%],F:25.0%,M:25.0%,n:4",
+                "\t2\tComplete BUSCOs (C)", "\t1\tComplete and single-copy BUSCOs (S)",
+                "\t1\tComplete and duplicated BUSCOs (D)", "\t1\tFragmented BUSCOs (F)",
+                "\t1\tMissing BUSCOs (M)", "\t4\tTotal BUSCO groups searched"), StandardCharsets.UTF_8);
+
+        BuscoResultsIndex index = new BuscoResultsIndex();
+        assertTrue(index.refresh(tempDir));
+        assertFalse(index.refresh(tempDir));
+        assertEquals(Arrays.asList("genomeA.fna", "genomeB.fna", "genomeC"), index.getGenomes());
+        assertEquals(Arrays.asList("1at2", "2at2", "3at2"), index.getGenes());
+
+        assertEquals(BuscoResultsIndex.DUPLICATED, index.getStatus("genomeB.fna", "1at2"));
+        assertEquals(2, index.getCopies("genomeB.fna", "1at2"));
+        assertEquals(240.0f, index.getScore("genomeB.fna", "1at2"));
+        assertEquals(99, index.getLength("genomeB.fna", "1at2"));
+        assertEquals("scaffold_9", index.getContig("genomeB.fna", "1at2"));
+        assertEquals(BuscoResultsIndex.MISSING, index.getStatus("genomeB.fna", "3at2"));
+        assertNull(index.getContig("genomeB.fna", "3at2"));
+        assertEquals(BuscoResultsIndex.FRAGMENTED, index.getStatus("genomeC", "2at2"));
+        assertEquals(30, index.getLength("genomeC", "2at2"));
+        assertEquals(250.5f, index.getScore("genomeA.fna", "1at2"));
+
+        List<GenomeCompleteness> completeness = index.getCompleteness();
+        assertEquals(4, completeness.size());
+        GenomeCompleteness worst = completeness.get(0);
+        assertEquals("genomeD.fna", worst.getGenome());
+        assertEquals(-1, worst.getSoleMissing());
+        assertEquals(50.0, worst.getCompletePercent(), 1e-9);
+        GenomeCompleteness genomeB = completeness.get(1);
+        assertEquals("genomeB.fna", genomeB.getGenome());
+        assertEquals(1, genomeB.getSingle());
+        assertEquals(1, genomeB.getDuplicated());
+        assertEquals(1, genomeB.getMissing());
+        // 1at2 is single copy in A and C only, 3at2 as well
+        assertEquals(2, genomeB.getSoleMissing());
+        assertEquals("genomeC", completeness.get(2).getGenome());
+        assertEquals(1, completeness.get(2).getSoleMissing());
+        assertEquals("genomeA.fna", completeness.get(3).getGenome());
+        assertEquals(100.0, completeness.get(3).getCompletePercent(), 1e-9);
+
+        // A rewritten table replaces the genome's earlier results
+        Path table = writeTable(tempDir.resolve("run_genomeC"),
+                "1at2\tComplete\tctg\t1\t300\t210.0\t97",
+                "2at2\tComplete\tctg\t400\t700\t160.0\t89",
+                "3at2\tComplete\tctg\t900\t1200\t110.0\t94");
+        Files.setLastModifiedTime(table, FileTime.fromMillis(Files.getLastModifiedTime(table).toMillis() + 2000));
+        assertTrue(index.refresh(tempDir));
+        assertEquals(BuscoResultsIndex.SINGLE, index.getStatus("genomeC", "2at2"));
+        assertEquals(3, index.getCompleteness().get(3).getSingle());
+    }
+
+    private static Path writeTable(Path runDirectory, String... rows) throws IOException {
+        Files.createDirectories(runDirectory);
+        Path table = runDirectory.resolve(BuscoResultsIndex.FULL_TABLE);
+        StringBuilder content = new StringBuilder("# BUSCO version is: 5.4.3\n");
+        // BUSCO 3 tables have neither strand nor description
+        content.append(rows[0].split("\t").length == 7
+                ? "# Busco id\tStatus\tContig\tStart\tEnd\tScore\tLength" : HEADER).append('\n');
+        for (String row : rows) {
+            content.append(row).append('\n');
+        }
+        Files.write(table, content.toString().getBytes(StandardCharsets.UTF_8));
+        return table;
+    }
+}
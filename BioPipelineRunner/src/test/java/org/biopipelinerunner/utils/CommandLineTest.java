@@ -0,0 +1,54 @@
+package org.biopipelinerunner.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandLineTest {
+
+    @Test
+    public void testShellCommandQuotesOnlyWhereNeeded() {
+        CommandLine command = new CommandLine("iqtree")
+                .add("-s", "gene 1.aln")
+                .add("-nt", 1)
+                .add("-pre", "it's")
+                .redirectOutput(Paths.get("/tmp/out.tre"));
+
+        assertEquals(Arrays.asList("iqtree", "-s", "gene 1.aln", "-nt", "1", "-pre", "it's"), command.getArguments());
+        assertEquals("iqtree -s 'gene 1.aln' -nt 1 -pre 'it'\\''s' > /tmp/out.tre", command.toShellCommand());
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    public void testArgumentsAndOutputFileNeedNoShell(@TempDir Path tempDir) throws Exception {
+        Path input = tempDir.resolve("my genome's dir").resolve("in put.txt");
+        Files.createDirectories(input.getParent());
+        Files.write(input, "ACGT\n".getBytes(StandardCharsets.UTF_8));
+        Path output = tempDir.resolve("out $HOME.txt");
+
+        String captured = CommandLineUtils.execute(new CommandLine("cat").addPath(input).redirectOutput(output), null, 0);
+
+        assertEquals("", captured);
+        assertEquals("ACGT\n", new String(Files.readAllBytes(output), StandardCharsets.UTF_8));
+        assertEquals("a;b", CommandLineUtils.execute(new CommandLine("echo", "a;b"), null, 0));
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    public void testFailureIsReported() {
+        IOException e = assertThrows(IOException.class,
+                () -> CommandLineUtils.execute(new CommandLine("sh", "-c", "echo broken >&2; exit 3"), null, 0));
+        assertTrue(e.getMessage().contains("exit code: 3"), e.getMessage());
+        assertTrue(e.getMessage().contains("broken"), e.getMessage());
+    }
+}
@@ -0,0 +1,51 @@
+package org.biopipelinerunner.utils;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EnabledOnOs({OS.LINUX, OS.MAC})
+public class CommandLineUtilsTest {
+
+    @Test
+    public void testProcessRunsAreRecorded(@TempDir Path tempDir) throws Exception {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("org.biopipelinerunner.ProcessExecution");
+            recording.start();
+            assertEquals("one", CommandLineUtils.execute(new CommandLine("echo", "one"), null, 0));
+            assertThrows(IOException.class,
+                    () -> CommandLineUtils.execute(new CommandLine("sh", "-c", "exit 3"), null, 0));
+            assertThrows(IOException.class,
+                    () -> CommandLineUtils.execute(new CommandLine(tempDir.resolve("missing").toString()), null, 0));
+            recording.stop();
+            Path dump = tempDir.resolve("recording.jfr");
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump).stream()
+                    .filter(event -> event.getEventType().getName().equals("org.biopipelinerunner.ProcessExecution"))
+                    .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                    .collect(Collectors.toList());
+        }
+
+        assertEquals(3, events.size());
+        assertEquals("echo one", events.get(0).getString("command"));
+        assertEquals(0, events.get(0).getInt("exitCode"));
+        assertTrue(events.get(0).getLong("pid") > 0);
+        assertEquals("sh -c 'exit 3'", events.get(1).getString("command"));
+        assertEquals(3, events.get(1).getInt("exitCode"));
+        // A tool that can't be started has no process
+        assertEquals(-1, events.get(2).getInt("exitCode"));
+        assertEquals(0, events.get(2).getLong("pid"));
+    }
+}
@@ -0,0 +1,43 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConsensusTreeTest {
+
+    @Test
+    public void testMajorityRuleKeepsSplitsInMostTrees() throws IOException {
+        // (A,B) is in all trees, (C,D) in two of three; rootings differ
+        List<PhyloTree> trees = new NewickParser().parseAll(
+                "((A:1,B:1):2,(C:1,D:1):4,E:1);\n"
+              + "(E:1,((D:1,C:1):2,(B:1,A:1):4):1);\n"
+              + "((A:1,B:1):2,(C:1,E:1):1,D:1);");
+
+        PhyloTree consensus = ConsensusTree.majorityRule(trees);
+        assertEquals(5, consensus.getLeafCount());
+        assertTrue(consensus.reroot("E"));
+        int ab = consensus.getCommonAncestor(consensus.findLeaf("A"), consensus.findLeaf("B"));
+        assertEquals(2, consensus.getLeafCount(ab));
+        assertEquals(100, consensus.getSupport(ab), 1e-9);
+        int cd = consensus.getCommonAncestor(consensus.findLeaf("C"), consensus.findLeaf("D"));
+        assertEquals(2, consensus.getLeafCount(cd));
+        assertEquals(200.0 / 3, consensus.getSupport(cd), 1e-9);
+        assertEquals(3, consensus.getBranchLength(cd), 1e-9);
+
+        PhyloTree strict = ConsensusTree.build(trees, 1);
+        assertTrue(strict.reroot("E"));
+        int strictCd = strict.getCommonAncestor(strict.findLeaf("C"), strict.findLeaf("D"));
+        assertEquals(4, strict.getLeafCount(strictCd));
+    }
+
+    @Test
+    public void testRejectsDifferentTaxa() throws IOException {
+        List<PhyloTree> trees = new NewickParser().parseAll("((A,B),(C,D));((A,B),(C,X));");
+        assertThrows(IllegalArgumentException.class, () -> ConsensusTree.majorityRule(trees));
+    }
+}
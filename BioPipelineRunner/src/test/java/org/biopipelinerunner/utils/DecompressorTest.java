@@ -0,0 +1,130 @@
+package org.biopipelinerunner.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class DecompressorTest {
+
+    @Test
+    public void testGzipAndPlain(@TempDir Path tempDir) throws Exception {
+        byte[] fasta = fasta(50_000);
+        Path gzip = tempDir.resolve("genome.fna.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write(fasta);
+        }
+        Path plain = tempDir.resolve("plain.fna");
+        Files.write(plain, fasta);
+
+        assertEquals(Decompressor.Format.GZIP, Decompressor.detect(gzip));
+        assertEquals(Decompressor.Format.NONE, Decompressor.detect(plain));
+        Path target = tempDir.resolve("genome.fna");
+        assertEquals(fasta.length, Decompressor.decompress(gzip, target, 2));
+        assertArrayEquals(fasta, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testBgzfIsInflatedInParallel(@TempDir Path tempDir) throws Exception {
+        byte[] fasta = fasta(3_000_000);
+        Path bgzf = tempDir.resolve("genome.fna.bgz");
+        try (OutputStream out = Files.newOutputStream(bgzf)) {
+            for (int offset = 0; offset < fasta.length; offset += 60_000) {
+                out.write(bgzfBlock(Arrays.copyOfRange(fasta, offset, Math.min(fasta.length, offset + 60_000))));
+            }
+            out.write(bgzfBlock(new byte[0]));
+        }
+        assertEquals(Decompressor.Format.BGZF, Decompressor.detect(bgzf));
+        Path target = tempDir.resolve("genome.fna");
+        assertEquals(fasta.length, Decompressor.decompress(bgzf, target, 3));
+        assertArrayEquals(fasta, Files.readAllBytes(target));
+
+        // A flipped byte in the data must not go unnoticed
+        byte[] corrupt = Files.readAllBytes(bgzf);
+        corrupt[corrupt.length / 2] ^= 0x55;
+        Files.write(bgzf, corrupt);
+        assertThrows(IOException.class, () -> Decompressor.decompress(bgzf, tempDir.resolve("corrupt.fna"), 3));
+    }
+
+    @Test
+    public void testBzip2WithInstalledTool(@TempDir Path tempDir) throws Exception {
+        Path bzip2 = Decompressor.findOnPath("bzip2");
+        assumeTrue(bzip2 != null, "bzip2 is not installed");
+        byte[] fasta = fasta(20_000);
+        Path plain = tempDir.resolve("genome.fna");
+        Files.write(plain, fasta);
+        Process process = new ProcessBuilder(bzip2.toString(), plain.toString()).start();
+        assertEquals(0, process.waitFor());
+        Path compressed = tempDir.resolve("genome.fna.bz2");
+
+        assertEquals(Decompressor.Format.BZIP2, Decompressor.detect(compressed));
+        Path target = tempDir.resolve("out.fna");
+        assertEquals(fasta.length, Decompressor.decompress(compressed, target, 2));
+        assertArrayEquals(fasta, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testPlainName() {
+        assertEquals("genome.fna", Decompressor.plainName("genome.fna.gz"));
+        assertEquals("genome.fa", Decompressor.plainName("genome.fa.BZ2"));
+        assertEquals("genome.fasta", Decompressor.plainName("genome.fasta.zst"));
+        assertEquals("genome.fna", Decompressor.plainName("genome.fna"));
+        assertEquals(".gz", Decompressor.plainName(".gz"));
+    }
+
+    private static byte[] fasta(int length) {
+        Random random = new Random(11);
+        StringBuilder fasta = new StringBuilder(">chr1\n");
+        for (int i = 0; i < length; i++) {
+            fasta.append("ACGTN".charAt(random.nextInt(5)));
+            if (i % 80 == 79) {
+                fasta.append('\n');
+            }
+        }
+        return fasta.append('\n').toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A gzip member with the BGZF "BC" extra subfield holding the block size, as bgzip writes it
+     */
+    private static byte[] bgzfBlock(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1 << 16];
+        while (!deflater.finished()) {
+            deflated.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        int blockSize = 18 + deflated.size() + 8;
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        block.write(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0}, 0, 16);
+        writeLE(block, blockSize - 1, 2);
+        block.write(deflated.toByteArray(), 0, deflated.size());
+        writeLE(block, crc.getValue(), 4);
+        writeLE(block, data.length, 4);
+        return block.toByteArray();
+    }
+
+    private static void writeLE(ByteArrayOutputStream out, long value, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.biopipelinerunner.utils;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileUtilsTest {
+
+    @Test
+    public void testDeleteDirectoryRecordsFreedBytes(@TempDir Path tempDir) throws Exception {
+        Path run = tempDir.resolve("run");
+        Files.createDirectories(run.resolve("sub"));
+        Files.write(run.resolve("a.txt"), new byte[1000]);
+        Files.write(run.resolve("sub").resolve("b.txt"), new byte[24]);
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("org.biopipelinerunner.FileOperation");
+            recording.start();
+            assertTrue(FileUtils.deleteDirectory(run.toFile()));
+            recording.stop();
+            Path dump = tempDir.resolve("recording.jfr");
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump).stream()
+                    .filter(event -> event.getEventType().getName().equals("org.biopipelinerunner.FileOperation"))
+                    .collect(Collectors.toList());
+        }
+
+        assertFalse(Files.exists(run));
+        assertEquals(1, events.size());
+        assertEquals("delete", events.get(0).getString("operation"));
+        assertEquals(run.toString(), events.get(0).getString("source"));
+        assertEquals(1024, events.get(0).getLong("bytes"));
+    }
+
+    @Test
+    public void testDeleteTreeDoesNotFollowLinks(@TempDir Path tempDir) throws Exception {
+        Path outside = Files.write(tempDir.resolve("keep.txt"), new byte[10]);
+        Path run = Files.createDirectories(tempDir.resolve("run"));
+        Files.write(run.resolve("a.txt"), new byte[5]);
+        Files.createSymbolicLink(run.resolve("link"), outside);
+
+        assertEquals(5, FileUtils.deleteTree(run));
+        assertFalse(Files.exists(run));
+        assertTrue(Files.exists(outside));
+    }
+}
@@ -0,0 +1,93 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.GenomeStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GenomeScannerTest {
+
+    @Test
+    public void testStatisticsAndProblems(@TempDir Path tempDir) throws Exception {
+        Path good = write(tempDir, "a.fna", ">ctg1 first\nACGTACGTNN\nGGCC\n>ctg2\r\nATAT\r\n>ctg3\nGCGCGC\n");
+        Path copy = write(tempDir, "b.fna", ">ctg1 first\nACGTACGTNN\nGGCC\n>ctg2\r\nATAT\r\n>ctg3\nGCGCGC\n");
+        Path truncated = write(tempDir, "c.fna", ">ctg1\nACGT\n>ctg2\n");
+        Path binary = write(tempDir, "d.fna", ">ctg1\nACGT\0\0\0\0\n");
+        Path text = write(tempDir, "e.txt", "ACGT\n>ctg1\nACGT\n");
+        Path gzip = tempDir.resolve("f.fna.gz");
+        Files.write(gzip, new byte[] {0x1f, (byte) 0x8b, 8, 0});
+        Path empty = write(tempDir, "g.fna", "");
+        Path protein = write(tempDir, "h.faa", ">p1\nMKVLAW*\n");
+
+        List<GenomeStats> stats = GenomeScanner.scan(
+                Arrays.asList(good, copy, truncated, binary, text, gzip, empty, protein), 2);
+        GenomeStats first = stats.get(0);
+        assertTrue(first.isUsable(), first.getProblem());
+        assertEquals(3, first.getSequenceCount());
+        assertEquals(24, first.getTotalLength());
+        // 14, 6 and 4 residues: the 14 bp sequence alone holds half of them
+        assertEquals(14, first.getN50());
+        assertEquals(2, first.getNCount());
+        assertEquals(100.0 * 14 / 22, first.getGcPercent(), 1e-9);
+        assertEquals(64, first.getHash().length());
+
+        assertEquals(first.getHash(), stats.get(1).getHash());
+        assertEquals("duplicate of a.fna", stats.get(1).getProblem());
+        assertTrue(stats.get(2).getProblem().contains("without sequence"));
+        assertTrue(stats.get(3).getProblem().contains("not sequence data"));
+        assertTrue(stats.get(4).getProblem().contains("not a FASTA file"));
+        assertEquals("gzip-compressed", stats.get(5).getProblem());
+        assertEquals("empty file", stats.get(6).getProblem());
+        assertTrue(stats.get(7).isUsable(), stats.get(7).getProblem());
+        assertEquals(7, stats.get(7).getTotalLength());
+    }
+
+    @Test
+    public void testChunkedScanMatchesSingleChunk(@TempDir Path tempDir) throws Exception {
+        Random random = new Random(7);
+        StringBuilder fasta = new StringBuilder();
+        List<Integer> lengths = new ArrayList<>();
+        for (int s = 0; s < 200; s++) {
+            int length = 1 + random.nextInt(3000);
+            lengths.add(length);
+            fasta.append(">seq").append(s).append(" some description\n");
+            for (int i = 0; i < length; i++) {
+                fasta.append("ACGTN".charAt(random.nextInt(5)));
+                if (i % 60 == 59 || i == length - 1) {
+                    fasta.append('\n');
+                }
+            }
+        }
+        Path file = write(tempDir, "genome.fna", fasta.toString());
+        GenomeStats whole = GenomeScanner.scan(Arrays.asList(file), 1).get(0);
+        long total = lengths.stream().mapToLong(Integer::longValue).sum();
+        assertEquals(200, whole.getSequenceCount());
+        assertEquals(total, whole.getTotalLength());
+
+        for (int chunkSize : new int[] {100, 997, 4096}) {
+            GenomeStats chunked = GenomeScanner.scan(Arrays.asList(file), 3, chunkSize).get(0);
+            assertTrue(chunked.isUsable(), chunked.getProblem());
+            assertEquals(whole.getSequenceCount(), chunked.getSequenceCount());
+            assertEquals(whole.getTotalLength(), chunked.getTotalLength());
+            assertEquals(whole.getN50(), chunked.getN50());
+            assertEquals(whole.getNCount(), chunked.getNCount());
+            assertEquals(whole.getGcPercent(), chunked.getGcPercent(), 1e-12);
+        }
+    }
+
+    private static Path write(Path directory, String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+}
@@ -0,0 +1,108 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PackedAlignment;
+import org.biopipelinerunner.models.PhyloTree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NeighborJoiningTest {
+
+    @Test
+    public void testDistancesSkipGapsAndMatchNaiveComputation(@TempDir Path tempDir) throws IOException {
+        Path fasta = tempDir.resolve("small.aln");
+        Files.write(fasta, Arrays.asList(">a first", "ARND", "CQ-X", ">b", "ARNDCQEG", ">c", "VRNDCQEG"), StandardCharsets.UTF_8);
+        PackedAlignment alignment = AlignmentReader.readFasta(fasta);
+        assertFalse(alignment.isNucleotide());
+        assertEquals(Arrays.asList("a", "b", "c"), alignment.getTaxa());
+
+        DistanceMatrix distances = DistanceMatrix.compute(alignment, DistanceMatrix.Model.P_DISTANCE, ForkJoinPool.commonPool());
+        assertEquals(1.0 / 6, distances.get(0, 2), 1e-12);
+        assertEquals(0, distances.get(0, 1), 1e-12);
+        assertEquals(1.0 / 8, distances.get(2, 1), 1e-12);
+
+        // Enough taxa for several tiles, including a partial one
+        Random random = new Random(42);
+        int taxa = 75;
+        int sites = 300;
+        byte[][] rows = new byte[taxa][sites];
+        List<String> names = new ArrayList<>();
+        for (int t = 0; t < taxa; t++) {
+            names.add("t" + t);
+            for (int s = 0; s < sites; s++) {
+                rows[t][s] = (byte) (random.nextInt(10) == 0 ? PackedAlignment.UNKNOWN : random.nextInt(4));
+            }
+        }
+        alignment = new PackedAlignment(names, rows, true);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            distances = DistanceMatrix.compute(alignment, DistanceMatrix.Model.P_DISTANCE, pool);
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < taxa; i++) {
+            for (int j = 0; j < taxa; j++) {
+                int differences = 0;
+                int compared = 0;
+                for (int s = 0; s < sites; s++) {
+                    if (i != j && rows[i][s] >= 0 && rows[j][s] >= 0) {
+                        compared++;
+                        differences += rows[i][s] != rows[j][s] ? 1 : 0;
+                    }
+                }
+                double expected = compared == 0 ? 0 : (double) differences / compared;
+                assertEquals(expected, distances.get(i, j), 1e-12, i + "," + j);
+            }
+        }
+    }
+
+    @Test
+    public void testRecoversAdditiveTree() throws IOException {
+        PhyloTree original = new NewickParser().parse("((A:1,B:2):1,C:3,((D:1,E:1.5):2,F:0.5):0.7);");
+        String[] taxa = {"A", "B", "C", "D", "E", "F"};
+        double[] values = new double[taxa.length * taxa.length];
+        for (int i = 0; i < taxa.length; i++) {
+            for (int j = 0; j < taxa.length; j++) {
+                values[i * taxa.length + j] = pathLength(original, original.findLeaf(taxa[i]), original.findLeaf(taxa[j]));
+            }
+        }
+        DistanceMatrix distances = new DistanceMatrix(Arrays.asList(taxa), values);
+
+        for (boolean bionj : new boolean[] {false, true}) {
+            PhyloTree tree = new NeighborJoining(2).build(distances, bionj);
+            assertEquals(taxa.length, tree.getLeafCount());
+            assertEquals(2 * taxa.length - 2, tree.getNodeCount());
+            for (int i = 0; i < taxa.length; i++) {
+                for (int j = 0; j < taxa.length; j++) {
+                    assertEquals(distances.get(i, j), pathLength(tree, tree.findLeaf(taxa[i]), tree.findLeaf(taxa[j])), 1e-9);
+                }
+            }
+            assertTrue(tree.reroot("A"));
+            assertEquals(2, tree.getLeafCount(tree.getCommonAncestor(tree.findLeaf("D"), tree.findLeaf("E"))));
+            assertEquals(3, tree.getLeafCount(tree.getCommonAncestor(tree.findLeaf("D"), tree.findLeaf("F"))));
+        }
+    }
+
+    private static double pathLength(PhyloTree tree, int a, int b) {
+        int ancestor = tree.getCommonAncestor(a, b);
+        double length = 0;
+        for (int node = a; node != ancestor; node = tree.getParent(node)) {
+            length += tree.getBranchLength(node);
+        }
+        for (int node = b; node != ancestor; node = tree.getParent(node)) {
+            length += tree.getBranchLength(node);
+        }
+        return length;
+    }
+}
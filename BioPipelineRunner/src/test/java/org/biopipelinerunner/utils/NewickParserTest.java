@@ -0,0 +1,97 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NewickParserTest {
+
+    @Test
+    public void testParsesIqTreeSupportAndBranchLengths() throws IOException {
+        PhyloTree tree = new NewickParser().parse("((A:0.1,B:0.2)87.5/100:0.05,'C d':0.3,E:0.4);");
+
+        assertEquals(6, tree.getNodeCount());
+        assertEquals(4, tree.getLeafCount());
+        int a = tree.findLeaf("A");
+        int clade = tree.getParent(a);
+        assertEquals(100.0, tree.getSupport(clade));
+        assertNull(tree.getLabel(clade));
+        assertEquals(0.05, tree.getBranchLength(clade), 1e-12);
+        assertEquals(0.1, tree.getBranchLength(a), 1e-12);
+        assertNotEquals(PhyloTree.NONE, tree.findLeaf("C d"));
+        assertEquals(clade, tree.getCommonAncestor(a, tree.findLeaf("B")));
+        assertTrue(tree.isAncestor(clade, a));
+        assertFalse(tree.isAncestor(clade, tree.findLeaf("E")));
+    }
+
+    @Test
+    public void testNexusTranslateTableAndSharedLabels() throws IOException {
+        String nexus = "#NEXUS\n[comment]\nBegin taxa; dimensions ntax=3; end;\n"
+                + "begin trees;\n  translate\n    1 Homo_sapiens,\n    2 'Pan troglodytes',\n    3 Gorilla;\n"
+                + "  tree one = [&R] ((1:1,2:1):1,3:2);\n"
+                + "  tree two = [&U] ((1,3),2);\nend;\n";
+        List<PhyloTree> trees = new NewickParser().parseAll(nexus);
+
+        assertEquals(2, trees.size());
+        PhyloTree first = trees.get(0);
+        PhyloTree second = trees.get(1);
+        assertNotEquals(PhyloTree.NONE, first.findLeaf("Pan troglodytes"));
+        assertSame(first.getLabel(first.findLeaf("Gorilla")), second.getLabel(second.findLeaf("Gorilla")));
+    }
+
+    @Test
+    public void testRerootLadderizeAndRoundTrip() throws IOException {
+        PhyloTree tree = new NewickParser().parse("(((A:1,B:1)90:1,C:2)80:1,(D:1,E:1)70:1,F:3);");
+
+        assertTrue(tree.reroot("F"));
+        assertEquals(2, tree.getChildCount(tree.getRoot()));
+        assertEquals(6, tree.getLeafCount());
+        assertEquals(11, tree.getNodeCount());
+        int f = tree.findLeaf("F");
+        assertEquals(tree.getRoot(), tree.getParent(f));
+        assertEquals(1.5, tree.getBranchLength(f), 1e-12);
+        // Clades keep their support after the path to the old root is reversed
+        int ab = tree.getCommonAncestor(tree.findLeaf("A"), tree.findLeaf("B"));
+        assertEquals(90.0, tree.getSupport(ab));
+        int de = tree.getCommonAncestor(tree.findLeaf("D"), tree.findLeaf("E"));
+        assertEquals(70.0, tree.getSupport(de));
+        assertEquals(5, tree.getLeafCount(tree.getParent(de)));
+
+        tree.ladderize(true);
+        assertEquals(f, tree.getFirstChild(tree.getRoot()));
+
+        PhyloTree copy = new NewickParser().parse(tree.toNewick());
+        assertEquals(tree.toNewick(), copy.toNewick());
+        assertEquals(tree.getLeafCount(), copy.getLeafCount());
+    }
+
+    @Test
+    public void testLargeCaterpillarTree() throws IOException {
+        int taxa = 10000;
+        StringBuilder newick = new StringBuilder();
+        for (int i = 0; i < taxa - 1; i++) {
+            newick.append('(');
+        }
+        newick.append("t0:1");
+        for (int i = 1; i < taxa; i++) {
+            newick.append(",t").append(i).append(":1)100:0.5");
+        }
+        newick.append(';');
+
+        PhyloTree tree = new NewickParser().parse(newick);
+        assertEquals(taxa, tree.getLeafCount());
+        assertEquals(taxa - 1, tree.getDepth(tree.findLeaf("t0")));
+        assertTrue(tree.reroot("t0"));
+        assertEquals(taxa, tree.getLeafCount());
+    }
+
+    @Test
+    public void testMalformedInputIsRejected() {
+        assertThrows(IOException.class, () -> new NewickParser().parse("((A,B);"));
+        assertThrows(IOException.class, () -> new NewickParser().parse("(A,B));"));
+    }
+}
@@ -0,0 +1,65 @@
+package org.biopipelinerunner.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OccupancyIndexTest {
+
+    @Test
+    public void testBuildsSelectsAndReloads(@TempDir Path tempDir) throws IOException {
+        // g1 single copy everywhere, g2 missing in C, g3 duplicated in B and fragmented in C
+        addSequence(tempDir, "A", "single_copy_busco_sequences", "g1", ">g1\nMKV\nLA\n");
+        addSequence(tempDir, "A", "single_copy_busco_sequences", "g2", ">g2\nMK\n");
+        addSequence(tempDir, "A", "single_copy_busco_sequences", "g3", ">g3\nMKVLAW*\n");
+        addSequence(tempDir, "B", "single_copy_busco_sequences", "g1", ">g1\nMKVL\n");
+        addSequence(tempDir, "B", "single_copy_busco_sequences", "g2", ">g2\nMK\n");
+        addSequence(tempDir, "B", "multi_copy_busco_sequences", "g3", ">g3 a\nMKV\n>g3 b\nMKVLA\n");
+        addSequence(tempDir, "C", "single_copy_busco_sequences", "g1", ">g1\nMKVLA\n");
+        addSequence(tempDir, "C", "fragmented_busco_sequences", "g3", ">g3\nMK\n");
+
+        OccupancyIndex index = OccupancyIndex.load(tempDir);
+        assertTrue(Files.exists(tempDir.resolve(OccupancyIndex.FILE_NAME)));
+        assertEquals(Arrays.asList("A", "B", "C"), index.getTaxa());
+        assertEquals(Arrays.asList("g1", "g2", "g3"), index.getGenes());
+        assertEquals(5, index.getLength(0, 0));
+        assertEquals(6, index.getLength(2, 0));
+        assertEquals(2, index.getCopies(2, 1));
+        assertEquals(5, index.getLength(2, 1));
+        assertEquals(OccupancyIndex.FRAGMENTED, index.getCopies(2, 2));
+        assertEquals(0, index.getCopies(1, 2));
+
+        assertEquals(Collections.singletonList("g1"), index.select(1.0, Collections.emptyList()));
+        assertEquals(Arrays.asList("g1", "g2"), index.select(0.6, Collections.emptyList()));
+        assertEquals(Arrays.asList("g1", "g2", "g3"), index.select(0.3, Collections.emptyList()));
+        assertEquals(Arrays.asList("g1", "g2"), index.select(1.0, Collections.singletonList("C")));
+        assertEquals(Arrays.asList("g1", "g2"), index.select(1.0, Arrays.asList("C", "unknown")));
+
+        OccupancyIndex stored = OccupancyIndex.read(tempDir.resolve(OccupancyIndex.FILE_NAME));
+        assertEquals(index.getGenes(), stored.getGenes());
+        assertEquals(2, stored.getCopies(2, 1));
+        assertEquals(Arrays.asList("g1", "g2"), stored.select(0.6, Collections.emptyList()));
+
+        // A new run invalidates the stored index
+        addSequence(tempDir, "D", "single_copy_busco_sequences", "g4", ">g4\nMK\n");
+        OccupancyIndex rebuilt = OccupancyIndex.load(tempDir);
+        assertEquals(Arrays.asList("A", "B", "C", "D"), rebuilt.getTaxa());
+        assertEquals(Collections.emptyList(), rebuilt.select(1.0, Collections.emptyList()));
+        assertEquals(Arrays.asList("g1", "g2"), rebuilt.select(0.5, Collections.emptyList()));
+    }
+
+    private static void addSequence(Path buscoDirectory, String species, String kind, String busco, String fasta)
+            throws IOException {
+        Path directory = buscoDirectory.resolve("run_" + species).resolve("busco_sequences").resolve(kind);
+        Files.createDirectories(directory);
+        Files.write(directory.resolve(busco + ".faa"), fasta.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,132 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.RetentionPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelZipArchiverTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testMultiBlockArchiveRoundTrips() throws IOException {
+        Path source = Files.createDirectories(tempDir.resolve("output"));
+        Map<String, byte[]> expected = new HashMap<>();
+
+        // Several deflate blocks of compressible, FASTA-like text
+        StringBuilder alignment = new StringBuilder();
+        Random random = new Random(42);
+        String residues = "ACDEFGHIKLMNPQRSTVWY-";
+        while (alignment.length() < 3_500_000) {
+            alignment.append(">taxon_").append(random.nextInt(500)).append('\n');
+            for (int i = 0; i < 120; i++) {
+                alignment.append(residues.charAt(random.nextInt(residues.length())));
+            }
+            alignment.append('\n');
+        }
+        expected.put("SUPERMATRIX.aln", alignment.toString().getBytes(StandardCharsets.US_ASCII));
+        expected.put("empty.txt", new byte[0]);
+        byte[] image = new byte[300_000];
+        random.nextBytes(image);
+        expected.put("plots/tree.png", image);
+        expected.put("trees/SUPERMATRIX.aln.treefile", "((A:0.1,B:0.2):0.05,C:0.3);\n".getBytes(StandardCharsets.US_ASCII));
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            Path file = source.resolve(entry.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, entry.getValue());
+        }
+
+        Path zip = tempDir.resolve("results.zip");
+        new ParallelZipArchiver(4, Collections.emptyList()).archive(source, zip);
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertEquals(expected.size(), zipFile.size());
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                ZipEntry zipEntry = zipFile.getEntry(entry.getKey());
+                assertNotNull(zipEntry, entry.getKey());
+                try (InputStream in = zipFile.getInputStream(zipEntry)) {
+                    assertArrayEquals(entry.getValue(), readAll(in), entry.getKey());
+                }
+            }
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("plots/tree.png").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("SUPERMATRIX.aln").getMethod());
+            assertTrue(zipFile.getEntry("SUPERMATRIX.aln").getCompressedSize() < alignment.length());
+        }
+
+        // Streaming readers rely on the local headers and data descriptors instead
+        int streamed = 0;
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                assertArrayEquals(expected.get(entry.getName()), readAll(in), entry.getName());
+                streamed++;
+            }
+        }
+        assertEquals(expected.size(), streamed);
+    }
+
+    @Test
+    public void testExcludedFilesAreSkipped() throws IOException {
+        Path source = Files.createDirectories(tempDir.resolve("output"));
+        Files.createDirectories(source.resolve("proteins"));
+        Files.write(source.resolve("proteins/gene1.faa"), ">a\nMKV\n".getBytes(StandardCharsets.US_ASCII));
+        Files.write(source.resolve("SUPERMATRIX.aln.contree"), "(A,B,C);\n".getBytes(StandardCharsets.US_ASCII));
+
+        Path zip = tempDir.resolve("results.zip");
+        new ParallelZipArchiver(2, Arrays.asList("proteins/**")).archive(source, zip);
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertEquals(1, zipFile.size());
+            assertNotNull(zipFile.getEntry("SUPERMATRIX.aln.contree"));
+        }
+    }
+
+    @Test
+    public void testIntermediateGlobsKeepFinalResults() throws IOException {
+        Path source = Files.createDirectories(tempDir.resolve("output"));
+        Files.createDirectories(source.resolve("gene_trees"));
+        Files.createDirectories(source.resolve("trimmed_alignments"));
+        Files.write(source.resolve("gene_trees/gene1.treefile"), "(A,B,C);\n".getBytes(StandardCharsets.US_ASCII));
+        Files.write(source.resolve("trimmed_alignments/gene1.aln"), ">a\nMKV\n".getBytes(StandardCharsets.US_ASCII));
+        Files.write(source.resolve("SPECIES_TREE.astral.tre"), "(A,B,C);\n".getBytes(StandardCharsets.US_ASCII));
+
+        List<String> globs = new RetentionPolicy().getIntermediateGlobs("output");
+        assertTrue(globs.contains("gene_trees/**"), globs.toString());
+        Path zip = tempDir.resolve("results.zip");
+        new ParallelZipArchiver(2, globs).archive(source, zip);
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertEquals(1, zipFile.size());
+            assertNotNull(zipFile.getEntry("SPECIES_TREE.astral.tre"));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
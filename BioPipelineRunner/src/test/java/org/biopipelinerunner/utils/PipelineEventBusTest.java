@@ -0,0 +1,131 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PipelineEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipelineEventBusTest {
+
+    @Test
+    public void testSlowSubscriberDoesNotBlockPublisherOrOthers() throws Exception {
+        try (PipelineEventBus bus = new PipelineEventBus(16)) {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger slowReceived = new AtomicInteger();
+            bus.subscribe(PipelineEvent.class, event -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slowReceived.incrementAndGet();
+            });
+            CountDownLatch fastReceived = new CountDownLatch(10);
+            bus.subscribe(PipelineEvent.JobProgress.class, event -> fastReceived.countDown());
+
+            // The slow subscriber is stuck on its first event, yet publishing never waits for it
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                for (int i = 1; i <= 10; i++) {
+                    bus.publish(new PipelineEvent.JobProgress("gene" + i, true, i, 1000));
+                }
+                assertTrue(fastReceived.await(5, TimeUnit.SECONDS));
+                for (int i = 11; i <= 1000; i++) {
+                    bus.publish(new PipelineEvent.JobProgress("gene" + i, true, i, 1000));
+                }
+            });
+            assertTrue(bus.getDroppedCount() > 0);
+
+            // Once it catches up it only gets what fitted in its bounded buffer
+            release.countDown();
+            int received;
+            do {
+                received = slowReceived.get();
+                Thread.sleep(100);
+            } while (received == 0 || slowReceived.get() != received);
+            assertTrue(received <= 64, String.valueOf(received));
+        }
+    }
+
+    @Test
+    public void testLogRecordsArePublished() throws Exception {
+        List<PipelineEvent.LogLine> lines = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(1);
+        PipelineEventBus.Listener<PipelineEvent.LogLine> listener = PipelineEventBus.getDefault().subscribe(
+                PipelineEvent.LogLine.class, line -> {
+                    if (line.getSource().equals("org.biopipelinerunner.test")) {
+                        lines.add(line);
+                        received.countDown();
+                    }
+                });
+        try {
+            Logger logger = Logger.getLogger("org.biopipelinerunner.test");
+            logger.fine("Not published");
+            logger.info("Finished 10 of 20 jobs");
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            assertEquals("Finished 10 of 20 jobs", lines.get(0).getMessage());
+        } finally {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testEventLogWriter(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("events.tsv");
+        try (PipelineEventBus bus = new PipelineEventBus(16)) {
+            EventLogWriter writer = new EventLogWriter(file);
+            bus.subscribe(writer);
+            bus.publish(new PipelineEvent.StageStarted("BUSCO", "primates"));
+            bus.publish(new PipelineEvent.StageFinished("BUSCO", "primates", true, 1200));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (Files.readAllLines(file, StandardCharsets.UTF_8).size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            writer.close();
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).endsWith("\tStageStarted\tBUSCO\tprimates"), lines.get(0));
+        assertTrue(lines.get(1).endsWith("\tStageFinished\tBUSCO\tprimates\tsucceeded\t1200 ms"), lines.get(1));
+    }
+
+    @Test
+    public void testEventLogWriterWritesPendingEventsBeforeClosing(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("events.tsv");
+        try (PipelineEventBus bus = new PipelineEventBus(1024)) {
+            EventLogWriter writer = new EventLogWriter(file);
+            bus.subscribe(writer);
+            for (int i = 1; i <= 500; i++) {
+                bus.publish(new PipelineEvent.JobProgress("gene" + i, true, i, 500));
+            }
+            writer.closeAfterPending(bus, 30, TimeUnit.SECONDS).get(1, TimeUnit.MINUTES);
+            // Closed: later events are no longer logged
+            bus.publish(new PipelineEvent.StageStarted("Archive", "primates"));
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(500, lines.size());
+        assertTrue(lines.get(499).contains("\tgene500\t"), lines.get(499));
+    }
+
+    @Test
+    public void testEventLogWriterClosesWhenTheMarkerNeverArrives(@TempDir Path tempDir) throws Exception {
+        try (PipelineEventBus bus = new PipelineEventBus(16)) {
+            EventLogWriter writer = new EventLogWriter(tempDir.resolve("events.tsv"));
+            // Never subscribed, so the end marker can't reach it
+            writer.closeAfterPending(bus, 100, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS);
+            writer.onNext(new PipelineEvent.StageStarted("BUSCO", "primates"));
+        }
+        assertEquals(0, Files.size(tempDir.resolve("events.tsv")));
+    }
+}
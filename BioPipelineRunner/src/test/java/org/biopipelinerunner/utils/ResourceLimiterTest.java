@@ -0,0 +1,104 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.ResourceLimits;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ResourceLimiterTest {
+
+    private static final long TWO_GB = 2L * 1024 * 1024 * 1024;
+    private static final List<String> IQTREE = Arrays.asList("iqtree", "-s", "gene 1.aln");
+
+    @Test
+    public void testCgroupJobEntersItsCgroupBeforeExec(@TempDir Path cgroup) {
+        ResourceLimiter.LimitedJob job = new ResourceLimiter.LimitedJob(new ResourceLimits(TWO_GB, 0, 0), cgroup, null);
+
+        assertEquals(Arrays.asList("sh", "-c", "echo $$ > \"$0/cgroup.procs\" && exec \"$@\"", cgroup.toString(),
+                "iqtree", "-s", "gene 1.aln"), job.wrapArgs(IQTREE));
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void testWithoutCgroupMemoryFallsBackToPrlimitAndNice() {
+        ResourceLimiter.LimitedJob job = new ResourceLimiter.LimitedJob(new ResourceLimits(TWO_GB, 0, 10), null, null);
+
+        assertEquals(Arrays.asList("prlimit", "--as=" + TWO_GB, "--", "nice", "-n", "10",
+                "iqtree", "-s", "gene 1.aln"), job.wrapArgs(IQTREE));
+    }
+
+    @Test
+    public void testPinnedJobSpanningNodesUsesTaskset() {
+        int[] cpus = {0, 1, 2, 3};
+        int[] nodes = {0, 0, 1, 1};
+        CpuTopology topology = new CpuTopology(cpus, new int[4], cpus, nodes, nodes);
+        AffinityPlanner.CpuLease lease = new AffinityPlanner(topology).acquire(4);
+        ResourceLimits limits = new ResourceLimits();
+        limits.setPinCpus(true);
+        ResourceLimiter.LimitedJob job = new ResourceLimiter.LimitedJob(limits, null, lease);
+
+        assertEquals(-1, lease.getNode());
+        assertEquals(Arrays.asList("taskset", "-c", "0,1,2,3", "iqtree", "-s", "gene 1.aln"), job.wrapArgs(IQTREE));
+    }
+
+    @Test
+    public void testPinnedJobWithinNodePrefersItsMemory() {
+        assumeTrue(PlatformUtils.checkDependency("numactl"), "numactl is not installed");
+        int[] cpus = {0, 1, 2, 3};
+        int[] nodes = {0, 0, 1, 1};
+        CpuTopology topology = new CpuTopology(cpus, new int[4], cpus, nodes, nodes);
+        AffinityPlanner.CpuLease lease = new AffinityPlanner(topology).acquire(2);
+        ResourceLimits limits = new ResourceLimits();
+        limits.setPinCpus(true);
+        ResourceLimiter.LimitedJob job = new ResourceLimiter.LimitedJob(limits, null, lease);
+
+        assertTrue(lease.getNode() >= 0);
+        // Bound to the node's CPUs, but free to use other nodes' memory once its own is full
+        assertEquals(Arrays.asList("numactl", "--physcpubind=" + lease.getCpuList(), "--preferred=" + lease.getNode(), "--",
+                "iqtree", "-s", "gene 1.aln"), job.wrapArgs(IQTREE));
+    }
+
+    @Test
+    public void testOomKillIsReportedFromMemoryEvents(@TempDir Path cgroup) throws Exception {
+        ResourceLimiter.LimitedJob job = new ResourceLimiter.LimitedJob(new ResourceLimits(TWO_GB, 0, 0), cgroup, null);
+        Files.write(cgroup.resolve("memory.events"),
+                "low 0\nhigh 0\nmax 12\noom 1\noom_kill 0\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(job.wasOomKilled());
+        assertNull(job.describeFailure(137, ""));
+
+        Files.write(cgroup.resolve("memory.events"),
+                "low 0\nhigh 0\nmax 12\noom 1\noom_kill 1\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(job.wasOomKilled());
+        assertEquals("Job was killed after exceeding its memory limit of 2048 MB", job.describeFailure(137, ""));
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void testFailureWithoutCgroupOnlyHintsAtMemoryLimit() {
+        ResourceLimiter.LimitedJob limited = new ResourceLimiter.LimitedJob(new ResourceLimits(TWO_GB, 0, 0), null, null);
+        ResourceLimiter.LimitedJob niced = new ResourceLimiter.LimitedJob(new ResourceLimits(0, 0, 5), null, null);
+
+        assertEquals("Job may have exceeded its memory limit of 2048 MB", limited.describeFailure(134, ""));
+        assertEquals("Job may have exceeded its memory limit of 2048 MB",
+                limited.describeFailure(1, "ERROR: std::bad_alloc\n"));
+        // Ordinary failures keep their own error
+        assertNull(limited.describeFailure(2, "ERROR: Alignment file not found\n"));
+        assertNull(niced.describeFailure(134, ""));
+    }
+
+    @Test
+    public void testNoLimitsNeedNoJob() {
+        assertNull(ResourceLimiter.prepare(null));
+        assertNull(ResourceLimiter.prepare(new ResourceLimits()));
+    }
+}
@@ -0,0 +1,88 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PackedAlignment;
+import org.biopipelinerunner.models.SitePatterns;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SitePatternCompressorTest {
+
+    @Test
+    public void testCompressesWithinPartitionsAndRoundTrips(@TempDir Path tempDir) throws IOException {
+        Path fasta = tempDir.resolve("small.aln");
+        Files.write(fasta, Arrays.asList(">a", "AAWAA-W", ">b", "CCWCCXW", ">c", "AAWAA-W"), StandardCharsets.UTF_8);
+        PackedAlignment alignment = AlignmentReader.readFasta(fasta);
+
+        SitePatterns patterns = SitePatternCompressor.compress(alignment, new int[] {3, 7});
+        // Partition 1: ACA, ACA, WWW; partition 2: ACA, ACA, unknown, WWW
+        assertEquals(5, patterns.getPatternCount());
+        assertArrayEquals(new int[] {2, 1, 2, 1, 1}, patterns.getWeights());
+        assertEquals(2, patterns.getPartitionCount());
+        assertEquals(2, patterns.getPartitionPatternEnd(0));
+        assertEquals(5, patterns.getPartitionPatternEnd(1));
+        assertEquals(2, patterns.getPattern(4));
+        assertEquals(3, patterns.getPattern(5));
+        assertArrayEquals(new double[] {0, 0, 1, 2, 2, 3, 4}, patterns.expand(new double[] {0, 1, 2, 3, 4}));
+
+        SitePatternCompressor.write(patterns, fasta);
+        assertTrue(SitePatternCompressor.isUpToDate(fasta));
+        SitePatterns read = SitePatternCompressor.read(fasta);
+        assertFalse(read.getPatterns().isNucleotide());
+        assertEquals(alignment.getTaxa(), read.getPatterns().getTaxa());
+        assertArrayEquals(patterns.getWeights(), read.getWeights());
+        assertEquals(5, read.getPartitionPatternEnd(1));
+        for (int site = 0; site < alignment.getLength(); site++) {
+            assertEquals(patterns.getPattern(site), read.getPattern(site));
+        }
+        for (int t = 0; t < alignment.getTaxonCount(); t++) {
+            assertArrayEquals(patterns.getPatterns().getRow(t), read.getPatterns().getRow(t));
+        }
+    }
+
+    @Test
+    public void testWeightedDistancesMatchFullAlignment() {
+        // Few taxa over nucleotides, so many columns repeat with all kinds of weights
+        Random random = new Random(7);
+        int taxa = 40;
+        int sites = 5000;
+        byte[][] rows = new byte[taxa][sites];
+        List<String> names = new ArrayList<>();
+        byte[][] columns = new byte[50][taxa];
+        for (byte[] column : columns) {
+            for (int t = 0; t < taxa; t++) {
+                column[t] = (byte) (random.nextInt(8) == 0 ? PackedAlignment.UNKNOWN : random.nextInt(4));
+            }
+        }
+        for (int s = 0; s < sites; s++) {
+            // Skewed choice of column gives weights from 1 into the hundreds
+            byte[] column = columns[(int) (columns.length * Math.pow(random.nextDouble(), 3))];
+            for (int t = 0; t < taxa; t++) {
+                rows[t][s] = s % 97 == 0 ? (byte) random.nextInt(4) : column[t];
+            }
+        }
+        for (int t = 0; t < taxa; t++) {
+            names.add("t" + t);
+        }
+        PackedAlignment alignment = new PackedAlignment(names, rows, true);
+        SitePatterns patterns = SitePatternCompressor.compress(alignment);
+        assertTrue(patterns.getPatternCount() < 150, "patterns: " + patterns.getPatternCount());
+
+        for (DistanceMatrix.Model model : DistanceMatrix.Model.values()) {
+            DistanceMatrix full = DistanceMatrix.compute(alignment, model, ForkJoinPool.commonPool());
+            DistanceMatrix compressed = DistanceMatrix.compute(patterns, model, ForkJoinPool.commonPool());
+            assertArrayEquals(full.toArray(), compressed.toArray(), 1e-12);
+        }
+    }
+}
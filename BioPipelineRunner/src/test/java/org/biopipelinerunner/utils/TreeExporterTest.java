@@ -0,0 +1,63 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeExporterTest {
+
+    @Test
+    public void testSvgHasOneSegmentPerBranchAndEscapedLabels(@TempDir Path tempDir) throws Exception {
+        PhyloTree tree = new NewickParser().parse("(('A<1>&B':1,B:2)87:1,C:0.5);");
+        Path svg = tempDir.resolve("tree.svg");
+        TreeExporter.exportSvg(new TreeLayout(tree, true), svg, true);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(svg.toFile());
+        assertEquals("svg", document.getDocumentElement().getTagName());
+        String path = document.getElementsByTagName("path").item(0).getAttributes().getNamedItem("d").getNodeValue();
+        // Four horizontal branches, two vertical connectors and the scale bar
+        assertEquals(7, path.split("M").length - 1);
+
+        NodeList texts = document.getElementsByTagName("text");
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < texts.getLength(); i++) {
+            values.add(texts.item(i).getTextContent());
+        }
+        assertTrue(values.contains("A<1>&B"), values.toString());
+        assertTrue(values.contains("B"));
+        assertTrue(values.contains("C"));
+        assertTrue(values.contains("87"), values.toString());
+        assertTrue(values.contains("0.100"), values.toString());
+        assertEquals(5, values.size());
+    }
+
+    @Test
+    public void testSupportValuesAreOptional(@TempDir Path tempDir) throws Exception {
+        PhyloTree tree = new NewickParser().parse("((A,B)87,C);");
+        Path svg = tempDir.resolve("tree.svg");
+        TreeExporter.export(new TreeLayout(tree, true), svg, false);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(svg.toFile());
+        NodeList texts = document.getElementsByTagName("text");
+        // Leaf labels only: no support value, and a cladogram has no scale bar
+        assertEquals(3, texts.getLength());
+    }
+
+    @Test
+    public void testUnknownFormatIsRejected(@TempDir Path tempDir) throws IOException {
+        PhyloTree tree = new NewickParser().parse("((A,B),C);");
+        assertThrows(IOException.class, () -> TreeExporter.export(new TreeLayout(tree, true), tempDir.resolve("tree.txt"), true));
+        assertEquals("87", TreeExporter.formatNumber(87.0));
+        assertEquals("0.125", TreeExporter.formatNumber(0.125));
+    }
+}
@@ -0,0 +1,100 @@
+package org.biopipelinerunner.utils;
+
+import org.biopipelinerunner.models.PhyloTree;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeLayoutTest {
+
+    @Test
+    public void testPhylogramCoordinates() throws IOException {
+        PhyloTree tree = new NewickParser().parse("((A:1,B:2):1,C:0.5);");
+        TreeLayout layout = new TreeLayout(tree, true);
+        int a = tree.findLeaf("A");
+        int b = tree.findLeaf("B");
+        int c = tree.findLeaf("C");
+        int ab = tree.getParent(a);
+        int root = tree.getRoot();
+
+        assertTrue(layout.isUsingBranchLengths());
+        assertEquals(2.0, layout.getX(a), 1e-12);
+        assertEquals(3.0, layout.getX(b), 1e-12);
+        assertEquals(0.5, layout.getX(c), 1e-12);
+        assertEquals(0.0, layout.getX(root), 1e-12);
+        assertEquals(3.0, layout.getWidth(), 1e-12);
+        assertEquals(3.0, layout.getSubtreeMaxX(ab), 1e-12);
+
+        // Leaves take consecutive slots; an internal node sits halfway between its outer children
+        assertEquals(0.0, layout.getY(a), 1e-12);
+        assertEquals(1.0, layout.getY(b), 1e-12);
+        assertEquals(2.0, layout.getY(c), 1e-12);
+        assertEquals(0.5, layout.getY(ab), 1e-12);
+        assertEquals(1.25, layout.getY(root), 1e-12);
+        assertEquals(0, layout.getFirstLeaf(ab));
+        assertEquals(1, layout.getLastLeaf(ab));
+        assertEquals(2, layout.getLastLeaf(root));
+    }
+
+    @Test
+    public void testCladogramWithoutBranchLengths() throws IOException {
+        PhyloTree tree = new NewickParser().parse("((A,B),C);");
+        TreeLayout layout = new TreeLayout(tree, true);
+
+        assertFalse(layout.isUsingBranchLengths());
+        assertEquals(2.0, layout.getX(tree.findLeaf("A")), 1e-12);
+        assertEquals(1.0, layout.getX(tree.findLeaf("C")), 1e-12);
+        assertEquals(2.0, layout.getWidth(), 1e-12);
+    }
+
+    @Test
+    public void testVisitSkipsHiddenSubtreesAndCollapsesThinClades() throws IOException {
+        PhyloTree tree = new NewickParser().parse("(((A,B),(C,D)),((E,F),(G,H)));");
+        TreeLayout layout = new TreeLayout(tree, false);
+
+        Recorder all = new Recorder(tree);
+        layout.visit(0, 7, 0, all);
+        assertEquals(tree.getNodeCount(), all.nodes.size());
+        assertTrue(all.collapsed.isEmpty());
+
+        // Pairs span two slots, so they are drawn as wedges; their leaves are not visited
+        Recorder coarse = new Recorder(tree);
+        layout.visit(0, 7, 3, coarse);
+        assertEquals(3, coarse.nodes.size());
+        assertEquals(4, coarse.collapsed.size());
+        assertFalse(coarse.nodes.contains("A"));
+
+        // Only the slots of C and D are in view: the E-H half is never reached
+        Recorder window = new Recorder(tree);
+        layout.visit(2, 3, 0, window);
+        assertTrue(window.nodes.contains("C"));
+        assertTrue(window.nodes.contains("D"));
+        assertFalse(window.nodes.contains("A"));
+        assertFalse(window.nodes.contains("E"));
+        assertEquals(5, window.nodes.size());
+    }
+
+    private static final class Recorder implements TreeLayout.Visitor {
+        private final PhyloTree tree;
+        private final List<String> nodes = new ArrayList<>();
+        private final List<Integer> collapsed = new ArrayList<>();
+
+        private Recorder(PhyloTree tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public void node(int node) {
+            nodes.add(tree.isLeaf(node) ? tree.getLabel(node) : "#" + node);
+        }
+
+        @Override
+        public void collapsed(int node) {
+            collapsed.add(node);
+        }
+    }
+}